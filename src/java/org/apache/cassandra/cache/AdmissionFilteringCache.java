@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Wraps an ICache in a TinyLFU admission policy: once the cache is full, a new entry is only added if its key was
+ * requested more often than the key the cache would evict to make room for it. A scan over keys that are read once
+ * thus leaves the entries of frequently read keys in place.
+ *
+ * Frequencies are estimated with a {@link FrequencySketch} recording every get. Asking the caches which entry they
+ * would evict next would take their global eviction lock on every put, so the victim's frequency is estimated instead
+ * as the lowest frequency among a few keys sampled from the cache. Sampling deserializes the keys of off-heap caches,
+ * so the estimate is only refreshed every few admissions.
+ */
+public class AdmissionFilteringCache<K, V> implements ICache<K, V>
+{
+    private static final int MIN_EXPECTED_ENTRIES = 1024;
+    private static final int VICTIM_SAMPLE_SIZE = 8;
+    private static final int VICTIM_SAMPLE_INTERVAL = 16; // must be a power of two
+
+    private final ICache<K, V> cache;
+    private final FrequencySketch sketch;
+    private final AtomicLong rejected = new AtomicLong();
+
+    // walks the keys of the cache across calls, so that every entry gets sampled in turn
+    private final Lock samplerLock = new ReentrantLock();
+    private Iterator<K> sampler;
+    private volatile int victimFrequency;
+    private final AtomicInteger admissions = new AtomicInteger();
+
+    public AdmissionFilteringCache(ICache<K, V> cache)
+    {
+        this.cache = cache;
+        this.sketch = new FrequencySketch(Math.max(cache.size(), MIN_EXPECTED_ENTRIES));
+    }
+
+    /**
+     * @return the number of entries that were not added to the cache because of their key's frequency
+     */
+    public long rejected()
+    {
+        return rejected.get();
+    }
+
+    private boolean admit(K key)
+    {
+        int size = cache.size();
+        if (size > sketch.tableSize())
+            sketch.ensureCapacity(size);
+
+        // admit everything until there is no room left for an entry of average weight; caches split in segments
+        // (OHC) start evicting in some of them a bit before they are full, hence the slack
+        long weightedSize = cache.weightedSize();
+        long capacity = cache.capacity();
+        if (size == 0 || weightedSize + Math.max(weightedSize / size, capacity / 32) <= capacity || cache.containsKey(key))
+            return true;
+
+        boolean admitted = sketch.frequency(key) > victimFrequency();
+        if (!admitted)
+            rejected.incrementAndGet();
+        return admitted;
+    }
+
+    /**
+     * @return the lowest frequency of a sample of the keys in the cache, or the last one computed if it isn't time to
+     * sample again yet or another thread is sampling already
+     */
+    private int victimFrequency()
+    {
+        if ((admissions.getAndIncrement() & (VICTIM_SAMPLE_INTERVAL - 1)) != 0 || !samplerLock.tryLock())
+            return victimFrequency;
+
+        try
+        {
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < VICTIM_SAMPLE_SIZE; i++)
+            {
+                if (sampler == null || !sampler.hasNext())
+                {
+                    closeSampler();
+                    sampler = cache.keyIterator();
+                    if (!sampler.hasNext())
+                        return victimFrequency = 0;
+                }
+                frequency = Math.min(frequency, sketch.frequency(sampler.next()));
+            }
+            return victimFrequency = frequency;
+        }
+        finally
+        {
+            samplerLock.unlock();
+        }
+    }
+
+    // the key iterators of OHC hold off-heap memory until closed
+    private void closeSampler()
+    {
+        if (sampler instanceof Closeable)
+        {
+            try
+            {
+                ((Closeable) sampler).close();
+            }
+            catch (IOException ignored)
+            {
+                // not thrown (by OHC)
+            }
+        }
+        sampler = null;
+    }
+
+    public long capacity()
+    {
+        return cache.capacity();
+    }
+
+    public void setCapacity(long capacity)
+    {
+        cache.setCapacity(capacity);
+    }
+
+    public void put(K key, V value)
+    {
+        if (admit(key))
+            cache.put(key, value);
+    }
+
+    public boolean putIfAbsent(K key, V value)
+    {
+        return admit(key) && cache.putIfAbsent(key, value);
+    }
+
+    public boolean replace(K key, V old, V value)
+    {
+        return cache.replace(key, old, value);
+    }
+
+    public V get(K key)
+    {
+        sketch.increment(key);
+        return cache.get(key);
+    }
+
+    public void remove(K key)
+    {
+        cache.remove(key);
+    }
+
+    public int size()
+    {
+        return cache.size();
+    }
+
+    public long weightedSize()
+    {
+        return cache.weightedSize();
+    }
+
+    public void clear()
+    {
+        cache.clear();
+        samplerLock.lock();
+        try
+        {
+            closeSampler();
+        }
+        finally
+        {
+            samplerLock.unlock();
+        }
+    }
+
+    public Iterator<K> keyIterator()
+    {
+        return cache.keyIterator();
+    }
+
+    public Iterator<K> hotKeyIterator(int n)
+    {
+        return cache.hotKeyIterator(n);
+    }
+
+    public boolean containsKey(K key)
+    {
+        return cache.containsKey(key);
+    }
+}
@@ -19,14 +19,24 @@ package org.apache.cassandra.cache;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-
+import java.util.regex.Pattern;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.cliffc.high_scale_lib.NonBlockingHashSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.concurrent.DebuggableThreadPoolExecutor;
 import org.apache.cassandra.concurrent.ScheduledExecutors;
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.DatabaseDescriptor;
@@ -40,6 +50,7 @@ import org.apache.cassandra.db.marshal.BytesType;
 import org.apache.cassandra.io.FSWriteError;
 import org.apache.cassandra.io.util.*;
 import org.apache.cassandra.service.CacheService;
+import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.JVMStabilityInspector;
 import org.apache.cassandra.utils.Pair;
 
@@ -62,6 +73,17 @@ public class AutoSavingCache<K extends CacheKey, V> extends InstrumentingCache<K
 
     private final CacheSerializer<K, V> cacheLoader;
     private static final String CURRENT_VERSION = "b";
+    private static final Pattern SEGMENT_SUFFIX = Pattern.compile("\\d+\\.db");
+
+    /** Saved caches are split into files of at most this many keys per table, which are loaded in parallel */
+    @VisibleForTesting
+    static int keysPerSegment = Integer.getInteger("cassandra.cache_keys_per_segment", 100000);
+
+    private static final ListeningExecutorService loadExecutor =
+        MoreExecutors.listeningDecorator(DebuggableThreadPoolExecutor.createWithMaximumPoolSize("CacheLoader",
+                                                                                               FBUtilities.getAvailableProcessors(),
+                                                                                               60,
+                                                                                               TimeUnit.SECONDS));
 
     private static volatile IStreamFactory streamFactory = new IStreamFactory()
     {
@@ -95,6 +117,12 @@ public class AutoSavingCache<K extends CacheKey, V> extends InstrumentingCache<K
         return DatabaseDescriptor.getSerializedCachePath(names.left, names.right, cfId, cacheType, version);
     }
 
+    public File getSegmentPath(UUID cfId, int segment)
+    {
+        Pair<String, String> names = Schema.instance.getCF(cfId);
+        return DatabaseDescriptor.getSerializedCachePath(names.left, names.right, cfId, cacheType, CURRENT_VERSION, segment);
+    }
+
     public Writer getWriter(int keysToSave)
     {
         return new Writer(keysToSave);
@@ -123,61 +151,126 @@ public class AutoSavingCache<K extends CacheKey, V> extends InstrumentingCache<K
         }
     }
 
+    /**
+     * Loads the saved cache of the given table, blocking until all of its segments have been read.
+     */
     public int loadSaved(ColumnFamilyStore cfs)
     {
-        int count = 0;
-        long start = System.nanoTime();
-
-        // modern format, allows both key and value (so key cache load can be purely sequential)
-//<<<<<<< HEAD
-//        //如my-test-data\saved_caches\mytest-keysindextest.KeysIndexTest_index_f1-KeyCache
-//        File path = getCachePath(cfs.keyspace.getName(), cfs.name, cfs.metadata.cfId, CURRENT_VERSION);
-//        // if path does not exist, try without cfId (assuming saved cache is created with current CF)
-//        if (!path.exists())
-//            path = getCachePath(cfs.keyspace.getName(), cfs.name, null, CURRENT_VERSION);
-//=======
-        File path = getCachePath(cfs.metadata.cfId, CURRENT_VERSION);
-        if (path.exists())
+        try
         {
-            DataInputStream in = null;
-            try
+            return loadSavedAsync(cfs).get();
+        }
+        catch (InterruptedException e)
+        {
+            throw new AssertionError(e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Loads the saved cache of the given table in the background, reading its segments in parallel. Loaded entries
+     * never replace the ones cached in the meantime, so this can safely run while the table is serving requests.
+     *
+     * @return a future on the number of entries read, which never fails: unreadable segments are logged and skipped
+     */
+    public ListenableFuture<Integer> loadSavedAsync(final ColumnFamilyStore cfs)
+    {
+        final long start = System.nanoTime();
+        List<ListenableFuture<Integer>> segments = new ArrayList<>();
+        for (final File path : getSegmentPaths(cfs.metadata.cfId))
+        {
+            segments.add(loadExecutor.submit(new Callable<Integer>()
             {
-                logger.info(String.format("reading saved cache %s", path));
-                in = new DataInputStream(new LengthAvailableInputStream(new BufferedInputStream(streamFactory.getInputStream(path)), path.length()));
-                List<Future<Pair<K, V>>> futures = new ArrayList<Future<Pair<K, V>>>();
-                while (in.available() > 0)
+                public Integer call()
                 {
-                    Future<Pair<K, V>> entry = cacheLoader.deserialize(in, cfs);
-                    // Key cache entry can return null, if the SSTable doesn't exist.
-                    if (entry == null)
-                        continue;
-                    futures.add(entry);
-                    count++;
+                    return loadSegment(cfs, path);
                 }
+            }));
+        }
 
-                for (Future<Pair<K, V>> future : futures)
-                {
-                    Pair<K, V> entry = future.get();
-                    if (entry != null)
-                        put(entry.left, entry.right);
-                }
+        return Futures.transform(Futures.allAsList(segments), new Function<List<Integer>, Integer>()
+        {
+            public Integer apply(List<Integer> counts)
+            {
+                int count = 0;
+                for (int segmentCount : counts)
+                    count += segmentCount;
+                if (logger.isDebugEnabled())
+                    logger.debug("completed reading ({} ms; {} keys) saved {} of {}.{}",
+                                 TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), count, cacheType, cfs.keyspace.getName(), cfs.name);
+                return count;
             }
-            catch (Exception e)
+        });
+    }
+
+    private int loadSegment(ColumnFamilyStore cfs, File path)
+    {
+        int count = 0;
+        DataInputStream in = null;
+        try
+        {
+            logger.info(String.format("reading saved cache %s", path));
+            in = new DataInputStream(new LengthAvailableInputStream(new BufferedInputStream(streamFactory.getInputStream(path)), path.length()));
+            List<Future<Pair<K, V>>> futures = new ArrayList<Future<Pair<K, V>>>();
+            while (in.available() > 0)
             {
-                JVMStabilityInspector.inspectThrowable(e);
-                logger.debug(String.format("harmless error reading saved cache %s", path.getAbsolutePath()), e);
+                Future<Pair<K, V>> entry = cacheLoader.deserialize(in, cfs);
+                // Key cache entry can return null, if the SSTable doesn't exist.
+                if (entry == null)
+                    continue;
+                futures.add(entry);
             }
-            finally
+
+            for (Future<Pair<K, V>> future : futures)
             {
-                FileUtils.closeQuietly(in);
+                Pair<K, V> entry = future.get();
+                if (entry == null)
+                    continue;
+                // the loader may have cached the entry itself (see CacheService.RowCacheSerializer)
+                if (!containsKey(entry.left))
+                    putIfAbsent(entry.left, entry.right);
+                count++;
             }
         }
-        if (logger.isDebugEnabled())
-            logger.debug("completed reading ({} ms; {} keys) saved cache {}",
-                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), count, path);
+        catch (Exception e)
+        {
+            JVMStabilityInspector.inspectThrowable(e);
+            logger.debug(String.format("harmless error reading saved cache %s", path.getAbsolutePath()), e);
+        }
+        finally
+        {
+            FileUtils.closeQuietly(in);
+        }
         return count;
     }
 
+    /**
+     * @return the segments saved for the given table, along with the file of the unsegmented layout if there is one
+     */
+    private List<File> getSegmentPaths(UUID cfId)
+    {
+        List<File> paths = new ArrayList<>();
+        File legacyPath = getCachePath(cfId, CURRENT_VERSION);
+        if (legacyPath.exists())
+            paths.add(legacyPath);
+
+        String prefix = getCachePath(cfId, null).getName() + '-' + CURRENT_VERSION + '-';
+        File[] files = legacyPath.getParentFile().listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                String name = file.getName();
+                if (file.isFile() && name.startsWith(prefix) && SEGMENT_SUFFIX.matcher(name.substring(prefix.length())).matches())
+                    paths.add(file);
+            }
+        }
+        return paths;
+    }
+
     public Future<?> submitWrite(int keysToSave)
     {
         //会调用Writer.saveCache
@@ -247,10 +340,7 @@ public class AutoSavingCache<K extends CacheKey, V> extends InstrumentingCache<K
 
             long start = System.nanoTime();
 
-            HashMap<UUID, DataOutputPlus> writers = new HashMap<>();
-            HashMap<UUID, OutputStream> streams = new HashMap<>();
-            HashMap<UUID, File> paths = new HashMap<>();
-
+            HashMap<UUID, SegmentWriter> writers = new HashMap<>();
             try
             {
                 while (keyIterator.hasNext())
@@ -260,38 +350,21 @@ public class AutoSavingCache<K extends CacheKey, V> extends InstrumentingCache<K
                     if (!Schema.instance.hasCF(key.getCFId()))
                         continue; // the table has been dropped.
 
-                    DataOutputPlus writer = writers.get(cfId);
+                    SegmentWriter writer = writers.get(cfId);
                     if (writer == null)
                     {
-                        File writerPath = tempCacheFile(cfId);
-                        OutputStream stream;
-                        try
-                        {
-                            stream = streamFactory.getOutputStream(writerPath);
-                            writer = new DataOutputStreamPlus(stream);
-                        }
-                        catch (FileNotFoundException e)
-                        {
-                            throw new RuntimeException(e);
-                        }
-                        paths.put(cfId, writerPath);
-                        streams.put(cfId, stream);
+                        writer = new SegmentWriter(cfId);
                         writers.put(cfId, writer);
                     }
-
-                    try
-                    {
-                        cacheLoader.serialize(key, writer);
-                    }
-                    catch (IOException e)
-                    {
-                        throw new FSWriteError(e, paths.get(cfId));
-                    }
+                    writer.write(key);
 
                     keysWritten++;
                     if (keysWritten >= keysEstimate)
                         break;
                 }
+
+                for (SegmentWriter writer : writers.values())
+                    writer.finish();
             }
             finally
             {
@@ -305,28 +378,100 @@ public class AutoSavingCache<K extends CacheKey, V> extends InstrumentingCache<K
                         // not thrown (by OHC)
                     }
 
-                for (OutputStream writer : streams.values())
-                    FileUtils.closeQuietly(writer);
+                for (SegmentWriter writer : writers.values())
+                    writer.abort();
+            }
+
+            logger.info("Saved {} ({} items) in {} ms", cacheType, keysWritten, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+
+        /**
+         * Writes the keys of one table, moving each segment in place as soon as it is full so that an interrupted
+         * save still leaves loadable segments behind.
+         */
+        private class SegmentWriter
+        {
+            private final UUID cfId;
+            private int segment;
+            private File tmpFile;
+            private OutputStream stream;
+            private DataOutputPlus out;
+            private int keys;
+
+            SegmentWriter(UUID cfId)
+            {
+                this.cfId = cfId;
+            }
+
+            void write(K key)
+            {
+                if (out == null)
+                {
+                    tmpFile = tempCacheFile(cfId);
+                    try
+                    {
+                        stream = streamFactory.getOutputStream(tmpFile);
+                    }
+                    catch (FileNotFoundException e)
+                    {
+                        throw new RuntimeException(e);
+                    }
+                    out = new DataOutputStreamPlus(stream);
+                }
+
+                try
+                {
+                    cacheLoader.serialize(key, out);
+                }
+                catch (IOException e)
+                {
+                    throw new FSWriteError(e, tmpFile);
+                }
+
+                if (++keys >= keysPerSegment)
+                    finish();
             }
 
-            for (Map.Entry<UUID, DataOutputPlus> entry : writers.entrySet())
+            void finish()
             {
-                UUID cfId = entry.getKey();
+                if (out == null)
+                    return;
 
-                File tmpFile = paths.get(cfId);
-                File cacheFile = getCachePath(cfId, CURRENT_VERSION);
+                try
+                {
+                    stream.close();
+                }
+                catch (IOException e)
+                {
+                    throw new FSWriteError(e, tmpFile);
+                }
 
+                File cacheFile = getSegmentPath(cfId, segment++);
                 cacheFile.delete(); // ignore error if it didn't exist
                 if (!tmpFile.renameTo(cacheFile))
                     logger.error("Unable to rename {} to {}", tmpFile, cacheFile);
+
+                tmpFile = null;
+                stream = null;
+                out = null;
+                keys = 0;
             }
 
-            logger.info("Saved {} ({} items) in {} ms", cacheType, keysWritten, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            void abort()
+            {
+                if (out == null)
+                    return;
+
+                FileUtils.closeQuietly(stream);
+                if (!tmpFile.delete())
+                    logger.warn("Failed to delete {}", tmpFile.getAbsolutePath());
+                out = null;
+            }
         }
 
         private File tempCacheFile(UUID cfId)
         {
-            File path = getCachePath(cfId, CURRENT_VERSION);
+            File path = getSegmentPath(cfId, 0);
             return FileUtils.createTempFile(path.getName(), null, path.getParentFile());
         }
 
@@ -338,13 +483,16 @@ public class AutoSavingCache<K extends CacheKey, V> extends InstrumentingCache<K
             if (files != null)
             {
                 String cacheNameFormat = String.format("%s-%s.db", cacheType.toString(), CURRENT_VERSION);
+                String segmentPrefix = String.format("%s-%s-", cacheType.toString(), CURRENT_VERSION);
                 for (File file : files)
                 {
                     if (!file.isFile())
                         continue; // someone's been messing with our directory.  naughty!
 
-                    if (file.getName().endsWith(cacheNameFormat) 
-                     || file.getName().endsWith(cacheType.toString()))
+                    int segmentStart = file.getName().lastIndexOf(segmentPrefix);
+                    if (file.getName().endsWith(cacheNameFormat)
+                     || file.getName().endsWith(cacheType.toString())
+                     || (segmentStart >= 0 && SEGMENT_SUFFIX.matcher(file.getName().substring(segmentStart + segmentPrefix.length())).matches()))
                     {
                         if (!file.delete())
                             logger.warn("Failed to delete {}", file.getAbsolutePath());
@@ -28,7 +28,7 @@ import org.apache.cassandra.exceptions.ConfigurationException;
 import static org.apache.cassandra.utils.FBUtilities.fromJsonMap;
 
 /*
-CQL: { 'keys' : 'ALL|NONE', 'rows_per_partition': '200|NONE|ALL' }
+CQL: { 'keys' : 'ALL|NONE', 'rows_per_partition': '200|NONE|ALL', 'rows_from': 'HEAD|TAIL', 'update_in_place': 'TRUE|FALSE', 'results': 'TRUE|FALSE' }
  */
 public class CachingOptions
 {
@@ -39,12 +39,20 @@ public class CachingOptions
 
     public final KeyCache keyCache;
     public final RowCache rowCache;
+    /** whether the coordinator caches the results of prepared SELECTs at ONE and LOCAL_ONE, see ResultSetCache */
+    public final boolean cacheResults;
     private static final Set<String> legacyOptions = new HashSet<>(Arrays.asList("ALL", "NONE", "KEYS_ONLY", "ROWS_ONLY"));
 
     public CachingOptions(KeyCache kc, RowCache rc)
+    {
+        this(kc, rc, false);
+    }
+
+    public CachingOptions(KeyCache kc, RowCache rc, boolean cacheResults)
     {
         this.keyCache = kc;
         this.rowCache = rc;
+        this.cacheResults = cacheResults;
     }
 
     public static CachingOptions fromString(String cache) throws ConfigurationException
@@ -57,14 +65,22 @@ public class CachingOptions
     public static CachingOptions fromMap(Map<String, String> cacheConfig) throws ConfigurationException
     {
         validateCacheConfig(cacheConfig);
+        CachingOptions options = fromKeyAndRowCacheConfig(cacheConfig);
+        if (cacheConfig.containsKey("results") && Boolean.parseBoolean(cacheConfig.get("results")))
+            return new CachingOptions(options.keyCache, options.rowCache, true);
+        return options;
+    }
+
+    private static CachingOptions fromKeyAndRowCacheConfig(Map<String, String> cacheConfig)
+    {
         if (!cacheConfig.containsKey("keys") && !cacheConfig.containsKey("rows_per_partition"))
             return CachingOptions.NONE;
         if (!cacheConfig.containsKey("keys"))
-            return new CachingOptions(new KeyCache(KeyCache.Type.NONE), RowCache.fromString(cacheConfig.get("rows_per_partition")));
+            return new CachingOptions(new KeyCache(KeyCache.Type.NONE), RowCache.fromMap(cacheConfig));
         if (!cacheConfig.containsKey("rows_per_partition"))
             return CachingOptions.KEYS_ONLY;
 
-        return new CachingOptions(KeyCache.fromString(cacheConfig.get("keys")), RowCache.fromString(cacheConfig.get("rows_per_partition")));
+        return new CachingOptions(KeyCache.fromString(cacheConfig.get("keys")), RowCache.fromMap(cacheConfig));
     }
 
     private static void validateCacheConfig(Map<String, String> cacheConfig) throws ConfigurationException
@@ -86,15 +102,43 @@ public class CachingOptions
                     throw new ConfigurationException("'rows_per_partition' can only have values 'ALL', 'NONE' or be numeric.");
                 }
             }
+            else if (entry.getKey().equals("rows_from"))
+            {
+                if (!(value.equals("HEAD") || value.equals("TAIL")))
+                {
+                    throw new ConfigurationException("'rows_from' can only have values 'HEAD' or 'TAIL'");
+                }
+            }
+            else if (entry.getKey().equals("update_in_place"))
+            {
+                if (!(value.equals("TRUE") || value.equals("FALSE")))
+                {
+                    throw new ConfigurationException("'update_in_place' can only have values 'TRUE' or 'FALSE'");
+                }
+            }
+            else if (entry.getKey().equals("results"))
+            {
+                if (!(value.equals("TRUE") || value.equals("FALSE")))
+                {
+                    throw new ConfigurationException("'results' can only have values 'TRUE' or 'FALSE'");
+                }
+            }
             else
-                throw new ConfigurationException("Only supported CachingOptions parameters are 'keys' and 'rows_per_partition'");
+                throw new ConfigurationException("Only supported CachingOptions parameters are 'keys', 'rows_per_partition', 'rows_from', 'update_in_place' and 'results'");
         }
     }
 
     @Override
     public String toString()
     {
-        return String.format("{\"keys\":\"%s\", \"rows_per_partition\":\"%s\"}", keyCache.toString(), rowCache.toString());
+        StringBuilder sb = new StringBuilder(String.format("{\"keys\":\"%s\", \"rows_per_partition\":\"%s\"", keyCache.toString(), rowCache.toString()));
+        if (rowCache.cacheTail)
+            sb.append(", \"rows_from\":\"TAIL\"");
+        if (rowCache.updateInPlace)
+            sb.append(", \"update_in_place\":\"TRUE\"");
+        if (cacheResults)
+            sb.append(", \"results\":\"TRUE\"");
+        return sb.append("}").toString();
     }
 
     private static CachingOptions fromLegacyOption(String cache)
@@ -118,6 +162,7 @@ public class CachingOptions
 
         if (!keyCache.equals(o2.keyCache)) return false;
         if (!rowCache.equals(o2.rowCache)) return false;
+        if (cacheResults != o2.cacheResults) return false;
 
         return true;
     }
@@ -127,6 +172,7 @@ public class CachingOptions
     {
         int result = keyCache.hashCode();
         result = 31 * result + rowCache.hashCode();
+        result = 31 * result + (cacheResults ? 1 : 0);
         return result;
     }
 
@@ -145,7 +191,10 @@ public class CachingOptions
         }
         // if we get cells_per_row from thrift, it is either "ALL" or "<number of cells to cache>".
         if (cellsPerRow != null && rc.isEnabled())
-            rc = RowCache.fromString(cellsPerRow);
+        {
+            RowCache cells = RowCache.fromString(cellsPerRow);
+            rc = new RowCache(cells.type, cells.rowsToCache, rc.cacheTail, rc.updateInPlace);
+        }
         return new CachingOptions(kc, rc);
     }
 
@@ -220,15 +269,25 @@ public class CachingOptions
     {
         public final Type type;
         public final int rowsToCache;
+        /** whether the last rows of partitions are cached rather than the first ones, for reversed queries */
+        public final boolean cacheTail;
+        /** whether writes are applied to cached partitions rather than invalidating them */
+        public final boolean updateInPlace;
 
         public RowCache(Type type)
         {
             this(type, (type == Type.ALL) ? Integer.MAX_VALUE : 0);
         }
         public RowCache(Type type, int rowsToCache)
+        {
+            this(type, rowsToCache, false, false);
+        }
+        public RowCache(Type type, int rowsToCache, boolean cacheTail, boolean updateInPlace)
         {
             this.type = type;
             this.rowsToCache = rowsToCache;
+            this.cacheTail = cacheTail;
+            this.updateInPlace = updateInPlace;
         }
 
         public enum Type
@@ -244,6 +303,14 @@ public class CachingOptions
                 return new RowCache(Type.ALL, Integer.MAX_VALUE);
             return new RowCache(Type.HEAD, Integer.parseInt(rowCache));
         }
+
+        public static RowCache fromMap(Map<String, String> cacheConfig)
+        {
+            RowCache rowCache = fromString(cacheConfig.get("rows_per_partition"));
+            boolean cacheTail = cacheConfig.containsKey("rows_from") && cacheConfig.get("rows_from").equalsIgnoreCase("tail");
+            boolean updateInPlace = cacheConfig.containsKey("update_in_place") && Boolean.parseBoolean(cacheConfig.get("update_in_place"));
+            return new RowCache(rowCache.type, rowCache.rowsToCache, cacheTail, updateInPlace);
+        }
         public boolean isEnabled()
         {
             return (type == Type.ALL) || (type == Type.HEAD);
@@ -270,6 +337,8 @@ public class CachingOptions
 
             if (rowsToCache != rowCache.rowsToCache) return false;
             if (type != rowCache.type) return false;
+            if (cacheTail != rowCache.cacheTail) return false;
+            if (updateInPlace != rowCache.updateInPlace) return false;
 
             return true;
         }
@@ -279,6 +348,8 @@ public class CachingOptions
         {
             int result = type.hashCode();
             result = 31 * result + rowsToCache;
+            result = 31 * result + (cacheTail ? 1 : 0);
+            result = 31 * result + (updateInPlace ? 1 : 0);
             return result;
         }
     }
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.nio.ByteBuffer;
+
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+/**
+ * Remembers the digests replicas last answered digest requests on partitions of a table with, so that answering
+ * the same request again doesn't have to read the partition and hash the result.
+ *
+ * A digest is only valid for the filter it was computed for, so entries hold the serialized filter along with the
+ * digest. Like {@link NegativeLookupCache}, digests are kept in a {@link DirectMappedTable}, so a partition has at
+ * most one cached digest, and a write racing with the read computing a digest removes the claim before it becomes
+ * an entry.
+ */
+public class DigestCache
+{
+    private final DirectMappedTable<Digest> digests;
+
+    public DigestCache(int capacity)
+    {
+        digests = new DirectMappedTable<>(capacity);
+    }
+
+    /**
+     * @return the digest of what the filter selects in the partition, or null if it isn't known
+     */
+    public ByteBuffer get(DecoratedKey key, ByteBuffer filter)
+    {
+        Digest digest = digests.get(key);
+        return digest != null && digest.filter.equals(filter) ? digest.digest.duplicate() : null;
+    }
+
+    /**
+     * Claims the slot of the partition, to be called before reading it.
+     *
+     * @return the claim to pass to {@link #put} once the digest is computed
+     */
+    public Object beginRead(DecoratedKey key)
+    {
+        return digests.claim(key);
+    }
+
+    /**
+     * @param filter the serialized filter the digest was computed for, which must not be modified afterwards
+     */
+    public void put(Object claim, ByteBuffer filter, ByteBuffer digest)
+    {
+        digests.put(claim, new Digest(filter, ByteBufferUtil.clone(digest)));
+    }
+
+    /**
+     * Must be called after the partition has been written to.
+     */
+    public void invalidate(DecoratedKey key)
+    {
+        digests.invalidate(key);
+    }
+
+    /**
+     * Forgets all digests, e.g. because sstables that weren't written through the memtable were added.
+     */
+    public void clear()
+    {
+        digests.clear();
+    }
+
+    private static class Digest
+    {
+        final ByteBuffer filter;
+        final ByteBuffer digest;
+
+        Digest(ByteBuffer filter, ByteBuffer digest)
+        {
+            this.filter = filter;
+            this.digest = digest;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.cassandra.db.BufferDecoratedKey;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+/**
+ * A fixed size, direct-mapped table of values computed by reading partitions of a table, that stay valid until the
+ * partition is written to.
+ *
+ * Each partition can only live in the slot its token hashes to. Values are added with a two step protocol similar to
+ * the row cache sentinels: a read first claims the slot of the partition, and only turns its claim into an entry once
+ * done if the claim is still there. Writes remove the slot of the partition they touch after being applied to the
+ * memtable, so a write racing with a read either is seen by the read or removes the claim before it becomes an entry.
+ *
+ * Entries get a second chance, as in the clock algorithm: an entry that was read since the last claim for another
+ * partition survives that claim, so that partitions read in turn don't keep evicting each other, while entries that
+ * are no longer read still make way for new ones. Claims, on the other hand, are simply replaced.
+ */
+public class DirectMappedTable<V>
+{
+    private final AtomicReferenceArray<Entry<V>> slots;
+    private final int mask;
+
+    public DirectMappedTable(int capacity)
+    {
+        assert capacity > 0;
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        slots = new AtomicReferenceArray<>(Math.max(size, 1));
+        mask = slots.length() - 1;
+    }
+
+    /**
+     * @return the value of the partition, or null if there is none
+     */
+    public V get(DecoratedKey key)
+    {
+        Entry<V> entry = slots.get(slot(key));
+        if (entry == null || entry.value == null || !entry.key.equals(key))
+            return null;
+
+        // avoid dirtying the cache line of hot entries
+        if (!entry.referenced)
+            entry.referenced = true;
+        return entry.value;
+    }
+
+    /**
+     * Claims the slot of the partition, to be called before reading it.
+     *
+     * @return the claim to pass to {@link #put}, or null if the slot holds an entry for another partition that was
+     * read since the last claim
+     */
+    public Object claim(DecoratedKey key)
+    {
+        int slot = slot(key);
+        Entry<V> entry = slots.get(slot);
+        if (entry != null && entry.value != null && entry.referenced && !entry.key.equals(key))
+        {
+            // second chance: the entry goes on the next claim unless it is read again in between
+            entry.referenced = false;
+            return null;
+        }
+
+        // don't hold on to (a slice of) the buffer the request came in
+        Entry<V> claim = new Entry<>(new BufferDecoratedKey(key.getToken(), ByteBufferUtil.clone(key.getKey())), null);
+        return slots.compareAndSet(slot, entry, claim) ? claim : null;
+    }
+
+    /**
+     * Turns the claim into an entry with the given value, unless the partition was written to since it was made.
+     */
+    @SuppressWarnings("unchecked")
+    public void put(Object claim, V value)
+    {
+        assert value != null;
+        if (claim == null)
+            return;
+
+        Entry<V> entry = (Entry<V>) claim;
+        slots.compareAndSet(slot(entry.key), entry, new Entry<>(entry.key, value));
+    }
+
+    /**
+     * Must be called after the partition has been written to.
+     */
+    public void invalidate(DecoratedKey key)
+    {
+        int slot = slot(key);
+        Entry<V> entry = slots.get(slot);
+        if (entry != null && entry.key.equals(key))
+            slots.compareAndSet(slot, entry, null);
+    }
+
+    public void clear()
+    {
+        for (int i = 0; i < slots.length(); i++)
+            slots.set(i, null);
+    }
+
+    private int slot(DecoratedKey key)
+    {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    // a claim if there is no value yet
+    private static class Entry<V>
+    {
+        final DecoratedKey key;
+        final V value;
+        volatile boolean referenced;
+
+        Entry(DecoratedKey key, V value)
+        {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
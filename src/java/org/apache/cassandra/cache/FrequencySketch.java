@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+/**
+ * Approximate access frequency of cache keys: a count-min sketch of 4-bit counters, packed 16 to a long.
+ *
+ * Once the number of recorded accesses reaches ten times the number of counters per row, every counter is halved,
+ * so that keys that used to be popular lose their weight over time. Updates are not synchronized, a lost increment
+ * only makes the estimate a little less accurate.
+ */
+public class FrequencySketch
+{
+    private static final int MAX_FREQUENCY = 15;
+    private static final int MAX_TABLE_SIZE = 1 << 24;
+    private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private volatile long[] table;
+    private int sampleSize;
+    private int additions;
+
+    public FrequencySketch(long expectedEntries)
+    {
+        ensureCapacity(expectedEntries);
+    }
+
+    /**
+     * Grows the sketch so that it keeps its accuracy for the given number of entries, forgetting what it recorded.
+     */
+    public synchronized void ensureCapacity(long expectedEntries)
+    {
+        int size = (int) Math.min(MAX_TABLE_SIZE, Long.highestOneBit(Math.max(expectedEntries - 1, 1)) << 1);
+        if (table != null && table.length >= size)
+            return;
+        table = new long[size];
+        sampleSize = 10 * size;
+        additions = 0;
+    }
+
+    public int tableSize()
+    {
+        return table.length;
+    }
+
+    /**
+     * @return the estimated number of times the key was recorded, at most 15
+     */
+    public int frequency(Object key)
+    {
+        long[] table = this.table;
+        int hash = spread(key.hashCode());
+        int frequency = MAX_FREQUENCY;
+        for (int i = 0; i < SEEDS.length; i++)
+        {
+            int index = indexOf(table, hash, i);
+            frequency = Math.min(frequency, (int) ((table[index >>> 4] >>> ((index & 15) << 2)) & 0xfL));
+        }
+        return frequency;
+    }
+
+    public void increment(Object key)
+    {
+        long[] table = this.table;
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++)
+            added |= incrementAt(table, indexOf(table, hash, i));
+
+        if (added && ++additions >= sampleSize)
+            reset();
+    }
+
+    private static boolean incrementAt(long[] table, int index)
+    {
+        int slot = index >>> 4;
+        int offset = (index & 15) << 2;
+        long mask = 0xfL << offset;
+        if ((table[slot] & mask) == mask)
+            return false;
+        table[slot] += 1L << offset;
+        return true;
+    }
+
+    private synchronized void reset()
+    {
+        if (additions < sampleSize)
+            return;
+        long[] table = this.table;
+        for (int i = 0; i < table.length; i++)
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        additions /= 2;
+    }
+
+    /**
+     * @return the index of the counter of the hash in the given row, each long of the table holding 16 counters
+     */
+    private static int indexOf(long[] table, int hash, int row)
+    {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 32;
+        return (int) h & ((table.length << 4) - 1);
+    }
+
+    private static int spread(int hash)
+    {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.cassandra.db.TypeSizes;
+import org.apache.cassandra.dht.AbstractBounds;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.IVersionedSerializer;
+import org.apache.cassandra.io.util.DataOutputPlus;
+import org.apache.cassandra.net.MessageOut;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.utils.UUIDSerializer;
+
+/**
+ * Asks a replica for the partition keys of a table that are hottest in its row and key caches, restricted to the
+ * given token ranges. Sent by nodes warming their own caches once they have joined the ring.
+ */
+public class HotKeysRequest
+{
+    public static final IVersionedSerializer<HotKeysRequest> serializer = new HotKeysRequestSerializer();
+
+    public final UUID cfId;
+    public final Collection<Range<Token>> ranges;
+    public final int count;
+
+    public HotKeysRequest(UUID cfId, Collection<Range<Token>> ranges, int count)
+    {
+        this.cfId = cfId;
+        this.ranges = ranges;
+        this.count = count;
+    }
+
+    public MessageOut<HotKeysRequest> createMessage()
+    {
+        return new MessageOut<>(MessagingService.Verb.CACHE_HOT_KEYS, this, serializer);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("HotKeysRequest(%s, ranges=%s, count=%d)", cfId, ranges, count);
+    }
+
+    private static class HotKeysRequestSerializer implements IVersionedSerializer<HotKeysRequest>
+    {
+        public void serialize(HotKeysRequest request, DataOutputPlus out, int version) throws IOException
+        {
+            UUIDSerializer.serializer.serialize(request.cfId, out, version);
+            out.writeInt(request.ranges.size());
+            for (Range<Token> range : request.ranges)
+                AbstractBounds.serializer.serialize(range, out, version);
+            out.writeInt(request.count);
+        }
+
+        public HotKeysRequest deserialize(DataInput in, int version) throws IOException
+        {
+            UUID cfId = UUIDSerializer.serializer.deserialize(in, version);
+            int rangeCount = in.readInt();
+            List<Range<Token>> ranges = new ArrayList<>(rangeCount);
+            for (int i = 0; i < rangeCount; i++)
+                ranges.add((Range<Token>) AbstractBounds.serializer.deserialize(in, MessagingService.globalPartitioner(), version).toTokenBounds());
+            return new HotKeysRequest(cfId, ranges, in.readInt());
+        }
+
+        public long serializedSize(HotKeysRequest request, int version)
+        {
+            long size = UUIDSerializer.serializer.serializedSize(request.cfId, version);
+            size += TypeSizes.NATIVE.sizeof(request.ranges.size());
+            for (Range<Token> range : request.ranges)
+                size += AbstractBounds.serializer.serializedSize(range, version);
+            return size + TypeSizes.NATIVE.sizeof(request.count);
+        }
+    }
+}
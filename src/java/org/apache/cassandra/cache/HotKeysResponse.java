@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.cassandra.db.TypeSizes;
+import org.apache.cassandra.io.IVersionedSerializer;
+import org.apache.cassandra.io.util.DataOutputPlus;
+import org.apache.cassandra.net.MessageOut;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+/**
+ * Reply to a {@link HotKeysRequest}: partition keys, hottest first.
+ */
+public class HotKeysResponse
+{
+    public static final IVersionedSerializer<HotKeysResponse> serializer = new HotKeysResponseSerializer();
+
+    public final List<ByteBuffer> keys;
+
+    public HotKeysResponse(List<ByteBuffer> keys)
+    {
+        this.keys = keys;
+    }
+
+    public MessageOut<HotKeysResponse> createMessage()
+    {
+        return new MessageOut<>(MessagingService.Verb.INTERNAL_RESPONSE, this, serializer);
+    }
+
+    private static class HotKeysResponseSerializer implements IVersionedSerializer<HotKeysResponse>
+    {
+        public void serialize(HotKeysResponse response, DataOutputPlus out, int version) throws IOException
+        {
+            out.writeInt(response.keys.size());
+            for (ByteBuffer key : response.keys)
+                ByteBufferUtil.writeWithShortLength(key, out);
+        }
+
+        public HotKeysResponse deserialize(DataInput in, int version) throws IOException
+        {
+            int count = in.readInt();
+            List<ByteBuffer> keys = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+                keys.add(ByteBufferUtil.readWithShortLength(in));
+            return new HotKeysResponse(keys);
+        }
+
+        public long serializedSize(HotKeysResponse response, int version)
+        {
+            long size = TypeSizes.NATIVE.sizeof(response.keys.size());
+            for (ByteBuffer key : response.keys)
+                size += TypeSizes.NATIVE.sizeofWithShortLength(key);
+            return size;
+        }
+    }
+}
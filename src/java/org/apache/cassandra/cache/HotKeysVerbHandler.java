@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.config.Schema;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.net.IVerbHandler;
+import org.apache.cassandra.net.MessageIn;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.service.CacheService;
+import org.apache.cassandra.utils.Pair;
+
+public class HotKeysVerbHandler implements IVerbHandler<HotKeysRequest>
+{
+    private static final Logger logger = LoggerFactory.getLogger(HotKeysVerbHandler.class);
+
+    public void doVerb(MessageIn<HotKeysRequest> message, int id)
+    {
+        HotKeysRequest request = message.payload;
+        logger.debug("Received {} from {}", request, message.from);
+
+        List<ByteBuffer> keys = Collections.emptyList();
+        Pair<String, String> kscf = Schema.instance.getCF(request.cfId);
+        if (kscf != null)
+        {
+            ColumnFamilyStore cfs = Keyspace.open(kscf.left).getColumnFamilyStore(request.cfId);
+            keys = CacheService.instance.getHotKeys(cfs, request.ranges, request.count);
+        }
+        MessagingService.instance().sendReply(new HotKeysResponse(keys).createMessage(), id, message.from);
+    }
+}
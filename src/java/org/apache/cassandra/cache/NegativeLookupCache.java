@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import org.apache.cassandra.db.DecoratedKey;
+
+/**
+ * Remembers partitions of a table that were found not to exist, so that reading them again doesn't have to go
+ * through the bloom filter (and index, on false positives) of every sstable.
+ *
+ * Partitions are kept in a {@link DirectMappedTable}: a lookup first claims the slot of its partition, and only marks
+ * the partition absent if no write to it came in the meantime.
+ */
+public class NegativeLookupCache
+{
+    private final DirectMappedTable<Boolean> absent;
+
+    public NegativeLookupCache(int capacity)
+    {
+        absent = new DirectMappedTable<>(capacity);
+    }
+
+    /**
+     * @return true if the partition is known not to exist
+     */
+    public boolean isAbsent(DecoratedKey key)
+    {
+        return absent.get(key) != null;
+    }
+
+    /**
+     * Claims the slot of the partition, to be called before looking it up.
+     *
+     * @return the claim to pass to {@link #markAbsent} if the partition turns out not to exist, or null if the slot
+     * holds an entry for another partition that was looked up since the last claim
+     */
+    public Object beginLookup(DecoratedKey key)
+    {
+        return absent.claim(key);
+    }
+
+    public void markAbsent(Object claim)
+    {
+        absent.put(claim, Boolean.TRUE);
+    }
+
+    /**
+     * Must be called after the partition has been written to.
+     */
+    public void invalidate(DecoratedKey key)
+    {
+        absent.invalidate(key);
+    }
+
+    /**
+     * Forgets all partitions, e.g. because sstables that weren't written through the memtable were added.
+     */
+    public void clear()
+    {
+        absent.clear();
+    }
+}
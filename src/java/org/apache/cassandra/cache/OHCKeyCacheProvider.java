@@ -0,0 +1,309 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.UUID;
+
+import com.google.common.base.Predicates;
+import com.google.common.collect.Iterators;
+
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.Schema;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.RowIndexEntry;
+import org.apache.cassandra.db.TypeSizes;
+import org.apache.cassandra.io.sstable.format.SSTableFormat;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.io.util.DataOutputPlus;
+import org.apache.cassandra.utils.Pair;
+import org.caffinitas.ohc.OHCache;
+import org.caffinitas.ohc.OHCacheBuilder;
+
+/**
+ * Off-heap key cache. Keys refer to their sstable by table and generation rather than by descriptor, and entries
+ * without a promoted index are stored as a bare position, so most entries take a few dozen bytes outside the heap.
+ *
+ * Keys of sstables that no longer exist are skipped when iterating, as they cannot be turned back into descriptors.
+ *
+ * The key cache is typed with a raw {@code RowIndexEntry} throughout (see {@code CacheService}), which this has to match.
+ */
+@SuppressWarnings("rawtypes")
+public class OHCKeyCacheProvider implements CacheProvider<KeyCacheKey, RowIndexEntry>
+{
+    public ICache<KeyCacheKey, RowIndexEntry> create()
+    {
+        return create(DatabaseDescriptor.getKeyCacheSizeInMB() * 1024 * 1024);
+    }
+
+    public static ICache<KeyCacheKey, RowIndexEntry> create(long capacity)
+    {
+        OHCacheBuilder<KeyCacheKey, Value> builder = OHCacheBuilder.newBuilder();
+        builder.capacity(capacity)
+               .keySerializer(new KeySerializer())
+               .valueSerializer(new ValueSerializer())
+               .throwOOME(true);
+
+        return new OHCacheAdapter(builder.build());
+    }
+
+    private static class OHCacheAdapter implements ICache<KeyCacheKey, RowIndexEntry>
+    {
+        private final OHCache<KeyCacheKey, Value> ohCache;
+
+        public OHCacheAdapter(OHCache<KeyCacheKey, Value> ohCache)
+        {
+            this.ohCache = ohCache;
+        }
+
+        public long capacity()
+        {
+            return ohCache.capacity();
+        }
+
+        public void setCapacity(long capacity)
+        {
+            ohCache.setCapacity(capacity);
+        }
+
+        public void put(KeyCacheKey key, RowIndexEntry value)
+        {
+            ohCache.put(key, new Value(key, value));
+        }
+
+        public boolean putIfAbsent(KeyCacheKey key, RowIndexEntry value)
+        {
+            return ohCache.putIfAbsent(key, new Value(key, value));
+        }
+
+        public boolean replace(KeyCacheKey key, RowIndexEntry old, RowIndexEntry value)
+        {
+            return ohCache.addOrReplace(key, new Value(key, old), new Value(key, value));
+        }
+
+        public RowIndexEntry get(KeyCacheKey key)
+        {
+            Value value = ohCache.get(key);
+            return value == null ? null : value.entry;
+        }
+
+        public void remove(KeyCacheKey key)
+        {
+            ohCache.remove(key);
+        }
+
+        public int size()
+        {
+            return (int) ohCache.size();
+        }
+
+        public long weightedSize()
+        {
+            return ohCache.memUsed();
+        }
+
+        public void clear()
+        {
+            ohCache.clear();
+        }
+
+        public Iterator<KeyCacheKey> hotKeyIterator(int n)
+        {
+            return Iterators.filter(ohCache.hotKeyIterator(n), Predicates.notNull());
+        }
+
+        public Iterator<KeyCacheKey> keyIterator()
+        {
+            return Iterators.filter(ohCache.keyIterator(), Predicates.notNull());
+        }
+
+        public boolean containsKey(KeyCacheKey key)
+        {
+            return ohCache.containsKey(key);
+        }
+    }
+
+    /**
+     * A cached entry along with the table and sstable format it belongs to, which are needed to (de)serialize its
+     * promoted index but aren't part of the entry itself.
+     */
+    private static class Value
+    {
+        final UUID cfId;
+        final String cfName;
+        final SSTableFormat.Type formatType;
+        final RowIndexEntry<?> entry;
+
+        Value(KeyCacheKey key, RowIndexEntry<?> entry)
+        {
+            this(key.cfId, key.desc.cfname, key.desc.formatType, entry);
+        }
+
+        Value(UUID cfId, String cfName, SSTableFormat.Type formatType, RowIndexEntry<?> entry)
+        {
+            this.cfId = cfId;
+            this.cfName = cfName;
+            this.formatType = formatType;
+            this.entry = entry;
+        }
+
+        RowIndexEntry.IndexSerializer<?> serializer() throws IOException
+        {
+            CFMetaData metadata = getMetadata(cfId, cfName);
+            if (metadata == null)
+                throw new IOException(String.format("Unknown table %s (%s)", cfName, cfId));
+            return formatType.info.getIndexSerializer(metadata);
+        }
+    }
+
+    /**
+     * Index tables share the id of their base table, so keys carry the table name along with the id.
+     */
+    private static class KeySerializer implements org.caffinitas.ohc.CacheSerializer<KeyCacheKey>
+    {
+        public void serialize(KeyCacheKey key, DataOutput out) throws IOException
+        {
+            out.writeLong(key.cfId.getMostSignificantBits());
+            out.writeLong(key.cfId.getLeastSignificantBits());
+            out.writeUTF(key.desc.cfname);
+            out.writeInt(key.desc.generation);
+            out.writeInt(key.key.length);
+            out.write(key.key);
+        }
+
+        public KeyCacheKey deserialize(DataInput in) throws IOException
+        {
+            UUID cfId = new UUID(in.readLong(), in.readLong());
+            String cfName = in.readUTF();
+            int generation = in.readInt();
+            byte[] key = new byte[in.readInt()];
+            in.readFully(key);
+
+            ColumnFamilyStore cfs = getStore(cfId, cfName);
+            if (cfs == null)
+                return null;
+            SSTableReader sstable = cfs.getDataTracker().getView().getSSTable(generation);
+            return sstable == null ? null : new KeyCacheKey(cfId, sstable.descriptor, ByteBuffer.wrap(key));
+        }
+
+        public int serializedSize(KeyCacheKey key)
+        {
+            TypeSizes typeSizes = TypeSizes.NATIVE;
+            return 16 + typeSizes.sizeof(key.desc.cfname) + typeSizes.sizeof(key.desc.generation) + typeSizes.sizeof(key.key.length) + key.key.length;
+        }
+    }
+
+    /**
+     * Entries without a promoted index are reduced to their position. The others are written with the index
+     * serializer of their sstable format, prefixed by what is needed to find that serializer again.
+     */
+    private static class ValueSerializer implements org.caffinitas.ohc.CacheSerializer<Value>
+    {
+        public void serialize(Value value, DataOutput out) throws IOException
+        {
+            assert value.entry != null;
+            out.writeBoolean(value.entry.isIndexed());
+            if (!value.entry.isIndexed())
+            {
+                out.writeLong(value.entry.position);
+                return;
+            }
+
+            out.writeLong(value.cfId.getMostSignificantBits());
+            out.writeLong(value.cfId.getLeastSignificantBits());
+            out.writeUTF(value.cfName);
+            out.writeByte(value.formatType.ordinal());
+            serializeEntry(value.serializer(), value.entry, new OHCProvider.DataOutputPlusAdapter(out));
+        }
+
+        public Value deserialize(DataInput in) throws IOException
+        {
+            if (!in.readBoolean())
+                return new Value(null, null, null, new RowIndexEntry<>(in.readLong()));
+
+            UUID cfId = new UUID(in.readLong(), in.readLong());
+            String cfName = in.readUTF();
+            SSTableFormat.Type formatType = SSTableFormat.Type.values()[in.readByte()];
+            CFMetaData metadata = getMetadata(cfId, cfName);
+            // the table went away, the position alone is still a valid (if less helpful) entry
+            if (metadata == null)
+                return new Value(cfId, cfName, formatType, new RowIndexEntry<>(in.readLong()));
+            RowIndexEntry<?> entry = formatType.info.getIndexSerializer(metadata).deserialize(in, formatType.info.getLatestVersion());
+            return new Value(cfId, cfName, formatType, entry);
+        }
+
+        public int serializedSize(Value value)
+        {
+            TypeSizes typeSizes = TypeSizes.NATIVE;
+            int size = typeSizes.sizeof(true);
+            if (!value.entry.isIndexed())
+                return size + typeSizes.sizeof(value.entry.position);
+
+            try
+            {
+                return size + 16 + typeSizes.sizeof(value.cfName) + 1 + entrySerializedSize(value.serializer(), value.entry);
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    // the entry was created by an sstable of the format the serializer belongs to, so it holds the same index type
+    @SuppressWarnings("unchecked")
+    private static <T> void serializeEntry(RowIndexEntry.IndexSerializer<T> serializer, RowIndexEntry<?> entry, DataOutputPlus out) throws IOException
+    {
+        serializer.serialize((RowIndexEntry<T>) entry, out);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> int entrySerializedSize(RowIndexEntry.IndexSerializer<T> serializer, RowIndexEntry<?> entry)
+    {
+        return serializer.serializedSize((RowIndexEntry<T>) entry);
+    }
+
+    private static CFMetaData getMetadata(UUID cfId, String cfName)
+    {
+        CFMetaData metadata = Schema.instance.getCFMetaData(cfId);
+        if (metadata != null && metadata.cfName.equals(cfName))
+            return metadata;
+        ColumnFamilyStore cfs = getStore(cfId, cfName);
+        return cfs == null ? null : cfs.metadata;
+    }
+
+    private static ColumnFamilyStore getStore(UUID cfId, String cfName)
+    {
+        Pair<String, String> kscf = Schema.instance.getCF(cfId);
+        if (kscf == null)
+            return null;
+        ColumnFamilyStore base = Keyspace.open(kscf.left).getColumnFamilyStore(cfId);
+        for (ColumnFamilyStore cfs : base.concatWithIndexes())
+        {
+            if (cfs.name.equals(cfName))
+                return cfs;
+        }
+        return null;
+    }
+}
@@ -36,9 +36,14 @@ import org.caffinitas.ohc.OHCacheBuilder;
 public class OHCProvider implements CacheProvider<RowCacheKey, IRowCacheEntry>
 {
     public ICache<RowCacheKey, IRowCacheEntry> create()
+    {
+        return create(DatabaseDescriptor.getRowCacheSizeInMB() * 1024 * 1024);
+    }
+
+    public static ICache<RowCacheKey, IRowCacheEntry> create(long capacity)
     {
         OHCacheBuilder<RowCacheKey, IRowCacheEntry> builder = OHCacheBuilder.newBuilder();
-        builder.capacity(DatabaseDescriptor.getRowCacheSizeInMB() * 1024 * 1024)
+        builder.capacity(capacity)
                .keySerializer(new KeySerializer())
                .valueSerializer(new ValueSerializer())
                .throwOOME(true);
@@ -97,7 +102,7 @@ public class OHCProvider implements CacheProvider<RowCacheKey, IRowCacheEntry>
 
         public long weightedSize()
         {
-            return ohCache.size();
+            return ohCache.memUsed();
         }
 
         public void clear()
@@ -88,7 +88,7 @@ public final class CFMetaData
         }
     };
 
-    //主要用于读，见org.apache.cassandra.service.AbstractReadExecutor.getReadExecutor(ReadCommand, ConsistencyLevel)
+    //主要用于读，见org.apache.cassandra.service.AbstractReadExecutor.getReadExecutor(ReadCommand, ConsistencyLevel, List, ReadRepairDecision, ReadBatch)
     public static class SpeculativeRetry
     {
         public enum RetryType
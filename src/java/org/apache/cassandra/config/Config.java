@@ -19,7 +19,9 @@ package org.apache.cassandra.config;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
@@ -92,8 +94,15 @@ public class Config
     public volatile Double phi_convict_threshold = 8.0;
 
     public Integer concurrent_reads = 32;
+    public volatile int concurrent_reads_per_table = 0;
+    public Map<String, Integer> concurrent_reads_per_table_weights = new HashMap<>();
     public Integer concurrent_writes = 32;
     public Integer concurrent_counter_writes = 32;
+    public boolean counter_write_accumulation_enabled = false;
+    public boolean local_request_fast_path_enabled = false;
+    public volatile int max_concurrent_range_requests = 0;
+    public volatile int max_partitions_per_read_batch = 0;
+    public volatile int speculative_retries_per_second = 0;
 
     @Deprecated
     public Integer concurrent_replicates = null; //已不再使用，只在DatabaseDescriptor.applyConfig(Config)中用于警告
@@ -143,6 +152,7 @@ public class Config
     public volatile Integer batch_size_fail_threshold_in_kb = 50;
     public Integer concurrent_compactors;
     public volatile Integer compaction_throughput_mb_per_sec = 16;
+    public volatile Boolean compaction_checkpointing_enabled = true;
 
     public Integer max_streaming_retries = 3;
 
@@ -194,6 +204,7 @@ public class Config
     public boolean trickle_fsync = false;
     public int trickle_fsync_interval_in_kb = 10240;
 
+    public String key_cache_class_name = null;
     public Long key_cache_size_in_mb = null;
     public volatile int key_cache_save_period = 14400;
     public volatile int key_cache_keys_to_save = Integer.MAX_VALUE;
@@ -207,10 +218,26 @@ public class Config
     public volatile int counter_cache_save_period = 7200;
     public volatile int counter_cache_keys_to_save = Integer.MAX_VALUE;
 
+    public boolean cache_admission_filter_enabled = false;
+
+    public int negative_lookup_cache_entries_per_table = 0;
+
+    public int digest_cache_entries_per_table = 0;
+
+    public int result_set_cache_size_in_mb = 0;
+    public int result_set_cache_ttl_in_ms = 1000;
+
+    public int peer_cache_warming_keys_per_second = 0;
+    public int peer_cache_warming_keys_per_table = 10000;
+
     public String memory_allocator = NativeAllocator.class.getSimpleName();
 
     public Integer file_cache_size_in_mb;
 
+    public int buffer_pool_size_in_mb = 0;
+
+    public int sequential_read_prefetch_chunks = 0;
+
     public boolean inter_dc_tcp_nodelay = true;
 
     public MemtableAllocationType memtable_allocation_type = MemtableAllocationType.heap_buffers;
@@ -220,6 +247,9 @@ public class Config
     public volatile int tombstone_warn_threshold = 1000;
     public volatile int tombstone_failure_threshold = 100000;
 
+    public volatile int read_size_warn_threshold_in_kb = 0;
+    public volatile int read_size_failure_threshold_in_kb = 0;
+
     public volatile Long index_summary_capacity_in_mb;
     public volatile int index_summary_resize_interval_in_minutes = 60;
 
@@ -277,6 +277,19 @@ public class DatabaseDescriptor
             throw new ConfigurationException("concurrent_reads must be at least 2", false);
         }
 
+        if (conf.concurrent_reads_per_table < 0)
+        {
+            throw new ConfigurationException("concurrent_reads_per_table must be positive, or 0 to disable", false);
+        }
+
+        if (conf.concurrent_reads_per_table_weights == null)
+            conf.concurrent_reads_per_table_weights = new HashMap<>();
+        for (Map.Entry<String, Integer> weight : conf.concurrent_reads_per_table_weights.entrySet())
+        {
+            if (weight.getValue() == null || weight.getValue() < 1)
+                throw new ConfigurationException("concurrent_reads_per_table_weights must be at least 1, got " + weight.getValue() + " for " + weight.getKey(), false);
+        }
+
         if (conf.concurrent_writes != null && conf.concurrent_writes < 2)
         {
             throw new ConfigurationException("concurrent_writes must be at least 2", false);
@@ -880,6 +893,36 @@ public class DatabaseDescriptor
         conf.range_request_timeout_in_ms = timeOutInMillis;
     }
 
+    public static int getMaxConcurrentRangeRequests()
+    {
+        return conf.max_concurrent_range_requests;
+    }
+
+    public static void setMaxConcurrentRangeRequests(int maxConcurrentRangeRequests)
+    {
+        conf.max_concurrent_range_requests = maxConcurrentRangeRequests;
+    }
+
+    public static int getSpeculativeRetriesPerSecond()
+    {
+        return conf.speculative_retries_per_second;
+    }
+
+    public static void setSpeculativeRetriesPerSecond(int speculativeRetriesPerSecond)
+    {
+        conf.speculative_retries_per_second = speculativeRetriesPerSecond;
+    }
+
+    public static int getMaxPartitionsPerReadBatch()
+    {
+        return conf.max_partitions_per_read_batch;
+    }
+
+    public static void setMaxPartitionsPerReadBatch(int maxPartitionsPerReadBatch)
+    {
+        conf.max_partitions_per_read_batch = maxPartitionsPerReadBatch;
+    }
+
     public static long getWriteRpcTimeout()
     {
         return conf.write_request_timeout_in_ms;
@@ -931,6 +974,7 @@ public class DatabaseDescriptor
         switch (verb)
         {
             case READ:
+            case READ_BATCH:
                 return getReadRpcTimeout();
             case RANGE_SLICE:
                 return getRangeRpcTimeout();
@@ -977,6 +1021,28 @@ public class DatabaseDescriptor
         return conf.concurrent_reads;
     }
 
+    public static int getConcurrentReadsPerTable()
+    {
+        return conf.concurrent_reads_per_table;
+    }
+
+    public static void setConcurrentReadsPerTable(int concurrentReads)
+    {
+        conf.concurrent_reads_per_table = concurrentReads;
+    }
+
+    /**
+     * The weight of a table in concurrent_reads_per_table_weights, given for the table itself ("keyspace.table") or
+     * for its whole keyspace, or 1 if neither is given.
+     */
+    public static int getConcurrentReadsPerTableWeight(String keyspace, String table)
+    {
+        Integer weight = conf.concurrent_reads_per_table_weights.get(keyspace + '.' + table);
+        if (weight == null)
+            weight = conf.concurrent_reads_per_table_weights.get(keyspace);
+        return weight == null ? 1 : weight;
+    }
+
     public static int getConcurrentWriters()
     {
         return conf.concurrent_writes;
@@ -987,6 +1053,28 @@ public class DatabaseDescriptor
         return conf.concurrent_counter_writes;
     }
 
+    public static boolean isCounterWriteAccumulationEnabled()
+    {
+        return conf.counter_write_accumulation_enabled;
+    }
+
+    @VisibleForTesting
+    public static void setCounterWriteAccumulationEnabled(boolean enabled)
+    {
+        conf.counter_write_accumulation_enabled = enabled;
+    }
+
+    public static boolean isLocalRequestFastPathEnabled()
+    {
+        return conf.local_request_fast_path_enabled;
+    }
+
+    @VisibleForTesting
+    public static void setLocalRequestFastPathEnabled(boolean enabled)
+    {
+        conf.local_request_fast_path_enabled = enabled;
+    }
+
     public static int getFlushWriters()
     {
             return conf.memtable_flush_writers;
@@ -1007,6 +1095,16 @@ public class DatabaseDescriptor
         conf.compaction_throughput_mb_per_sec = value;
     }
 
+    public static boolean isCompactionCheckpointingEnabled()
+    {
+        return conf.compaction_checkpointing_enabled;
+    }
+
+    public static void setCompactionCheckpointingEnabled(boolean enabled)
+    {
+        conf.compaction_checkpointing_enabled = enabled;
+    }
+
     public static boolean getDisableSTCSInL0()
     {
         return Boolean.getBoolean("cassandra.disable_stcs_in_l0");
@@ -1062,6 +1160,26 @@ public class DatabaseDescriptor
         conf.tombstone_failure_threshold = threshold;
     }
 
+    public static int getReadSizeWarnThresholdInKB()
+    {
+        return conf.read_size_warn_threshold_in_kb;
+    }
+
+    public static void setReadSizeWarnThresholdInKB(int threshold)
+    {
+        conf.read_size_warn_threshold_in_kb = threshold;
+    }
+
+    public static int getReadSizeFailureThresholdInKB()
+    {
+        return conf.read_size_failure_threshold_in_kb;
+    }
+
+    public static void setReadSizeFailureThresholdInKB(int threshold)
+    {
+        conf.read_size_failure_threshold_in_kb = threshold;
+    }
+
     /**
      * size of commitlog segments to allocate
      */
@@ -1315,6 +1433,12 @@ public class DatabaseDescriptor
         return new File(conf.saved_caches_directory, builder.toString());
     }
 
+    public static File getSerializedCachePath(String ksName, String cfName, UUID cfId, CacheService.CacheType cacheType, String version, int segment)
+    {
+        File path = getSerializedCachePath(ksName, cfName, cfId, cacheType, null);
+        return new File(path.getParentFile(), path.getName() + '-' + version + '-' + segment + ".db");
+    }
+
     public static int getDynamicUpdateInterval()
     {
         return conf.dynamic_snitch_update_interval_in_ms;
@@ -1388,6 +1512,16 @@ public class DatabaseDescriptor
         return conf.file_cache_size_in_mb;
     }
 
+    public static int getBufferPoolSizeInMB()
+    {
+        return conf.buffer_pool_size_in_mb;
+    }
+
+    public static int getSequentialReadPrefetchChunks()
+    {
+        return conf.sequential_read_prefetch_chunks;
+    }
+
     public static long getTotalCommitlogSpaceInMB()
     {
         return conf.commitlog_total_space_in_mb;
@@ -1438,6 +1572,11 @@ public class DatabaseDescriptor
         conf.key_cache_keys_to_save = keyCacheKeysToSave;
     }
 
+    public static String getKeyCacheClassName()
+    {
+        return conf.key_cache_class_name;
+    }
+
     public static String getRowCacheClassName()
     {
         return conf.row_cache_class_name;
@@ -1488,6 +1627,41 @@ public class DatabaseDescriptor
         return conf.counter_cache_keys_to_save;
     }
 
+    public static boolean isCacheAdmissionFilterEnabled()
+    {
+        return conf.cache_admission_filter_enabled;
+    }
+
+    public static int getNegativeLookupCacheEntriesPerTable()
+    {
+        return conf.negative_lookup_cache_entries_per_table;
+    }
+
+    public static int getDigestCacheEntriesPerTable()
+    {
+        return conf.digest_cache_entries_per_table;
+    }
+
+    public static int getResultSetCacheSizeInMB()
+    {
+        return conf.result_set_cache_size_in_mb;
+    }
+
+    public static int getResultSetCacheTTLInMs()
+    {
+        return conf.result_set_cache_ttl_in_ms;
+    }
+
+    public static int getPeerCacheWarmingKeysPerSecond()
+    {
+        return conf.peer_cache_warming_keys_per_second;
+    }
+
+    public static int getPeerCacheWarmingKeysPerTable()
+    {
+        return conf.peer_cache_warming_keys_per_table;
+    }
+
     public static void setCounterCacheKeysToSave(int counterCacheKeysToSave)
     {
         conf.counter_cache_keys_to_save = counterCacheKeysToSave;
@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -37,6 +38,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.concurrent.ScheduledExecutors;
+import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.cql3.functions.*;
 
 import org.apache.cassandra.cql3.statements.*;
@@ -443,6 +445,8 @@ public class QueryProcessor implements QueryHandler
         }
 
         metrics.preparedStatementsExecuted.inc();
+        if (ResultSetCache.instance.accepts(statement, options))
+            return ResultSetCache.instance.process((SelectStatement) statement, queryState, options);
         return processStatement(statement, queryState, options);
     }
 
@@ -599,6 +603,10 @@ public class QueryProcessor implements QueryHandler
             logger.info("Column definitions for {}.{} changed, invalidating related prepared statements", ksName, cfName);
             if (columnsDidChange)
                 removeInvalidPreparedStatements(ksName, cfName);
+
+            UUID cfId = Schema.instance.getId(ksName, cfName);
+            if (cfId != null)
+                ResultSetCache.instance.invalidate(cfId);
         }
 
         public void onDropKeyspace(String ksName)
@@ -0,0 +1,382 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cql3;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.EntryWeigher;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.cql3.statements.SelectStatement;
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.apache.cassandra.db.IMutation;
+import org.apache.cassandra.db.SystemKeyspace;
+import org.apache.cassandra.exceptions.RequestExecutionException;
+import org.apache.cassandra.exceptions.RequestValidationException;
+import org.apache.cassandra.service.ClientState;
+import org.apache.cassandra.service.QueryState;
+import org.apache.cassandra.tracing.Tracing;
+import org.apache.cassandra.transport.messages.ResultMessage;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+/**
+ * Coordinator-side cache of the results of prepared SELECT statements executed at ONE or LOCAL_ONE against tables
+ * whose caching options have 'results' enabled.
+ *
+ * Results are keyed by prepared statement, bound values, paging state and page size. Rather than tracking which
+ * entries each write affects, every table gets version counters: one bumped by any write to the table, and a striped
+ * set bumped by writes to the partitions hashing to each stripe. An entry records the counters it depends on (the
+ * stripes of the partitions it selects, or the table-wide one for range and index queries) before the query is run,
+ * and is only served while they are unchanged, so a write racing with the query that filled it leaves it stale.
+ *
+ * Only the writes this node coordinates or applies as a replica are seen: results can be up to
+ * result_set_cache_ttl_in_ms behind writes made elsewhere, which is the same staleness ONE already allows for.
+ * Truncation and schema changes drop all the results of a table.
+ */
+public class ResultSetCache
+{
+    private static final int STRIPES = 1024;
+    // rough per-entry and per-value overhead, in bytes
+    private static final int ENTRY_OVERHEAD = 256;
+    private static final int VALUE_OVERHEAD = 16;
+
+    public static final ResultSetCache instance = new ResultSetCache(DatabaseDescriptor.getResultSetCacheSizeInMB() * 1024L * 1024L,
+                                                                     DatabaseDescriptor.getResultSetCacheTTLInMs());
+
+    private final long ttlNanos;
+    private final ConcurrentLinkedHashMap<Key, Entry> entries;
+    private final ConcurrentMap<UUID, Versions> versions = new ConcurrentHashMap<>();
+
+    @VisibleForTesting
+    ResultSetCache(long capacity, long ttlMillis)
+    {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.entries = new ConcurrentLinkedHashMap.Builder<Key, Entry>()
+                       .maximumWeightedCapacity(Math.max(capacity, 0))
+                       .weigher(new EntryWeigher<Key, Entry>()
+                       {
+                           public int weightOf(Key key, Entry entry)
+                           {
+                               return key.weight() + entry.weight;
+                           }
+                       })
+                       .build();
+    }
+
+    public boolean isEnabled()
+    {
+        return entries.capacity() > 0;
+    }
+
+    public long getCapacity()
+    {
+        return entries.capacity();
+    }
+
+    /**
+     * @param capacity in bytes, 0 disables the cache and drops what it holds
+     */
+    public void setCapacity(long capacity)
+    {
+        entries.setCapacity(Math.max(capacity, 0));
+        if (capacity <= 0)
+            versions.clear();
+    }
+
+    /**
+     * @return whether the results of that execution may be served from the cache
+     */
+    public boolean accepts(CQLStatement statement, QueryOptions options)
+    {
+        if (!isEnabled() || !(statement instanceof SelectStatement))
+            return false;
+
+        SelectStatement select = (SelectStatement) statement;
+        ConsistencyLevel cl = options.getConsistency();
+        return select.cfm.getCaching().cacheResults
+               && (cl == ConsistencyLevel.ONE || cl == ConsistencyLevel.LOCAL_ONE)
+               && !select.usesFunction(SystemKeyspace.NAME, "now")
+               && !select.usesFunction(SystemKeyspace.NAME, "uuid");
+    }
+
+    /**
+     * Executes a statement {@link #accepts} accepted, from the cache if possible.
+     */
+    public ResultMessage process(SelectStatement statement, QueryState queryState, QueryOptions options)
+    throws RequestExecutionException, RequestValidationException
+    {
+        ClientState clientState = queryState.getClientState();
+        statement.checkAccess(clientState);
+        statement.validate(clientState);
+
+        Key key = new Key(statement, options);
+        Entry entry = entries.get(key);
+        if (entry != null)
+        {
+            if (entry.isValid(versions.get(statement.cfm.cfId)))
+            {
+                QueryProcessor.metrics.resultSetCacheHits.inc();
+                Tracing.trace("Result served from the coordinator result set cache");
+                return new ResultMessage.Rows(entry.copy());
+            }
+            entries.remove(key, entry);
+        }
+        QueryProcessor.metrics.resultSetCacheMisses.inc();
+
+        // the versions are read before running the query, see the class comment
+        Entry pending = newEntry(statement, options);
+        ResultMessage.Rows rows = statement.execute(queryState, options);
+        entries.put(key, pending.complete(rows.result));
+        return rows;
+    }
+
+    private Entry newEntry(SelectStatement statement, QueryOptions options) throws RequestValidationException
+    {
+        Versions tableVersions = versionsFor(statement.cfm.cfId);
+        Collection<ByteBuffer> partitionKeys = statement.getPartitionKeys(options);
+        if (partitionKeys == null)
+            return new Entry(tableVersions, tableVersions.writes.get(), null, null, System.nanoTime() + ttlNanos);
+
+        int[] stripes = new int[partitionKeys.size()];
+        long[] stripeVersions = new long[stripes.length];
+        int i = 0;
+        for (ByteBuffer partitionKey : partitionKeys)
+        {
+            stripes[i] = stripe(partitionKey);
+            stripeVersions[i] = tableVersions.partitions.get(stripes[i]);
+            i++;
+        }
+        return new Entry(tableVersions, 0, stripes, stripeVersions, System.nanoTime() + ttlNanos);
+    }
+
+    private Versions versionsFor(UUID cfId)
+    {
+        Versions tableVersions = versions.get(cfId);
+        if (tableVersions == null)
+        {
+            Versions created = new Versions();
+            tableVersions = versions.putIfAbsent(cfId, created);
+            if (tableVersions == null)
+                tableVersions = created;
+        }
+        return tableVersions;
+    }
+
+    /**
+     * Records a write to a partition of a table, making the results that depend on it stale.
+     */
+    public void invalidate(UUID cfId, ByteBuffer partitionKey)
+    {
+        if (!isEnabled())
+            return;
+
+        Versions tableVersions = versions.get(cfId);
+        if (tableVersions == null)
+            return;
+
+        tableVersions.writes.incrementAndGet();
+        tableVersions.partitions.incrementAndGet(stripe(partitionKey));
+    }
+
+    public void invalidate(IMutation mutation)
+    {
+        if (!isEnabled())
+            return;
+
+        for (UUID cfId : mutation.getColumnFamilyIds())
+            invalidate(cfId, mutation.key());
+    }
+
+    /**
+     * Drops all the results of a table.
+     */
+    public void invalidate(UUID cfId)
+    {
+        if (isEnabled())
+            versions.remove(cfId);
+    }
+
+    @VisibleForTesting
+    int size()
+    {
+        return entries.size();
+    }
+
+    private static int stripe(ByteBuffer partitionKey)
+    {
+        return (partitionKey.hashCode() & Integer.MAX_VALUE) % STRIPES;
+    }
+
+    private static class Versions
+    {
+        final AtomicLong writes = new AtomicLong();
+        final AtomicLongArray partitions = new AtomicLongArray(STRIPES);
+    }
+
+    private static class Key
+    {
+        // prepared statements are looked up by id before they get here, the instance stands for the id
+        final SelectStatement statement;
+        final List<ByteBuffer> values;
+        final ByteBuffer pagingState;
+        final int pageSize;
+        final ConsistencyLevel consistency;
+        final int protocolVersion;
+        final int hashCode;
+
+        Key(SelectStatement statement, QueryOptions options)
+        {
+            this.statement = statement;
+            this.values = options.getValues();
+            this.pagingState = options.getPagingState() == null ? null : options.getPagingState().serialize();
+            this.pageSize = options.getPageSize();
+            this.consistency = options.getConsistency();
+            this.protocolVersion = options.getProtocolVersion();
+
+            int result = System.identityHashCode(statement);
+            result = 31 * result + values.hashCode();
+            result = 31 * result + (pagingState == null ? 0 : pagingState.hashCode());
+            result = 31 * result + pageSize;
+            result = 31 * result + consistency.hashCode();
+            result = 31 * result + protocolVersion;
+            this.hashCode = result;
+        }
+
+        int weight()
+        {
+            int weight = pagingState == null ? 0 : pagingState.remaining();
+            for (ByteBuffer value : values)
+                weight += VALUE_OVERHEAD + (value == null ? 0 : value.remaining());
+            return weight;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            Key that = (Key) o;
+            return statement == that.statement
+                   && pageSize == that.pageSize
+                   && protocolVersion == that.protocolVersion
+                   && consistency == that.consistency
+                   && values.equals(that.values)
+                   && (pagingState == null ? that.pagingState == null : pagingState.equals(that.pagingState));
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+    }
+
+    private static class Entry
+    {
+        final Versions tableVersions;
+        // for range and index queries
+        final long writes;
+        // for queries on a set of partitions
+        final int[] stripes;
+        final long[] stripeVersions;
+        final long expiresAtNanos;
+
+        final ResultSet result;
+        final int weight;
+
+        Entry(Versions tableVersions, long writes, int[] stripes, long[] stripeVersions, long expiresAtNanos)
+        {
+            this(tableVersions, writes, stripes, stripeVersions, expiresAtNanos, null);
+        }
+
+        private Entry(Versions tableVersions, long writes, int[] stripes, long[] stripeVersions, long expiresAtNanos, ResultSet result)
+        {
+            this.tableVersions = tableVersions;
+            this.writes = writes;
+            this.stripes = stripes;
+            this.stripeVersions = stripeVersions;
+            this.expiresAtNanos = expiresAtNanos;
+            this.result = result;
+            this.weight = result == null ? 0 : weigh(result);
+        }
+
+        /**
+         * Values are copied, as they may point to memtable memory that will be reclaimed.
+         */
+        Entry complete(ResultSet result)
+        {
+            List<List<ByteBuffer>> rows = new ArrayList<>(result.rows.size());
+            for (List<ByteBuffer> row : result.rows)
+            {
+                List<ByteBuffer> copy = new ArrayList<>(row.size());
+                for (ByteBuffer value : row)
+                    copy.add(value == null ? null : ByteBufferUtil.clone(value));
+                rows.add(copy);
+            }
+            return new Entry(tableVersions, writes, stripes, stripeVersions, expiresAtNanos, new ResultSet(result.metadata.copy(), rows));
+        }
+
+        boolean isValid(Versions current)
+        {
+            if (current != tableVersions || System.nanoTime() - expiresAtNanos > 0)
+                return false;
+
+            if (stripes == null)
+                return current.writes.get() == writes;
+
+            for (int i = 0; i < stripes.length; i++)
+            {
+                if (current.partitions.get(stripes[i]) != stripeVersions[i])
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * Responses carry their own state (stream id, tracing, paging flags), so each hit gets its own result set.
+         * The rows themselves are never modified once built and are shared.
+         */
+        ResultSet copy()
+        {
+            return new ResultSet(result.metadata.copy(), result.rows);
+        }
+
+        private static int weigh(ResultSet result)
+        {
+            int weight = ENTRY_OVERHEAD;
+            for (List<ByteBuffer> row : result.rows)
+            {
+                for (ByteBuffer value : row)
+                    weight += VALUE_OVERHEAD + (value == null ? 0 : value.remaining());
+            }
+            return weight;
+        }
+    }
+}
@@ -215,19 +215,42 @@ public class SelectStatement implements CQLStatement
 
     private ResultMessage.Rows execute(Pageable command, QueryOptions options, int limit, long now, QueryState state) throws RequestValidationException, RequestExecutionException
     {
-        List<Row> rows;
-        if (command == null)
+        if (command instanceof RangeSliceCommand)
+            return processRangeSlice((RangeSliceCommand)command, options, limit, now);
+
+        List<Row> rows = command == null
+                       ? Collections.<Row>emptyList()
+                       : StorageProxy.read(((Pageable.ReadCommands)command).commands, options.getConsistency(), state.getClientState());
+
+        return processResults(rows, options, limit, now);
+    }
+
+    /**
+     * Turns the rows of a range query into CQL rows as they come back from the replicas, rather than once they
+     * all have: the coordinator then only ever holds the CQL rows and the replies of the sub-ranges in flight.
+     */
+    private ResultMessage.Rows processRangeSlice(RangeSliceCommand command, QueryOptions options, int limit, long now)
+    throws RequestValidationException, RequestExecutionException
+    {
+        Selection.ResultSetBuilder result = selection.resultSetBuilder(now);
+        StorageProxy.RangeSliceIterator rows = StorageProxy.getRangeSliceIterator(command, options.getConsistency());
+        try
         {
-            rows = Collections.<Row>emptyList();
+            while (rows.hasNext())
+            {
+                Row row = rows.next();
+                // Not columns match the query, skip
+                if (row.cf == null)
+                    continue;
+
+                processColumnFamily(row.key.getKey(), row.cf, options, now, result);
+            }
         }
-        else
+        finally
         {
-            rows = command instanceof Pageable.ReadCommands
-                 ? StorageProxy.read(((Pageable.ReadCommands)command).commands, options.getConsistency(), state.getClientState())
-                 : StorageProxy.getRangeSlice((RangeSliceCommand)command, options.getConsistency());
+            rows.close();
         }
-
-        return processResults(rows, options, limit, now);
+        return new ResultMessage.Rows(buildResultSet(result, options, limit));
     }
 
     private ResultMessage.Rows pageAggregateQuery(QueryPager pager, QueryOptions options, int pageSize, long now)
@@ -283,6 +306,17 @@ public class SelectStatement implements CQLStatement
         return process(rows, options, getLimit(options), System.currentTimeMillis());
     }
 
+    /**
+     * @return the partition keys this statement selects, or null if it selects a range of partitions or goes through
+     * a secondary index
+     */
+    public Collection<ByteBuffer> getPartitionKeys(QueryOptions options) throws InvalidRequestException
+    {
+        if (restrictions.isKeyRange() || restrictions.usesSecondaryIndexing())
+            return null;
+        return restrictions.getPartitionKeys(options);
+    }
+
     public String keyspace()
     {
         return cfm.ksName;
@@ -330,7 +364,23 @@ public class SelectStatement implements CQLStatement
         AbstractBounds<RowPosition> keyBounds = restrictions.getPartitionKeyBounds(options);
         return keyBounds == null
              ? null
-             : new RangeSliceCommand(keyspace(), columnFamily(), now,  filter, keyBounds, expressions, limit, !parameters.isDistinct, false);
+             : new RangeSliceCommand(keyspace(), columnFamily(), now,  filter, keyBounds, expressions, limit, !parameters.isDistinct, false, !selectsCellValues());
+    }
+
+    /**
+     * Whether the selection needs the values of the cells read, rather than only the primary key of the rows they
+     * belong to (as for a count(*), or a selection of primary key columns only). When it doesn't, range queries let
+     * replicas leave the values out of their replies, which is most of what a count(*) over a table would transfer.
+     */
+    private boolean selectsCellValues()
+    {
+        if (cfm.isCounter())
+            return true;
+
+        for (ColumnDefinition def : selection.getColumns())
+            if (!def.isPrimaryKeyColumn())
+                return true;
+        return false;
     }
 
     private ColumnSlice makeStaticSlice()
@@ -591,7 +641,11 @@ public class SelectStatement implements CQLStatement
 
             processColumnFamily(row.key.getKey(), row.cf, options, now, result);
         }
+        return buildResultSet(result, options, limit);
+    }
 
+    private ResultSet buildResultSet(Selection.ResultSetBuilder result, QueryOptions options, int limit) throws InvalidRequestException
+    {
         ResultSet cqlRows = result.build(options.getProtocolVersion());
 
         orderResults(cqlRows);
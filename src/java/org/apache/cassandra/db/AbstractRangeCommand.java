@@ -17,6 +17,7 @@
  */
 package org.apache.cassandra.db;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.cassandra.config.DatabaseDescriptor;
@@ -24,6 +25,7 @@ import org.apache.cassandra.db.filter.*;
 import org.apache.cassandra.dht.AbstractBounds;
 import org.apache.cassandra.net.MessageOut;
 import org.apache.cassandra.service.IReadCommand;
+import org.apache.cassandra.utils.ByteBufferUtil;
 
 //它的子类都是查一个rowKey范围的，名字都含有Range
 //而ReadCommand的子类都是只查一个rowKey，
@@ -38,7 +40,25 @@ public abstract class AbstractRangeCommand implements IReadCommand
     public final IDiskAtomFilter predicate;
     public final List<IndexExpression> rowFilter;
 
+    /**
+     * Message parameter asking the replica to leave the cell values out of its reply. Not part of the serialized
+     * command, so that nodes which don't know about it simply ignore it and reply with the values.
+     */
+    public static final String OMIT_CELL_VALUES_PARAM = "OMIT_VAL";
+
+    /**
+     * Whether replicas may leave the values out of the cells they return, because the query only needs to know which
+     * rows exist (a count(*), or a selection of primary key columns only). Such results are never used to repair replicas.
+     * Sent as {@link #OMIT_CELL_VALUES_PARAM}, and thus only set on the coordinator.
+     */
+    public final boolean omitCellValues;
+
     public AbstractRangeCommand(String keyspace, String columnFamily, long timestamp, AbstractBounds<RowPosition> keyRange, IDiskAtomFilter predicate, List<IndexExpression> rowFilter)
+    {
+        this(keyspace, columnFamily, timestamp, keyRange, predicate, rowFilter, false);
+    }
+
+    public AbstractRangeCommand(String keyspace, String columnFamily, long timestamp, AbstractBounds<RowPosition> keyRange, IDiskAtomFilter predicate, List<IndexExpression> rowFilter, boolean omitCellValues)
     {
         this.keyspace = keyspace;
         this.columnFamily = columnFamily;
@@ -46,6 +66,7 @@ public abstract class AbstractRangeCommand implements IReadCommand
         this.keyRange = keyRange;
         this.predicate = predicate;
         this.rowFilter = rowFilter;
+        this.omitCellValues = omitCellValues;
     }
 
     public String getKeyspace()
@@ -74,6 +95,53 @@ public abstract class AbstractRangeCommand implements IReadCommand
 
     public abstract List<Row> executeLocally();
 
+    /**
+     * Strips the values of the cells of rows read locally if the command allows it. The rows have already been
+     * filtered by rowFilter at that point, so this only leaves out what the coordinator doesn't look at.
+     */
+    protected List<Row> maybeOmitCellValues(ColumnFamilyStore cfs, List<Row> rows)
+    {
+        return omitCellValues ? withoutCellValues(cfs, rows) : rows;
+    }
+
+    /**
+     * Strips the values of the cells of rows read locally for a replica asked to by {@link #OMIT_CELL_VALUES_PARAM}.
+     */
+    public List<Row> withoutCellValues(List<Row> rows)
+    {
+        return withoutCellValues(Keyspace.open(keyspace).getColumnFamilyStore(columnFamily), rows);
+    }
+
+    private static List<Row> withoutCellValues(ColumnFamilyStore cfs, List<Row> rows)
+    {
+        // counter cells are merged by value, so we can't do without it
+        if (cfs.metadata.isCounter())
+            return rows;
+
+        List<Row> stripped = new ArrayList<>(rows.size());
+        for (Row row : rows)
+            stripped.add(row.cf == null ? row : new Row(row.key, withoutCellValues(row.cf)));
+        return stripped;
+    }
+
+    private static ColumnFamily withoutCellValues(ColumnFamily cf)
+    {
+        ColumnFamily stripped = cf.cloneMeShallow();
+        for (Cell cell : cf)
+            stripped.addColumn(withoutValue(cell));
+        return stripped;
+    }
+
+    private static Cell withoutValue(Cell cell)
+    {
+        // the value of a tombstone is its local deletion time
+        if (cell instanceof DeletedCell || !cell.value().hasRemaining())
+            return cell;
+        if (cell instanceof ExpiringCell)
+            return new BufferExpiringCell(cell.name(), ByteBufferUtil.EMPTY_BYTE_BUFFER, cell.timestamp(), ((ExpiringCell) cell).getTimeToLive(), cell.getLocalDeletionTime());
+        return new BufferCell(cell.name(), ByteBufferUtil.EMPTY_BYTE_BUFFER, cell.timestamp());
+    }
+
     public long getTimeout()
     {
         return DatabaseDescriptor.getRangeRpcTimeout();
@@ -30,10 +30,16 @@ import com.google.common.collect.Iterators;
 
 import org.apache.cassandra.concurrent.Stage;
 import org.apache.cassandra.concurrent.StageManager;
+import org.apache.cassandra.db.columniterator.IdentityQueryFilter;
 import org.apache.cassandra.db.columniterator.OnDiskAtomIterator;
+import org.apache.cassandra.db.composites.CBuilder;
 import org.apache.cassandra.db.composites.CellName;
+import org.apache.cassandra.db.composites.Composite;
+import org.apache.cassandra.db.composites.Composites;
+import org.apache.cassandra.db.filter.ColumnSlice;
 import org.apache.cassandra.db.filter.NamesQueryFilter;
 import org.apache.cassandra.db.filter.QueryFilter;
+import org.apache.cassandra.db.filter.SliceQueryFilter;
 import org.apache.cassandra.db.marshal.CounterColumnType;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.util.FileUtils;
@@ -49,6 +55,7 @@ public class CollationController
     private final int gcBefore;
 
     private int sstablesIterated = 0;
+    private boolean partitionAbsent = false;
 
     public CollationController(ColumnFamilyStore cfs, QueryFilter filter, int gcBefore)
     {
@@ -75,6 +82,9 @@ public class CollationController
         final ColumnFamily container = ArrayBackedSortedColumns.factory.create(cfs.metadata, filter.filter.isReversed());
         List<OnDiskAtomIterator> iterators = new ArrayList<>();
         boolean isEmpty = true;
+        // whether we found the partition, and whether we looked everywhere it could be
+        boolean found = false;
+        boolean complete = true;
         Tracing.trace("Acquiring sstable references");
         ColumnFamilyStore.ViewFragment view = cfs.select(cfs.viewFilter(filter.key));
 
@@ -89,6 +99,7 @@ public class CollationController
                 {
                     filter.delete(container.deletionInfo(), cf);
                     isEmpty = false;
+                    found = true;
                     Iterator<Cell> iter = filter.getIterator(cf);
                     while (iter.hasNext())
                     {
@@ -117,12 +128,18 @@ public class CollationController
                 // than the most recent update to this sstable, we're done, since the rest of the sstables
                 // will also be older
                 if (sstable.getMaxTimestamp() < mostRecentRowTombstone)
+                {
+                    complete = false;
                     break;
+                }
 
                 long currentMaxTs = sstable.getMaxTimestamp();
                 reduceNameFilter(reducedFilter, container, currentMaxTs);
                 if (((NamesQueryFilter) reducedFilter.filter).columns.isEmpty())
+                {
+                    complete = false;
                     break;
+                }
 
                 Tracing.trace("Merging data from sstable {}", sstable.descriptor.generation);
                 sstable.incrementReadCount();
@@ -131,6 +148,7 @@ public class CollationController
                 isEmpty = false;
                 if (iter.getColumnFamily() != null)
                 {
+                    found = true;
                     container.delete(iter.getColumnFamily());
                     sstablesIterated++;
                     while (iter.hasNext())
@@ -139,6 +157,8 @@ public class CollationController
                 mostRecentRowTombstone = container.deletionInfo().getTopLevelDeletion().markedForDeleteAt;
             }
 
+            partitionAbsent = !found && complete;
+
             // we need to distinguish between "there is no data at all for this row" (BF will let us rebuild that efficiently)
             // and "there used to be data, but it's gone now" (we should cache the empty CF so we don't need to rebuild that slower)
             if (isEmpty)
@@ -207,6 +227,16 @@ public class CollationController
         List<Iterator<? extends OnDiskAtom>> iterators = new ArrayList<>(Iterables.size(view.memtables) + view.sstables.size());
         ColumnFamily returnCF = ArrayBackedSortedColumns.factory.create(cfs.metadata, filter.filter.isReversed());
         DeletionInfo returnDeletionInfo = returnCF.deletionInfo();
+        // whether we found the partition, and whether we looked everywhere it could be
+        boolean found = false;
+        boolean complete = true;
+        // whether we may stop reading older sstables once the newer data holds enough rows, and the oldest timestamp
+        // of the sstables we've decided to read so far; that of the memtable partitions is only computed if needed, as
+        // it takes going through all of their cells
+        boolean mayStopEarly = mayStopEarly();
+        long includedMinTimestamp = Long.MAX_VALUE;
+        List<ColumnFamily> memtableData = mayStopEarly ? new ArrayList<ColumnFamily>(2) : null;
+        long memtableMinTimestamp = Long.MIN_VALUE;
         try
         {
             Tracing.trace("Merging memtable tombstones");
@@ -215,7 +245,10 @@ public class CollationController
                 final ColumnFamily cf = memtable.getColumnFamily(filter.key);
                 if (cf != null)
                 {
+                    found = true;
                     filter.delete(returnDeletionInfo, cf);
+                    if (mayStopEarly)
+                        memtableData.add(cf);
                     Iterator<Cell> iter = filter.getIterator(cf);
                     if (copyOnHeap)
                     {
@@ -248,6 +281,9 @@ public class CollationController
             long mostRecentRowTombstone = Long.MIN_VALUE;
             long minTimestamp = Long.MAX_VALUE;
             int nonIntersectingSSTables = 0;
+            // once set, only the sstables intersecting the slice up to (and including) that row can change the result
+            ColumnSlice remainingSlice = null;
+            int sstablesPastLastRow = 0;
 
             for (SSTableReader sstable : view.sstables)
             {
@@ -255,11 +291,45 @@ public class CollationController
                 // if we've already seen a row tombstone with a timestamp greater
                 // than the most recent update to this sstable, we can skip it
                 if (sstable.getMaxTimestamp() < mostRecentRowTombstone)
+                {
+                    complete = false;
                     break;
+                }
 
-                if (!filter.shouldInclude(sstable))
+                /*
+                 * If everything left is older than all the data we've read so far, that older data can neither shadow
+                 * nor replace any cell we have. So if what we have already holds enough rows, the remaining sstables
+                 * can only matter up to the last of those rows. This is typically the case for time series read
+                 * "latest first", where the newest sstables hold the newest rows. We only try this once, since it
+                 * requires merging what we've read so far.
+                 */
+                if (mayStopEarly
+                    && (includedMinTimestamp != Long.MAX_VALUE || !memtableData.isEmpty())
+                    && sstable.getMaxTimestamp() < includedMinTimestamp)
                 {
-                    nonIntersectingSSTables++;
+                    if (memtableMinTimestamp == Long.MIN_VALUE)
+                        memtableMinTimestamp = minTimestamp(memtableData);
+                    if (sstable.getMaxTimestamp() < memtableMinTimestamp)
+                    {
+                        mayStopEarly = false;
+                        returnCF = collateEarly(returnCF, iterators);
+                        Composite lastRow = lastRowCollected(returnCF);
+                        if (lastRow != null)
+                            remainingSlice = new ColumnSlice(Composites.EMPTY, lastRow);
+                    }
+                }
+
+                boolean pastLastRow = remainingSlice != null
+                                   && !remainingSlice.intersects(sstable.getSSTableMetadata().minColumnNames,
+                                                                 sstable.getSSTableMetadata().maxColumnNames,
+                                                                 cfs.metadata.comparator,
+                                                                 filter.filter.isReversed());
+                if (pastLastRow || !filter.shouldInclude(sstable))
+                {
+                    if (pastLastRow)
+                        sstablesPastLastRow++;
+                    else
+                        nonIntersectingSSTables++;
                     // sstable contains no tombstone if maxLocalDeletionTime == Integer.MAX_VALUE, so we can safely skip those entirely
                     if (sstable.getSSTableMetadata().maxLocalDeletionTime != Integer.MAX_VALUE)
                     {
@@ -267,6 +337,10 @@ public class CollationController
                             skippedSSTables = new ArrayList<>();
                         skippedSSTables.add(sstable);
                     }
+                    else
+                    {
+                        complete = false;
+                    }
                     continue;
                 }
 
@@ -275,6 +349,8 @@ public class CollationController
                 iterators.add(iter);
                 if (iter.getColumnFamily() != null)
                 {
+                    found = true;
+                    includedMinTimestamp = Math.min(includedMinTimestamp, sstable.getMinTimestamp());
                     ColumnFamily cf = iter.getColumnFamily();
                     if (cf.isMarkedForDelete())
                         mostRecentRowTombstone = cf.deletionInfo().getTopLevelDeletion().markedForDeleteAt;
@@ -291,11 +367,15 @@ public class CollationController
                 for (SSTableReader sstable : skippedSSTables)
                 {
                     if (sstable.getMaxTimestamp() <= minTimestamp)
+                    {
+                        complete = false;
                         continue;
+                    }
 
                     sstable.incrementReadCount();
                     OnDiskAtomIterator iter = filter.getSSTableColumnIterator(sstable);
                     ColumnFamily cf = iter.getColumnFamily();
+                    found |= cf != null;
                     // we are only interested in row-level tombstones here, and only if markedForDeleteAt is larger than minTimestamp
                     if (cf != null && cf.deletionInfo().getTopLevelDeletion().markedForDeleteAt > minTimestamp)
                     {
@@ -312,6 +392,10 @@ public class CollationController
             }
             if (Tracing.isTracing())
                 Tracing.trace("Skipped {}/{} non-slice-intersecting sstables, included {} due to tombstones", new Object[] {nonIntersectingSSTables, view.sstables.size(), includedDueToTombstones});
+            if (sstablesPastLastRow > 0)
+                Tracing.trace("Skipped {} older sstables that could only contain rows past the requested ones", sstablesPastLastRow);
+            partitionAbsent = !found && complete;
+
             // we need to distinguish between "there is no data at all for this row" (BF will let us rebuild that efficiently)
             // and "there used to be data, but it's gone now" (we should cache the empty CF so we don't need to rebuild that slower)
             if (iterators.isEmpty())
@@ -325,12 +409,84 @@ public class CollationController
         }
         finally
         {
-            for (Object iter : iterators)
-                if (iter instanceof Closeable)
-                    FileUtils.closeQuietly((Closeable) iter);
+            closeIterators(iterators);
         }
     }
 
+    private void closeIterators(List<? extends Iterator<? extends OnDiskAtom>> iterators)
+    {
+        for (Object iter : iterators)
+            if (iter instanceof Closeable)
+                FileUtils.closeQuietly((Closeable) iter);
+    }
+
+    /**
+     * Whether collectAllData may stop reading older sstables once it has enough rows: only for slices with a limit,
+     * and not on counter tables, since counter cells are summed across sstables rather than superseded.
+     */
+    private boolean mayStopEarly()
+    {
+        if (!(filter.filter instanceof SliceQueryFilter) || filter.filter instanceof IdentityQueryFilter)
+            return false;
+        return ((SliceQueryFilter) filter.filter).count < Integer.MAX_VALUE && !cfs.metadata.isCounter();
+    }
+
+    private static long minTimestamp(List<ColumnFamily> cfs)
+    {
+        long minTimestamp = Long.MAX_VALUE;
+        for (ColumnFamily cf : cfs)
+        {
+            for (Cell cell : cf)
+                minTimestamp = Math.min(minTimestamp, cell.timestamp());
+        }
+        return minTimestamp;
+    }
+
+    /**
+     * Merges what has been read so far into returnCF and replaces the (now exhausted) iterators with a single
+     * iterator over the result. Nothing is purged, since the data still has to be merged with older sstables.
+     * Returns the container the final result must be collated into.
+     */
+    private ColumnFamily collateEarly(ColumnFamily returnCF, List<Iterator<? extends OnDiskAtom>> iterators)
+    {
+        filter.collateOnDiskAtom(returnCF, iterators, Integer.MIN_VALUE);
+        closeIterators(iterators);
+        iterators.clear();
+        iterators.add(filter.getIterator(returnCF));
+        return returnCF.cloneMeShallow(filter.filter.isReversed());
+    }
+
+    /**
+     * The clustering prefix of the last row collated into cf, or null if cf doesn't hold as many rows as requested.
+     */
+    private Composite lastRowCollected(ColumnFamily cf)
+    {
+        SliceQueryFilter sliceFilter = (SliceQueryFilter) filter.filter;
+        if (sliceFilter.lastCounted() < sliceFilter.count)
+            return null;
+
+        Iterator<Cell> iter = filter.getIterator(cf);
+        if (!iter.hasNext())
+            return null;
+        CellName last = Iterators.getLast(iter).name();
+        if (last.isStatic())
+            return null;
+
+        // other cells of that row may still be in older sstables, so we must keep anything within that row
+        CBuilder builder = cfs.metadata.comparator.prefixBuilder();
+        for (int i = 0; i < last.clusteringSize(); i++)
+            builder.add(last.get(i));
+        return builder.build();
+    }
+
+    /**
+     * @return true if the last read found that no memtable or sstable holds anything for the partition
+     */
+    public boolean isPartitionAbsent()
+    {
+        return partitionAbsent;
+    }
+
     public int getSstablesIterated()
     {
         return sstablesIterated;
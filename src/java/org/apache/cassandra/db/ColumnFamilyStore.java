@@ -42,6 +42,7 @@ import org.apache.cassandra.cache.*;
 import org.apache.cassandra.concurrent.*;
 import org.apache.cassandra.config.*;
 import org.apache.cassandra.config.CFMetaData.SpeculativeRetry;
+import org.apache.cassandra.cql3.ResultSetCache;
 import org.apache.cassandra.db.commitlog.CommitLog;
 import org.apache.cassandra.db.commitlog.ReplayPosition;
 import org.apache.cassandra.db.compaction.*;
@@ -65,9 +66,12 @@ import org.apache.cassandra.io.sstable.*;
 import org.apache.cassandra.io.sstable.format.*;
 import org.apache.cassandra.io.sstable.metadata.CompactionMetadata;
 import org.apache.cassandra.io.sstable.metadata.MetadataType;
+import org.apache.cassandra.io.util.DataOutputBuffer;
 import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.metrics.ColumnFamilyMetrics;
 import org.apache.cassandra.metrics.ColumnFamilyMetrics.Sampler;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.scheduler.TableReadQueue;
 import org.apache.cassandra.service.CacheService;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.streaming.StreamLockfile;
@@ -172,6 +176,13 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
 
     public final ColumnFamilyMetrics metric;
     public volatile long sampleLatencyNanos;
+
+    /** Partitions known not to exist, null if disabled */
+    private final NegativeLookupCache negativeLookups;
+    /** Digests of recently read partitions, null if disabled */
+    private final DigestCache digests;
+    /** Where the local reads of this table wait their turn when concurrent_reads_per_table is set */
+    public final TableReadQueue readQueue;
     private final ScheduledFuture<?> latencyCalculator;
 
     public static void shutdownPostFlushExecutor() throws InterruptedException
@@ -198,6 +209,9 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
 
         indexManager.reload();
 
+        // gc_grace_seconds or the comparator may have changed what reads return
+        invalidateDigests();
+
         // If the CF comparator has changed, we need to change the memtable,
         // because the old one still aliases the previous comparator.
         if (data.getView().getCurrentMemtable().initialComparator != metadata.comparator)
@@ -309,6 +323,11 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         this.metric = new ColumnFamilyMetrics(this);
         fileIndexGenerator.set(generation);
         sampleLatencyNanos = DatabaseDescriptor.getReadRpcTimeout() / 2;
+        int negativeLookupCacheSize = DatabaseDescriptor.getNegativeLookupCacheEntriesPerTable();
+        negativeLookups = negativeLookupCacheSize > 0 ? new NegativeLookupCache(negativeLookupCacheSize) : null;
+        int digestCacheSize = DatabaseDescriptor.getDigestCacheEntriesPerTable();
+        digests = digestCacheSize > 0 ? new DigestCache(digestCacheSize) : null;
+        readQueue = new TableReadQueue(this);
 
         CachingOptions caching = metadata.getCaching();
 
@@ -324,8 +343,9 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
             data.addInitialSSTables(sstables);
         }
 
+        // key cache entries of live sstables never go stale, so there's no need to wait for them
         if (caching.keyCache.isEnabled())
-            CacheService.instance.keyCache.loadSaved(this);
+            CacheService.instance.keyCache.loadSavedAsync(this);
 
         // compaction strategy should be created after the CFS has been prepared
         this.compactionStrategyWrapper = new WrappingCompactionStrategy(this);
@@ -561,6 +581,18 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
      * sstables from any given ancestor).
      */
     public static void removeUnfinishedCompactionLeftovers(CFMetaData metadata, Map<Integer, UUID> unfinishedCompactions)
+    {
+        removeUnfinishedCompactionLeftovers(metadata, unfinishedCompactions, Collections.<CompactionCheckpoint>emptyList());
+    }
+
+    /**
+     * As above, except that the outputs recorded by the given checkpoints are kept along with their ancestors, so the
+     * compactions can be resumed from where they left off. This only holds for checkpoints whose inputs are all
+     * still there; the outputs of the others are removed like those of any unfinished compaction.
+     *
+     * @return the checkpoints that can be resumed
+     */
+    public static List<CompactionCheckpoint> removeUnfinishedCompactionLeftovers(CFMetaData metadata, Map<Integer, UUID> unfinishedCompactions, Collection<CompactionCheckpoint> checkpoints)
     {
         Directories directories = new Directories(metadata);
 
@@ -568,6 +600,19 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         for (Descriptor desc : directories.sstableLister().list().keySet())
             allGenerations.add(desc.generation);
 
+        List<CompactionCheckpoint> resumable = new ArrayList<>();
+        Set<Integer> checkpointedGenerations = new HashSet<>();
+        for (CompactionCheckpoint checkpoint : checkpoints)
+        {
+            if (!allGenerations.containsAll(checkpoint.inputs))
+            {
+                logger.debug("Some of the inputs of {} are missing, it won't be resumed", checkpoint);
+                continue;
+            }
+            resumable.add(checkpoint);
+            checkpointedGenerations.addAll(checkpoint.outputs);
+        }
+
         // sanity-check unfinishedCompactions
         Set<Integer> unfinishedGenerations = unfinishedCompactions.keySet();
         if (!allGenerations.containsAll(unfinishedGenerations))
@@ -584,6 +629,11 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         for (Map.Entry<Descriptor, Set<Component>> sstableFiles : directories.sstableLister().skipTemporary(true).list().entrySet())
         {
             Descriptor desc = sstableFiles.getKey();
+            if (checkpointedGenerations.contains(desc.generation))
+            {
+                logger.debug("Keeping checkpointed compaction product {}", desc);
+                continue;
+            }
 
             Set<Integer> ancestors;
             try
@@ -627,6 +677,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
                     SystemKeyspace.finishCompaction(unfinishedCompactions.get(desc.generation));
             }
         }
+        return resumable;
     }
 
     // must be called after all sstables are loaded since row cache merges all row versions
@@ -635,15 +686,27 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         if (!isRowCacheEnabled())
             return;
 
-        long start = System.nanoTime();
+        final long start = System.nanoTime();
 
-        int cachedRowsRead = CacheService.instance.rowCache.loadSaved(this);
-        if (cachedRowsRead > 0)
-            logger.info("Completed loading ({} ms; {} keys) row cache for {}.{}",
-                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
-                        cachedRowsRead,
-                        keyspace.getName(),
-                        name);
+        // rows are loaded in the background, as reads do not need to wait for them to be correct
+        ListenableFuture<Integer> loading = CacheService.instance.rowCache.loadSavedAsync(this);
+        Futures.addCallback(loading, new FutureCallback<Integer>()
+        {
+            public void onSuccess(Integer cachedRowsRead)
+            {
+                if (cachedRowsRead > 0)
+                    logger.info("Completed loading ({} ms; {} keys) row cache for {}.{}",
+                                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                                cachedRowsRead,
+                                keyspace.getName(),
+                                name);
+            }
+
+            public void onFailure(Throwable t)
+            {
+                logger.error("Error loading row cache for {}.{}", keyspace.getName(), name, t);
+            }
+        });
     }
 
     public void initCounterCache()
@@ -653,6 +716,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
 
         long start = System.nanoTime();
 
+        // counter writes build on the cached local shard, so unlike the other caches this one is loaded before any write
         int cachedShardsRead = CacheService.instance.counterCache.loadSaved(this);
         if (cachedShardsRead > 0)
             logger.info("Completed loading ({} ms; {} shards) counter cache for {}.{}",
@@ -1147,13 +1211,65 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         }
     }
 
-    public void maybeUpdateRowCache(DecoratedKey key)
+    public void maybeUpdateRowCache(DecoratedKey key, ColumnFamily update)
     {
         if (!isRowCacheEnabled())
             return;
 
         RowCacheKey cacheKey = new RowCacheKey(metadata.cfId, key);
-        invalidateCachedRow(cacheKey);
+        // counter updates are deltas, they can't be merged with cached values
+        if (!metadata.getCaching().rowCache.updateInPlace || metadata.isCounter() || !updateCachedRow(key, cacheKey, update))
+            invalidateCachedRow(cacheKey);
+    }
+
+    /**
+     * Merges an update into the cached slice of its partition, if any, keeping the slice to the rows it is meant to
+     * cache.
+     *
+     * @return false if the cached entry could not be updated and must be invalidated
+     */
+    private boolean updateCachedRow(DecoratedKey key, RowCacheKey cacheKey, ColumnFamily update)
+    {
+        IRowCacheEntry cached = CacheService.instance.rowCache.getInternal(cacheKey);
+        if (cached == null)
+            return true;
+        // a read is populating the cache with data that may predate this update, invalidating makes it give up
+        if (cached instanceof RowCacheSentinel)
+            return false;
+
+        ColumnFamily cachedCf = (ColumnFamily) cached;
+        CachingOptions.RowCache rowCache = metadata.getCaching().rowCache;
+        if (!rowCache.cacheFullPartitions()
+            && cachedCf.liveCQL3RowCount(Integer.MIN_VALUE) >= rowCache.rowsToCache
+            && hasTombstones(update))
+        {
+            // deleting rows from a partial slice could leave it looking like the whole partition
+            return false;
+        }
+
+        ColumnFamily merged = cachedCf.cloneMe();
+        merged.addAll(update);
+        if (!rowCache.cacheFullPartitions())
+        {
+            // only keep the head (or tail) rows: those pushed out by the update are still in the partition
+            QueryFilter cacheFilter = new QueryFilter(key, name, readFilterForCache(), Integer.MIN_VALUE);
+            ColumnFamily trimmed = merged.cloneMeShallow(ArrayBackedSortedColumns.factory, cacheFilter.filter.isReversed());
+            cacheFilter.collateOnDiskAtom(trimmed, cacheFilter.getIterator(merged), Integer.MIN_VALUE);
+            merged = trimmed;
+        }
+        return CacheService.instance.rowCache.replace(cacheKey, cached, merged);
+    }
+
+    private static boolean hasTombstones(ColumnFamily update)
+    {
+        if (update.isMarkedForDelete())
+            return true;
+        for (Cell cell : update)
+        {
+            if (!cell.isLive(Long.MIN_VALUE))
+                return true;
+        }
+        return false;
     }
 
     /**
@@ -1169,7 +1285,8 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
 
         Memtable mt = data.getMemtableFor(opGroup, replayPosition);
         final long timeDelta = mt.put(key, columnFamily, indexer, opGroup);
-        maybeUpdateRowCache(key);
+        maybeUpdateRowCache(key, columnFamily);
+        ResultSetCache.instance.invalidate(metadata.cfId, key.getKey());
         metric.samplers.get(Sampler.WRITES).addSample(key.getKey());
         metric.writeLatency.addNano(System.nanoTime() - start);
         if(timeDelta < Long.MAX_VALUE)
@@ -1513,9 +1630,10 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
             //      amount of extra work we'll do on a user query for the purpose of populating the cache).
             //
             // In practice, we can only guarantee those 2 points if the filter is one that queries the head of the
-            // partition (and if that filter actually counts CQL3 rows since that's what we cache and it would be
-            // bogus to compare the filter count to the 'rows to cache' otherwise).
-            if (filter.filter.isHeadFilter() && filter.filter.countCQL3Rows(metadata.comparator))
+            // partition, or its tail when that's what we cache (and if that filter actually counts CQL3 rows since
+            // that's what we cache and it would be bogus to compare the filter count to the 'rows to cache' otherwise).
+            boolean cachesFilteredEnd = metadata.getCaching().rowCache.cacheTail ? filter.filter.isTailFilter() : filter.filter.isHeadFilter();
+            if (cachesFilteredEnd && filter.filter.countCQL3Rows(metadata.comparator))
             {
                 SliceQueryFilter sliceFilter = (SliceQueryFilter)filter.filter;
                 int rowsToCache = metadata.getCaching().rowCache.rowsToCache;
@@ -1575,7 +1693,8 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
     public SliceQueryFilter readFilterForCache()
     {
         // We create a new filter everytime before for now SliceQueryFilter is unfortunatly mutable.
-        return new SliceQueryFilter(ColumnSlice.ALL_COLUMNS_ARRAY, false, metadata.getCaching().rowCache.rowsToCache, metadata.clusteringColumns().size());
+        CachingOptions.RowCache rowCache = metadata.getCaching().rowCache;
+        return new SliceQueryFilter(ColumnSlice.ALL_COLUMNS_ARRAY, rowCache.cacheTail, rowCache.rowsToCache, metadata.clusteringColumns().size());
     }
 
     public boolean isFilterFullyCoveredBy(IDiskAtomFilter filter, ColumnFamily cachedCf, long now)
@@ -1595,7 +1714,9 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         // timestamp of the query into account when dealing with expired columns. Otherwise, we could think
         // the cached partition has enough live rows to satisfy the filter when it doesn't because some
         // are now expired.
-        return wholePartitionCached || filter.isFullyCoveredBy(cachedCf, now);
+        if (wholePartitionCached)
+            return true;
+        return metadata.getCaching().rowCache.cacheTail ? filter.isFullyCoveredByTail(cachedCf, now) : filter.isFullyCoveredBy(cachedCf, now);
     }
 
     public int gcBefore(long now)
@@ -1649,6 +1770,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
                 // Log the number of tombstones scanned on single key queries
                 metric.tombstoneScannedHistogram.update(((SliceQueryFilter) filter.filter).lastIgnored());
                 metric.liveScannedHistogram.update(((SliceQueryFilter) filter.filter).lastLive());
+                metric.collectedBytesHistogram.update(((SliceQueryFilter) filter.filter).lastCollectedBytes());
             }
         }
         finally
@@ -1791,6 +1913,18 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
     public ColumnFamily getTopLevelColumns(QueryFilter filter, int gcBefore)
     {
         Tracing.trace("Executing single-partition query on {}", name);
+        Object negativeLookup = null;
+        if (negativeLookups != null)
+        {
+            if (negativeLookups.isAbsent(filter.key))
+            {
+                Tracing.trace("Partition known not to exist");
+                metric.negativeLookupHit.inc();
+                return null;
+            }
+            negativeLookup = negativeLookups.beginLookup(filter.key);
+        }
+
         CollationController controller = new CollationController(this, filter, gcBefore);
         ColumnFamily columns;
         try (OpOrder.Group op = readOrdering.start())
@@ -1799,10 +1933,110 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         }
         if (columns != null)
             metric.samplers.get(Sampler.READS).addSample(filter.key.getKey());
+        else if (negativeLookup != null && controller.isPartitionAbsent())
+            negativeLookups.markAbsent(negativeLookup);
         metric.updateSSTableIterated(controller.getSstablesIterated());
         return columns;
     }
 
+    /**
+     * Must be called once a write to the partition has been applied to the memtable.
+     */
+    void invalidateNegativeLookup(DecoratedKey key)
+    {
+        if (negativeLookups != null)
+            negativeLookups.invalidate(key);
+    }
+
+    /**
+     * Must be called once sstables that weren't written through the memtable, e.g. streamed ones, have been added.
+     */
+    void invalidateNegativeLookups()
+    {
+        if (negativeLookups != null)
+            negativeLookups.clear();
+    }
+
+    /**
+     * @return the digest of what the filter selects, as sent in answer to digest requests
+     */
+    public ByteBuffer getDigest(QueryFilter filter)
+    {
+        // the digest of the deletion info depends on the version of the other nodes
+        if (digests == null || !MessagingService.instance().areAllNodesAtLeast21())
+            return ColumnFamily.digest(getColumnFamily(filter));
+
+        long start = System.nanoTime();
+        ByteBuffer serializedFilter = serializeFilter(filter.filter);
+        ByteBuffer digest = digests.get(filter.key, serializedFilter);
+        if (digest != null)
+        {
+            Tracing.trace("Digest found in digest cache");
+            metric.digestCacheHit.inc();
+            // still a read as far as the table is concerned, the way row cache hits are
+            metric.readLatency.addNano(System.nanoTime() - start);
+            return digest;
+        }
+
+        Object claim = digests.beginRead(filter.key);
+        ColumnFamily cf = getColumnFamily(filter);
+        digest = ColumnFamily.digest(cf);
+        if (isTimeIndependent(cf))
+            digests.put(claim, serializedFilter, digest);
+        return digest;
+    }
+
+    private ByteBuffer serializeFilter(IDiskAtomFilter filter)
+    {
+        DataOutputBuffer out = new DataOutputBuffer();
+        try
+        {
+            metadata.comparator.diskAtomFilterSerializer().serialize(filter, out, MessagingService.current_version);
+        }
+        catch (IOException e)
+        {
+            throw new AssertionError(e);
+        }
+        return out.asByteBuffer();
+    }
+
+    /**
+     * Whether a read result will stay the same until the partition is written to. It won't if anything in it is
+     * due to expire or, being a tombstone, to be purged once gc_grace_seconds have passed.
+     */
+    private static boolean isTimeIndependent(ColumnFamily cf)
+    {
+        if (cf == null)
+            return true;
+        if (!cf.deletionInfo().isLive())
+            return false;
+        for (Cell cell : cf)
+        {
+            if (cell instanceof ExpiringCell || !cell.isLive())
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Must be called once a write to the partition has been applied to the memtable.
+     */
+    void invalidateDigest(DecoratedKey key)
+    {
+        if (digests != null)
+            digests.invalidate(key);
+    }
+
+    /**
+     * Must be called once sstables that weren't written through the memtable have been added, or once what reads
+     * return may have changed otherwise (truncation, schema change).
+     */
+    void invalidateDigests()
+    {
+        if (digests != null)
+            digests.clear();
+    }
+
     public void beginLocalSampling(String sampler, int capacity)
     {
         metric.samplers.get(Sampler.valueOf(sampler)).beginSampling(capacity);
@@ -2262,6 +2496,8 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         CacheService.instance.invalidateRowCacheForCf(metadata.cfId);
         if (metadata.isCounter())
             CacheService.instance.invalidateCounterCacheForCf(metadata.cfId);
+        ResultSetCache.instance.invalidate(metadata.cfId);
+        invalidateDigests();
     }
 
     /**
@@ -2692,7 +2928,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         return view.sstables.isEmpty() && view.getCurrentMemtable().getOperations() == 0 && view.getCurrentMemtable() == view.getOldestMemtable();
     }
 
-    private boolean isRowCacheEnabled()
+    public boolean isRowCacheEnabled()
     {
         return metadata.getCaching().rowCache.isEnabled() && CacheService.instance.rowCache.getCapacity() > 0;
     }
@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Striped;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.exceptions.WriteTimeoutException;
+import org.apache.cassandra.tracing.Tracing;
+import org.apache.cassandra.utils.Pair;
+
+/**
+ * Merges the increments of counter mutations that queue up on the same partition, so that a hot counter goes through
+ * the locks and the read-before-write of {@link CounterMutation} once per batch rather than once per increment.
+ *
+ * The first mutation to arrive for a partition opens a batch and becomes its leader. The leader waits for the batch
+ * before it to be applied, then closes its own batch and applies the sum of its increments as a single counter
+ * mutation. Every mutation of the batch gets the merged result to replicate: the shards it carries are the same
+ * for all of them, so the replicas reconcile the copies into one. An uncontended counter only pays for an extra
+ * uncontended lock.
+ *
+ * Only mutations made of increments are accumulated, deletions keep going through {@link CounterMutation} directly.
+ */
+public class CounterAccumulator
+{
+    public static final CounterAccumulator instance = new CounterAccumulator();
+
+    private final ConcurrentMap<Pair<String, ByteBuffer>, Batch> openBatches = new ConcurrentHashMap<>();
+    private final Striped<Lock> partitionLocks = Striped.lazyWeakLock(DatabaseDescriptor.getConcurrentCounterWriters() * 1024);
+
+    public static boolean canAccumulate(CounterMutation cm)
+    {
+        for (ColumnFamily cf : cm.getColumnFamilies())
+        {
+            if (!cf.deletionInfo().isLive())
+                return false;
+            for (Cell cell : cf)
+            {
+                if (!(cell instanceof CounterUpdateCell))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    public Mutation apply(CounterMutation cm) throws WriteTimeoutException
+    {
+        assert canAccumulate(cm);
+
+        long start = System.nanoTime();
+        Pair<String, ByteBuffer> key = Pair.create(cm.getKeyspaceName(), cm.key());
+        while (true)
+        {
+            Batch batch = openBatches.get(key);
+            if (batch == null)
+            {
+                batch = new Batch();
+                batch.add(cm);
+                if (openBatches.putIfAbsent(key, batch) == null)
+                    return lead(key, batch, cm, start);
+            }
+            else if (batch.add(cm))
+            {
+                return batch.await(cm, start);
+            }
+            // the batch we found got closed in between, try again with the next one
+        }
+    }
+
+    private Mutation lead(Pair<String, ByteBuffer> key, Batch batch, CounterMutation cm, long start) throws WriteTimeoutException
+    {
+        Lock lock = partitionLocks.get(key);
+        try
+        {
+            try
+            {
+                if (!lock.tryLock(remainingNanos(cm, start), TimeUnit.NANOSECONDS))
+                    throw timeout(cm);
+            }
+            catch (InterruptedException e)
+            {
+                throw timeout(cm);
+            }
+
+            try
+            {
+                openBatches.remove(key, batch);
+                List<CounterMutation> mutations = batch.close();
+                if (mutations.size() > 1)
+                    Tracing.trace("Merged {} counter mutations", mutations.size());
+
+                Mutation result = merge(mutations).applyUnaccumulated();
+                batch.result.set(result);
+                return result;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+        catch (Throwable t)
+        {
+            // the batch may still be open if we timed out waiting for the previous one
+            openBatches.remove(key, batch);
+            batch.close();
+            batch.result.setException(t);
+            throw t;
+        }
+    }
+
+    @VisibleForTesting
+    static CounterMutation merge(List<CounterMutation> mutations)
+    {
+        CounterMutation first = mutations.get(0);
+        if (mutations.size() == 1)
+            return first;
+
+        // increments of the same cell reconcile by summing their deltas
+        Mutation merged = new Mutation(first.getKeyspaceName(), first.key());
+        for (CounterMutation cm : mutations)
+        {
+            for (ColumnFamily cf : cm.getColumnFamilies())
+                merged.addOrGet(cf.metadata()).addAll(cf);
+        }
+        return new CounterMutation(merged, first.consistency());
+    }
+
+    private static long remainingNanos(CounterMutation cm, long start)
+    {
+        return TimeUnit.MILLISECONDS.toNanos(cm.getTimeout()) - (System.nanoTime() - start);
+    }
+
+    private static WriteTimeoutException timeout(CounterMutation cm)
+    {
+        Keyspace keyspace = Keyspace.open(cm.getKeyspaceName());
+        return new WriteTimeoutException(WriteType.COUNTER, cm.consistency(), 0, cm.consistency().blockFor(keyspace));
+    }
+
+    private static class Batch
+    {
+        private final List<CounterMutation> mutations = new ArrayList<>();
+        private final SettableFuture<Mutation> result = SettableFuture.create();
+        private boolean closed;
+
+        synchronized boolean add(CounterMutation cm)
+        {
+            if (closed)
+                return false;
+            mutations.add(cm);
+            return true;
+        }
+
+        synchronized List<CounterMutation> close()
+        {
+            closed = true;
+            return mutations;
+        }
+
+        Mutation await(CounterMutation cm, long start) throws WriteTimeoutException
+        {
+            try
+            {
+                return result.get(remainingNanos(cm, start), TimeUnit.NANOSECONDS);
+            }
+            catch (TimeoutException | InterruptedException e)
+            {
+                throw timeout(cm);
+            }
+            catch (ExecutionException e)
+            {
+                if (e.getCause() instanceof WriteTimeoutException)
+                    throw timeout(cm);
+                throw Throwables.propagate(e.getCause());
+            }
+        }
+    }
+}
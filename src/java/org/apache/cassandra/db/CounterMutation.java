@@ -104,9 +104,19 @@ public class CounterMutation implements IMutation
      *
      * See CASSANDRA-4775 and CASSANDRA-6504 for further details.
      *
+     * When counter_write_accumulation_enabled is set, increments go through {@link CounterAccumulator} which does the
+     * above once for all the increments queued up on the partition.
+     *
      * @return the applied resulting Mutation
      */
     public Mutation apply() throws WriteTimeoutException
+    {
+        if (DatabaseDescriptor.isCounterWriteAccumulationEnabled() && CounterAccumulator.canAccumulate(this))
+            return CounterAccumulator.instance.apply(this);
+        return applyUnaccumulated();
+    }
+
+    Mutation applyUnaccumulated() throws WriteTimeoutException
     {
         Mutation result = new Mutation(getKeyspaceName(), key());
         Keyspace keyspace = Keyspace.open(getKeyspaceName());
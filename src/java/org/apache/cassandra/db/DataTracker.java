@@ -285,6 +285,8 @@ public class DataTracker
     public void addSSTables(Collection<SSTableReader> sstables)
     {
         addSSTablesToTracker(sstables);
+        cfstore.invalidateNegativeLookups();
+        cfstore.invalidateDigests();
         for (SSTableReader sstable : sstables)
         {
             maybeIncrementallyBackup(sstable);
@@ -618,6 +620,9 @@ public class DataTracker
         public final Set<SSTableReader> shadowed;
         public final SSTableIntervalTree intervalTree;
 
+        // built on first use, views being immutable
+        private volatile Map<Integer, SSTableReader> sstablesByGeneration;
+
         View(List<Memtable> liveMemtables, List<Memtable> flushingMemtables, Set<SSTableReader> sstables, Set<SSTableReader> compacting, Set<SSTableReader> shadowed, SSTableIntervalTree intervalTree)
         {
             this.shadowed = shadowed;
@@ -661,6 +666,22 @@ public class DataTracker
             return Iterables.concat(flushingMemtables, liveMemtables);
         }
 
+        /**
+         * @return the sstable of the given generation in this view, or null if there is none
+         */
+        public SSTableReader getSSTable(int generation)
+        {
+            Map<Integer, SSTableReader> byGeneration = sstablesByGeneration;
+            if (byGeneration == null)
+            {
+                byGeneration = new HashMap<>(sstables.size());
+                for (SSTableReader sstable : sstables)
+                    byGeneration.put(sstable.descriptor.generation, sstable);
+                sstablesByGeneration = byGeneration;
+            }
+            return byGeneration.get(generation);
+        }
+
         public Sets.SetView<SSTableReader> nonCompactingSStables()
         {
             return Sets.difference(ImmutableSet.copyOf(sstables), compacting);
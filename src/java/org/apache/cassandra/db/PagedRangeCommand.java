@@ -52,7 +52,22 @@ public class PagedRangeCommand extends AbstractRangeCommand
                              int limit,
                              boolean countCQL3Rows)
     {
-        super(keyspace, columnFamily, timestamp, keyRange, predicate, rowFilter);
+        this(keyspace, columnFamily, timestamp, keyRange, predicate, start, stop, rowFilter, limit, countCQL3Rows, false);
+    }
+
+    public PagedRangeCommand(String keyspace,
+                             String columnFamily,
+                             long timestamp,
+                             AbstractBounds<RowPosition> keyRange,
+                             SliceQueryFilter predicate,
+                             Composite start,
+                             Composite stop,
+                             List<IndexExpression> rowFilter,
+                             int limit,
+                             boolean countCQL3Rows,
+                             boolean omitCellValues)
+    {
+        super(keyspace, columnFamily, timestamp, keyRange, predicate, rowFilter, omitCellValues);
         this.start = start;
         this.stop = stop;
         this.limit = limit;
@@ -61,7 +76,8 @@ public class PagedRangeCommand extends AbstractRangeCommand
 
     public MessageOut<PagedRangeCommand> createMessage()
     {
-        return new MessageOut<>(MessagingService.Verb.PAGED_RANGE, this, serializer);
+        MessageOut<PagedRangeCommand> message = new MessageOut<>(MessagingService.Verb.PAGED_RANGE, this, serializer);
+        return omitCellValues ? message.withParameter(OMIT_CELL_VALUES_PARAM, MessagingService.ONE_BYTE) : message;
     }
 
     public AbstractRangeCommand forSubRange(AbstractBounds<RowPosition> subRange)
@@ -77,7 +93,8 @@ public class PagedRangeCommand extends AbstractRangeCommand
                                      newStop,
                                      rowFilter,
                                      limit,
-                                     countCQL3Rows);
+                                     countCQL3Rows,
+                                     omitCellValues);
     }
 
     public AbstractRangeCommand withUpdatedLimit(int newLimit)
@@ -91,7 +108,8 @@ public class PagedRangeCommand extends AbstractRangeCommand
                                      stop,
                                      rowFilter,
                                      newLimit,
-                                     countCQL3Rows);
+                                     countCQL3Rows,
+                                     omitCellValues);
     }
 
     public int limit()
@@ -110,9 +128,9 @@ public class PagedRangeCommand extends AbstractRangeCommand
 
         ExtendedFilter exFilter = cfs.makeExtendedFilter(keyRange, (SliceQueryFilter)predicate, start, stop, rowFilter, limit, countCQL3Rows(), timestamp);
         if (cfs.indexManager.hasIndexFor(rowFilter))
-            return cfs.search(exFilter);
+            return maybeOmitCellValues(cfs, cfs.search(exFilter));
         else
-            return cfs.getRangeSlice(exFilter);
+            return maybeOmitCellValues(cfs, cfs.getRangeSlice(exFilter));
     }
 
     @Override
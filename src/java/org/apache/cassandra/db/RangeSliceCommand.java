@@ -74,7 +74,21 @@ public class RangeSliceCommand extends AbstractRangeCommand implements Pageable
                              boolean countCQL3Rows,
                              boolean isPaging)
     {
-        super(keyspace, columnFamily, timestamp, range, predicate, rowFilter);
+        this(keyspace, columnFamily, timestamp, predicate, range, rowFilter, maxResults, countCQL3Rows, isPaging, false);
+    }
+
+    public RangeSliceCommand(String keyspace,
+                             String columnFamily,
+                             long timestamp,
+                             IDiskAtomFilter predicate,
+                             AbstractBounds<RowPosition> range,
+                             List<IndexExpression> rowFilter,
+                             int maxResults,
+                             boolean countCQL3Rows,
+                             boolean isPaging,
+                             boolean omitCellValues)
+    {
+        super(keyspace, columnFamily, timestamp, range, predicate, rowFilter, omitCellValues);
         this.maxResults = maxResults;
         this.countCQL3Rows = countCQL3Rows;
         this.isPaging = isPaging;
@@ -82,7 +96,8 @@ public class RangeSliceCommand extends AbstractRangeCommand implements Pageable
 
     public MessageOut<RangeSliceCommand> createMessage()
     {
-        return new MessageOut<>(MessagingService.Verb.RANGE_SLICE, this, serializer);
+        MessageOut<RangeSliceCommand> message = new MessageOut<>(MessagingService.Verb.RANGE_SLICE, this, serializer);
+        return omitCellValues ? message.withParameter(OMIT_CELL_VALUES_PARAM, MessagingService.ONE_BYTE) : message;
     }
 
     public AbstractRangeCommand forSubRange(AbstractBounds<RowPosition> subRange)
@@ -95,7 +110,8 @@ public class RangeSliceCommand extends AbstractRangeCommand implements Pageable
                                      rowFilter,
                                      maxResults,
                                      countCQL3Rows,
-                                     isPaging);
+                                     isPaging,
+                                     omitCellValues);
     }
 
     public AbstractRangeCommand withUpdatedLimit(int newLimit)
@@ -108,7 +124,8 @@ public class RangeSliceCommand extends AbstractRangeCommand implements Pageable
                                      rowFilter,
                                      newLimit,
                                      countCQL3Rows,
-                                     isPaging);
+                                     isPaging,
+                                     omitCellValues);
     }
 
     public int limit()
@@ -127,9 +144,9 @@ public class RangeSliceCommand extends AbstractRangeCommand implements Pageable
 
         ExtendedFilter exFilter = cfs.makeExtendedFilter(keyRange, predicate, rowFilter, maxResults, countCQL3Rows, isPaging, timestamp);
         if (cfs.indexManager.hasIndexFor(rowFilter))
-            return cfs.search(exFilter);
+            return maybeOmitCellValues(cfs, cfs.search(exFilter));
         else
-            return cfs.getRangeSlice(exFilter);
+            return maybeOmitCellValues(cfs, cfs.getRangeSlice(exFilter));
     }
 
     @Override
@@ -143,6 +160,7 @@ public class RangeSliceCommand extends AbstractRangeCommand implements Pageable
                       .add("rowFilter", rowFilter)
                       .add("maxResults", maxResults)
                       .add("counterCQL3Rows", countCQL3Rows)
+                      .add("omitCellValues", omitCellValues)
                       .add("timestamp", timestamp)
                       .toString();
     }
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.cassandra.io.IVersionedSerializer;
+import org.apache.cassandra.io.util.DataOutputPlus;
+import org.apache.cassandra.net.MessageOut;
+import org.apache.cassandra.net.MessagingService;
+
+/**
+ * Single partition reads a coordinator sends to the same replica in one message, for instance those of a query
+ * on several partition keys. Each command is executed and answered as if it had been sent on its own.
+ */
+public class ReadBatchCommand
+{
+    public static final IVersionedSerializer<ReadBatchCommand> serializer = new ReadBatchCommandSerializer();
+
+    public final List<ReadCommand> commands;
+
+    public ReadBatchCommand(List<ReadCommand> commands)
+    {
+        this.commands = commands;
+    }
+
+    public MessageOut<ReadBatchCommand> createMessage()
+    {
+        return new MessageOut<>(MessagingService.Verb.READ_BATCH, this, serializer);
+    }
+
+    private static class ReadBatchCommandSerializer implements IVersionedSerializer<ReadBatchCommand>
+    {
+        public void serialize(ReadBatchCommand batch, DataOutputPlus out, int version) throws IOException
+        {
+            out.writeInt(batch.commands.size());
+            for (ReadCommand command : batch.commands)
+                ReadCommand.serializer.serialize(command, out, version);
+        }
+
+        public ReadBatchCommand deserialize(DataInput in, int version) throws IOException
+        {
+            int count = in.readInt();
+            List<ReadCommand> commands = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+                commands.add(ReadCommand.serializer.deserialize(in, version));
+            return new ReadBatchCommand(commands);
+        }
+
+        public long serializedSize(ReadBatchCommand batch, int version)
+        {
+            long size = TypeSizes.NATIVE.sizeof(batch.commands.size());
+            for (ReadCommand command : batch.commands)
+                size += ReadCommand.serializer.serializedSize(command, version);
+            return size;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.cassandra.io.IVersionedSerializer;
+import org.apache.cassandra.io.util.DataOutputPlus;
+import org.apache.cassandra.net.MessageOut;
+import org.apache.cassandra.net.MessagingService;
+
+/**
+ * Reply to a {@link ReadBatchCommand}: the response to each of its commands, in the same order.
+ */
+public class ReadBatchResponse
+{
+    public static final IVersionedSerializer<ReadBatchResponse> serializer = new ReadBatchResponseSerializer();
+
+    public final List<ReadResponse> responses;
+
+    public ReadBatchResponse(List<ReadResponse> responses)
+    {
+        this.responses = responses;
+    }
+
+    public MessageOut<ReadBatchResponse> createMessage()
+    {
+        return new MessageOut<>(MessagingService.Verb.REQUEST_RESPONSE, this, serializer);
+    }
+
+    private static class ReadBatchResponseSerializer implements IVersionedSerializer<ReadBatchResponse>
+    {
+        public void serialize(ReadBatchResponse batch, DataOutputPlus out, int version) throws IOException
+        {
+            out.writeInt(batch.responses.size());
+            for (ReadResponse response : batch.responses)
+                ReadResponse.serializer.serialize(response, out, version);
+        }
+
+        public ReadBatchResponse deserialize(DataInput in, int version) throws IOException
+        {
+            int count = in.readInt();
+            List<ReadResponse> responses = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+                responses.add(ReadResponse.serializer.deserialize(in, version));
+            return new ReadBatchResponse(responses);
+        }
+
+        public long serializedSize(ReadBatchResponse batch, int version)
+        {
+            long size = TypeSizes.NATIVE.sizeof(batch.responses.size());
+            for (ReadResponse response : batch.responses)
+                size += ReadResponse.serializer.serializedSize(response, version);
+            return size;
+        }
+    }
+}
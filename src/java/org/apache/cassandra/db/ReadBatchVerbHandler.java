@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.db.filter.ReadSizeOverwhelmingException;
+import org.apache.cassandra.db.filter.TombstoneOverwhelmingException;
+import org.apache.cassandra.net.IVerbHandler;
+import org.apache.cassandra.net.MessageIn;
+import org.apache.cassandra.net.MessageOut;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.tracing.TraceState;
+import org.apache.cassandra.tracing.Tracing;
+
+/**
+ * Executes the commands of a {@link ReadBatchCommand} concurrently on the read stage, and replies once all of them
+ * have been answered, or with a failure as soon as one of them fails.
+ */
+public class ReadBatchVerbHandler implements IVerbHandler<ReadBatchCommand>
+{
+    private static final Logger logger = LoggerFactory.getLogger(ReadBatchVerbHandler.class);
+
+    public void doVerb(MessageIn<ReadBatchCommand> message, int id)
+    {
+        if (StorageService.instance.isBootstrapMode())
+        {
+            throw new RuntimeException("Cannot service reads while bootstrapping!");
+        }
+
+        // the reads run on other threads, which must trace to the session the message is part of
+        TraceState state = Tracing.instance.initializeFromMessage(message);
+        if (state != null)
+            state.trace("Executing {} batched reads", message.payload.commands.size());
+        BatchedReads reads = new BatchedReads(message, id);
+        for (int i = 0; i < message.payload.commands.size(); i++)
+        {
+            ReadCommand command = message.payload.commands.get(i);
+            Keyspace.open(command.ksName).getColumnFamilyStore(command.cfName).readQueue.execute(reads.read(i), state);
+        }
+    }
+
+    private static class BatchedReads
+    {
+        private final MessageIn<ReadBatchCommand> message;
+        private final int id;
+        private final ReadResponse[] responses;
+        private final AtomicInteger remaining;
+        private final AtomicBoolean failed = new AtomicBoolean();
+
+        BatchedReads(MessageIn<ReadBatchCommand> message, int id)
+        {
+            this.message = message;
+            this.id = id;
+            responses = new ReadResponse[message.payload.commands.size()];
+            remaining = new AtomicInteger(responses.length);
+        }
+
+        Runnable read(final int i)
+        {
+            return new Runnable()
+            {
+                public void run()
+                {
+                    if (failed.get())
+                        return;
+
+                    ReadCommand command = message.payload.commands.get(i);
+                    try
+                    {
+                        responses[i] = ReadVerbHandler.getResponse(command, Keyspace.open(command.ksName));
+                    }
+                    catch (Throwable t)
+                    {
+                        fail();
+                        if (t instanceof TombstoneOverwhelmingException || t instanceof ReadSizeOverwhelmingException)
+                            logger.error(t.getMessage());
+                        else
+                            throw t;
+                        return;
+                    }
+
+                    // the decrement publishes the response written above to whoever sends the reply
+                    if (remaining.decrementAndGet() == 0)
+                        reply();
+                }
+            };
+        }
+
+        private void reply()
+        {
+            MessageOut<ReadBatchResponse> reply = new ReadBatchResponse(Arrays.asList(responses)).createMessage();
+            Tracing.trace("Enqueuing response to {}", message.from);
+            MessagingService.instance().sendReply(reply, id, message.from);
+        }
+
+        private void fail()
+        {
+            if (failed.compareAndSet(false, true) && message.doCallbackOnFailure())
+            {
+                MessageOut<ReadBatchResponse> response = new MessageOut<ReadBatchResponse>(MessagingService.Verb.INTERNAL_RESPONSE)
+                                                         .withParameter(MessagingService.FAILURE_RESPONSE_PARAM, MessagingService.ONE_BYTE);
+                MessagingService.instance().sendReply(response, id, message.from);
+            }
+        }
+    }
+}
@@ -24,6 +24,7 @@ import java.nio.ByteBuffer;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.filter.IDiskAtomFilter;
 import org.apache.cassandra.db.filter.NamesQueryFilter;
+import org.apache.cassandra.db.filter.QueryFilter;
 import org.apache.cassandra.db.filter.SliceQueryFilter;
 import org.apache.cassandra.io.IVersionedSerializer;
 import org.apache.cassandra.io.util.DataOutputPlus;
@@ -31,6 +32,7 @@ import org.apache.cassandra.net.MessageOut;
 import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.service.IReadCommand;
 import org.apache.cassandra.service.RowDataResolver;
+import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.service.pager.Pageable;
 
 //ReadCommand的子类都是只查一个rowKey，
@@ -107,6 +109,15 @@ public abstract class ReadCommand implements IReadCommand, Pageable
 
     public abstract Row getRow(Keyspace keyspace);
 
+    /**
+     * @return the digest of what getRow would return
+     */
+    public ByteBuffer getDigest(Keyspace keyspace)
+    {
+        DecoratedKey dk = StorageService.getPartitioner().decorateKey(key);
+        return keyspace.getColumnFamilyStore(cfName).getDigest(new QueryFilter(dk, cfName, filter(), timestamp));
+    }
+
     public abstract IDiskAtomFilter filter();
 
     public String getKeyspace()
@@ -35,24 +35,23 @@ public class ReadVerbHandler implements IVerbHandler<ReadCommand>
 
         ReadCommand command = message.payload;
         Keyspace keyspace = Keyspace.open(command.ksName);
-        Row row = command.getRow(keyspace);
 
         MessageOut<ReadResponse> reply = new MessageOut<ReadResponse>(MessagingService.Verb.REQUEST_RESPONSE,
-                                                                      getResponse(command, row),
+                                                                      getResponse(command, keyspace),
                                                                       ReadResponse.serializer);
         Tracing.trace("Enqueuing response to {}", message.from);
         MessagingService.instance().sendReply(reply, id, message.from);
     }
 
-    public static ReadResponse getResponse(ReadCommand command, Row row)
+    public static ReadResponse getResponse(ReadCommand command, Keyspace keyspace)
     {
         if (command.isDigestQuery())
         {
-            return new ReadResponse(ColumnFamily.digest(row.cf));
+            return new ReadResponse(command.getDigest(keyspace));
         }
         else
         {
-            return new ReadResponse(row);
+            return new ReadResponse(command.getRow(keyspace));
         }
     }
 }
@@ -26,6 +26,7 @@ import org.apache.cassandra.db.columniterator.LazyColumnIterator;
 import org.apache.cassandra.db.columniterator.OnDiskAtomIterator;
 import org.apache.cassandra.db.filter.QueryFilter;
 import org.apache.cassandra.db.filter.IDiskAtomFilter;
+import org.apache.cassandra.db.filter.ReadSizeOverwhelmingException;
 import org.apache.cassandra.db.filter.TombstoneOverwhelmingException;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.utils.CloseableIterator;
@@ -112,6 +113,11 @@ public class RowIteratorFactory
                     e.setKey(key);
                     throw e;
                 }
+                catch(ReadSizeOverwhelmingException e)
+                {
+                    e.setKey(key);
+                    throw e;
+                }
 
                 Row rv = new Row(key, returnCF);
                 colIters.clear();
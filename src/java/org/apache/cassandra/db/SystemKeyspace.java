@@ -35,6 +35,7 @@ import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.KSMetaData;
 import org.apache.cassandra.cql3.QueryProcessor;
 import org.apache.cassandra.cql3.UntypedResultSet;
+import org.apache.cassandra.db.compaction.CompactionCheckpoint;
 import org.apache.cassandra.db.compaction.CompactionHistoryTabularData;
 import org.apache.cassandra.db.commitlog.ReplayPosition;
 import org.apache.cassandra.db.compaction.LeveledCompactionStrategy;
@@ -341,6 +342,8 @@ public final class SystemKeyspace
                 + "columnfamily_name text,"
                 + "inputs set<int>,"
                 + "keyspace_name text,"
+                + "last_key blob,"
+                + "outputs set<int>,"
                 + "PRIMARY KEY ((id)))");
 
     private static final CFMetaData CompactionHistory =
@@ -480,6 +483,57 @@ public final class SystemKeyspace
         forceBlockingFlush(COMPACTIONS_IN_PROGRESS);
     }
 
+    /**
+     * Records the output sstables a compaction has finished for good so far, and the last key they contain, so that
+     * the compaction can be resumed after a restart.
+     *
+     * This is not flushed: compactions_in_progress is read before the commit log is replayed, so a checkpoint that
+     * only made it to the memtable is lost on restart. That is harmless, as every checkpoint records all of the
+     * outputs so far; the outputs of the lost ones are removed like those of any unfinished compaction, and the
+     * compaction resumes from the last flushed checkpoint, if any.
+     *
+     * @param taskId what was returned from {@code startCompaction}
+     */
+    public static void checkpointCompaction(UUID taskId, Set<Integer> outputs, ByteBuffer lastKey)
+    {
+        assert taskId != null;
+
+        String req = "UPDATE system.%s SET outputs = ?, last_key = ? WHERE id = ?";
+        executeInternal(String.format(req, COMPACTIONS_IN_PROGRESS), outputs, lastKey, taskId);
+    }
+
+    /**
+     * Returns the checkpoints of the unfinished compactions that recorded one, by KS.CF pair.
+     */
+    public static Map<Pair<String, String>, List<CompactionCheckpoint>> getCompactionCheckpoints()
+    {
+        String req = "SELECT * FROM system.%s";
+        UntypedResultSet resultSet = executeInternal(String.format(req, COMPACTIONS_IN_PROGRESS));
+
+        Map<Pair<String, String>, List<CompactionCheckpoint>> checkpoints = new HashMap<>();
+        for (UntypedResultSet.Row row : resultSet)
+        {
+            if (!row.has("outputs") || !row.has("last_key"))
+                continue;
+
+            CompactionCheckpoint checkpoint = new CompactionCheckpoint(row.getUUID("id"),
+                                                                       row.getString("keyspace_name"),
+                                                                       row.getString("columnfamily_name"),
+                                                                       row.getSet("inputs", Int32Type.instance),
+                                                                       row.getSet("outputs", Int32Type.instance),
+                                                                       row.getBytes("last_key"));
+            Pair<String, String> kscf = Pair.create(checkpoint.keyspace, checkpoint.columnFamily);
+            List<CompactionCheckpoint> forTable = checkpoints.get(kscf);
+            if (forTable == null)
+            {
+                forTable = new ArrayList<>();
+                checkpoints.put(kscf, forTable);
+            }
+            forTable.add(checkpoint);
+        }
+        return checkpoints;
+    }
+
     /**
      * Returns a Map whose keys are KS.CF pairs and whose values are maps from sstable generation numbers to the
      * task ID of the compaction they were participating in.
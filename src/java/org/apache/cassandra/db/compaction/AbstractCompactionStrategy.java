@@ -19,22 +19,26 @@ package org.apache.cassandra.db.compaction;
 
 import java.util.*;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.RateLimiter;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.Memtable;
 import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.io.sstable.Component;
 import org.apache.cassandra.io.sstable.ISSTableScanner;
+import org.apache.cassandra.io.sstable.metadata.TombstoneMetadata;
 import org.apache.cassandra.utils.JVMStabilityInspector;
 
 /**
@@ -53,11 +57,14 @@ public abstract class AbstractCompactionStrategy
     // minimum interval needed to perform tombstone removal compaction in seconds, default 86400 or 1 day.
     protected static final long DEFAULT_TOMBSTONE_COMPACTION_INTERVAL = 86400;
     protected static final boolean DEFAULT_UNCHECKED_TOMBSTONE_COMPACTION_OPTION = false;
+    protected static final boolean DEFAULT_OVERLAPPING_TOMBSTONE_COMPACTION_OPTION = false;
 
     protected static final String TOMBSTONE_THRESHOLD_OPTION = "tombstone_threshold";
     protected static final String TOMBSTONE_COMPACTION_INTERVAL_OPTION = "tombstone_compaction_interval";
     // disable range overlap check when deciding if an SSTable is candidate for tombstone compaction (CASSANDRA-6563)
     protected static final String UNCHECKED_TOMBSTONE_COMPACTION_OPTION = "unchecked_tombstone_compaction";
+    // let tombstone compactions ignore overlapping sstables holding only newer data, and pull in the ones that block purging
+    protected static final String OVERLAPPING_TOMBSTONE_COMPACTION_OPTION = "overlapping_tombstone_compaction";
     protected static final String COMPACTION_ENABLED = "enabled";
 
     public final Map<String, String> options;
@@ -66,6 +73,7 @@ public abstract class AbstractCompactionStrategy
     protected float tombstoneThreshold;
     protected long tombstoneCompactionInterval;
     protected boolean uncheckedTombstoneCompaction;
+    protected boolean overlappingTombstoneCompaction;
 
     /**
      * pause/resume/getNextBackgroundTask must synchronize.  This guarantees that after pause completes,
@@ -98,6 +106,8 @@ public abstract class AbstractCompactionStrategy
             tombstoneCompactionInterval = optionValue == null ? DEFAULT_TOMBSTONE_COMPACTION_INTERVAL : Long.parseLong(optionValue);
             optionValue = options.get(UNCHECKED_TOMBSTONE_COMPACTION_OPTION);
             uncheckedTombstoneCompaction = optionValue == null ? DEFAULT_UNCHECKED_TOMBSTONE_COMPACTION_OPTION : Boolean.parseBoolean(optionValue);
+            optionValue = options.get(OVERLAPPING_TOMBSTONE_COMPACTION_OPTION);
+            overlappingTombstoneCompaction = optionValue == null ? DEFAULT_OVERLAPPING_TOMBSTONE_COMPACTION_OPTION : Boolean.parseBoolean(optionValue);
             if (!shouldBeEnabled())
                 this.disable();
         }
@@ -107,6 +117,7 @@ public abstract class AbstractCompactionStrategy
             tombstoneThreshold = DEFAULT_TOMBSTONE_THRESHOLD;
             tombstoneCompactionInterval = DEFAULT_TOMBSTONE_COMPACTION_INTERVAL;
             uncheckedTombstoneCompaction = DEFAULT_UNCHECKED_TOMBSTONE_COMPACTION_OPTION;
+            overlappingTombstoneCompaction = DEFAULT_OVERLAPPING_TOMBSTONE_COMPACTION_OPTION;
         }
     }
 
@@ -358,14 +369,7 @@ public abstract class AbstractCompactionStrategy
      */
     protected boolean worthDroppingTombstones(SSTableReader sstable, int gcBefore)
     {
-        // since we use estimations to calculate, there is a chance that compaction will not drop tombstones actually.
-        // if that happens we will end up in infinite compaction loop, so first we check enough if enough time has
-        // elapsed since SSTable created.
-        if (System.currentTimeMillis() < sstable.getCreationTimeFor(Component.DATA) + tombstoneCompactionInterval * 1000)
-           return false;
-
-        double droppableRatio = sstable.getEstimatedDroppableTombstoneRatio(gcBefore);
-        if (droppableRatio <= tombstoneThreshold)
+        if (!mayHaveDroppableTombstones(sstable, gcBefore))
             return false;
 
         //sstable range overlap check is disabled. See CASSANDRA-6563.
@@ -382,26 +386,171 @@ public abstract class AbstractCompactionStrategy
         {
             return true;
         }
-        else
+
+        TombstoneMetadata tombstoneIndex = sstable.getTombstoneMetadata();
+        if (tombstoneIndex != null)
+            return new PurgeableTombstones(sstable, tombstoneIndex, overlaps, gcBefore, overlappingTombstoneCompaction).purgeableRatio() > tombstoneThreshold;
+
+        // what percentage of columns do we expect to compact outside of overlap?
+        if (sstable.getIndexSummarySize() < 2)
         {
-            // what percentage of columns do we expect to compact outside of overlap?
-            if (sstable.getIndexSummarySize() < 2)
+            // we have too few samples to estimate correct percentage
+            return false;
+        }
+        // first, calculate estimated keys that do not overlap
+        long keys = sstable.estimatedKeys();
+        Set<Range<Token>> ranges = new HashSet<Range<Token>>(overlaps.size());
+        for (SSTableReader overlap : overlaps)
+            ranges.add(new Range<>(overlap.first.getToken(), overlap.last.getToken()));
+        long remainingKeys = keys - sstable.estimatedKeysForRanges(ranges);
+        // next, calculate what percentage of columns we have within those keys
+        long columns = sstable.getEstimatedColumnCount().mean() * remainingKeys;
+        double remainingColumnsRatio = ((double) columns) / (sstable.getEstimatedColumnCount().count() * sstable.getEstimatedColumnCount().mean());
+
+        // return if we still expect to have droppable tombstones in rest of columns
+        return remainingColumnsRatio * sstable.getEstimatedDroppableTombstoneRatio(gcBefore) > tombstoneThreshold;
+    }
+
+    private boolean mayHaveDroppableTombstones(SSTableReader sstable, int gcBefore)
+    {
+        // since we use estimations to calculate, there is a chance that compaction will not drop tombstones actually.
+        // if that happens we will end up in infinite compaction loop, so first we check enough if enough time has
+        // elapsed since SSTable created.
+        if (System.currentTimeMillis() < sstable.getCreationTimeFor(Component.DATA) + tombstoneCompactionInterval * 1000)
+           return false;
+
+        return sstable.getEstimatedDroppableTombstoneRatio(gcBefore) > tombstoneThreshold;
+    }
+
+    /**
+     * Picks the tombstone compaction expected to purge the most tombstones per byte rewritten.
+     *
+     * For each sstable with enough droppable tombstones, its tombstone index tells which token ranges hold them and
+     * which overlapping sstables would keep them from being purged there. Compacting the sstable alone only purges
+     * the unblocked ranges. With overlapping_tombstone_compaction, pulling in the sstables blocking the dense ranges
+     * purges those too, at the cost of rewriting them, and both options are scored. The best one across all sstables
+     * wins.
+     *
+     * @param candidates sstables that may be compacted to drop their tombstones
+     * @param mergeable sstables that may be pulled into such a compaction to unblock purging
+     * @param maxThreshold maximum number of sstables in the compaction
+     * @return the sstables to compact, or an empty list if no compaction is expected to purge enough
+     */
+    protected List<SSTableReader> getTombstoneCompactionCandidates(Iterable<SSTableReader> candidates, Set<SSTableReader> mergeable, int maxThreshold, int gcBefore)
+    {
+        List<SSTableReader> best = Collections.emptyList();
+        double bestScore = 0;
+        for (SSTableReader sstable : candidates)
+        {
+            TombstoneMetadata tombstoneIndex = sstable.getTombstoneMetadata();
+            if (tombstoneIndex == null || uncheckedTombstoneCompaction)
             {
-                // we have too few samples to estimate correct percentage
-                return false;
+                if (!worthDroppingTombstones(sstable, gcBefore))
+                    continue;
+                // without an index all we have is the sstable-wide estimate
+                double cells = sstable.getEstimatedColumnCount().count() * sstable.getEstimatedColumnCount().mean();
+                double score = sstable.getEstimatedDroppableTombstoneRatio(gcBefore) * cells / sstable.onDiskLength();
+                if (score > bestScore)
+                {
+                    best = Collections.singletonList(sstable);
+                    bestScore = score;
+                }
+                continue;
             }
-            // first, calculate estimated keys that do not overlap
-            long keys = sstable.estimatedKeys();
-            Set<Range<Token>> ranges = new HashSet<Range<Token>>(overlaps.size());
-            for (SSTableReader overlap : overlaps)
-                ranges.add(new Range<>(overlap.first.getToken(), overlap.last.getToken()));
-            long remainingKeys = keys - sstable.estimatedKeysForRanges(ranges);
-            // next, calculate what percentage of columns we have within those keys
-            long columns = sstable.getEstimatedColumnCount().mean() * remainingKeys;
-            double remainingColumnsRatio = ((double) columns) / (sstable.getEstimatedColumnCount().count() * sstable.getEstimatedColumnCount().mean());
-
-            // return if we still expect to have droppable tombstones in rest of columns
-            return remainingColumnsRatio * droppableRatio > tombstoneThreshold;
+
+            if (!mayHaveDroppableTombstones(sstable, gcBefore))
+                continue;
+
+            Collection<SSTableReader> overlaps = cfs.getOverlappingSSTables(Collections.singleton(sstable));
+            if (!overlaps.isEmpty() && CompactionController.getFullyExpiredSSTables(cfs, Collections.singleton(sstable), overlaps, gcBefore).size() > 0)
+                return Collections.singletonList(sstable);
+
+            PurgeableTombstones alone = new PurgeableTombstones(sstable, tombstoneIndex, overlaps, gcBefore, overlappingTombstoneCompaction);
+            if (alone.purgeableRatio() > tombstoneThreshold)
+            {
+                double score = alone.purgeable / sstable.onDiskLength();
+                if (score > bestScore)
+                {
+                    best = Collections.singletonList(sstable);
+                    bestScore = score;
+                }
+            }
+
+            if (!overlappingTombstoneCompaction || alone.blockers.isEmpty() || alone.blockers.size() >= maxThreshold || !mergeable.containsAll(alone.blockers))
+                continue;
+
+            PurgeableTombstones merged = new PurgeableTombstones(sstable, tombstoneIndex, Sets.difference(new HashSet<>(overlaps), alone.blockers), gcBefore, true);
+            if (merged.purgeableRatio() > tombstoneThreshold)
+            {
+                long bytes = sstable.onDiskLength();
+                for (SSTableReader blocker : alone.blockers)
+                    bytes += blocker.onDiskLength();
+                double score = merged.purgeable / bytes;
+                if (score > bestScore)
+                {
+                    best = new ArrayList<>(alone.blockers.size() + 1);
+                    best.add(sstable);
+                    best.addAll(alone.blockers);
+                    bestScore = score;
+                }
+            }
+        }
+        if (best.size() > 1)
+            logger.debug("Compacting {} together to purge tombstones in the ranges they overlap", best);
+        return best;
+    }
+
+    /**
+     * Estimate of the tombstones a compaction of an sstable can purge, given the overlapping sstables left out of it.
+     *
+     * Tombstones in a token range covered by an overlapping sstable cannot be purged, as they could still shadow data
+     * of that sstable. If ignoreNewerOverlaps is set, overlapping sstables whose data is all newer do not get in the way.
+     */
+    @VisibleForTesting
+    static class PurgeableTombstones
+    {
+        final double purgeable;
+        final double blocked;
+        final long cells;
+        /** the overlapping sstables blocking the purge of {@link #blocked} tombstones */
+        final Set<SSTableReader> blockers = new HashSet<>();
+
+        PurgeableTombstones(SSTableReader sstable, TombstoneMetadata tombstoneIndex, Collection<SSTableReader> overlaps, int gcBefore, boolean ignoreNewerOverlaps)
+        {
+            double purgeable = 0;
+            double blocked = 0;
+            for (TombstoneMetadata.Segment segment : tombstoneIndex.segments)
+            {
+                double droppable = segment.droppableTombstones(gcBefore);
+                if (droppable == 0)
+                    continue;
+
+                DecoratedKey first = sstable.partitioner.decorateKey(segment.firstKey);
+                DecoratedKey last = sstable.partitioner.decorateKey(segment.lastKey);
+                boolean isBlocked = false;
+                for (SSTableReader overlap : overlaps)
+                {
+                    if ((!ignoreNewerOverlaps || overlap.getMinTimestamp() <= sstable.getMaxTimestamp())
+                        && overlap.first.compareTo(last) <= 0
+                        && overlap.last.compareTo(first) >= 0)
+                    {
+                        blockers.add(overlap);
+                        isBlocked = true;
+                    }
+                }
+                if (isBlocked)
+                    blocked += droppable;
+                else
+                    purgeable += droppable;
+            }
+            this.purgeable = purgeable;
+            this.blocked = blocked;
+            this.cells = tombstoneIndex.cells();
+        }
+
+        double purgeableRatio()
+        {
+            return cells == 0 ? 0 : purgeable / cells;
         }
     }
 
@@ -448,6 +597,13 @@ public abstract class AbstractCompactionStrategy
                 throw new ConfigurationException(String.format("'%s' should be either 'true' or 'false', not '%s'",UNCHECKED_TOMBSTONE_COMPACTION_OPTION, unchecked));
         }
 
+        String overlapping = options.get(OVERLAPPING_TOMBSTONE_COMPACTION_OPTION);
+        if (overlapping != null)
+        {
+            if (!overlapping.equalsIgnoreCase("true") && !overlapping.equalsIgnoreCase("false"))
+                throw new ConfigurationException(String.format("'%s' should be either 'true' or 'false', not '%s'", OVERLAPPING_TOMBSTONE_COMPACTION_OPTION, overlapping));
+        }
+
         String compactionEnabled = options.get(COMPACTION_ENABLED);
         if (compactionEnabled != null)
         {
@@ -460,6 +616,7 @@ public abstract class AbstractCompactionStrategy
         uncheckedOptions.remove(TOMBSTONE_THRESHOLD_OPTION);
         uncheckedOptions.remove(TOMBSTONE_COMPACTION_INTERVAL_OPTION);
         uncheckedOptions.remove(UNCHECKED_TOMBSTONE_COMPACTION_OPTION);
+        uncheckedOptions.remove(OVERLAPPING_TOMBSTONE_COMPACTION_OPTION);
         uncheckedOptions.remove(COMPACTION_ENABLED);
         return uncheckedOptions;
     }
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction;
+
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.UUID;
+
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+/**
+ * Progress of a compaction as recorded in system.compactions_in_progress: the output sstables that were finished
+ * for good, and the last partition key they contain. The inputs are only removed once the compaction completes, so
+ * after a restart both are live and the compaction can pick up after {@link #lastKey}.
+ */
+public class CompactionCheckpoint
+{
+    public final UUID taskId;
+    public final String keyspace;
+    public final String columnFamily;
+    public final Set<Integer> inputs;
+    public final Set<Integer> outputs;
+    public final ByteBuffer lastKey;
+
+    public CompactionCheckpoint(UUID taskId, String keyspace, String columnFamily, Set<Integer> inputs, Set<Integer> outputs, ByteBuffer lastKey)
+    {
+        this.taskId = taskId;
+        this.keyspace = keyspace;
+        this.columnFamily = columnFamily;
+        this.inputs = inputs;
+        this.outputs = outputs;
+        this.lastKey = lastKey;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("CompactionCheckpoint(%s, %s.%s, inputs=%s, outputs=%s, lastKey=%s)",
+                             taskId, keyspace, columnFamily, inputs, outputs, ByteBufferUtil.bytesToHex(lastKey));
+    }
+}
@@ -447,35 +447,32 @@ public class CompactionManager implements CompactionManagerMBean
         Set<SSTableReader> sstables = new HashSet<>(validatedForRepair);
         Set<SSTableReader> mutatedRepairStatuses = new HashSet<>();
         Set<SSTableReader> nonAnticompacting = new HashSet<>();
+        List<Range<Token>> normalizedRanges = Range.normalize(ranges);
         Iterator<SSTableReader> sstableIterator = sstables.iterator();
         try
         {
             while (sstableIterator.hasNext())
             {
                 SSTableReader sstable = sstableIterator.next();
-                for (Range<Token> r : Range.normalize(ranges))
+                Bounds<Token> sstableBounds = new Bounds<>(sstable.first.getToken(), sstable.last.getToken());
+                RepairedCoverage coverage = getRepairedCoverage(sstable, sstableBounds, normalizedRanges);
+                if (coverage == RepairedCoverage.FULL)
                 {
-                    Range<Token> sstableRange = new Range<>(sstable.first.getToken(), sstable.last.getToken());
-                    if (r.contains(sstableRange))
-                    {
-                        logger.info("SSTable {} fully contained in range {}, mutating repairedAt instead of anticompacting", sstable, r);
-                        sstable.descriptor.getMetadataSerializer().mutateRepairedAt(sstable.descriptor, repairedAt);
-                        sstable.reloadSSTableMetadata();
-                        mutatedRepairStatuses.add(sstable);
-                        sstableIterator.remove();
-                        break;
-                    }
-                    else if (!sstableRange.intersects(r))
-                    {
-                        logger.info("SSTable {} ({}) does not intersect repaired range {}, not touching repairedAt.", sstable, sstableRange, r);
-                        nonAnticompacting.add(sstable);
-                        sstableIterator.remove();
-                        break;
-                    }
-                    else
-                    {
-                        logger.info("SSTable {} ({}) will be anticompacted on range {}", sstable, sstableRange, r);
-                    }
+                    logger.info("SSTable {} ({}) fully contained in repaired ranges, mutating repairedAt instead of anticompacting", sstable, sstableBounds);
+                    sstable.descriptor.getMetadataSerializer().mutateRepairedAt(sstable.descriptor, repairedAt);
+                    sstable.reloadSSTableMetadata();
+                    mutatedRepairStatuses.add(sstable);
+                    sstableIterator.remove();
+                }
+                else if (coverage == RepairedCoverage.NONE)
+                {
+                    logger.info("SSTable {} ({}) does not intersect repaired ranges, not touching repairedAt.", sstable, sstableBounds);
+                    nonAnticompacting.add(sstable);
+                    sstableIterator.remove();
+                }
+                else
+                {
+                    logger.info("SSTable {} ({}) will be anticompacted on ranges {}", sstable, sstableBounds, normalizedRanges);
                 }
             }
             cfs.getDataTracker().notifySSTableRepairedStatusChanged(mutatedRepairStatuses);
@@ -493,6 +490,35 @@ public class CompactionManager implements CompactionManagerMBean
         logger.info(String.format("Completed anticompaction successfully"));
     }
 
+    private enum RepairedCoverage { NONE, PARTIAL, FULL }
+
+    /**
+     * Classifies an sstable against the (normalized) repaired ranges. The cheap check on the sstable bounds settles
+     * most cases; when the bounds straddle a range edge we ask the index which sections of the data file actually
+     * hold repaired keys, so that an sstable whose keys all fall on one side is not rewritten just because its
+     * bounds happen to span a gap between ranges.
+     */
+    private static RepairedCoverage getRepairedCoverage(SSTableReader sstable, Bounds<Token> sstableBounds, List<Range<Token>> normalizedRanges)
+    {
+        boolean intersects = false;
+        for (Range<Token> r : normalizedRanges)
+        {
+            if (r.contains(sstableBounds.left) && r.contains(sstableBounds.right))
+                return RepairedCoverage.FULL;
+            if (r.intersects(sstableBounds))
+                intersects = true;
+        }
+        if (!intersects)
+            return RepairedCoverage.NONE;
+
+        long repairedBytes = 0;
+        for (Pair<Long, Long> section : sstable.getPositionsForRanges(normalizedRanges))
+            repairedBytes += section.right - section.left;
+        if (repairedBytes == 0)
+            return RepairedCoverage.NONE;
+        return repairedBytes == sstable.uncompressedLength() ? RepairedCoverage.FULL : RepairedCoverage.PARTIAL;
+    }
+
     public void performMaximal(final ColumnFamilyStore cfStore)
     {
         FBUtilities.waitOnFutures(submitMaximal(cfStore, getDefaultGcBefore(cfStore)));
@@ -529,6 +555,77 @@ public class CompactionManager implements CompactionManagerMBean
         return futures;
     }
 
+    /**
+     * Resumes compactions interrupted by a restart after their last checkpoint. A checkpoint can't be resumed if any
+     * of its input or output sstables is gone or already being compacted; its outputs are then obsoleted if all of
+     * its inputs are still live, as they would only duplicate their data, and left in place otherwise.
+     */
+    public List<Future<?>> submitResumedCompactions(Collection<CompactionCheckpoint> checkpoints)
+    {
+        List<Future<?>> futures = new ArrayList<>();
+        for (CompactionCheckpoint checkpoint : checkpoints)
+        {
+            CFMetaData metadata = Schema.instance.getCFMetaData(checkpoint.keyspace, checkpoint.columnFamily);
+            if (metadata == null)
+                continue;
+            ColumnFamilyStore cfs = Keyspace.open(checkpoint.keyspace).getColumnFamilyStore(metadata.cfId);
+
+            Set<SSTableReader> inputs = new HashSet<>();
+            Set<SSTableReader> outputs = new HashSet<>();
+            for (SSTableReader sstable : cfs.getSSTables())
+            {
+                if (checkpoint.inputs.contains(sstable.descriptor.generation))
+                    inputs.add(sstable);
+                else if (checkpoint.outputs.contains(sstable.descriptor.generation))
+                    outputs.add(sstable);
+            }
+            if (inputs.size() != checkpoint.inputs.size())
+            {
+                logger.info("Not resuming {}, some of its input sstables are missing", checkpoint);
+                continue;
+            }
+            if (outputs.size() != checkpoint.outputs.size() || !cfs.getDataTracker().markCompacting(Sets.union(inputs, outputs)))
+            {
+                logger.info("Not resuming {}, some of its sstables are missing or compacting", checkpoint);
+                discardCheckpointedOutputs(cfs, outputs);
+                continue;
+            }
+
+            logger.info("Resuming {}", checkpoint);
+            final AbstractCompactionTask task = new ResumedCompactionTask(cfs, inputs, outputs, getDefaultGcBefore(cfs), checkpoint);
+            Runnable runnable = new WrappedRunnable()
+            {
+                protected void runMayThrow() throws IOException
+                {
+                    task.execute(metrics);
+                }
+            };
+            if (executor.isShutdown())
+            {
+                logger.info("Compaction executor has shut down, not submitting task");
+                cfs.getDataTracker().unmarkCompacting(Sets.union(inputs, outputs));
+                break;
+            }
+            futures.add(executor.submit(runnable));
+        }
+        return futures;
+    }
+
+    private static void discardCheckpointedOutputs(ColumnFamilyStore cfs, Set<SSTableReader> outputs)
+    {
+        if (outputs.isEmpty() || !cfs.getDataTracker().markCompacting(outputs))
+            return;
+
+        try
+        {
+            cfs.markObsolete(outputs, OperationType.COMPACTION);
+        }
+        finally
+        {
+            cfs.getDataTracker().unmarkCompacting(outputs);
+        }
+    }
+
     public void forceUserDefinedCompaction(String dataFiles)
     {
         String[] filenames = dataFiles.split(",");
@@ -1155,23 +1252,35 @@ public class CompactionManager implements CompactionManagerMBean
             unRepairedSSTableWriter.switchWriter(CompactionManager.createWriterForAntiCompaction(cfs, destination, expectedBloomFilterSize, ActiveRepairService.UNREPAIRED_SSTABLE, sstableAsSet));
 
             CompactionIterable ci = new CompactionIterable(OperationType.ANTICOMPACTION, scanners.scanners, controller, DatabaseDescriptor.getSSTableFormat());
-            Iterator<AbstractCompactedRow> iter = ci.iterator();
-            while(iter.hasNext())
+            metrics.beginCompaction(ci);
+            try
             {
-                AbstractCompactedRow row = iter.next();
-                // if current range from sstable is repaired, save it into the new repaired sstable
-                if (Range.isInRanges(row.key.getToken(), ranges))
-                {
-                    repairedSSTableWriter.append(row);
-                    repairedKeyCount++;
-                }
-                // otherwise save into the new 'non-repaired' table
-                else
+                // both outputs are written in the same pass over the merged input, so every partition is read once
+                Iterator<AbstractCompactedRow> iter = ci.iterator();
+                while (iter.hasNext())
                 {
-                    unRepairedSSTableWriter.append(row);
-                    unrepairedKeyCount++;
+                    if (ci.isStopRequested())
+                        throw new CompactionInterruptedException(ci.getCompactionInfo());
+
+                    AbstractCompactedRow row = iter.next();
+                    // if current range from sstable is repaired, save it into the new repaired sstable
+                    if (Range.isInRanges(row.key.getToken(), ranges))
+                    {
+                        repairedSSTableWriter.append(row);
+                        repairedKeyCount++;
+                    }
+                    // otherwise save into the new 'non-repaired' table
+                    else
+                    {
+                        unRepairedSSTableWriter.append(row);
+                        unrepairedKeyCount++;
+                    }
                 }
             }
+            finally
+            {
+                metrics.finishCompaction(ci);
+            }
             // we have the same readers being rewritten by both writers, so we ask the first one NOT to close them
             // so that the second one can do so safely, without leaving us with references < 0 or any other ugliness
             List<SSTableReader> anticompactedSSTables = new ArrayList<>();
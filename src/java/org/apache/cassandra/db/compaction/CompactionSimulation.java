@@ -0,0 +1,564 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Lists;
+
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.cql3.statements.CFPropDefs;
+import org.apache.cassandra.utils.Pair;
+
+/**
+ * A coarse, offline model of how a compaction strategy behaves on a table.
+ *
+ * Starting from the sstables a node has on disk, described only by their size, partition count, level and
+ * timestamps, it replays flushes at a given write rate and applies the bucketing (STCS, DTCS) or levelling (LCS)
+ * rules of the strategy to them, to predict write amplification, peak disk usage and the number of sstables a
+ * read has to look at. Partition overlap between sstables is estimated from the overwrite ratio of the workload,
+ * so the numbers are meant to compare strategies and options with each other, not to be exact.
+ */
+public class CompactionSimulation
+{
+    private static final int MAX_COMPACTIONS_PER_FLUSH = 1000;
+
+    public static class SimulatedSSTable
+    {
+        public final long bytes;
+        public final long partitions;
+        public final long minTimestamp;
+        public final long maxTimestamp;
+        public final int level;
+
+        public SimulatedSSTable(long bytes, long partitions, long minTimestamp, long maxTimestamp, int level)
+        {
+            this.bytes = bytes;
+            this.partitions = Math.max(1, partitions);
+            this.minTimestamp = minTimestamp;
+            this.maxTimestamp = maxTimestamp;
+            this.level = level;
+        }
+    }
+
+    public static class Parameters
+    {
+        /** rate at which data is flushed, in bytes per second */
+        public long writeBytesPerSecond = 1024L * 1024L;
+        /** size of a flushed sstable */
+        public long flushBytes = 64L * 1024L * 1024L;
+        public long durationSeconds = TimeUnit.DAYS.toSeconds(1);
+        /** compaction throughput in bytes per second, shared by all compactors like compaction_throughput_mb_per_sec; 0 means unthrottled */
+        public long compactionBytesPerSecond = 16L * 1024L * 1024L;
+        public int concurrentCompactors = 1;
+        /** fraction of written partitions that already exist in the table */
+        public double overwriteRatio = 0.0;
+        /** number of distinct partitions in the table; estimated from the initial sstables if not set */
+        public long distinctPartitions = -1;
+    }
+
+    public static class Result
+    {
+        public final String strategy;
+        public long flushedBytes;
+        public long compactedBytes;
+        public long peakDiskBytes;
+        public long finalDiskBytes;
+        public int compactions;
+        public int finalSSTables;
+        public int pendingCompactions;
+        public double meanSSTablesPerRead;
+        public double maxSSTablesPerRead;
+
+        private Result(String strategy)
+        {
+            this.strategy = strategy;
+        }
+
+        public double writeAmplification()
+        {
+            return flushedBytes == 0 ? 0 : (double) (flushedBytes + compactedBytes) / flushedBytes;
+        }
+    }
+
+    private static class Candidate
+    {
+        final List<SimulatedSSTable> sstables;
+        final int level;
+        final long maxSSTableBytes;
+
+        Candidate(List<SimulatedSSTable> sstables, int level, long maxSSTableBytes)
+        {
+            this.sstables = sstables;
+            this.level = level;
+            this.maxSSTableBytes = maxSSTableBytes;
+        }
+    }
+
+    private static class RunningCompaction
+    {
+        final Candidate candidate;
+        final List<SimulatedSSTable> outputs;
+        long remainingBytes;
+
+        RunningCompaction(Candidate candidate, List<SimulatedSSTable> outputs)
+        {
+            this.candidate = candidate;
+            this.outputs = outputs;
+            this.remainingBytes = bytes(candidate.sstables);
+        }
+    }
+
+    private final Parameters params;
+    private final SimulatedStrategy strategy;
+    private final List<SimulatedSSTable> live = new ArrayList<>();
+    private final List<RunningCompaction> running = new ArrayList<>();
+    private double distinctPartitions;
+
+    private CompactionSimulation(SimulatedStrategy strategy, Collection<SimulatedSSTable> initial, Parameters params)
+    {
+        this.strategy = strategy;
+        this.params = params;
+        this.live.addAll(initial);
+        long partitions = 0;
+        for (SimulatedSSTable sstable : initial)
+            partitions += sstable.partitions;
+        this.distinctPartitions = Math.max(1, params.distinctPartitions >= 0 ? params.distinctPartitions : partitions);
+    }
+
+    /**
+     * Simulates the given strategy.
+     *
+     * @param strategyClass the simple or fully qualified class name of SizeTieredCompactionStrategy,
+     *                      LeveledCompactionStrategy or DateTieredCompactionStrategy
+     * @param options the compaction options of the table, as given to the strategy
+     * @param initial the sstables the table starts with
+     */
+    public static Result simulate(String strategyClass, Map<String, String> options, Collection<SimulatedSSTable> initial, Parameters params)
+    {
+        return new CompactionSimulation(createStrategy(strategyClass, options), initial, params).run();
+    }
+
+    private static SimulatedStrategy createStrategy(String strategyClass, Map<String, String> options)
+    {
+        String name = strategyClass.contains(".") ? strategyClass.substring(strategyClass.lastIndexOf('.') + 1) : strategyClass;
+        if (name.equals(SizeTieredCompactionStrategy.class.getSimpleName()))
+            return new SimulatedSizeTiered(options);
+        if (name.equals(LeveledCompactionStrategy.class.getSimpleName()))
+            return new SimulatedLeveled(options);
+        if (name.equals(DateTieredCompactionStrategy.class.getSimpleName()))
+            return new SimulatedDateTiered(options);
+        throw new IllegalArgumentException("Cannot simulate compaction strategy " + strategyClass);
+    }
+
+    private Result run()
+    {
+        Result result = new Result(strategy.name());
+        double flushSeconds = (double) params.flushBytes / Math.max(1, params.writeBytesPerSecond);
+        long flushTimestamps = strategy.timestampResolution.convert(Math.max(1, Math.round(flushSeconds * 1000)), TimeUnit.MILLISECONDS);
+        long flushPartitions = Math.max(1, Math.round(params.flushBytes / averagePartitionBytes()));
+        long flushes = Math.max(1, Math.round(params.durationSeconds / flushSeconds));
+
+        long now = 0;
+        for (SimulatedSSTable sstable : live)
+            now = Math.max(now, sstable.maxTimestamp);
+        if (now == 0)
+            now = strategy.timestampResolution.convert(System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+
+        double readSamples = 0;
+        for (long i = 0; i < flushes; i++)
+        {
+            live.add(new SimulatedSSTable(params.flushBytes, flushPartitions, now, now + flushTimestamps, 0));
+            now += flushTimestamps;
+            result.flushedBytes += params.flushBytes;
+            distinctPartitions += flushPartitions * (1 - params.overwriteRatio);
+
+            long budget = params.compactionBytesPerSecond <= 0 ? Long.MAX_VALUE : (long) (params.compactionBytesPerSecond * flushSeconds);
+            progress(budget, result);
+            for (int started = 0; started < MAX_COMPACTIONS_PER_FLUSH && running.size() < params.concurrentCompactors; started++)
+            {
+                Candidate candidate = strategy.nextCompaction(idle(), live, now);
+                if (candidate == null)
+                    break;
+                running.add(new RunningCompaction(candidate, merge(candidate)));
+                result.compactions++;
+                // the output of every compaction that is running is on disk alongside its input
+                result.peakDiskBytes = Math.max(result.peakDiskBytes, diskBytes());
+                if (budget == Long.MAX_VALUE)
+                    progress(budget, result);
+            }
+
+            result.peakDiskBytes = Math.max(result.peakDiskBytes, diskBytes());
+            double sstablesPerRead = sstablesPerRead();
+            result.meanSSTablesPerRead += (sstablesPerRead - result.meanSSTablesPerRead) / ++readSamples;
+            result.maxSSTablesPerRead = Math.max(result.maxSSTablesPerRead, sstablesPerRead);
+        }
+
+        result.finalDiskBytes = bytes(live);
+        result.finalSSTables = live.size();
+        result.pendingCompactions = running.size();
+        return result;
+    }
+
+    /**
+     * Splits the budget evenly between the running compactions, like the global compaction throughput limit. What a
+     * compaction doesn't use once it is done goes to the others.
+     */
+    private void progress(long budget, Result result)
+    {
+        boolean finishedAny = true;
+        while (budget > 0 && finishedAny && !running.isEmpty())
+        {
+            long share = budget == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(1, budget / running.size());
+            long used = 0;
+            finishedAny = false;
+            Iterator<RunningCompaction> iter = running.iterator();
+            while (iter.hasNext())
+            {
+                RunningCompaction compaction = iter.next();
+                long progress = Math.min(share, Math.max(0, compaction.remainingBytes));
+                compaction.remainingBytes -= progress;
+                used += progress;
+                if (compaction.remainingBytes > 0)
+                    continue;
+
+                live.removeAll(compaction.candidate.sstables);
+                live.addAll(compaction.outputs);
+                result.compactedBytes += bytes(compaction.outputs);
+                iter.remove();
+                finishedAny = true;
+            }
+            if (budget != Long.MAX_VALUE)
+                budget -= used;
+        }
+    }
+
+    private List<SimulatedSSTable> idle()
+    {
+        Set<SimulatedSSTable> compacting = Collections.newSetFromMap(new IdentityHashMap<SimulatedSSTable, Boolean>());
+        for (RunningCompaction compaction : running)
+            compacting.addAll(compaction.candidate.sstables);
+        List<SimulatedSSTable> idle = new ArrayList<>(live.size());
+        for (SimulatedSSTable sstable : live)
+        {
+            if (!compacting.contains(sstable))
+                idle.add(sstable);
+        }
+        return idle;
+    }
+
+    private long diskBytes()
+    {
+        long bytes = bytes(live);
+        for (RunningCompaction compaction : running)
+            bytes += bytes(compaction.outputs);
+        return bytes;
+    }
+
+    private double averagePartitionBytes()
+    {
+        long partitions = 0;
+        for (SimulatedSSTable sstable : live)
+            partitions += sstable.partitions;
+        return partitions == 0 ? 1024 : (double) bytes(live) / partitions;
+    }
+
+    /**
+     * Estimates the sstables produced by compacting the candidate. Partitions written to several of the input
+     * sstables are merged; with overwrites spread uniformly over the table, a partition is in sstable i with
+     * probability p(i) / distinctPartitions, and the overwrite ratio scales that between "no overlap" (inserts
+     * only) and fully random overwrites.
+     */
+    private List<SimulatedSSTable> merge(Candidate candidate)
+    {
+        long partitions = 0;
+        long bytes = 0;
+        long maxPartitions = 0;
+        long minTimestamp = Long.MAX_VALUE;
+        long maxTimestamp = Long.MIN_VALUE;
+        double notInAny = 1;
+        // sstables of a same level above L0 are disjoint, so they are accounted for as a single set of partitions
+        Map<Integer, Long> perLevel = new HashMap<>();
+        for (SimulatedSSTable sstable : candidate.sstables)
+        {
+            partitions += sstable.partitions;
+            bytes += sstable.bytes;
+            maxPartitions = Math.max(maxPartitions, sstable.partitions);
+            minTimestamp = Math.min(minTimestamp, sstable.minTimestamp);
+            maxTimestamp = Math.max(maxTimestamp, sstable.maxTimestamp);
+            if (sstable.level == 0)
+            {
+                notInAny *= 1 - Math.min(1, sstable.partitions / distinctPartitions);
+            }
+            else
+            {
+                Long level = perLevel.get(sstable.level);
+                perLevel.put(sstable.level, (level == null ? 0 : level) + sstable.partitions);
+            }
+        }
+        for (long level : perLevel.values())
+        {
+            maxPartitions = Math.max(maxPartitions, level);
+            notInAny *= 1 - Math.min(1, level / distinctPartitions);
+        }
+        double overlapped = partitions - distinctPartitions * (1 - notInAny);
+        long merged = Math.max(maxPartitions, Math.round(partitions - params.overwriteRatio * Math.max(0, overlapped)));
+        long mergedBytes = Math.round((double) bytes * merged / partitions);
+
+        int count = (int) Math.max(1, (mergedBytes + candidate.maxSSTableBytes - 1) / candidate.maxSSTableBytes);
+        List<SimulatedSSTable> outputs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            outputs.add(new SimulatedSSTable(mergedBytes / count, merged / count, minTimestamp, maxTimestamp, candidate.level));
+        return outputs;
+    }
+
+    /**
+     * @return the expected number of sstables holding a given partition. sstables of the same level above L0
+     * do not overlap, so each level contributes at most one.
+     */
+    private double sstablesPerRead()
+    {
+        Map<Integer, Double> perLevel = new HashMap<>();
+        double total = 0;
+        for (SimulatedSSTable sstable : live)
+        {
+            double p = Math.min(1, sstable.partitions / distinctPartitions);
+            if (sstable.level == 0)
+            {
+                total += p;
+            }
+            else
+            {
+                Double level = perLevel.get(sstable.level);
+                perLevel.put(sstable.level, (level == null ? 0 : level) + p);
+            }
+        }
+        for (double level : perLevel.values())
+            total += Math.min(1, level);
+        return total;
+    }
+
+    private static long bytes(Collection<SimulatedSSTable> sstables)
+    {
+        long bytes = 0;
+        for (SimulatedSSTable sstable : sstables)
+            bytes += sstable.bytes;
+        return bytes;
+    }
+
+    private static List<Pair<SimulatedSSTable, Long>> sizePairs(Collection<SimulatedSSTable> sstables)
+    {
+        List<Pair<SimulatedSSTable, Long>> pairs = new ArrayList<>(sstables.size());
+        for (SimulatedSSTable sstable : sstables)
+            pairs.add(Pair.create(sstable, sstable.bytes));
+        return pairs;
+    }
+
+    private static abstract class SimulatedStrategy
+    {
+        protected final int minThreshold;
+        protected final int maxThreshold;
+        protected final TimeUnit timestampResolution;
+
+        protected SimulatedStrategy(Map<String, String> options)
+        {
+            minThreshold = intOption(options, CFPropDefs.KW_MINCOMPACTIONTHRESHOLD, CFMetaData.DEFAULT_MIN_COMPACTION_THRESHOLD);
+            maxThreshold = intOption(options, CFPropDefs.KW_MAXCOMPACTIONTHRESHOLD, CFMetaData.DEFAULT_MAX_COMPACTION_THRESHOLD);
+            String resolution = options.get(DateTieredCompactionStrategyOptions.TIMESTAMP_RESOLUTION_KEY);
+            timestampResolution = resolution == null ? DateTieredCompactionStrategyOptions.DEFAULT_TIMESTAMP_RESOLUTION : TimeUnit.valueOf(resolution);
+        }
+
+        abstract String name();
+
+        /**
+         * @return the next compaction the strategy would start, among the @param idle sstables, or null
+         */
+        abstract Candidate nextCompaction(List<SimulatedSSTable> idle, List<SimulatedSSTable> live, long now);
+
+        /**
+         * @return the most interesting size-tiered bucket of @param sstables: the one with the smallest sstables,
+         * since the simulation has no read hotness to go by
+         */
+        protected List<SimulatedSSTable> sizeTieredBucket(Collection<SimulatedSSTable> sstables, SizeTieredCompactionStrategyOptions options)
+        {
+            List<SimulatedSSTable> best = Collections.emptyList();
+            long bestAverage = Long.MAX_VALUE;
+            for (List<SimulatedSSTable> bucket : SizeTieredCompactionStrategy.getBuckets(sizePairs(sstables), options.bucketHigh, options.bucketLow, options.minSSTableSize))
+            {
+                if (bucket.size() < minThreshold)
+                    continue;
+                List<SimulatedSSTable> trimmed = bucket.subList(0, Math.min(bucket.size(), maxThreshold));
+                long average = bytes(trimmed) / trimmed.size();
+                if (average < bestAverage)
+                {
+                    best = trimmed;
+                    bestAverage = average;
+                }
+            }
+            return best;
+        }
+
+        private static int intOption(Map<String, String> options, String key, int defaultValue)
+        {
+            String value = options.get(key);
+            return value == null ? defaultValue : Integer.parseInt(value);
+        }
+    }
+
+    private static class SimulatedSizeTiered extends SimulatedStrategy
+    {
+        private final SizeTieredCompactionStrategyOptions options;
+
+        SimulatedSizeTiered(Map<String, String> options)
+        {
+            super(options);
+            this.options = new SizeTieredCompactionStrategyOptions(options);
+        }
+
+        String name()
+        {
+            return SizeTieredCompactionStrategy.class.getSimpleName();
+        }
+
+        Candidate nextCompaction(List<SimulatedSSTable> idle, List<SimulatedSSTable> live, long now)
+        {
+            List<SimulatedSSTable> bucket = sizeTieredBucket(idle, options);
+            return bucket.isEmpty() ? null : new Candidate(new ArrayList<>(bucket), 0, Long.MAX_VALUE);
+        }
+    }
+
+    private static class SimulatedDateTiered extends SimulatedStrategy
+    {
+        private final DateTieredCompactionStrategyOptions options;
+
+        SimulatedDateTiered(Map<String, String> options)
+        {
+            super(options);
+            this.options = new DateTieredCompactionStrategyOptions(options);
+        }
+
+        String name()
+        {
+            return DateTieredCompactionStrategy.class.getSimpleName();
+        }
+
+        Candidate nextCompaction(List<SimulatedSSTable> idle, List<SimulatedSSTable> live, long now)
+        {
+            List<Pair<SimulatedSSTable, Long>> pairs = new ArrayList<>(idle.size());
+            for (SimulatedSSTable sstable : idle)
+            {
+                if (sstable.maxTimestamp >= now - options.maxSSTableAge)
+                    pairs.add(Pair.create(sstable, sstable.minTimestamp));
+            }
+
+            // same as DateTieredCompactionStrategy.newestBucket
+            for (List<SimulatedSSTable> bucket : DateTieredCompactionStrategy.getBuckets(pairs, options.baseTime, minThreshold, now))
+            {
+                if (bucket.size() >= minThreshold)
+                    return new Candidate(Lists.newArrayList(bucket.subList(0, Math.min(bucket.size(), maxThreshold))), 0, Long.MAX_VALUE);
+            }
+            return null;
+        }
+    }
+
+    private static class SimulatedLeveled extends SimulatedStrategy
+    {
+        private static final int MAX_COMPACTING_L0 = 32;
+        private static final int LEVELS = 9;
+
+        private final SizeTieredCompactionStrategyOptions options;
+        private final long maxSSTableBytes;
+        // round-robin position in each level, standing in for LeveledManifest.lastCompactedKeys
+        private final int[] nextInLevel = new int[LEVELS];
+
+        SimulatedLeveled(Map<String, String> options)
+        {
+            super(options);
+            this.options = new SizeTieredCompactionStrategyOptions(options);
+            String size = options.get(LeveledCompactionStrategy.SSTABLE_SIZE_OPTION);
+            this.maxSSTableBytes = (size == null ? 160L : Long.parseLong(size)) * 1024L * 1024L;
+        }
+
+        String name()
+        {
+            return LeveledCompactionStrategy.class.getSimpleName();
+        }
+
+        private long maxBytesForLevel(int level)
+        {
+            return level == 0 ? 4L * maxSSTableBytes : (long) (Math.pow(10, level) * maxSSTableBytes);
+        }
+
+        Candidate nextCompaction(List<SimulatedSSTable> idle, List<SimulatedSSTable> live, long now)
+        {
+            List<List<SimulatedSSTable>> idleLevels = byLevel(idle);
+            List<List<SimulatedSSTable>> liveLevels = byLevel(live);
+
+            // see LeveledManifest.getCompactionCandidates
+            for (int level = LEVELS - 2; level > 0; level--)
+            {
+                List<SimulatedSSTable> sstables = idleLevels.get(level);
+                if (sstables.isEmpty() || (double) bytes(sstables) / maxBytesForLevel(level) <= 1.001)
+                    continue;
+
+                if (liveLevels.get(0).size() > MAX_COMPACTING_L0)
+                {
+                    List<SimulatedSSTable> bucket = sizeTieredBucket(idleLevels.get(0), options);
+                    if (!bucket.isEmpty())
+                        return new Candidate(new ArrayList<>(bucket), 0, Long.MAX_VALUE);
+                }
+
+                SimulatedSSTable sstable = sstables.get(nextInLevel[level]++ % sstables.size());
+                List<SimulatedSSTable> candidates = Lists.newArrayList(sstable);
+                // a sstable covers its share of the level's token range, and overlaps the same share of the next level
+                List<SimulatedSSTable> next = liveLevels.get(level + 1);
+                long overlapping = (long) ((double) sstable.bytes / bytes(liveLevels.get(level)) * bytes(next));
+                for (SimulatedSSTable candidate : idleLevels.get(level + 1))
+                {
+                    if (bytes(candidates) - sstable.bytes > overlapping)
+                        break;
+                    candidates.add(candidate);
+                }
+                return new Candidate(candidates, level + 1, maxSSTableBytes);
+            }
+
+            List<SimulatedSSTable> l0 = idleLevels.get(0);
+            if (l0.size() < 2)
+                return null;
+            List<SimulatedSSTable> candidates = new ArrayList<>(l0.subList(0, Math.min(l0.size(), MAX_COMPACTING_L0)));
+            if (bytes(candidates) < maxSSTableBytes)
+                return new Candidate(candidates, 0, maxSSTableBytes);
+            // L0 sstables span the whole ring, so they overlap every L1 sstable
+            if (idleLevels.get(1).size() != liveLevels.get(1).size())
+                return null;
+            candidates.addAll(idleLevels.get(1));
+            return new Candidate(candidates, 1, maxSSTableBytes);
+        }
+
+        private static List<List<SimulatedSSTable>> byLevel(Collection<SimulatedSSTable> sstables)
+        {
+            List<List<SimulatedSSTable>> levels = new ArrayList<>(LEVELS);
+            for (int i = 0; i < LEVELS; i++)
+                levels.add(new ArrayList<SimulatedSSTable>());
+            for (SimulatedSSTable sstable : sstables)
+                levels.get(Math.min(sstable.level, LEVELS - 1)).add(sstable);
+            return levels;
+        }
+    }
+}
@@ -20,7 +20,9 @@ package org.apache.cassandra.db.compaction;
 import java.io.File;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -41,8 +43,11 @@ import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.SystemKeyspace;
 import org.apache.cassandra.db.compaction.CompactionManager.CompactionExecutorStatsCollector;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.io.sstable.SSTableRewriter;
 import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
 import org.apache.cassandra.service.ActiveRepairService;
@@ -169,7 +174,7 @@ public class CompactionTask extends AbstractCompactionTask
             // SSTableScanners need to be closed before markCompactedSSTablesReplaced call as scanners contain references
             // to both ifile and dfile and SSTR will throw deletion errors on Windows if it tries to delete before scanner is closed.
             // See CASSANDRA-8019 and CASSANDRA-8399
-            try (AbstractCompactionStrategy.ScannerList scanners = strategy.getScanners(actuallyCompact))
+            try (AbstractCompactionStrategy.ScannerList scanners = strategy.getScanners(actuallyCompact, getCompactedRange()))
             {
                 ci = new CompactionIterable(compactionType, scanners.scanners, controller, sstableFormat);
                 Iterator<AbstractCompactedRow> iter = ci.iterator();
@@ -181,7 +186,12 @@ public class CompactionTask extends AbstractCompactionTask
                 if (collector != null)
                     collector.beginCompaction(ci);
                 long lastCheckObsoletion = start;
-                SSTableRewriter writer = new SSTableRewriter(cfs, sstables, maxAge, offline);
+                // counters are left out: their legacy local shards would be counted twice if outputs and inputs are
+                // both live after a restart
+                boolean checkpoint = taskId != null && !offline && !cfs.metadata.isCounter()
+                                     && DatabaseDescriptor.isCompactionCheckpointingEnabled();
+                int checkpointedCount = 0;
+                SSTableRewriter writer = new SSTableRewriter(cfs, sstables, maxAge, offline, checkpoint);
                 try
                 {
                     if (!iter.hasNext())
@@ -200,6 +210,11 @@ public class CompactionTask extends AbstractCompactionTask
                             throw new CompactionInterruptedException(ci.getCompactionInfo());
 
                         AbstractCompactedRow row = iter.next();
+                        if (newSSTableSegmentBoundaryReached(row.key) && writer.currentWriter().getFilePointer() > 0)
+                            writer.switchWriter(createCompactionWriter(cfs.directories.getLocationForDisk(getWriteDirectory(expectedSSTableSize)), keysPerSSTable, minRepairedAt, sstableFormat));
+                        if (checkpoint)
+                            checkpointedCount = maybeCheckpoint(taskId, writer, row.key, checkpointedCount);
+
                         if (writer.append(row) != null)
                         {
                             totalKeysWritten++;
@@ -224,6 +239,10 @@ public class CompactionTask extends AbstractCompactionTask
                     try
                     {
                         writer.abort();
+                        // the inputs are all still live, so the outputs of an earlier run would only duplicate them
+                        Collection<SSTableReader> resumedOutputs = getResumedOutputs();
+                        if (!resumedOutputs.isEmpty())
+                            cfs.markObsolete(resumedOutputs, compactionType);
                     }
                     catch (Throwable t2)
                     {
@@ -332,6 +351,53 @@ public class CompactionTask extends AbstractCompactionTask
         return false;
     }
 
+    // extensibility point for strategies that want to keep compaction output from spanning some keys;
+    // called with every key before it is written, in token order
+    protected boolean newSSTableSegmentBoundaryReached(DecoratedKey key)
+    {
+        return false;
+    }
+
+    /**
+     * Records the output sstables finished since the last checkpoint, unless the next key to write shares its token
+     * with the last key they hold: a resumed compaction starts after the token of that key.
+     *
+     * @return the number of output sstables covered by the latest checkpoint
+     */
+    private int maybeCheckpoint(UUID taskId, SSTableRewriter writer, DecoratedKey nextKey, int checkpointedCount)
+    {
+        List<SSTableReader> checkpointed = writer.checkpointed();
+        if (checkpointed.size() == checkpointedCount)
+            return checkpointedCount;
+
+        DecoratedKey lastKey = checkpointed.get(checkpointed.size() - 1).last;
+        if (lastKey.getToken().equals(nextKey.getToken()))
+            return checkpointedCount;
+
+        Set<Integer> outputs = new HashSet<>();
+        for (SSTableReader sstable : Iterables.concat(getResumedOutputs(), checkpointed))
+            outputs.add(sstable.descriptor.generation);
+        SystemKeyspace.checkpointCompaction(taskId, outputs, lastKey.getKey());
+        logger.debug("Checkpointed compaction {} after {}", taskId, lastKey);
+        return checkpointed.size();
+    }
+
+    /**
+     * @return the token range to compact, or null to compact the whole of the sstables
+     */
+    protected Range<Token> getCompactedRange()
+    {
+        return null;
+    }
+
+    /**
+     * @return the output sstables finished by an earlier run of this compaction, marked compacting
+     */
+    protected Collection<SSTableReader> getResumedOutputs()
+    {
+        return Collections.emptySet();
+    }
+
     public static long getMaxDataAge(Collection<SSTableReader> sstables)
     {
         long max = 0;
@@ -84,18 +84,10 @@ public class DateTieredCompactionStrategy extends AbstractCompactionStrategy
             return mostInteresting;
         }
 
-        // if there is no sstable to compact in standard way, try compacting single sstable whose droppable tombstone
-        // ratio is greater than threshold.
-        List<SSTableReader> sstablesWithTombstones = Lists.newArrayList();
-        for (SSTableReader sstable : candidates)
-        {
-            if (worthDroppingTombstones(sstable, gcBefore))
-                sstablesWithTombstones.add(sstable);
-        }
-        if (sstablesWithTombstones.isEmpty())
-            return Collections.emptyList();
-
-        return Collections.singletonList(Collections.min(sstablesWithTombstones, new SSTableReader.SizeComparator()));
+        // if there is no sstable to compact in standard way, try compacting the single sstable expected to purge the
+        // most tombstones per byte rewritten. Overlapping sstables are not pulled in, as they may belong to other
+        // time windows.
+        return getTombstoneCompactionCandidates(candidates, Collections.<SSTableReader>emptySet(), cfs.getMaximumCompactionThreshold(), gcBefore);
     }
 
     private List<SSTableReader> getCompactionCandidates(Iterable<SSTableReader> candidateSSTables, long now, int base)
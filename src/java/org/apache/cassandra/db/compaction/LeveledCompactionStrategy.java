@@ -49,7 +49,7 @@ import org.apache.cassandra.io.sstable.ISSTableScanner;
 public class LeveledCompactionStrategy extends AbstractCompactionStrategy
 {
     private static final Logger logger = LoggerFactory.getLogger(LeveledCompactionStrategy.class);
-    private static final String SSTABLE_SIZE_OPTION = "sstable_size_in_mb";
+    static final String SSTABLE_SIZE_OPTION = "sstable_size_in_mb";
 
     @VisibleForTesting
     final LeveledManifest manifest;
@@ -106,7 +106,8 @@ public class LeveledCompactionStrategy extends AbstractCompactionStrategy
         return tasks.iterator().next();
     }
 
-    public Collection<AbstractCompactionTask> getMaximalTask(int gcBefore)
+    // synchronized so that the manifest never sees a candidate it handed out before its sstables are marked compacting
+    public synchronized Collection<AbstractCompactionTask> getMaximalTask(int gcBefore)
     {
         while (true)
         {
@@ -133,7 +134,7 @@ public class LeveledCompactionStrategy extends AbstractCompactionStrategy
 
             if (cfs.getDataTracker().markCompacting(candidate.sstables))
             {
-                LeveledCompactionTask newTask = new LeveledCompactionTask(cfs, candidate.sstables, candidate.level, gcBefore, candidate.maxSSTableBytes);
+                LeveledCompactionTask newTask = new LeveledCompactionTask(cfs, candidate.sstables, candidate.level, gcBefore, candidate.maxSSTableBytes, candidate.boundaries);
                 newTask.setCompactionType(op);
                 return Arrays.<AbstractCompactionTask>asList(newTask);
             }
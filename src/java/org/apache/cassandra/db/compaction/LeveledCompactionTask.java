@@ -18,8 +18,12 @@
 package org.apache.cassandra.db.compaction;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.sstable.format.SSTableWriter;
 
@@ -27,12 +31,32 @@ public class LeveledCompactionTask extends CompactionTask
 {
     private final int level;
     private final long maxSSTableBytes;
+    private final List<Token> boundaries;
+    private int nextBoundary = 0;
 
     public LeveledCompactionTask(ColumnFamilyStore cfs, Collection<SSTableReader> sstables, int level, final int gcBefore, long maxSSTableBytes)
+    {
+        this(cfs, sstables, level, gcBefore, maxSSTableBytes, Collections.<Token>emptyList());
+    }
+
+    public LeveledCompactionTask(ColumnFamilyStore cfs, Collection<SSTableReader> sstables, int level, final int gcBefore, long maxSSTableBytes, List<Token> boundaries)
     {
         super(cfs, sstables, gcBefore, false);
         this.level = level;
         this.maxSSTableBytes = maxSSTableBytes;
+        this.boundaries = boundaries;
+    }
+
+    @Override
+    protected boolean newSSTableSegmentBoundaryReached(DecoratedKey key)
+    {
+        boolean reached = false;
+        while (nextBoundary < boundaries.size() && key.getToken().compareTo(boundaries.get(nextBoundary)) >= 0)
+        {
+            nextBoundary++;
+            reached = true;
+        }
+        return reached;
     }
 
     @Override
@@ -65,6 +65,12 @@ public class LeveledManifest
     private final int maxSSTableSizeInBytes;
     private final SizeTieredCompactionStrategyOptions options;
     private final int [] compactionCounter;
+    /**
+     * Token bounds claimed by the compactions we have handed out that write into a level above L0.
+     * Compactions writing into the same level must not produce overlapping sstables, so a candidate
+     * is only handed out if its bounds are clear of every reservation for its target level.
+     */
+    private final List<Reservation> reservations = new ArrayList<>();
 
     LeveledManifest(ColumnFamilyStore cfs, int maxSSTableSizeInMB, SizeTieredCompactionStrategyOptions options)
     {
@@ -271,6 +277,15 @@ public class LeveledManifest
      * If no compactions are necessary, will return null
      */
     public synchronized CompactionCandidate getCompactionCandidates()
+    {
+        releaseFinishedReservations();
+        CompactionCandidate candidate = chooseCompactionCandidate();
+        if (candidate != null && candidate.level > 0)
+            reservations.add(new Reservation(candidate.sstables, candidate.level));
+        return candidate;
+    }
+
+    private CompactionCandidate chooseCompactionCandidate()
     {
         // during bootstrap we only do size tiering in L0 to make sure
         // the streamed files can be placed in their original levels
@@ -280,7 +295,7 @@ public class LeveledManifest
             if (!mostInteresting.isEmpty())
             {
                 logger.info("Bootstrapping - doing STCS in L0");
-                return new CompactionCandidate(mostInteresting, 0, Long.MAX_VALUE);
+                return new CompactionCandidate(mostInteresting, 0, Long.MAX_VALUE, getL0ShardBoundaries());
             }
             return null;
         }
@@ -331,7 +346,7 @@ public class LeveledManifest
                     if (!mostInteresting.isEmpty())
                     {
                         logger.debug("L0 is too far behind, performing size-tiering there first");
-                        return new CompactionCandidate(mostInteresting, 0, Long.MAX_VALUE);
+                        return new CompactionCandidate(mostInteresting, 0, Long.MAX_VALUE, getL0ShardBoundaries());
                     }
                 }
 
@@ -357,18 +372,127 @@ public class LeveledManifest
             return null;
         Collection<SSTableReader> candidates = getCandidatesFor(0);
         if (candidates.isEmpty())
+        {
+            // every L0 -> L1 compaction we could start overlaps one that is already running; rather than
+            // leaving the compactor idle while L0 keeps growing, size-tier a part of L0 that is not busy
+            if (!DatabaseDescriptor.getDisableSTCSInL0() && getLevel(0).size() > MAX_COMPACTING_L0)
+            {
+                List<SSTableReader> mostInteresting = getSSTablesForSTCS(getLevel(0));
+                if (!mostInteresting.isEmpty())
+                {
+                    logger.debug("No L0 -> L1 compaction possible and L0 is behind, performing size-tiering in L0");
+                    return new CompactionCandidate(mostInteresting, 0, Long.MAX_VALUE, getL0ShardBoundaries());
+                }
+            }
             return null;
+        }
         return new CompactionCandidate(candidates, getNextLevel(candidates), cfs.getCompactionStrategy().getMaxSSTableBytes());
     }
 
+    /**
+     * Forgets the reservations of compactions that are no longer running. A compaction keeps all of its
+     * sstables marked as compacting until it either finishes or fails, and a candidate that could not be
+     * marked never had them marked in the first place, so both cases are caught here.
+     */
+    private void releaseFinishedReservations()
+    {
+        Set<SSTableReader> compacting = cfs.getDataTracker().getCompacting();
+        Iterator<Reservation> iter = reservations.iterator();
+        while (iter.hasNext())
+        {
+            if (!compacting.containsAll(iter.next().sstables))
+                iter.remove();
+        }
+    }
+
+    /**
+     * @return true if compacting @param candidates into @param level could create an sstable overlapping
+     * the output of a compaction into the same level that is still in progress
+     */
+    private boolean overlapsReservation(int level, Collection<SSTableReader> candidates)
+    {
+        Bounds<Token> bounds = Reservation.bounds(candidates);
+        for (Reservation reservation : reservations)
+        {
+            if (reservation.level == level && reservation.bounds.intersects(bounds))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Splits the ring into at most concurrent_compactors shards, using the first tokens of evenly spaced L1
+     * sstables as boundaries. Size-tiered compactions in L0 split their output on these boundaries, so that
+     * the L0 sstables they produce each fall in a single shard and can then be compacted (with each other
+     * and with L1) concurrently with the other shards.
+     *
+     * @return the sorted shard boundaries, or an empty list if L0 should not be partitioned
+     */
+    @VisibleForTesting
+    List<Token> getL0ShardBoundaries()
+    {
+        List<SSTableReader> l1 = new ArrayList<>(getLevel(1));
+        int shards = Math.min(DatabaseDescriptor.getConcurrentCompactors(), l1.size());
+        if (shards < 2)
+            return Collections.emptyList();
+
+        Collections.sort(l1, SSTableReader.sstableComparator);
+        List<Token> boundaries = new ArrayList<>(shards - 1);
+        for (int i = 1; i < shards; i++)
+            boundaries.add(l1.get(i * l1.size() / shards).first.getToken());
+        return boundaries;
+    }
+
+    /**
+     * @return the index of the shard containing all of @param sstable, or -1 if it spans several shards
+     */
+    @VisibleForTesting
+    static int getShard(SSTableReader sstable, List<Token> boundaries)
+    {
+        int shard = getShard(sstable.first.getToken(), boundaries);
+        return shard == getShard(sstable.last.getToken(), boundaries) ? shard : -1;
+    }
+
+    private static int getShard(Token token, List<Token> boundaries)
+    {
+        int shard = 0;
+        while (shard < boundaries.size() && token.compareTo(boundaries.get(shard)) >= 0)
+            shard++;
+        return shard;
+    }
+
+    private static Map<Integer, List<SSTableReader>> groupByShard(Iterable<SSTableReader> sstables, List<Token> boundaries)
+    {
+        Map<Integer, List<SSTableReader>> shards = new HashMap<>();
+        for (SSTableReader sstable : sstables)
+        {
+            int shard = getShard(sstable, boundaries);
+            List<SSTableReader> group = shards.get(shard);
+            if (group == null)
+            {
+                group = new ArrayList<>();
+                shards.put(shard, group);
+            }
+            group.add(sstable);
+        }
+        return shards;
+    }
+
     private List<SSTableReader> getSSTablesForSTCS(Collection<SSTableReader> sstables)
     {
         Iterable<SSTableReader> candidates = cfs.getDataTracker().getUncompactingSSTables(sstables);
-        List<Pair<SSTableReader,Long>> pairs = SizeTieredCompactionStrategy.createSSTableAndLengthPairs(AbstractCompactionStrategy.filterSuspectSSTables(candidates));
-        List<List<SSTableReader>> buckets = SizeTieredCompactionStrategy.getBuckets(pairs,
-                                                                                    options.bucketHigh,
-                                                                                    options.bucketLow,
-                                                                                    options.minSSTableSize);
+        // bucket every shard separately so that concurrent size-tiered compactions work on different parts of
+        // the ring, and so that compacting an sstable that lives in one shard never drags in the whole ring;
+        // sstables spanning several shards (typically fresh flushes) are bucketed together
+        List<List<SSTableReader>> buckets = new ArrayList<>();
+        for (List<SSTableReader> shard : groupByShard(AbstractCompactionStrategy.filterSuspectSSTables(candidates), getL0ShardBoundaries()).values())
+        {
+            List<Pair<SSTableReader,Long>> pairs = SizeTieredCompactionStrategy.createSSTableAndLengthPairs(shard);
+            buckets.addAll(SizeTieredCompactionStrategy.getBuckets(pairs,
+                                                                   options.bucketHigh,
+                                                                   options.bucketLow,
+                                                                   options.minSSTableSize));
+        }
         return SizeTieredCompactionStrategy.mostInterestingBucket(buckets, 4, 32);
     }
 
@@ -546,49 +670,43 @@ public class LeveledManifest
 
         if (level == 0)
         {
-            Set<SSTableReader> compactingL0 = ImmutableSet.copyOf(Iterables.filter(getLevel(0), Predicates.in(compacting)));
-
-            RowPosition lastCompactingKey = null;
-            RowPosition firstCompactingKey = null;
-            for (SSTableReader candidate : compactingL0)
-            {
-                if (firstCompactingKey == null || candidate.first.compareTo(firstCompactingKey) < 0)
-                    firstCompactingKey = candidate.first;
-                if (lastCompactingKey == null || candidate.last.compareTo(lastCompactingKey) > 0)
-                    lastCompactingKey = candidate.last;
-            }
-
             // L0 is the dumping ground for new sstables which thus may overlap each other.
             //
             // We treat L0 compactions specially:
             // 1a. add sstables to the candidate set until we have at least maxSSTableSizeInMB
             // 1b. prefer choosing older sstables as candidates, to newer ones
-            // 1c. any L0 sstables that overlap a candidate, will also become candidates
+            // 1c. any L0 sstables that overlap a candidate, will also become candidates. If L0 is split in
+            //     shards (see getL0ShardBoundaries), only overlapping sstables from the same shard are considered,
+            //     so that sstables spanning the whole ring do not serialize the compactions of every shard
             // 2. At most MAX_COMPACTING_L0 sstables from L0 will be compacted at once
             // 3. If total candidate size is less than maxSSTableSizeInMB, we won't bother compacting with L1,
             //    and the result of the compaction will stay in L0 instead of being promoted (see promote())
+            // 4. sstables that are already compacting are left alone, and so is every group of sstables that
+            //    overlaps L1 sstables that are compacting, or the range another compaction is writing to L1.
+            //    Those are skipped rather than failing the whole candidate set, so several L0 -> L1 compactions
+            //    covering different parts of the ring can run concurrently.
             //
             // Note that we ignore suspect-ness of L1 sstables here, since if an L1 sstable is suspect we're
             // basically screwed, since we expect all or most L0 sstables to overlap with each L1 sstable.
             // So if an L1 sstable is suspect we can't do much besides try anyway and hope for the best.
+            List<Token> boundaries = getL0ShardBoundaries();
             Set<SSTableReader> candidates = new HashSet<>();
             Set<SSTableReader> remaining = new HashSet<>();
-            Iterables.addAll(remaining, Iterables.filter(getLevel(0), Predicates.not(suspectP)));
+            Iterables.addAll(remaining, Iterables.filter(getLevel(0), Predicates.not(Predicates.or(suspectP, Predicates.in(compacting)))));
             for (SSTableReader sstable : ageSortedSSTables(remaining))
             {
-                if (candidates.contains(sstable))
+                if (candidates.contains(sstable) || !remaining.contains(sstable))
                     continue;
 
-                Sets.SetView<SSTableReader> overlappedL0 = Sets.union(Collections.singleton(sstable), overlapping(sstable, remaining));
-                if (!Sets.intersection(overlappedL0, compactingL0).isEmpty())
+                Set<SSTableReader> overlappedL0 = new HashSet<>(overlapping(sstable, sameShard(sstable, remaining, boundaries)));
+                overlappedL0.add(sstable);
+
+                Set<SSTableReader> newCandidates = Sets.union(candidates, overlappedL0).immutableCopy();
+                if (!Sets.intersection(overlapping(newCandidates, getLevel(1)), compacting).isEmpty() || overlapsReservation(1, newCandidates))
                     continue;
 
-                for (SSTableReader newCandidate : overlappedL0)
-                {
-                    if (firstCompactingKey == null || lastCompactingKey == null || overlapping(firstCompactingKey.getToken(), lastCompactingKey.getToken(), Arrays.asList(newCandidate)).size() == 0)
-                        candidates.add(newCandidate);
-                    remaining.remove(newCandidate);
-                }
+                candidates = new HashSet<>(newCandidates);
+                remaining.removeAll(overlappedL0);
 
                 if (candidates.size() > MAX_COMPACTING_L0)
                 {
@@ -601,13 +719,8 @@ public class LeveledManifest
             // leave everything in L0 if we didn't end up with a full sstable's worth of data
             if (SSTableReader.getTotalBytes(candidates) > maxSSTableSizeInBytes)
             {
-                // add sstables from L1 that overlap candidates
-                // if the overlapping ones are already busy in a compaction, leave it out.
-                // TODO try to find a set of L0 sstables that only overlaps with non-busy L1 sstables
-                Set<SSTableReader> l1overlapping = overlapping(candidates, getLevel(1));
-                if (Sets.intersection(l1overlapping, compacting).size() > 0)
-                    return Collections.emptyList();
-                candidates = Sets.union(candidates, l1overlapping);
+                // add sstables from L1 that overlap candidates; we made sure above that none of them is busy
+                candidates = Sets.union(candidates, overlapping(candidates, getLevel(1)));
             }
             if (candidates.size() < 2)
                 return Collections.emptyList();
@@ -636,7 +749,8 @@ public class LeveledManifest
             Set<SSTableReader> candidates = Sets.union(Collections.singleton(sstable), overlapping(sstable, getLevel(level + 1)));
             if (Iterables.any(candidates, suspectP))
                 continue;
-            if (Sets.intersection(candidates, compacting).isEmpty())
+            // another compaction into the next level may still be writing sstables in this range
+            if (Sets.intersection(candidates, compacting).isEmpty() && !overlapsReservation(level + 1, candidates))
                 return candidates;
         }
 
@@ -644,6 +758,25 @@ public class LeveledManifest
         return Collections.emptyList();
     }
 
+    /**
+     * @return the sstables of @param sstables that are in the same L0 shard as @param sstable, or all of them
+     * if it spans several shards
+     */
+    private static Iterable<SSTableReader> sameShard(SSTableReader sstable, Iterable<SSTableReader> sstables, final List<Token> boundaries)
+    {
+        final int shard = getShard(sstable, boundaries);
+        if (shard < 0)
+            return sstables;
+
+        return Iterables.filter(sstables, new Predicate<SSTableReader>()
+        {
+            public boolean apply(SSTableReader candidate)
+            {
+                return getShard(candidate, boundaries) == shard;
+            }
+        });
+    }
+
     private List<SSTableReader> ageSortedSSTables(Collection<SSTableReader> candidates)
     {
         List<SSTableReader> ageSortedCandidates = new ArrayList<>(candidates);
@@ -723,12 +856,52 @@ public class LeveledManifest
         public final Collection<SSTableReader> sstables;
         public final int level;
         public final long maxSSTableBytes;
+        /** tokens the compaction output must be split on, in addition to maxSSTableBytes */
+        public final List<Token> boundaries;
 
         public CompactionCandidate(Collection<SSTableReader> sstables, int level, long maxSSTableBytes)
+        {
+            this(sstables, level, maxSSTableBytes, Collections.<Token>emptyList());
+        }
+
+        public CompactionCandidate(Collection<SSTableReader> sstables, int level, long maxSSTableBytes, List<Token> boundaries)
         {
             this.sstables = sstables;
             this.level = level;
             this.maxSSTableBytes = maxSSTableBytes;
+            this.boundaries = boundaries;
+        }
+    }
+
+    private static class Reservation
+    {
+        public final Set<SSTableReader> sstables;
+        public final int level;
+        public final Bounds<Token> bounds;
+
+        Reservation(Collection<SSTableReader> sstables, int level)
+        {
+            this.sstables = ImmutableSet.copyOf(sstables);
+            this.level = level;
+            this.bounds = bounds(sstables);
+        }
+
+        /**
+         * @return the bounds of the sstables a compaction of @param sstables can write
+         */
+        static Bounds<Token> bounds(Collection<SSTableReader> sstables)
+        {
+            assert !sstables.isEmpty();
+            Token first = null;
+            Token last = null;
+            for (SSTableReader sstable : sstables)
+            {
+                if (first == null || sstable.first.getToken().compareTo(first) < 0)
+                    first = sstable.first.getToken();
+                if (last == null || sstable.last.getToken().compareTo(last) > 0)
+                    last = sstable.last.getToken();
+            }
+            return new Bounds<>(first, last);
         }
     }
 }
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction;
+
+import java.util.Collection;
+
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.io.sstable.format.SSTableWriter;
+
+/**
+ * Compacts what is left of a compaction interrupted by a restart: the partitions of its input sstables that come
+ * after the last key of the outputs it had already finished. Once done, the inputs are obsoleted as usual and the
+ * earlier outputs stay live next to the new ones; if it fails, the earlier outputs are obsoleted along with the new
+ * ones, as the inputs still hold all of their data.
+ *
+ * The new outputs go to the level the earlier ones were written to, with the same size limit, so that a leveled
+ * compaction picks up where it left off rather than dumping the rest of its data in L0.
+ */
+public class ResumedCompactionTask extends CompactionTask
+{
+    private final Collection<SSTableReader> outputs;
+    private final Range<Token> range;
+    private final int level;
+    private final long maxSSTableBytes;
+
+    /**
+     * @param outputs the sstables finished by the interrupted compaction; they must be marked compacting along with
+     *                the inputs, and are unmarked once this task is done
+     */
+    public ResumedCompactionTask(ColumnFamilyStore cfs, Collection<SSTableReader> sstables, Collection<SSTableReader> outputs, int gcBefore, CompactionCheckpoint checkpoint)
+    {
+        super(cfs, sstables, gcBefore, false);
+        this.outputs = outputs;
+        this.range = new Range<>(cfs.partitioner.decorateKey(checkpoint.lastKey).getToken(), cfs.partitioner.getMinimumToken());
+        this.level = getLevel(outputs);
+        // as for LeveledCompactionTask, only outputs past L0 are split by size
+        this.maxSSTableBytes = level > 0 ? cfs.getCompactionStrategy().getMaxSSTableBytes() : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return the level shared by the outputs, or 0 if they don't agree
+     */
+    static int getLevel(Collection<SSTableReader> outputs)
+    {
+        int level = -1;
+        for (SSTableReader sstable : outputs)
+        {
+            if (level >= 0 && level != sstable.getSSTableLevel())
+                return 0;
+            level = sstable.getSSTableLevel();
+        }
+        return Math.max(level, 0);
+    }
+
+    @Override
+    protected int getLevel()
+    {
+        return level;
+    }
+
+    @Override
+    protected boolean newSSTableSegmentThresholdReached(SSTableWriter writer)
+    {
+        return writer.getOnDiskFilePointer() > maxSSTableBytes;
+    }
+
+    @Override
+    protected boolean partialCompactionsAcceptable()
+    {
+        // the checkpoint covers all of the inputs
+        return false;
+    }
+
+    @Override
+    protected Range<Token> getCompactedRange()
+    {
+        return range;
+    }
+
+    @Override
+    protected Collection<SSTableReader> getResumedOutputs()
+    {
+        return outputs;
+    }
+
+    @Override
+    public int execute(CompactionManager.CompactionExecutorStatsCollector collector)
+    {
+        try
+        {
+            return super.execute(collector);
+        }
+        finally
+        {
+            cfs.getDataTracker().unmarkCompacting(outputs);
+        }
+    }
+}
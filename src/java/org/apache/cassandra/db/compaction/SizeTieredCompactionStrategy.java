@@ -92,19 +92,10 @@ public class SizeTieredCompactionStrategy extends AbstractCompactionStrategy
         if (!mostInteresting.isEmpty())
             return mostInteresting;
 
-        // if there is no sstable to compact in standard way, try compacting single sstable whose droppable tombstone
-        // ratio is greater than threshold.
-        List<SSTableReader> sstablesWithTombstones = new ArrayList<>();
-        for (SSTableReader sstable : candidates)
-        {
-            if (worthDroppingTombstones(sstable, gcBefore))
-                sstablesWithTombstones.add(sstable);
-        }
-        if (sstablesWithTombstones.isEmpty())
-            return Collections.emptyList();
-
-        Collections.sort(sstablesWithTombstones, new SSTableReader.SizeComparator());
-        return Collections.singletonList(sstablesWithTombstones.get(0));
+        // if there is no sstable to compact in standard way, try compacting the sstables expected to purge the most
+        // tombstones per byte rewritten, pulling in the overlapping sstables that would keep them from being purged.
+        Set<SSTableReader> mergeable = Sets.newHashSet(filterSuspectSSTables(Sets.intersection(cfs.getUncompactingSSTables(), sstables)));
+        return getTombstoneCompactionCandidates(candidates, mergeable, maxThreshold, gcBefore);
     }
 
     /**
@@ -30,6 +30,7 @@ public class ColumnCounter
 {
     protected int live;
     protected int ignored;
+    protected long collectedBytes;
     protected final long timestamp;
 
     public ColumnCounter(long timestamp)
@@ -45,6 +46,14 @@ public class ColumnCounter
             live++;
     }
 
+    /**
+     * Accounts for a cell added to the result of a read.
+     */
+    public void collected(Cell cell)
+    {
+        collectedBytes += cell.cellDataSize();
+    }
+
     protected static boolean isLive(Cell cell, DeletionInfo.InOrderTester tester, long timestamp)
     {
         return cell.isLive(timestamp) && !tester.isDeleted(cell);
@@ -60,6 +69,14 @@ public class ColumnCounter
         return ignored;
     }
 
+    /**
+     * @return the size of the cells passed to {@link #collected}
+     */
+    public long collectedBytes()
+    {
+        return collectedBytes;
+    }
+
     public ColumnCounter countAll(ColumnFamily container)
     {
         if (container == null)
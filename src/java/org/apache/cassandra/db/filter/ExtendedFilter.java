@@ -313,6 +313,11 @@ public abstract class ExtendedFilter
                 e.setKey(rowKey);
                 throw e;
             }
+            catch (ReadSizeOverwhelmingException e)
+            {
+                e.setKey(rowKey);
+                throw e;
+            }
             return pruned;
         }
 
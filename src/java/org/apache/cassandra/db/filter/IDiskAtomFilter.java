@@ -88,12 +88,23 @@ public interface IDiskAtomFilter
 
     public boolean isHeadFilter();
 
+    /**
+     * Whether this filter queries the end of the partition, in reverse order.
+     */
+    public boolean isTailFilter();
+
     /**
      * Whether the provided cf, that is assumed to contain the head of the
      * partition, contains enough data to cover this filter.
      */
     public boolean isFullyCoveredBy(ColumnFamily cf, long now);
 
+    /**
+     * Whether the provided cf, that is assumed to contain the tail of the
+     * partition, contains enough data to cover this filter.
+     */
+    public boolean isFullyCoveredByTail(ColumnFamily cf, long now);
+
     public static class Serializer implements IVersionedSerializer<IDiskAtomFilter>
     {
         private final CellNameType type;
@@ -167,11 +167,21 @@ public class NamesQueryFilter implements IDiskAtomFilter
             && cf.getComparator().compare(columns.last(), last) <= 0;
     }
 
+    public boolean isFullyCoveredByTail(ColumnFamily cf, long now)
+    {
+        return isFullyCoveredBy(cf, now);
+    }
+
     public boolean isHeadFilter()
     {
         return false;
     }
 
+    public boolean isTailFilter()
+    {
+        return false;
+    }
+
     public boolean countCQL3Rows(CellNameType comparator)
     {
         return countCQL3Rows;
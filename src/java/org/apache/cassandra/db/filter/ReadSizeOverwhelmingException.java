@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.filter;
+
+import org.apache.cassandra.db.DecoratedKey;
+
+/**
+ * Thrown when a read collects more cells from a partition than read_size_failure_threshold_in_kb allows.
+ */
+public class ReadSizeOverwhelmingException extends RuntimeException
+{
+    private final long bytes;
+    private final int numRequested;
+    private final String ksName;
+    private final String cfName;
+    private final String lastCellName;
+    private final String slicesInfo;
+    private String partitionKey = null;
+
+    public ReadSizeOverwhelmingException(long bytes, int numRequested, String ksName, String cfName,
+                                         String lastCellName, String slicesInfo)
+    {
+        this.bytes = bytes;
+        this.numRequested = numRequested;
+        this.ksName = ksName;
+        this.cfName = cfName;
+        this.lastCellName = lastCellName;
+        this.slicesInfo = slicesInfo;
+    }
+
+    public void setKey(DecoratedKey key)
+    {
+        if (key != null)
+            this.partitionKey = key.toString();
+    }
+
+    public String getLocalizedMessage()
+    {
+        return getMessage();
+    }
+
+    public String getMessage()
+    {
+        return String.format(
+                "Collected over %d bytes of cells in %s.%s; %d columns were requested; query aborted " +
+                "(see read_size_failure_threshold_in_kb); partitionKey=%s; lastCell=%s; slices=%s",
+                bytes, ksName, cfName, numRequested, partitionKey, lastCellName, slicesInfo);
+    }
+}
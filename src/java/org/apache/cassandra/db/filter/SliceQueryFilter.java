@@ -200,6 +200,7 @@ public class SliceQueryFilter implements IDiskAtomFilter
     {
         columnCounter = columnCounter(container.getComparator(), now);
         DeletionInfo.InOrderTester tester = container.deletionInfo().inOrderTester(reversed);
+        long readSizeFailureThreshold = respectTombstoneThresholds() ? DatabaseDescriptor.getReadSizeFailureThresholdInKB() * 1024L : 0;
 
         while (reducedColumns.hasNext())
         {
@@ -221,6 +222,15 @@ public class SliceQueryFilter implements IDiskAtomFilter
                                 container.getComparator().getString(cell.name()), getSlicesInfo(container),  container.deletionInfo().toString());
             }
 
+            columnCounter.collected(cell);
+            if (readSizeFailureThreshold > 0 && columnCounter.collectedBytes() > readSizeFailureThreshold)
+            {
+                Tracing.trace("Collected over {} bytes of cells; query aborted (see read_size_failure_threshold_in_kb); slices={}",
+                              readSizeFailureThreshold, getSlicesInfo(container));
+                throw new ReadSizeOverwhelmingException(columnCounter.collectedBytes(), count, container.metadata().ksName, container.metadata().cfName,
+                                                        container.getComparator().getString(cell.name()), getSlicesInfo(container));
+            }
+
             container.maybeAppendColumn(cell, tester, gcBefore);
         }
 
@@ -233,6 +243,13 @@ public class SliceQueryFilter implements IDiskAtomFilter
         }
         Tracing.trace("Read {} live and {} tombstoned cells{}",
                       new Object[]{ columnCounter.live(), columnCounter.ignored(), (warnTombstones ? " (see tombstone_warn_threshold)" : "") });
+
+        long readSizeWarnThreshold = DatabaseDescriptor.getReadSizeWarnThresholdInKB() * 1024L;
+        if (respectTombstoneThresholds() && readSizeWarnThreshold > 0 && columnCounter.collectedBytes() > readSizeWarnThreshold)
+        {
+            logger.warn("Collected {} bytes of cells in {}.{} (see read_size_warn_threshold_in_kb). {} columns were requested, slices={}",
+                        columnCounter.collectedBytes(), container.metadata().ksName, container.metadata().cfName, count, getSlicesInfo(container));
+        }
     }
 
     private String getSlicesInfo(ColumnFamily container)
@@ -252,6 +269,9 @@ public class SliceQueryFilter implements IDiskAtomFilter
         return sb.toString();
     }
 
+    /**
+     * Whether reads through this filter are subject to the tombstone and read size thresholds.
+     */
     protected boolean respectTombstoneThresholds()
     {
         return true;
@@ -334,6 +354,11 @@ public class SliceQueryFilter implements IDiskAtomFilter
         return columnCounter == null ? 0 : columnCounter.live();
     }
 
+    public long lastCollectedBytes()
+    {
+        return columnCounter == null ? 0 : columnCounter.collectedBytes();
+    }
+
     @Override
     public String toString()
     {
@@ -379,6 +404,11 @@ public class SliceQueryFilter implements IDiskAtomFilter
         return slices.length == 1 && slices[0].start.isEmpty() && !reversed;
     }
 
+    public boolean isTailFilter()
+    {
+        return slices.length == 1 && slices[0].start.isEmpty() && reversed;
+    }
+
     public boolean countCQL3Rows(CellNameType comparator)
     {
         // If comparator is dense a cell == a CQL3 rows so we're always counting CQL3 rows
@@ -396,6 +426,20 @@ public class SliceQueryFilter implements IDiskAtomFilter
         if (isHeadFilter() && count <= getLiveCount(cf, now))
             return true;
 
+        return isWithinBoundsOf(cf);
+    }
+
+    public boolean isFullyCoveredByTail(ColumnFamily cf, long now)
+    {
+        // same as above, from the end of the partition
+        if (isTailFilter() && count <= getLiveCount(cf, now))
+            return true;
+
+        return isWithinBoundsOf(cf);
+    }
+
+    private boolean isWithinBoundsOf(ColumnFamily cf)
+    {
         if (start().isEmpty() || finish().isEmpty() || !cf.hasColumns())
             return false;
 
@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.compress;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Adler32;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import org.apache.cassandra.concurrent.DebuggableThreadPoolExecutor;
+import org.apache.cassandra.io.FSReadError;
+import org.apache.cassandra.io.sstable.CorruptSSTableException;
+import org.apache.cassandra.io.util.RandomAccessReader;
+
+/**
+ * CRAR for sequential passes over a data file: the chunks following the one being read are fetched and decompressed
+ * on a shared executor, so that a scan only waits on the disk when it gets ahead of the read-ahead.
+ *
+ * Up to {@code depth} chunks are in flight at any time, each into one of the reader's own chunk-sized buffers, which
+ * is swapped with the reader's buffer when the scan gets to it. A seek outside of the read-ahead drops it and reads
+ * that chunk synchronously before starting again from there.
+ *
+ * Only used with standard disk access, mmap'ed files are left to the OS read-ahead.
+ */
+public class CompressedPrefetchingReader extends CompressedRandomAccessReader
+{
+    private static final ExecutorService prefetchExecutor =
+        DebuggableThreadPoolExecutor.createWithMaximumPoolSize("ChunkPrefetcher",
+                                                               Runtime.getRuntime().availableProcessors(),
+                                                               60,
+                                                               TimeUnit.SECONDS);
+
+    private final CompressionMetadata metadata;
+    private final RateLimiter limiter;
+    private final int depth;
+
+    // chunks being read ahead, in file order
+    private final Deque<Prefetch> prefetches;
+    // uncompressed buffers not currently in use by the reader or a prefetch
+    private final Deque<ByteBuffer> freeBuffers;
+    // uncompressed position of the next chunk to read ahead
+    private long nextPrefetch;
+
+    protected CompressedPrefetchingReader(String dataFilePath, CompressionMetadata metadata, RateLimiter limiter, int depth) throws FileNotFoundException
+    {
+        super(dataFilePath, metadata, null);
+        assert !useMmap && depth > 0;
+        this.metadata = metadata;
+        this.limiter = limiter;
+        this.depth = depth;
+        this.prefetches = new ArrayDeque<>(depth);
+        this.freeBuffers = new ArrayDeque<>(depth);
+    }
+
+    /**
+     * @param limiter background i/o RateLimiter; may be null
+     * @param depth number of chunks to read ahead; a plain (or throttled) reader is returned if it isn't positive
+     */
+    public static RandomAccessReader open(String path, CompressionMetadata metadata, RateLimiter limiter, int depth)
+    {
+        if (depth <= 0 || useMmap)
+            return limiter == null ? CompressedRandomAccessReader.open(path, metadata) : CompressedThrottledReader.open(path, metadata, limiter);
+
+        try
+        {
+            return new CompressedPrefetchingReader(path, metadata, limiter, depth);
+        }
+        catch (FileNotFoundException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    protected void reBuffer()
+    {
+        if (limiter != null)
+            limiter.acquire(buffer.capacity());
+
+        long position = current();
+        assert position < metadata.dataLength;
+        long chunkStart = position & ~(buffer.capacity() - 1);
+
+        // drop whatever was read ahead of a chunk we've skipped past, or that we went back from
+        while (!prefetches.isEmpty() && prefetches.peekFirst().position != chunkStart)
+            prefetches.pollFirst().cancel();
+
+        Prefetch prefetch = prefetches.pollFirst();
+        if (prefetch == null)
+        {
+            super.reBuffer();
+            nextPrefetch = chunkStart + buffer.capacity();
+        }
+        else
+        {
+            ByteBuffer uncompressed = prefetch.get();
+            freeBuffers.addLast(buffer);
+            buffer = uncompressed;
+            bufferOffset = chunkStart;
+            buffer.position((int) (position - bufferOffset));
+        }
+
+        while (prefetches.size() < depth && nextPrefetch < metadata.dataLength)
+        {
+            ByteBuffer target = freeBuffers.isEmpty() ? ByteBuffer.allocate(buffer.capacity()) : freeBuffers.pollFirst();
+            prefetches.addLast(new Prefetch(nextPrefetch, target));
+            nextPrefetch += buffer.capacity();
+        }
+    }
+
+    @Override
+    public void deallocate()
+    {
+        while (!prefetches.isEmpty())
+            prefetches.pollFirst().cancel();
+        freeBuffers.clear();
+        super.deallocate();
+    }
+
+    @Override
+    public int getTotalBufferSize()
+    {
+        return super.getTotalBufferSize() * (1 + depth);
+    }
+
+    /**
+     * A chunk read and decompressed on the prefetch executor. The read is positioned, so it doesn't move the channel
+     * the reader itself uses when it has to read synchronously.
+     */
+    private class Prefetch implements Callable<ByteBuffer>
+    {
+        final long position;
+        final ByteBuffer target;
+        final Future<ByteBuffer> future;
+
+        Prefetch(long position, ByteBuffer target)
+        {
+            this.position = position;
+            this.target = target;
+            this.future = prefetchExecutor.submit(this);
+        }
+
+        public ByteBuffer call() throws IOException
+        {
+            CompressionMetadata.Chunk chunk = metadata.chunkFor(position);
+            // the checksum directly follows the chunk
+            ByteBuffer compressed = ByteBuffer.allocate(chunk.length + 4);
+            while (compressed.hasRemaining())
+            {
+                if (channel.read(compressed, chunk.offset + compressed.position()) < 0)
+                    throw new CorruptBlockException(getPath(), chunk);
+            }
+
+            int decompressedBytes;
+            try
+            {
+                decompressedBytes = metadata.compressor().uncompress(compressed.array(), 0, chunk.length, target.array(), 0);
+            }
+            catch (IOException e)
+            {
+                throw new CorruptBlockException(getPath(), chunk);
+            }
+
+            if (metadata.parameters.getCrcCheckChance() > ThreadLocalRandom.current().nextDouble())
+            {
+                Adler32 checksum = new Adler32();
+                checksum.update(compressed.array(), 0, chunk.length);
+                if (compressed.getInt(chunk.length) != (int) checksum.getValue())
+                    throw new CorruptBlockException(getPath(), chunk);
+            }
+
+            target.clear();
+            target.limit(decompressedBytes);
+            return target;
+        }
+
+        ByteBuffer get()
+        {
+            try
+            {
+                return Uninterruptibles.getUninterruptibly(future);
+            }
+            catch (ExecutionException e)
+            {
+                Throwable cause = e.getCause();
+                if (cause instanceof CorruptBlockException)
+                    throw new CorruptSSTableException((CorruptBlockException) cause, getPath());
+                if (cause instanceof IOException)
+                    throw new FSReadError(cause, getPath());
+                throw new RuntimeException(cause);
+            }
+        }
+
+        /**
+         * The target buffer is not recycled, as a prefetch that has started may still be writing to it.
+         */
+        void cancel()
+        {
+            future.cancel(false);
+        }
+    }
+}
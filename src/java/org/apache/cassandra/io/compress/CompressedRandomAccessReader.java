@@ -38,6 +38,7 @@ import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.io.util.PoolingSegmentedFile;
 import org.apache.cassandra.io.util.RandomAccessReader;
 import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.memory.BufferPool;
 
 /**
  * CRAR extends RAR to transparently uncompress blocks from the file into RAR.buffer.  Most of the RAR
@@ -45,7 +46,7 @@ import org.apache.cassandra.utils.FBUtilities;
  */
 public class CompressedRandomAccessReader extends RandomAccessReader
 {
-    private static final boolean useMmap = DatabaseDescriptor.getDiskAccessMode() == Config.DiskAccessMode.mmap;
+    protected static final boolean useMmap = DatabaseDescriptor.getDiskAccessMode() == Config.DiskAccessMode.mmap;
 
     public static CompressedRandomAccessReader open(String dataFilePath, CompressionMetadata metadata)
     {
@@ -133,7 +134,7 @@ public class CompressedRandomAccessReader extends RandomAccessReader
     {
         assert Integer.bitCount(bufferSize) == 1;
         return useMmap && useDirect
-                ? ByteBuffer.allocateDirect(bufferSize)
+                ? BufferPool.get(bufferSize)
                 : ByteBuffer.allocate(bufferSize);
     }
 
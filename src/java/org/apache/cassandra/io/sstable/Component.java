@@ -55,6 +55,8 @@ public class Component
         SUMMARY("Summary.db"),
         // table of contents, stores the list of all components for the sstable
         TOC("TOC.txt"),
+        // per token range tombstone density, used to pick tombstone compactions
+        TOMBSTONE_INDEX("TombstoneIndex.db"),
         // custom component, used by e.g. custom compaction strategy
         CUSTOM(null);
 
@@ -83,6 +85,7 @@ public class Component
     public final static Component CRC = new Component(Type.CRC);
     public final static Component SUMMARY = new Component(Type.SUMMARY);
     public final static Component TOC = new Component(Type.TOC);
+    public final static Component TOMBSTONE_INDEX = new Component(Type.TOMBSTONE_INDEX);
 
     public final Type type;
     public final String name;
@@ -29,6 +29,7 @@ import org.apache.cassandra.db.DataTracker;
 import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.RowIndexEntry;
 import org.apache.cassandra.db.compaction.AbstractCompactedRow;
+import org.apache.cassandra.db.compaction.OperationType;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.sstable.format.SSTableWriter;
 import org.apache.cassandra.utils.CLibrary;
@@ -48,6 +49,10 @@ import org.apache.cassandra.utils.FBUtilities;
  * On abort we restore the original lower bounds to the existing readers and delete any temporary files we had in progress,
  * but leave any hard-links in place for the readers we opened to cleanup when they're finished as we would had we finished
  * successfully.
+ *
+ * If created to checkpoint, a writer that is rolled over is finished for good instead of being left as a tmp file, so
+ * that it survives a restart. Such sstables are removed on abort like the others: they only hold a compacted copy of
+ * data that is still present in the readers we restored, and would overlap with them.
  */
 public class SSTableRewriter
 {
@@ -83,11 +88,18 @@ public class SSTableRewriter
     // into discard, so that abort can cleanup after us safely
     private final List<SSTableReader> discard = new ArrayList<>();
     private final boolean isOffline; // true for operations that are performed without Cassandra running (prevents updates of DataTracker)
+    private final boolean checkpoint;
+    private final List<SSTableReader> checkpointed = new ArrayList<>(); // writers finished for good when rolled over
 
     private SSTableWriter writer;
     private Map<DecoratedKey, RowIndexEntry> cachedKeys = new HashMap<>();
 
     public SSTableRewriter(ColumnFamilyStore cfs, Set<SSTableReader> rewriting, long maxAge, boolean isOffline)
+    {
+        this(cfs, rewriting, maxAge, isOffline, false);
+    }
+
+    public SSTableRewriter(ColumnFamilyStore cfs, Set<SSTableReader> rewriting, long maxAge, boolean isOffline, boolean checkpoint)
     {
         this.rewriting = rewriting;
         for (SSTableReader sstable : rewriting)
@@ -99,6 +111,7 @@ public class SSTableRewriter
         this.cfs = cfs;
         this.maxAge = maxAge;
         this.isOffline = isOffline;
+        this.checkpoint = checkpoint;
     }
 
     public SSTableWriter currentWriter()
@@ -106,6 +119,14 @@ public class SSTableRewriter
         return writer;
     }
 
+    /**
+     * @return the sstables finished for good so far, in the order they were written, if created to checkpoint
+     */
+    public List<SSTableReader> checkpointed()
+    {
+        return Collections.unmodifiableList(checkpointed);
+    }
+
     public RowIndexEntry append(AbstractCompactedRow row)
     {
         // we do this before appending to ensure we can resetAndTruncate() safely if the append fails
@@ -181,6 +202,25 @@ public class SSTableRewriter
         switchWriter(null, true);
         moveStarts(null, null, true);
 
+        // the checkpointed sstables are live and overlap with the readers we just restored, so they are obsoleted
+        if (!checkpointed.isEmpty())
+        {
+            if (isOffline)
+            {
+                for (SSTableReader sstable : checkpointed)
+                {
+                    sstable.markObsolete();
+                    sstable.selfRef().release();
+                }
+            }
+            else
+            {
+                dataTracker.markObsolete(checkpointed, OperationType.COMPACTION);
+                dataTracker.unmarkCompacting(checkpointed);
+            }
+            checkpointed.clear();
+        }
+
         // remove already completed SSTables
         for (SSTableReader sstable : finished)
         {
@@ -314,8 +354,15 @@ public class SSTableRewriter
             return;
         }
 
+        if (checkpoint && writer.getFilePointer() != 0 && !abort)
+        {
+            SSTableReader reader = writer.finish(SSTableWriter.FinishType.NORMAL, maxAge, -1);
+            replaceEarlyOpenedFile(currentlyOpenedEarly, reader);
+            moveStarts(reader, reader.last, false);
+            checkpointed.add(reader);
+        }
         // we leave it as a tmp file, but we open it and add it to the dataTracker
-        if (writer.getFilePointer() != 0 && !abort)
+        else if (writer.getFilePointer() != 0 && !abort)
         {
             SSTableReader reader = writer.finish(SSTableWriter.FinishType.EARLY, maxAge, -1);
             replaceEarlyOpenedFile(currentlyOpenedEarly, reader);
@@ -397,6 +444,12 @@ public class SSTableRewriter
         if (throwLate)
             throw new RuntimeException("exception thrown after all sstables finished, for testing");
 
+        // the checkpointed sstables are already live, they only need to stop being marked as compacting
+        if (!isOffline)
+            dataTracker.unmarkCompacting(checkpointed);
+        finished.addAll(0, checkpointed);
+        checkpointed.clear();
+
         replaceWithFinishedReaders(newReaders);
         return finished;
     }
@@ -195,6 +195,9 @@ public abstract class SSTableReader extends SSTable implements RefCounted<SSTabl
 
     // not final since we need to be able to change level on a file.
     protected volatile StatsMetadata sstableMetadata;
+    // loaded lazily, since only compaction strategies picking tombstone compactions need it
+    private static final TombstoneMetadata NO_TOMBSTONE_METADATA = new TombstoneMetadata(Collections.<TombstoneMetadata.Segment>emptyList());
+    private volatile TombstoneMetadata tombstoneMetadata;
 
     protected final AtomicLong keyCacheHit = new AtomicLong(0);
     protected final AtomicLong keyCacheRequest = new AtomicLong(0);
@@ -1642,6 +1645,34 @@ public abstract class SSTableReader extends SSTable implements RefCounted<SSTabl
         return sstableMetadata.maxTimestamp;
     }
 
+    /**
+     * @return the per token range tombstone density of this sstable, or null if it was written without one
+     */
+    public TombstoneMetadata getTombstoneMetadata()
+    {
+        if (tombstoneMetadata == null)
+        {
+            File file = new File(descriptor.filenameFor(Component.TOMBSTONE_INDEX));
+            if (!components.contains(Component.TOMBSTONE_INDEX) || !file.exists())
+            {
+                tombstoneMetadata = NO_TOMBSTONE_METADATA;
+            }
+            else
+            {
+                try (RandomAccessReader in = RandomAccessReader.open(file))
+                {
+                    tombstoneMetadata = TombstoneMetadata.serializer.deserialize(in);
+                }
+                catch (IOException e)
+                {
+                    SSTableReader.logOpenException(descriptor, e);
+                    tombstoneMetadata = NO_TOMBSTONE_METADATA;
+                }
+            }
+        }
+        return tombstoneMetadata == NO_TOMBSTONE_METADATA ? null : tombstoneMetadata;
+    }
+
     public Set<Integer> getAncestors()
     {
         try
@@ -1691,6 +1722,17 @@ public abstract class SSTableReader extends SSTable implements RefCounted<SSTabl
         return dfile.createReader();
     }
 
+    /**
+     * Opens a reader for a sequential pass over the data file (scans, compaction, validation), which reads compressed
+     * chunks ahead of the current position if sequential_read_prefetch_chunks is set.
+     *
+     * @param limiter background i/o RateLimiter; may be null
+     */
+    public RandomAccessReader openSequentialDataReader(RateLimiter limiter)
+    {
+        return dfile.createSequentialReader(limiter, DatabaseDescriptor.getSequentialReadPrefetchChunks());
+    }
+
     public RandomAccessReader openIndexReader()
     {
         return ifile.createReader();
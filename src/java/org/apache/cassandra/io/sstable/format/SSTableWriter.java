@@ -120,7 +120,8 @@ public abstract class SSTableWriter extends SSTable
                 Component.STATS,
                 Component.SUMMARY,
                 Component.TOC,
-                Component.DIGEST));
+                Component.DIGEST,
+                Component.TOMBSTONE_INDEX));
 
         if (metadata.getBloomFilterFpChance() < 1.0)
             components.add(Component.FILTER);
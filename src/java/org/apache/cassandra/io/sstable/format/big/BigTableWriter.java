@@ -46,6 +46,7 @@ import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
 import org.apache.cassandra.io.sstable.metadata.MetadataComponent;
 import org.apache.cassandra.io.sstable.metadata.MetadataType;
 import org.apache.cassandra.io.sstable.metadata.StatsMetadata;
+import org.apache.cassandra.io.sstable.metadata.TombstoneMetadata;
 import org.apache.cassandra.io.util.DataOutputPlus;
 import org.apache.cassandra.io.util.DataOutputStreamAndChannel;
 import org.apache.cassandra.io.util.FileMark;
@@ -153,7 +154,9 @@ public class BigTableWriter extends SSTableWriter
             throw new FSWriteError(e, dataFile.getPath());
         }
         long endPosition = dataFile.getFilePointer();
-        metadataCollector.update(endPosition - startPosition, row.columnStats());
+        ColumnStats stats = row.columnStats();
+        metadataCollector.update(endPosition - startPosition, stats)
+                         .updateTombstoneIndex(row.key.getKey(), endPosition - startPosition, stats.columnCount, stats.tombstoneHistogram);
         afterAppend(row.key, endPosition, entry);
         return entry;
     }
@@ -179,7 +182,10 @@ public class BigTableWriter extends SSTableWriter
         {
             throw new FSWriteError(e, dataFile.getPath());
         }
-        metadataCollector.update(dataFile.getFilePointer() - startPosition, cf.getColumnStats());
+        ColumnStats stats = cf.getColumnStats();
+        long rowSize = dataFile.getFilePointer() - startPosition;
+        metadataCollector.update(rowSize, stats)
+                         .updateTombstoneIndex(decoratedKey.getKey(), rowSize, stats.columnCount, stats.tombstoneHistogram);
     }
 
     private static RowIndexEntry rawAppend(ColumnFamily cf, long startPosition, DecoratedKey key, DataOutputPlus out) throws IOException
@@ -278,7 +284,8 @@ public class BigTableWriter extends SSTableWriter
                          .mergeTombstoneHistogram(tombstones)
                          .updateMinColumnNames(minColumnNames)
                          .updateMaxColumnNames(maxColumnNames)
-                         .updateHasLegacyCounterShards(hasLegacyCounterShards);
+                         .updateHasLegacyCounterShards(hasLegacyCounterShards)
+                         .updateTombstoneIndex(key.getKey(), dataFile.getFilePointer() - currentPosition, columnIndexer.writtenAtomCount(), tombstones);
 
         afterAppend(key, currentPosition, RowIndexEntry.create(currentPosition, cf.deletionInfo().getTopLevelDeletion(), columnIndexer.build()));
         return currentPosition;
@@ -467,6 +474,7 @@ public class BigTableWriter extends SSTableWriter
         {
             dataFile.writeFullChecksum(descriptor);
             writeMetadata(descriptor, metadataComponents);
+            writeTombstoneIndex(descriptor, metadataCollector.finalizeTombstoneIndex());
             // save the table of components
             SSTable.appendTOC(descriptor, components);
             descriptor = rename(descriptor, components);
@@ -475,6 +483,23 @@ public class BigTableWriter extends SSTableWriter
         return Pair.create(descriptor, (StatsMetadata) metadataComponents.get(MetadataType.STATS));
     }
 
+    private static void writeTombstoneIndex(Descriptor desc, TombstoneMetadata tombstoneIndex)
+    {
+        SequentialWriter out = SequentialWriter.open(new File(desc.filenameFor(Component.TOMBSTONE_INDEX)));
+        try
+        {
+            TombstoneMetadata.serializer.serialize(tombstoneIndex, out.stream);
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, out.getPath());
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
     private static void writeMetadata(Descriptor desc, Map<MetadataType, MetadataComponent> components)
     {
         SequentialWriter out = SequentialWriter.open(new File(desc.filenameFor(Component.STATS)));
@@ -94,6 +94,7 @@ public class MetadataCollector
     protected List<ByteBuffer> minColumnNames = Collections.emptyList();
     protected List<ByteBuffer> maxColumnNames = Collections.emptyList();
     protected boolean hasLegacyCounterShards = false;
+    protected TombstoneMetadata.Builder tombstoneIndex = new TombstoneMetadata.Builder();
 
     /**
      * Default cardinality estimation method is to use HyperLogLog++.
@@ -229,6 +230,21 @@ public class MetadataCollector
         return this;
     }
 
+    public MetadataCollector updateTombstoneIndex(ByteBuffer key, long rowSize, long columnCount, StreamingHistogram tombstones)
+    {
+        tombstoneIndex.add(key, rowSize, columnCount, tombstones);
+        return this;
+    }
+
+    /**
+     * @return the tombstone index of the partitions seen so far, written to its own component rather than with the
+     * components returned by {@link #finalizeMetadata}
+     */
+    public TombstoneMetadata finalizeTombstoneIndex()
+    {
+        return tombstoneIndex.build();
+    }
+
     public MetadataCollector update(long rowSize, ColumnStats stats)
     {
         updateMinTimestamp(stats.minTimestamp);
@@ -0,0 +1,279 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable.metadata;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import org.apache.cassandra.db.TypeSizes;
+import org.apache.cassandra.io.ISerializer;
+import org.apache.cassandra.io.util.DataOutputPlus;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.StreamingHistogram;
+
+/**
+ * Tombstone density of an SSTable, broken down into contiguous segments of partitions.
+ *
+ * Each segment records the partition keys it starts and ends with, the bytes and cells it covers and a histogram of
+ * the local deletion times of its tombstones, so that compaction can tell where in the token range droppable
+ * tombstones live instead of assuming they are spread evenly over the sstable.
+ *
+ * Stored in its own TombstoneIndex.db component rather than in Statistics.db, so that nodes which do not know about
+ * it can still read the statistics of sstables that have one. Only loaded by compaction strategies when picking
+ * tombstone compactions, and absent for sstables written before it was introduced.
+ */
+public class TombstoneMetadata
+{
+    public static final TombstoneMetadataSerializer serializer = new TombstoneMetadataSerializer();
+
+    /** Upper bound on the number of segments of a single sstable, adjacent segments are merged past it */
+    public static final int MAX_SEGMENTS = 128;
+    static final long MIN_SEGMENT_SIZE = 1024L * 1024L;
+    static final int SEGMENT_HISTOGRAM_BIN_SIZE = 16;
+
+    public final List<Segment> segments;
+
+    public TombstoneMetadata(List<Segment> segments)
+    {
+        this.segments = segments;
+    }
+
+    public long cells()
+    {
+        long cells = 0;
+        for (Segment segment : segments)
+            cells += segment.cells;
+        return cells;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        TombstoneMetadata that = (TombstoneMetadata) o;
+        return segments.equals(that.segments);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return segments.hashCode();
+    }
+
+    public static class Segment
+    {
+        public final ByteBuffer firstKey;
+        public final ByteBuffer lastKey;
+        public final long bytes;
+        public final long cells;
+        public final StreamingHistogram tombstoneDropTimes;
+
+        public Segment(ByteBuffer firstKey, ByteBuffer lastKey, long bytes, long cells, StreamingHistogram tombstoneDropTimes)
+        {
+            this.firstKey = firstKey;
+            this.lastKey = lastKey;
+            this.bytes = bytes;
+            this.cells = cells;
+            this.tombstoneDropTimes = tombstoneDropTimes;
+        }
+
+        /**
+         * @return estimated number of tombstones in this segment that can be dropped with the given gcBefore
+         */
+        public double droppableTombstones(int gcBefore)
+        {
+            return tombstoneDropTimes.sum(gcBefore);
+        }
+
+        private static Segment merge(Segment left, Segment right)
+        {
+            StreamingHistogram tombstoneDropTimes = new StreamingHistogram(SEGMENT_HISTOGRAM_BIN_SIZE);
+            tombstoneDropTimes.merge(left.tombstoneDropTimes);
+            tombstoneDropTimes.merge(right.tombstoneDropTimes);
+            return new Segment(left.firstKey, right.lastKey, left.bytes + right.bytes, left.cells + right.cells, tombstoneDropTimes);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Segment that = (Segment) o;
+            return bytes == that.bytes
+                   && cells == that.cells
+                   && firstKey.equals(that.firstKey)
+                   && lastKey.equals(that.lastKey)
+                   && tombstoneDropTimes.equals(that.tombstoneDropTimes);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int result = firstKey.hashCode();
+            result = 31 * result + lastKey.hashCode();
+            result = 31 * result + (int) (bytes ^ (bytes >>> 32));
+            result = 31 * result + (int) (cells ^ (cells >>> 32));
+            return result;
+        }
+    }
+
+    /**
+     * Accumulates partitions, in the order they are written, into segments. Segments start out at
+     * {@link #MIN_SEGMENT_SIZE} bytes; whenever there are more than {@link #MAX_SEGMENTS} of them, adjacent segments
+     * are merged pairwise and the target size doubles, so the index stays small whatever the size of the sstable.
+     */
+    public static class Builder
+    {
+        private final List<Segment> segments = new ArrayList<>();
+        private long segmentSize;
+
+        private ByteBuffer firstKey;
+        private ByteBuffer lastKey;
+        private long bytes;
+        private long cells;
+        private StreamingHistogram tombstoneDropTimes;
+
+        public Builder()
+        {
+            this(MIN_SEGMENT_SIZE);
+        }
+
+        @VisibleForTesting
+        public Builder(long segmentSize)
+        {
+            this.segmentSize = segmentSize;
+        }
+
+        public void add(ByteBuffer key, long partitionSize, long partitionCells, StreamingHistogram partitionTombstones)
+        {
+            if (firstKey == null)
+                firstKey = ByteBufferUtil.clone(key);
+            lastKey = key;
+            bytes += partitionSize;
+            cells += partitionCells;
+
+            // called for every partition written, so only pay for the histogram when there is something to merge
+            if (partitionTombstones != null && !partitionTombstones.isEmpty())
+            {
+                if (tombstoneDropTimes == null)
+                    tombstoneDropTimes = new StreamingHistogram(SEGMENT_HISTOGRAM_BIN_SIZE);
+                tombstoneDropTimes.merge(partitionTombstones);
+            }
+
+            if (bytes >= segmentSize)
+                finishSegment();
+        }
+
+        private void finishSegment()
+        {
+            StreamingHistogram dropTimes = tombstoneDropTimes == null ? new StreamingHistogram(SEGMENT_HISTOGRAM_BIN_SIZE) : tombstoneDropTimes;
+            segments.add(new Segment(firstKey, ByteBufferUtil.clone(lastKey), bytes, cells, dropTimes));
+            firstKey = null;
+            lastKey = null;
+            bytes = 0;
+            cells = 0;
+            tombstoneDropTimes = null;
+
+            if (segments.size() > MAX_SEGMENTS)
+            {
+                List<Segment> merged = new ArrayList<>(segments.size() / 2 + 1);
+                for (int i = 0; i < segments.size(); i += 2)
+                    merged.add(i + 1 < segments.size() ? Segment.merge(segments.get(i), segments.get(i + 1)) : segments.get(i));
+                segments.clear();
+                segments.addAll(merged);
+                segmentSize *= 2;
+            }
+        }
+
+        /**
+         * Can be called repeatedly (e.g. when opening an sstable early), the segment being filled is included
+         * without being closed.
+         */
+        public TombstoneMetadata build()
+        {
+            List<Segment> built = new ArrayList<>(segments.size() + 1);
+            built.addAll(segments);
+            if (firstKey != null)
+            {
+                StreamingHistogram partialDropTimes = new StreamingHistogram(SEGMENT_HISTOGRAM_BIN_SIZE);
+                partialDropTimes.merge(tombstoneDropTimes);
+                Segment partial = new Segment(firstKey, ByteBufferUtil.clone(lastKey), bytes, cells, partialDropTimes);
+                if (built.size() < MAX_SEGMENTS)
+                    built.add(partial);
+                else
+                    built.set(built.size() - 1, Segment.merge(built.get(built.size() - 1), partial));
+            }
+            return new TombstoneMetadata(Collections.unmodifiableList(built));
+        }
+    }
+
+    public static class TombstoneMetadataSerializer implements ISerializer<TombstoneMetadata>
+    {
+        public long serializedSize(TombstoneMetadata component, TypeSizes typeSizes)
+        {
+            long size = typeSizes.sizeof(component.segments.size());
+            for (Segment segment : component.segments)
+            {
+                size += typeSizes.sizeofWithShortLength(segment.firstKey);
+                size += typeSizes.sizeofWithShortLength(segment.lastKey);
+                size += typeSizes.sizeof(segment.bytes);
+                size += typeSizes.sizeof(segment.cells);
+                size += StreamingHistogram.serializer.serializedSize(segment.tombstoneDropTimes, typeSizes);
+            }
+            return size;
+        }
+
+        public void serialize(TombstoneMetadata component, DataOutputPlus out) throws IOException
+        {
+            out.writeInt(component.segments.size());
+            for (Segment segment : component.segments)
+            {
+                ByteBufferUtil.writeWithShortLength(segment.firstKey, out);
+                ByteBufferUtil.writeWithShortLength(segment.lastKey, out);
+                out.writeLong(segment.bytes);
+                out.writeLong(segment.cells);
+                StreamingHistogram.serializer.serialize(segment.tombstoneDropTimes, out);
+            }
+        }
+
+        public TombstoneMetadata deserialize(DataInput in) throws IOException
+        {
+            int size = in.readInt();
+            List<Segment> segments = new ArrayList<>(size);
+            for (int i = 0; i < size; i++)
+            {
+                ByteBuffer firstKey = ByteBufferUtil.readWithShortLength(in);
+                ByteBuffer lastKey = ByteBufferUtil.readWithShortLength(in);
+                long bytes = in.readLong();
+                long cells = in.readLong();
+                StreamingHistogram tombstoneDropTimes = StreamingHistogram.serializer.deserialize(in);
+                segments.add(new Segment(firstKey, lastKey, bytes, cells, tombstoneDropTimes));
+            }
+            return new TombstoneMetadata(segments);
+        }
+    }
+}
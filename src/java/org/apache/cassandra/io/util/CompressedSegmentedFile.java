@@ -19,6 +19,7 @@ package org.apache.cassandra.io.util;
 
 import com.google.common.util.concurrent.RateLimiter;
 
+import org.apache.cassandra.io.compress.CompressedPrefetchingReader;
 import org.apache.cassandra.io.compress.CompressedRandomAccessReader;
 import org.apache.cassandra.io.compress.CompressedSequentialWriter;
 import org.apache.cassandra.io.compress.CompressedThrottledReader;
@@ -100,6 +101,11 @@ public class CompressedSegmentedFile extends SegmentedFile implements ICompresse
         return CompressedThrottledReader.open(path, metadata, limiter);
     }
 
+    public RandomAccessReader createSequentialReader(RateLimiter limiter, int prefetchChunks)
+    {
+        return CompressedPrefetchingReader.open(path, metadata, limiter, prefetchChunks);
+    }
+
     public CompressionMetadata getMetadata()
     {
         return metadata;
@@ -60,6 +60,8 @@ public abstract class PoolingSegmentedFile extends SegmentedFile
 
         if (reader == null)
             reader = createPooledReader();
+        else
+            reader.reuse();
 
         reader.seek(position);
         return reader;
@@ -72,6 +74,7 @@ public abstract class PoolingSegmentedFile extends SegmentedFile
 
     public void recycle(RandomAccessReader reader)
     {
+        reader.releaseBuffer();
         FileCacheService.instance.put(cacheKey, reader);
     }
 }
@@ -26,6 +26,7 @@ import com.google.common.annotations.VisibleForTesting;
 
 import org.apache.cassandra.io.FSReadError;
 import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.memory.BufferPool;
 
 public class RandomAccessReader extends AbstractDataInput implements FileDataInput
 {
@@ -49,6 +50,10 @@ public class RandomAccessReader extends AbstractDataInput implements FileDataInp
 
     private final long fileLength;
 
+    // kept to borrow the buffer again from the BufferPool when the reader is reused
+    private final int bufferSize;
+    private final boolean useDirectBuffer;
+
     protected final PoolingSegmentedFile owner;
 
     protected RandomAccessReader(File file, int bufferSize, PoolingSegmentedFile owner) throws FileNotFoundException
@@ -88,6 +93,8 @@ public class RandomAccessReader extends AbstractDataInput implements FileDataInp
             }
         }
         this.fileLength = fileLength;
+        this.bufferSize = bufferSize;
+        this.useDirectBuffer = useDirectBuffer;
         buffer = allocateBuffer(bufferSize, useDirectBuffer);
         buffer.limit(0);
     }
@@ -97,7 +104,30 @@ public class RandomAccessReader extends AbstractDataInput implements FileDataInp
         int size = (int) Math.min(fileLength, bufferSize);
         return useDirectBuffer
                 ? ByteBuffer.allocate(size)
-                : ByteBuffer.allocateDirect(size);
+                : BufferPool.get(size);
+    }
+
+    /**
+     * Hands a pooled buffer back to the BufferPool while the reader sits idle in the file cache, so that cached readers
+     * only keep their file open. {@link #reuse()} borrows one again.
+     */
+    void releaseBuffer()
+    {
+        if (!buffer.isDirect() || !BufferPool.isPooled(buffer.capacity()))
+            return;
+
+        bufferOffset += buffer.position();
+        BufferPool.put(buffer);
+        buffer = ByteBuffer.allocate(0);
+    }
+
+    void reuse()
+    {
+        if (buffer.capacity() > 0)
+            return;
+
+        buffer = allocateBuffer(bufferSize, useDirectBuffer);
+        buffer.limit(0);
     }
 
     public static RandomAccessReader open(File file, long overrideSize, PoolingSegmentedFile owner)
@@ -265,7 +295,7 @@ public class RandomAccessReader extends AbstractDataInput implements FileDataInp
     public void deallocate()
     {
         bufferOffset += buffer.position();
-        FileUtils.clean(buffer);
+        BufferPool.put(buffer);
 
         buffer = null; // makes sure we don't use this after it's ostensibly closed
 
@@ -119,6 +119,16 @@ public abstract class SegmentedFile extends SharedCloseableImpl
         return ThrottledReader.open(new File(path), length, limiter);
     }
 
+    /**
+     * @param limiter background i/o RateLimiter; may be null
+     * @param prefetchChunks number of chunks compressed files read ahead of the current position
+     * @return a reader for a sequential pass over the file
+     */
+    public RandomAccessReader createSequentialReader(RateLimiter limiter, int prefetchChunks)
+    {
+        return limiter == null ? createReader() : createThrottledReader(limiter);
+    }
+
     public FileDataInput getSegment(long position)
     {
         RandomAccessReader reader = createReader();
@@ -26,6 +26,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Snapshot;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 
@@ -56,6 +57,8 @@ public class DynamicEndpointSnitch extends AbstractEndpointSnitch implements ILa
     private boolean registered = false;
 
     private volatile HashMap<InetAddress, Double> scores = new HashMap<>();
+    // the latency distribution of each host as of the last score update
+    private volatile HashMap<InetAddress, Snapshot> snapshots = new HashMap<>();
     private final ConcurrentHashMap<InetAddress, ExponentiallyDecayingReservoir> samples = new ConcurrentHashMap<>();
 
     public final IEndpointSnitch subsnitch;
@@ -246,16 +249,19 @@ public class DynamicEndpointSnitch extends AbstractEndpointSnitch implements ILa
         // We're going to weight the latency for each host against the worst one we see, to
         // arrive at sort of a 'badness percentage' for them. First, find the worst for each:
         HashMap<InetAddress, Double> newScores = new HashMap<>();
+        HashMap<InetAddress, Snapshot> newSnapshots = new HashMap<>();
         for (Map.Entry<InetAddress, ExponentiallyDecayingReservoir> entry : samples.entrySet())
         {
-            double mean = entry.getValue().getSnapshot().getMedian();
+            Snapshot snapshot = entry.getValue().getSnapshot();
+            newSnapshots.put(entry.getKey(), snapshot);
+            double mean = snapshot.getMedian();
             if (mean > maxLatency)
                 maxLatency = mean;
         }
         // now make another pass to do the weighting based on the maximums we found before
-        for (Map.Entry<InetAddress, ExponentiallyDecayingReservoir> entry: samples.entrySet())
+        for (Map.Entry<InetAddress, Snapshot> entry: newSnapshots.entrySet())
         {
-            double score = entry.getValue().getSnapshot().getMedian() / maxLatency;
+            double score = entry.getValue().getMedian() / maxLatency;
             // finally, add the severity without any weighting, since hosts scale this relative to their own load and the size of the task causing the severity.
             // "Severity" is basically a measure of compaction activity (CASSANDRA-3722).
             score += StorageService.instance.getSeverity(entry.getKey());
@@ -263,6 +269,7 @@ public class DynamicEndpointSnitch extends AbstractEndpointSnitch implements ILa
             newScores.put(entry.getKey(), score);
         }
         scores = newScores;
+        snapshots = newSnapshots;
     }
 
 
@@ -276,6 +283,17 @@ public class DynamicEndpointSnitch extends AbstractEndpointSnitch implements ILa
         return scores;
     }
 
+    /**
+     * @param quantile the quantile of the host's recent response times to return, between 0 and 1
+     * @return that response time in milliseconds as of the last score update, or -1 if there were no samples for the
+     * host then. Latencies are sampled with a millisecond granularity, truncated.
+     */
+    public double getLatency(InetAddress host, double quantile)
+    {
+        Snapshot snapshot = snapshots.get(host);
+        return snapshot == null || snapshot.size() == 0 ? -1 : snapshot.getValue(quantile);
+    }
+
     public int getUpdateInterval()
     {
         return UPDATE_INTERVAL_IN_MS;
@@ -31,6 +31,8 @@ public class CQLMetrics
     public final Counter regularStatementsExecuted;
     public final Counter preparedStatementsExecuted;
     public final Counter preparedStatementsEvicted;
+    public final Counter resultSetCacheHits;
+    public final Counter resultSetCacheMisses;
 
     public final Gauge<Integer> preparedStatementsCount;
     public final Gauge<Double> preparedStatementsRatio;
@@ -40,6 +42,8 @@ public class CQLMetrics
         regularStatementsExecuted = Metrics.counter(factory.createMetricName("RegularStatementsExecuted"));
         preparedStatementsExecuted = Metrics.counter(factory.createMetricName("PreparedStatementsExecuted"));
         preparedStatementsEvicted = Metrics.counter(factory.createMetricName("PreparedStatementsEvicted"));
+        resultSetCacheHits = Metrics.counter(factory.createMetricName("ResultSetCacheHits"));
+        resultSetCacheMisses = Metrics.counter(factory.createMetricName("ResultSetCacheMisses"));
 
         preparedStatementsCount = Metrics.register(factory.createMetricName("PreparedStatementsCount"), new Gauge<Integer>()
         {
@@ -22,6 +22,7 @@ import java.util.concurrent.atomic.AtomicLong;
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.RatioGauge;
+import org.apache.cassandra.cache.AdmissionFilteringCache;
 import org.apache.cassandra.cache.ICache;
 
 import static org.apache.cassandra.metrics.CassandraMetricsRegistry.Metrics;
@@ -43,6 +44,8 @@ public class CacheMetrics
     public final Gauge<Long> size;
     /** Total number of cache entries */
     public final Gauge<Integer> entries;
+    /** Total number of entries the admission policy kept out of the cache */
+    public final Gauge<Long> admissionRejects;
 
     /**
      * Create metrics for given cache.
@@ -85,5 +88,12 @@ public class CacheMetrics
                 return cache.size();
             }
         });
+        admissionRejects = Metrics.register(factory.createMetricName("AdmissionRejects"), new Gauge<Long>()
+        {
+            public Long getValue()
+            {
+                return cache instanceof AdmissionFilteringCache ? ((AdmissionFilteringCache) cache).rejected() : 0L;
+            }
+        });
     }
 }
@@ -110,6 +110,8 @@ public class ColumnFamilyMetrics
     public final ColumnFamilyHistogram tombstoneScannedHistogram;
     /** Live cells scanned in queries on this CF */
     public final ColumnFamilyHistogram liveScannedHistogram;
+    /** Size of the cells collected by queries on this CF */
+    public final ColumnFamilyHistogram collectedBytesHistogram;
     /** Column update time delta on this CF */
     public final ColumnFamilyHistogram colUpdateTimeDeltaHistogram;
     /** Disk space used by snapshot files which */
@@ -120,6 +122,12 @@ public class ColumnFamilyMetrics
     public final Counter rowCacheHit;
     /** Number of row cache misses */
     public final Counter rowCacheMiss;
+    /** Number of reads answered by the negative lookup cache */
+    public final Counter negativeLookupHit;
+    /** Number of digest requests answered by the digest cache */
+    public final Counter digestCacheHit;
+    /** Number of reads waiting for the reads of this CF to go under concurrent_reads_per_table */
+    public final Counter pendingReads;
     /** CAS Prepare metrics */
     public final LatencyMetrics casPrepare;
     /** CAS Propose metrics */
@@ -585,6 +593,7 @@ public class ColumnFamilyMetrics
         });
         tombstoneScannedHistogram = createColumnFamilyHistogram("TombstoneScannedHistogram", cfs.keyspace.metric.tombstoneScannedHistogram);
         liveScannedHistogram = createColumnFamilyHistogram("LiveScannedHistogram", cfs.keyspace.metric.liveScannedHistogram);
+        collectedBytesHistogram = createColumnFamilyHistogram("CollectedBytesHistogram", cfs.keyspace.metric.collectedBytesHistogram);
         colUpdateTimeDeltaHistogram = createColumnFamilyHistogram("ColUpdateTimeDeltaHistogram", cfs.keyspace.metric.colUpdateTimeDeltaHistogram);
         coordinatorReadLatency = Metrics.timer(factory.createMetricName("CoordinatorReadLatency"));
         coordinatorScanLatency = Metrics.timer(factory.createMetricName("CoordinatorScanLatency"));
@@ -600,6 +609,9 @@ public class ColumnFamilyMetrics
         rowCacheHitOutOfRange = createColumnFamilyCounter("RowCacheHitOutOfRange");
         rowCacheHit = createColumnFamilyCounter("RowCacheHit");
         rowCacheMiss = createColumnFamilyCounter("RowCacheMiss");
+        negativeLookupHit = createColumnFamilyCounter("NegativeLookupHit");
+        digestCacheHit = createColumnFamilyCounter("DigestCacheHit");
+        pendingReads = createColumnFamilyCounter("PendingReads");
 
         casPrepare = new LatencyMetrics(factory, "CasPrepare", cfs.keyspace.metric.casPrepare);
         casPropose = new LatencyMetrics(factory, "CasPropose", cfs.keyspace.metric.casPropose);
@@ -19,6 +19,7 @@ package org.apache.cassandra.net;
 
 import java.util.EnumSet;
 
+import org.apache.cassandra.db.filter.ReadSizeOverwhelmingException;
 import org.apache.cassandra.db.filter.TombstoneOverwhelmingException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -71,7 +72,7 @@ public class MessageDeliveryTask implements Runnable
                 MessagingService.instance().sendReply(response, id, message.from);
             }
 
-            if (t instanceof TombstoneOverwhelmingException)
+            if (t instanceof TombstoneOverwhelmingException || t instanceof ReadSizeOverwhelmingException)
                 logger.error(t.getMessage());
             else
                 throw t;
@@ -39,12 +39,15 @@ import org.cliffc.high_scale_lib.NonBlockingHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.cache.HotKeysRequest;
+import org.apache.cassandra.cache.HotKeysResponse;
 import org.apache.cassandra.concurrent.ScheduledExecutors;
 import org.apache.cassandra.concurrent.Stage;
 import org.apache.cassandra.concurrent.StageManager;
 import org.apache.cassandra.concurrent.TracingAwareExecutorService;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.EncryptionOptions.ServerEncryptionOptions;
+import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.dht.AbstractBounds;
 import org.apache.cassandra.dht.BootStrapper;
@@ -137,8 +140,8 @@ public final class MessagingService implements MessagingServiceMBean
         PAXOS_COMMIT,
         PAGED_RANGE,
         // remember to add new verbs at the end, since we serialize by ordinal
-        UNUSED_1,
-        UNUSED_2,
+        CACHE_HOT_KEYS,
+        READ_BATCH,
         UNUSED_3,
         ;
     }
@@ -157,6 +160,7 @@ public final class MessagingService implements MessagingServiceMBean
         put(Verb.RANGE_SLICE, Stage.READ);
         put(Verb.INDEX_SCAN, Stage.READ);
         put(Verb.PAGED_RANGE, Stage.READ);
+        put(Verb.READ_BATCH, Stage.READ);
 
         put(Verb.REQUEST_RESPONSE, Stage.REQUEST_RESPONSE);
         put(Verb.INTERNAL_RESPONSE, Stage.INTERNAL_RESPONSE);
@@ -184,9 +188,8 @@ public final class MessagingService implements MessagingServiceMBean
         put(Verb.COUNTER_MUTATION, Stage.MUTATION);
         put(Verb.SNAPSHOT, Stage.MISC);
         put(Verb.ECHO, Stage.GOSSIP);
+        put(Verb.CACHE_HOT_KEYS, Stage.MISC);
 
-        put(Verb.UNUSED_1, Stage.INTERNAL_RESPONSE);
-        put(Verb.UNUSED_2, Stage.INTERNAL_RESPONSE);
         put(Verb.UNUSED_3, Stage.INTERNAL_RESPONSE);
     }};
 
@@ -207,6 +210,7 @@ public final class MessagingService implements MessagingServiceMBean
         put(Verb.MUTATION, Mutation.serializer);
         put(Verb.READ_REPAIR, Mutation.serializer);
         put(Verb.READ, ReadCommand.serializer);
+        put(Verb.READ_BATCH, ReadBatchCommand.serializer);
         put(Verb.RANGE_SLICE, RangeSliceCommand.serializer);
         put(Verb.PAGED_RANGE, PagedRangeCommand.serializer);
         put(Verb.BOOTSTRAP_TOKEN, BootStrapper.StringSerializer.instance);
@@ -223,6 +227,7 @@ public final class MessagingService implements MessagingServiceMBean
         put(Verb.PAXOS_PREPARE, Commit.serializer);
         put(Verb.PAXOS_PROPOSE, Commit.serializer);
         put(Verb.PAXOS_COMMIT, Commit.serializer);
+        put(Verb.CACHE_HOT_KEYS, HotKeysRequest.serializer);
     }};
 
     /**
@@ -236,6 +241,7 @@ public final class MessagingService implements MessagingServiceMBean
         put(Verb.RANGE_SLICE, RangeSliceReply.serializer);
         put(Verb.PAGED_RANGE, RangeSliceReply.serializer);
         put(Verb.READ, ReadResponse.serializer);
+        put(Verb.READ_BATCH, ReadBatchResponse.serializer);
         put(Verb.TRUNCATE, TruncateResponse.serializer);
         put(Verb.SNAPSHOT, null);
 
@@ -246,6 +252,8 @@ public final class MessagingService implements MessagingServiceMBean
 
         put(Verb.PAXOS_PREPARE, PrepareResponse.serializer);
         put(Verb.PAXOS_PROPOSE, BooleanSerializer.serializer);
+
+        put(Verb.CACHE_HOT_KEYS, HotKeysResponse.serializer);
     }};
 
     /* This records all the results mapped by message Id */
@@ -297,6 +305,7 @@ public final class MessagingService implements MessagingServiceMBean
                                                                    Verb.COUNTER_MUTATION,
                                                                    Verb.READ_REPAIR,
                                                                    Verb.READ,
+                                                                   Verb.READ_BATCH,
                                                                    Verb.RANGE_SLICE,
                                                                    Verb.PAGED_RANGE,
                                                                    Verb.REQUEST_RESPONSE);
@@ -747,12 +756,36 @@ public final class MessagingService implements MessagingServiceMBean
         }
 
         Runnable runnable = new MessageDeliveryTask(message, id, timestamp);
+        // reads of a table go through its queue even while the limit is disabled, so that they are counted
+        if (message.getMessageType() == Stage.READ)
+        {
+            ColumnFamilyStore cfs = readTable(message.payload);
+            if (cfs != null)
+            {
+                cfs.readQueue.execute(runnable, state);
+                return;
+            }
+        }
+
         TracingAwareExecutorService stage = StageManager.getStage(message.getMessageType());
         assert stage != null : "No stage for message type " + message.verb;
 
         stage.execute(runnable, state);
     }
 
+    /**
+     * The table a read message reads from, or null if it isn't a read of a single table we know of.
+     */
+    private static ColumnFamilyStore readTable(Object payload)
+    {
+        UUID cfId = null;
+        if (payload instanceof ReadCommand)
+            cfId = Schema.instance.getId(((ReadCommand) payload).ksName, ((ReadCommand) payload).cfName);
+        else if (payload instanceof AbstractRangeCommand)
+            cfId = Schema.instance.getId(((AbstractRangeCommand) payload).keyspace, ((AbstractRangeCommand) payload).columnFamily);
+        return cfId == null ? null : Schema.instance.getColumnFamilyStoreInstance(cfId);
+    }
+
     public void setCallbackForTests(int messageId, CallbackInfo callback)
     {
         callbacks.put(messageId, callback);
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.scheduler;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import org.apache.cassandra.concurrent.Stage;
+import org.apache.cassandra.concurrent.StageManager;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.tracing.TraceState;
+import org.apache.cassandra.tracing.Tracing;
+import org.apache.cassandra.utils.Pair;
+
+/**
+ * Bounds how many of the READ stage threads the reads of one table can hold at once, so that a table with an
+ * expensive access pattern can't starve the reads of all the others. The bound is concurrent_reads_per_table
+ * times the weight of the table. Reads over it wait in the queue of their table, without holding a thread, and are
+ * handed to the stage in order as the running reads of that table complete.
+ *
+ * This is a static cap per table, not a fair share of the stage: it doesn't reserve threads for any table, so tables
+ * that each stay under their cap can still take all of them together, and the reads of a table over its cap wait
+ * even if the stage has idle threads. Weights only scale the caps.
+ *
+ * Unlike RoundRobinScheduler, which parks the calling thread until it gets a slot, this never blocks: it is used
+ * when delivering messages and from the threads of the stages.
+ */
+public class TableReadQueue
+{
+    private final ColumnFamilyStore cfs;
+    private final int weight;
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final Queue<Pair<Runnable, TraceState>> pending = new ConcurrentLinkedQueue<>();
+
+    public TableReadQueue(ColumnFamilyStore cfs)
+    {
+        this(cfs, DatabaseDescriptor.getConcurrentReadsPerTableWeight(cfs.keyspace.getName(), cfs.name));
+    }
+
+    @VisibleForTesting
+    TableReadQueue(ColumnFamilyStore cfs, int weight)
+    {
+        this.cfs = cfs;
+        this.weight = weight;
+    }
+
+    public static boolean isEnabled()
+    {
+        return DatabaseDescriptor.getConcurrentReadsPerTable() > 0;
+    }
+
+    /**
+     * Executes a read of this table on the READ stage, once fewer reads of the table than its share are running.
+     */
+    public void execute(Runnable read, TraceState state)
+    {
+        // reads are counted even when disabled, so that enabling it at runtime doesn't overshoot the share
+        if (!isEnabled() && pending.isEmpty())
+        {
+            running.incrementAndGet();
+            StageManager.getStage(Stage.READ).execute(new Slot(read), state);
+            return;
+        }
+
+        pending.add(Pair.create(read, state));
+        cfs.metric.pendingReads.inc();
+        schedule();
+    }
+
+    /**
+     * Like execute, but lets the stage run the read on the calling thread if it has a thread to spare.
+     */
+    public void maybeExecuteImmediately(Runnable read)
+    {
+        if (!isEnabled() && pending.isEmpty())
+        {
+            running.incrementAndGet();
+            StageManager.getStage(Stage.READ).maybeExecuteImmediately(new Slot(read));
+        }
+        else
+            execute(read, Tracing.instance.get());
+    }
+
+    private void schedule()
+    {
+        while (!pending.isEmpty())
+        {
+            // the share is looked up every time, as it can be changed (or disabled) at runtime
+            int share = DatabaseDescriptor.getConcurrentReadsPerTable() * weight;
+            int current = running.get();
+            if (share > 0 && current >= share)
+                return;
+            if (!running.compareAndSet(current, current + 1))
+                continue;
+
+            Pair<Runnable, TraceState> next = pending.poll();
+            if (next == null)
+            {
+                // someone else took it: give the slot back, and look again in case a read was queued meanwhile
+                running.decrementAndGet();
+                continue;
+            }
+            cfs.metric.pendingReads.dec();
+            StageManager.getStage(Stage.READ).execute(new Slot(next.left), next.right);
+        }
+    }
+
+    private class Slot implements Runnable
+    {
+        private final Runnable read;
+
+        private Slot(Runnable read)
+        {
+            this.read = read;
+        }
+
+        public void run()
+        {
+            try
+            {
+                read.run();
+            }
+            finally
+            {
+                running.decrementAndGet();
+                schedule();
+            }
+        }
+    }
+}
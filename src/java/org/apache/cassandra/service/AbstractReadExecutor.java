@@ -23,13 +23,13 @@ import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.RateLimiter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import org.apache.cassandra.concurrent.Stage;
-import org.apache.cassandra.concurrent.StageManager;
+import org.apache.cassandra.config.CFMetaData.SpeculativeRetry;
 import org.apache.cassandra.config.CFMetaData.SpeculativeRetry.RetryType;
-import org.apache.cassandra.config.Schema;
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.ReadRepairDecision;
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.ConsistencyLevel;
@@ -40,6 +40,8 @@ import org.apache.cassandra.db.Keyspace;
 import org.apache.cassandra.exceptions.ReadFailureException;
 import org.apache.cassandra.exceptions.ReadTimeoutException;
 import org.apache.cassandra.exceptions.UnavailableException;
+import org.apache.cassandra.locator.DynamicEndpointSnitch;
+import org.apache.cassandra.locator.IEndpointSnitch;
 import org.apache.cassandra.metrics.ReadRepairMetrics;
 import org.apache.cassandra.net.MessageOut;
 import org.apache.cassandra.net.MessagingService;
@@ -58,20 +60,30 @@ public abstract class AbstractReadExecutor
 {
     private static final Logger logger = LoggerFactory.getLogger(AbstractReadExecutor.class);
 
+    // caps the extra requests speculation sends, so that it doesn't add to the load of an already slow cluster
+    private static final RateLimiter speculationLimiter = RateLimiter.create(Double.MAX_VALUE);
+    static
+    {
+        setSpeculationRate(DatabaseDescriptor.getSpeculativeRetriesPerSecond());
+    }
+
     protected final ReadCommand command;
     protected final List<InetAddress> targetReplicas;
     protected final RowDigestResolver resolver;
     protected final ReadCallback<ReadResponse, Row> handler;
+    // where the initial remote requests go if they're batched with those of other partitions, null otherwise
+    private final ReadBatch batch;
 
-    AbstractReadExecutor(ReadCommand command, ConsistencyLevel consistencyLevel, List<InetAddress> targetReplicas)
+    AbstractReadExecutor(ReadCommand command, ConsistencyLevel consistencyLevel, List<InetAddress> targetReplicas, ReadBatch batch)
     {
         this.command = command;
         this.targetReplicas = targetReplicas;
+        this.batch = batch;
         resolver = new RowDigestResolver(command.ksName, command.key, targetReplicas.size());
         handler = new ReadCallback<>(resolver, consistencyLevel, command, targetReplicas);
     }
 
-    private static boolean isLocalRequest(InetAddress replica)
+    static boolean isLocalRequest(InetAddress replica)
     {
         return replica.equals(FBUtilities.getBroadcastAddress()) && StorageProxy.OPTIMIZE_LOCAL_REQUESTS;
     }
@@ -100,6 +112,11 @@ public abstract class AbstractReadExecutor
             }
 
             logger.trace("reading {} from {}", readCommand.isDigestQuery() ? "digest" : "data", endpoint);
+            if (batch != null)
+            {
+                batch.add(endpoint, readCommand, handler);
+                continue;
+            }
             if (message == null)
                 message = readCommand.createMessage();
             MessagingService.instance().sendRRWithFailure(message, endpoint, handler);
@@ -109,8 +126,55 @@ public abstract class AbstractReadExecutor
         if (hasLocalEndpoint)
         {
             logger.trace("reading {} locally", readCommand.isDigestQuery() ? "digest" : "data");
-            StageManager.getStage(Stage.READ).maybeExecuteImmediately(new LocalReadRunnable(command, handler));
+            ColumnFamilyStore cfs = Keyspace.open(command.ksName).getColumnFamilyStore(command.cfName);
+            if (batch != null)
+                batch.addLocal(cfs, new LocalReadRunnable(command, handler));
+            else
+                cfs.readQueue.maybeExecuteImmediately(new LocalReadRunnable(command, handler));
+        }
+    }
+
+    public static void setSpeculationRate(int retriesPerSecond)
+    {
+        speculationLimiter.setRate(retriesPerSecond > 0 ? retriesPerSecond : Double.MAX_VALUE);
+    }
+
+    /**
+     * @return whether a speculative retry may be sent now, as far as speculative_retries_per_second is concerned
+     */
+    static boolean tryAcquireSpeculation()
+    {
+        if (speculationLimiter.tryAcquire())
+            return true;
+
+        logger.trace("not speculating, over speculative_retries_per_second");
+        return false;
+    }
+
+    /**
+     * How long to wait on some replicas before asking another one.
+     *
+     * With a PERCENTILE policy, that is the slowest of these replicas' own latency at that percentile, as seen by the
+     * dynamic snitch, so that a replica that usually answers quickly is given up on just as quickly. The table-wide
+     * coordinator latency is used instead for other policies, or if the snitch has no samples for any of them.
+     */
+    static long speculationThresholdNanos(ColumnFamilyStore cfs, Collection<InetAddress> replicas)
+    {
+        SpeculativeRetry retryPolicy = cfs.metadata.getSpeculativeRetry();
+        IEndpointSnitch snitch = DatabaseDescriptor.getEndpointSnitch();
+        if (retryPolicy.type != RetryType.PERCENTILE || !(snitch instanceof DynamicEndpointSnitch))
+            return cfs.sampleLatencyNanos;
+
+        double thresholdMillis = 0;
+        for (InetAddress replica : replicas)
+        {
+            double latency = ((DynamicEndpointSnitch) snitch).getLatency(replica, retryPolicy.value);
+            if (latency < 0)
+                return cfs.sampleLatencyNanos;
+            thresholdMillis = Math.max(thresholdMillis, latency);
         }
+        // samples are truncated milliseconds, so the actual latency is up to a millisecond more
+        return TimeUnit.MILLISECONDS.toNanos((long) thresholdMillis + 1);
     }
 
     /**
@@ -127,7 +191,7 @@ public abstract class AbstractReadExecutor
     public abstract Collection<InetAddress> getContactedReplicas();
 
     /**
-     * send the initial set of requests
+     * send the initial set of requests, or add the remote ones to the batch the executor was created with
      */
     public abstract void executeAsync();
 
@@ -141,14 +205,17 @@ public abstract class AbstractReadExecutor
     }
 
     /**
+     * @param allReplicas the live replicas of the partition, sorted by the snitch
+     * @param batch where to add the initial remote requests instead of sending them, or null to send them
      * @return an executor appropriate for the configured speculative read policy
      */
-    public static AbstractReadExecutor getReadExecutor(ReadCommand command, ConsistencyLevel consistencyLevel) throws UnavailableException
+    public static AbstractReadExecutor getReadExecutor(ReadCommand command,
+                                                       ConsistencyLevel consistencyLevel,
+                                                       List<InetAddress> allReplicas,
+                                                       ReadRepairDecision repairDecision,
+                                                       ReadBatch batch) throws UnavailableException
     {
         Keyspace keyspace = Keyspace.open(command.ksName);
-        //getLiveSortedEndpoints会得到一个最合适的节点列表
-        List<InetAddress> allReplicas = StorageProxy.getLiveSortedEndpoints(keyspace, command.key);
-        ReadRepairDecision repairDecision = Schema.instance.getCFMetaData(command.ksName, command.cfName).newReadRepairDecision();
         List<InetAddress> targetReplicas = consistencyLevel.filterForQuery(keyspace, allReplicas, repairDecision);
 
         // Throw UAE early if we don't have enough replicas.
@@ -162,14 +229,14 @@ public abstract class AbstractReadExecutor
 
         // Speculative retry is disabled *OR* there are simply no extra replicas to speculate.
         if (retryType == RetryType.NONE || consistencyLevel.blockFor(keyspace) == allReplicas.size())
-            return new NeverSpeculatingReadExecutor(command, consistencyLevel, targetReplicas);
+            return new NeverSpeculatingReadExecutor(command, consistencyLevel, targetReplicas, batch);
 
         if (targetReplicas.size() == allReplicas.size())
         {
             // CL.ALL, RRD.GLOBAL or RRD.DC_LOCAL and a single-DC.
             // We are going to contact every node anyway, so ask for 2 full data requests instead of 1, for redundancy
             // (same amount of requests in total, but we turn 1 digest request into a full blown data request).
-            return new AlwaysSpeculatingReadExecutor(cfs, command, consistencyLevel, targetReplicas);
+            return new AlwaysSpeculatingReadExecutor(cfs, command, consistencyLevel, targetReplicas, batch);
         }
 
         // RRD.NONE or RRD.DC_LOCAL w/ multiple DCs.
@@ -190,16 +257,16 @@ public abstract class AbstractReadExecutor
         targetReplicas.add(extraReplica);
 
         if (retryType == RetryType.ALWAYS)
-            return new AlwaysSpeculatingReadExecutor(cfs, command, consistencyLevel, targetReplicas);
+            return new AlwaysSpeculatingReadExecutor(cfs, command, consistencyLevel, targetReplicas, batch);
         else // PERCENTILE or CUSTOM.
-            return new SpeculatingReadExecutor(cfs, command, consistencyLevel, targetReplicas);
+            return new SpeculatingReadExecutor(cfs, command, consistencyLevel, targetReplicas, batch);
     }
 
     private static class NeverSpeculatingReadExecutor extends AbstractReadExecutor
     {
-        public NeverSpeculatingReadExecutor(ReadCommand command, ConsistencyLevel consistencyLevel, List<InetAddress> targetReplicas)
+        public NeverSpeculatingReadExecutor(ReadCommand command, ConsistencyLevel consistencyLevel, List<InetAddress> targetReplicas, ReadBatch batch)
         {
-            super(command, consistencyLevel, targetReplicas);
+            super(command, consistencyLevel, targetReplicas, batch);
         }
 
         public void executeAsync()
@@ -228,9 +295,10 @@ public abstract class AbstractReadExecutor
         public SpeculatingReadExecutor(ColumnFamilyStore cfs,
                                        ReadCommand command,
                                        ConsistencyLevel consistencyLevel,
-                                       List<InetAddress> targetReplicas)
+                                       List<InetAddress> targetReplicas,
+                                       ReadBatch batch)
         {
-            super(command, consistencyLevel, targetReplicas);
+            super(command, consistencyLevel, targetReplicas, batch);
             this.cfs = cfs;
         }
 
@@ -261,11 +329,15 @@ public abstract class AbstractReadExecutor
 
         public void maybeTryAdditionalReplicas()
         {
+            // the replicas we need answers from, as opposed to any read repair extra
+            List<InetAddress> initialReplicas = targetReplicas.subList(0, Math.min(handler.blockfor, targetReplicas.size() - 1));
+            long thresholdNanos = speculationThresholdNanos(cfs, initialReplicas);
+
             // no latency information, or we're overloaded
-            if (cfs.sampleLatencyNanos > TimeUnit.MILLISECONDS.toNanos(command.getTimeout()))
+            if (thresholdNanos > TimeUnit.MILLISECONDS.toNanos(command.getTimeout()))
                 return;
 
-            if (!handler.await(cfs.sampleLatencyNanos, TimeUnit.NANOSECONDS))
+            if (!handler.await(thresholdNanos, TimeUnit.NANOSECONDS) && tryAcquireSpeculation())
             {
                 // Could be waiting on the data, or on enough digests.
                 ReadCommand retryCommand = command;
@@ -296,9 +368,10 @@ public abstract class AbstractReadExecutor
         public AlwaysSpeculatingReadExecutor(ColumnFamilyStore cfs,
                                              ReadCommand command,
                                              ConsistencyLevel consistencyLevel,
-                                             List<InetAddress> targetReplicas)
+                                             List<InetAddress> targetReplicas,
+                                             ReadBatch batch)
         {
-            super(command, consistencyLevel, targetReplicas);
+            super(command, consistencyLevel, targetReplicas, batch);
             this.cfs = cfs;
         }
 
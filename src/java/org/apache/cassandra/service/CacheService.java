@@ -17,6 +17,7 @@
  */
 package org.apache.cassandra.service;
 
+import java.io.Closeable;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
@@ -24,7 +25,9 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
@@ -49,8 +52,11 @@ import org.apache.cassandra.db.*;
 import org.apache.cassandra.db.composites.CellName;
 import org.apache.cassandra.db.context.CounterContext;
 import org.apache.cassandra.db.filter.QueryFilter;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.io.sstable.Descriptor;
 import org.apache.cassandra.io.util.DataOutputPlus;
+import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.Pair;
@@ -82,6 +88,8 @@ public class CacheService implements CacheServiceMBean
 
     public final static CacheService instance = new CacheService();
 
+    private static final int HOT_KEYS_SCAN_FACTOR = 16;
+
     public final AutoSavingCache<KeyCacheKey, RowIndexEntry> keyCache;
     public final AutoSavingCache<RowCacheKey, IRowCacheEntry> rowCache;
     public final AutoSavingCache<CounterCacheKey, ClockAndCount> counterCache;
@@ -116,7 +124,27 @@ public class CacheService implements CacheServiceMBean
         // as values are constant size we can use singleton weigher
         // where 48 = 40 bytes (average size of the key) + 8 bytes (size of value)
         ICache<KeyCacheKey, RowIndexEntry> kc;
-        kc = ConcurrentLinkedHashCache.create(keyCacheInMemoryCapacity);
+        String cacheProviderClassName = DatabaseDescriptor.getKeyCacheClassName();
+        if (cacheProviderClassName == null)
+        {
+            kc = ConcurrentLinkedHashCache.create(keyCacheInMemoryCapacity);
+        }
+        else
+        {
+            try
+            {
+                @SuppressWarnings("unchecked")
+                Class<CacheProvider<KeyCacheKey, RowIndexEntry>> cacheProviderClass =
+                    (Class<CacheProvider<KeyCacheKey, RowIndexEntry>>) Class.forName(cacheProviderClassName);
+                kc = cacheProviderClass.newInstance().create();
+            }
+            catch (Exception e)
+            {
+                throw new RuntimeException("Cannot find configured key cache provider class " + cacheProviderClassName);
+            }
+        }
+        if (DatabaseDescriptor.isCacheAdmissionFilterEnabled())
+            kc = new AdmissionFilteringCache<>(kc);
         AutoSavingCache<KeyCacheKey, RowIndexEntry> keyCache = new AutoSavingCache<>(kc, CacheType.KEY_CACHE, new KeyCacheSerializer());
 
         int keyCacheKeysToSave = DatabaseDescriptor.getKeyCacheKeysToSave();
@@ -138,6 +166,7 @@ public class CacheService implements CacheServiceMBean
                                         ? DatabaseDescriptor.getRowCacheClassName() : "org.apache.cassandra.cache.NopCacheProvider";
         try
         {
+            @SuppressWarnings("unchecked")
             Class<CacheProvider<RowCacheKey, IRowCacheEntry>> cacheProviderClass =
                 (Class<CacheProvider<RowCacheKey, IRowCacheEntry>>) Class.forName(cacheProviderClassName);
             cacheProvider = cacheProviderClass.newInstance();
@@ -149,6 +178,8 @@ public class CacheService implements CacheServiceMBean
 
         // cache object
         ICache<RowCacheKey, IRowCacheEntry> rc = cacheProvider.create();
+        if (DatabaseDescriptor.isCacheAdmissionFilterEnabled())
+            rc = new AdmissionFilteringCache<>(rc);
         AutoSavingCache<RowCacheKey, IRowCacheEntry> rowCache = new AutoSavingCache<>(rc, CacheType.ROW_CACHE, new RowCacheSerializer());
 
         int rowCacheKeysToSave = DatabaseDescriptor.getRowCacheKeysToSave();
@@ -164,10 +195,11 @@ public class CacheService implements CacheServiceMBean
 
         long capacity = DatabaseDescriptor.getCounterCacheSizeInMB() * 1024 * 1024;
 
+        ICache<CounterCacheKey, ClockAndCount> cc = ConcurrentLinkedHashCache.create(capacity);
+        if (DatabaseDescriptor.isCacheAdmissionFilterEnabled())
+            cc = new AdmissionFilteringCache<>(cc);
         AutoSavingCache<CounterCacheKey, ClockAndCount> cache =
-            new AutoSavingCache<>(ConcurrentLinkedHashCache.<CounterCacheKey, ClockAndCount>create(capacity),
-                                  CacheType.COUNTER_CACHE,
-                                  new CounterCacheSerializer());
+            new AutoSavingCache<>(cc, CacheType.COUNTER_CACHE, new CounterCacheSerializer());
 
         int keysToSave = DatabaseDescriptor.getCounterCacheKeysToSave();
 
@@ -310,6 +342,63 @@ public class CacheService implements CacheServiceMBean
         counterCache.clear();
     }
 
+    /**
+     * Returns up to count keys of the given table that are hot in the row cache, then in the key cache, within the
+     * given ranges. Only the hottest count * HOT_KEYS_SCAN_FACTOR entries of each cache are looked at, so tables
+     * that account for little of a cache may return fewer keys.
+     */
+    public List<ByteBuffer> getHotKeys(ColumnFamilyStore cfs, Collection<Range<Token>> ranges, int count)
+    {
+        Set<ByteBuffer> keys = new LinkedHashSet<>();
+        int scanned = (int) Math.min(Integer.MAX_VALUE, (long) count * HOT_KEYS_SCAN_FACTOR);
+
+        Iterator<RowCacheKey> rowCacheIterator = rowCache.hotKeyIterator(scanned);
+        try
+        {
+            while (keys.size() < count && rowCacheIterator.hasNext())
+            {
+                RowCacheKey key = rowCacheIterator.next();
+                if (key.cfId.equals(cfs.metadata.cfId))
+                    maybeAddHotKey(cfs, ByteBuffer.wrap(key.key), ranges, keys);
+            }
+        }
+        finally
+        {
+            closeIterator(rowCacheIterator);
+        }
+
+        Iterator<KeyCacheKey> keyCacheIterator = keyCache.hotKeyIterator(scanned);
+        try
+        {
+            while (keys.size() < count && keyCacheIterator.hasNext())
+            {
+                KeyCacheKey key = keyCacheIterator.next();
+                // index tables share the id of their base table
+                if (key.cfId.equals(cfs.metadata.cfId) && key.desc.cfname.equals(cfs.name))
+                    maybeAddHotKey(cfs, ByteBuffer.wrap(key.key), ranges, keys);
+            }
+        }
+        finally
+        {
+            closeIterator(keyCacheIterator);
+        }
+
+        return new ArrayList<>(keys);
+    }
+
+    private static void maybeAddHotKey(ColumnFamilyStore cfs, ByteBuffer key, Collection<Range<Token>> ranges, Set<ByteBuffer> keys)
+    {
+        if (Range.isInRanges(cfs.partitioner.getToken(key), ranges))
+            keys.add(key);
+    }
+
+    private static void closeIterator(Iterator<?> iterator)
+    {
+        // OHC iterators hold on to off-heap memory until closed
+        if (iterator instanceof Closeable)
+            FileUtils.closeQuietly((Closeable) iterator);
+    }
+
 
 
 
@@ -400,9 +489,30 @@ public class CacheService implements CacheServiceMBean
                 public Pair<RowCacheKey, IRowCacheEntry> call() throws Exception
                 {
                     DecoratedKey key = cfs.partitioner.decorateKey(buffer);
-                    QueryFilter cacheFilter = new QueryFilter(key, cfs.getColumnFamilyName(), cfs.readFilterForCache(), Integer.MIN_VALUE);
-                    ColumnFamily data = cfs.getTopLevelColumns(cacheFilter, Integer.MIN_VALUE);
-                    return Pair.create(new RowCacheKey(cfs.metadata.cfId, key), (IRowCacheEntry) data);
+                    RowCacheKey cacheKey = new RowCacheKey(cfs.metadata.cfId, key);
+
+                    // the cache may be loaded while the table is written to, so go through the same sentinel
+                    // sequence as reads do: a write racing with us invalidates the sentinel and we cache nothing
+                    RowCacheSentinel sentinel = new RowCacheSentinel();
+                    if (!CacheService.instance.rowCache.putIfAbsent(cacheKey, sentinel))
+                        return null; // already cached by a read
+
+                    ColumnFamily data = null;
+                    try
+                    {
+                        QueryFilter cacheFilter = new QueryFilter(key, cfs.getColumnFamilyName(), cfs.readFilterForCache(), Integer.MIN_VALUE);
+                        data = cfs.getTopLevelColumns(cacheFilter, Integer.MIN_VALUE);
+                    }
+                    finally
+                    {
+                        if (data == null)
+                            CacheService.instance.rowCache.remove(cacheKey);
+                    }
+                    if (data == null)
+                        return null; // nothing to cache, and the sentinel is gone already
+                    return CacheService.instance.rowCache.replace(cacheKey, sentinel, data)
+                         ? Pair.create(cacheKey, (IRowCacheEntry) data)
+                         : null;
                 }
             });
         }
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.service;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.RateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.cache.HotKeysRequest;
+import org.apache.cassandra.cache.HotKeysResponse;
+import org.apache.cassandra.concurrent.NamedThreadFactory;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.Schema;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.filter.ColumnSlice;
+import org.apache.cassandra.db.filter.IDiskAtomFilter;
+import org.apache.cassandra.db.filter.QueryFilter;
+import org.apache.cassandra.db.filter.SliceQueryFilter;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.gms.FailureDetector;
+import org.apache.cassandra.net.AsyncOneResponse;
+import org.apache.cassandra.net.MessageOut;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.WrappedRunnable;
+
+/**
+ * Warms the key and row caches of a node that just joined the ring (after a restart, a bootstrap or a replacement)
+ * with the partitions that are hot on the replicas it shares token ranges with.
+ *
+ * For each cached table, the hottest keys are requested from the closest live replica of each local range, and the
+ * corresponding partitions are then read locally, which populates the caches as any read would. Reads are throttled
+ * by peer_cache_warming_keys_per_second and happen in the background while the node serves requests.
+ */
+public class CacheWarmer extends WrappedRunnable
+{
+    private static final Logger logger = LoggerFactory.getLogger(CacheWarmer.class);
+
+    private final RateLimiter limiter;
+    private final int keysPerTable;
+
+    public CacheWarmer(int keysPerSecond, int keysPerTable)
+    {
+        this.limiter = RateLimiter.create(keysPerSecond);
+        this.keysPerTable = keysPerTable;
+    }
+
+    /**
+     * Starts warming the caches from peers in the background, unless disabled.
+     */
+    public static void maybeStart()
+    {
+        int keysPerSecond = DatabaseDescriptor.getPeerCacheWarmingKeysPerSecond();
+        if (keysPerSecond <= 0)
+            return;
+
+        CacheWarmer warmer = new CacheWarmer(keysPerSecond, DatabaseDescriptor.getPeerCacheWarmingKeysPerTable());
+        new NamedThreadFactory("CacheWarmer").newThread(warmer).start();
+    }
+
+    protected void runMayThrow() throws Exception
+    {
+        long start = System.nanoTime();
+        long warmed = 0;
+        for (String keyspaceName : Schema.instance.getNonSystemKeyspaces())
+        {
+            Multimap<InetAddress, Range<Token>> sources = getSources(keyspaceName);
+            if (sources.isEmpty())
+                continue;
+
+            for (ColumnFamilyStore cfs : Keyspace.open(keyspaceName).getColumnFamilyStores())
+            {
+                if (cfs.isRowCacheEnabled() || cfs.metadata.getCaching().keyCache.isEnabled())
+                    warmed += warm(cfs, sources);
+            }
+        }
+        logger.info("Warmed caches with {} partitions hot on peers in {} ms", warmed, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * @return the local ranges of the keyspace, grouped by the closest live replica (other than this node) to ask
+     * for their hot keys
+     */
+    private static Multimap<InetAddress, Range<Token>> getSources(String keyspaceName)
+    {
+        InetAddress local = FBUtilities.getBroadcastAddress();
+        Multimap<InetAddress, Range<Token>> sources = ArrayListMultimap.create();
+        for (Map.Entry<Range<Token>, List<InetAddress>> entry : StorageService.instance.getRangeToAddressMap(keyspaceName).entrySet())
+        {
+            if (!entry.getValue().contains(local))
+                continue;
+
+            List<InetAddress> candidates = new ArrayList<>(entry.getValue().size());
+            for (InetAddress endpoint : entry.getValue())
+            {
+                if (!endpoint.equals(local) && FailureDetector.instance.isAlive(endpoint))
+                    candidates.add(endpoint);
+            }
+            if (candidates.isEmpty())
+                continue;
+
+            DatabaseDescriptor.getEndpointSnitch().sortByProximity(local, candidates);
+            sources.put(candidates.get(0), entry.getKey());
+        }
+        return sources;
+    }
+
+    private long warm(ColumnFamilyStore cfs, Multimap<InetAddress, Range<Token>> sources)
+    {
+        Map<InetAddress, AsyncOneResponse<HotKeysResponse>> responses = new HashMap<>();
+        for (Map.Entry<InetAddress, Collection<Range<Token>>> entry : sources.asMap().entrySet())
+        {
+            MessageOut<HotKeysRequest> message = new HotKeysRequest(cfs.metadata.cfId, entry.getValue(), keysPerTable).createMessage();
+            responses.put(entry.getKey(), MessagingService.instance().<HotKeysResponse>sendRR(message, entry.getKey()));
+        }
+
+        Set<ByteBuffer> keys = new LinkedHashSet<>();
+        for (Map.Entry<InetAddress, AsyncOneResponse<HotKeysResponse>> entry : responses.entrySet())
+        {
+            try
+            {
+                keys.addAll(entry.getValue().get(DatabaseDescriptor.getRpcTimeout(), TimeUnit.MILLISECONDS).keys);
+            }
+            catch (TimeoutException e)
+            {
+                logger.debug("Timed out fetching hot keys of {}.{} from {}", cfs.keyspace.getName(), cfs.name, entry.getKey());
+            }
+        }
+
+        for (ByteBuffer key : keys)
+        {
+            limiter.acquire();
+            // a local read populates the key cache, and the row cache when it is enabled
+            DecoratedKey dk = cfs.partitioner.decorateKey(key);
+            IDiskAtomFilter filter = cfs.isRowCacheEnabled()
+                                   ? cfs.readFilterForCache()
+                                   : new SliceQueryFilter(ColumnSlice.ALL_COLUMNS_ARRAY, false, 1);
+            cfs.getColumnFamily(new QueryFilter(dk, cfs.name, filter, System.currentTimeMillis()));
+        }
+
+        if (!keys.isEmpty())
+            logger.debug("Warmed caches of {}.{} with {} partitions", cfs.keyspace.getName(), cfs.name, keys.size());
+        return keys.size();
+    }
+}
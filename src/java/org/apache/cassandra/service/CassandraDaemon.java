@@ -23,8 +23,11 @@ import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryPoolMXBean;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
@@ -50,6 +53,7 @@ import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.db.commitlog.CommitLog;
+import org.apache.cassandra.db.compaction.CompactionCheckpoint;
 import org.apache.cassandra.db.compaction.CompactionManager;
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.io.FSError;
@@ -261,12 +265,21 @@ public class CassandraDaemon
 
         // clean up compaction leftovers
         Map<Pair<String, String>, Map<Integer, UUID>> unfinishedCompactions = SystemKeyspace.getUnfinishedCompactions();
+        Map<Pair<String, String>, List<CompactionCheckpoint>> checkpoints = DatabaseDescriptor.isCompactionCheckpointingEnabled()
+                                                                           ? SystemKeyspace.getCompactionCheckpoints()
+                                                                           : Collections.<Pair<String, String>, List<CompactionCheckpoint>>emptyMap();
+        List<CompactionCheckpoint> resumableCompactions = new ArrayList<>();
         for (Pair<String, String> kscf : unfinishedCompactions.keySet())
         {
             CFMetaData cfm = Schema.instance.getCFMetaData(kscf.left, kscf.right);
             // CFMetaData can be null if CF is already dropped
             if (cfm != null)
-                ColumnFamilyStore.removeUnfinishedCompactionLeftovers(cfm, unfinishedCompactions.get(kscf));
+            {
+                List<CompactionCheckpoint> cfCheckpoints = checkpoints.containsKey(kscf)
+                                                         ? checkpoints.get(kscf)
+                                                         : Collections.<CompactionCheckpoint>emptyList();
+                resumableCompactions.addAll(ColumnFamilyStore.removeUnfinishedCompactionLeftovers(cfm, unfinishedCompactions.get(kscf), cfCheckpoints));
+            }
         }
         SystemKeyspace.discardCompactionsInProgress();
 
@@ -335,6 +348,8 @@ public class CassandraDaemon
                 }
             }
         }
+        // pick up compactions interrupted by the last shutdown after their last checkpoint
+        CompactionManager.instance.submitResumedCompactions(resumableCompactions);
         // start compactions in five minutes (if no flushes have occurred by then to do so)
         Runnable runnable = new Runnable()
         {
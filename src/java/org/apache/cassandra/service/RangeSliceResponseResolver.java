@@ -49,19 +49,24 @@ public class RangeSliceResponseResolver implements IResponseResolver<RangeSliceR
 
     private final String keyspaceName;
     private final long timestamp;
-    private List<InetAddress> sources;
+    private final boolean repair;
     protected final Collection<MessageIn<RangeSliceReply>> responses = new ConcurrentLinkedQueue<MessageIn<RangeSliceReply>>();
     public final List<AsyncOneResponse> repairResults = new ArrayList<AsyncOneResponse>();
 
     public RangeSliceResponseResolver(String keyspaceName, long timestamp)
     {
-        this.keyspaceName = keyspaceName;
-        this.timestamp = timestamp;
+        this(keyspaceName, timestamp, true);
     }
 
-    public void setSources(List<InetAddress> endpoints)
+    /**
+     * @param repair whether to repair the replicas whose rows differ from the resolved ones; this must be false when
+     * the replies aren't the actual data (see AbstractRangeCommand.omitCellValues)
+     */
+    public RangeSliceResponseResolver(String keyspaceName, long timestamp, boolean repair)
     {
-        this.sources = endpoints;
+        this.keyspaceName = keyspaceName;
+        this.timestamp = timestamp;
+        this.repair = repair;
     }
 
     public List<Row> getData()
@@ -70,27 +75,35 @@ public class RangeSliceResponseResolver implements IResponseResolver<RangeSliceR
         return response.payload.rows;
     }
 
+    /**
+     * The responses are merged lazily, one row at a time as the result is iterated over, so that a coordinator
+     * streaming rows back doesn't hold a merged copy of every reply on top of the replies themselves. Repairs are
+     * scheduled (and added to repairResults) as the rows needing them are reached: the result is meant to be
+     * iterated over once, and fully before repairResults is looked at.
+     *
+     * Only the replicas that replied are repaired: the others may just be slow, and a range read may have been
+     * answered by a replica it speculated on instead of one it contacted first.
+     */
     // Note: this would deserialize the response a 2nd time if getData was called first.
     // (this is not currently an issue since we don't do read repair for range queries.)
     public Iterable<Row> resolve()
     {
-        ArrayList<RowIterator> iters = new ArrayList<RowIterator>(responses.size());
-        int n = 0;
-        for (MessageIn<RangeSliceReply> response : responses)
+        return new Iterable<Row>()
         {
-            RangeSliceReply reply = response.payload;
-            n = Math.max(n, reply.rows.size());
-            iters.add(new RowIterator(reply.rows.iterator(), response.from));
-        }
-        // for each row, compute the combination of all different versions seen, and repair incomplete versions
-        // TODO do we need to call close?
-        CloseableIterator<Row> iter = MergeIterator.get(iters, pairComparator, new Reducer());
-
-        List<Row> resolvedRows = new ArrayList<Row>(n);
-        while (iter.hasNext())
-            resolvedRows.add(iter.next());
-
-        return resolvedRows;
+            public Iterator<Row> iterator()
+            {
+                ArrayList<RowIterator> iters = new ArrayList<RowIterator>(responses.size());
+                List<InetAddress> sources = new ArrayList<InetAddress>(responses.size());
+                for (MessageIn<RangeSliceReply> response : responses)
+                {
+                    iters.add(new RowIterator(response.payload.rows.iterator(), response.from));
+                    sources.add(response.from);
+                }
+                // for each row, compute the combination of all different versions seen, and repair incomplete versions
+                // TODO do we need to call close?
+                return MergeIterator.get(iters, pairComparator, new Reducer(sources));
+            }
+        };
     }
 
     public void preprocess(MessageIn message)
@@ -129,10 +142,19 @@ public class RangeSliceResponseResolver implements IResponseResolver<RangeSliceR
 
     private class Reducer extends MergeIterator.Reducer<Pair<Row,InetAddress>, Row>
     {
-        List<ColumnFamily> versions = new ArrayList<ColumnFamily>(sources.size());
-        List<InetAddress> versionSources = new ArrayList<InetAddress>(sources.size());
+        // the replicas that replied
+        final List<InetAddress> sources;
+        final List<ColumnFamily> versions;
+        final List<InetAddress> versionSources;
         DecoratedKey key;
 
+        Reducer(List<InetAddress> sources)
+        {
+            this.sources = sources;
+            this.versions = new ArrayList<ColumnFamily>(sources.size());
+            this.versionSources = new ArrayList<InetAddress>(sources.size());
+        }
+
         public void reduce(Pair<Row,InetAddress> current)
         {
             key = current.left.key;
@@ -147,7 +169,7 @@ public class RangeSliceResponseResolver implements IResponseResolver<RangeSliceR
                                   : versions.get(0);
             if (versions.size() < sources.size())
             {
-                // add placeholder rows for sources that didn't have any data, so maybeScheduleRepairs sees them
+                // add placeholder rows for sources that replied without the row, so maybeScheduleRepairs sees them
                 for (InetAddress source : sources)
                 {
                     if (!versionSources.contains(source))
@@ -158,7 +180,7 @@ public class RangeSliceResponseResolver implements IResponseResolver<RangeSliceR
                 }
             }
             // resolved can be null even if versions doesn't have all nulls because of the call to removeDeleted in resolveSuperSet
-            if (resolved != null)
+            if (resolved != null && repair)
                 repairResults.addAll(RowDataResolver.scheduleRepairs(resolved, keyspaceName, key, versions, versionSources));
             versions.clear();
             versionSources.clear();
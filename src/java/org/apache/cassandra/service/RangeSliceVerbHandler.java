@@ -17,8 +17,11 @@
  */
 package org.apache.cassandra.service;
 
+import java.util.List;
+
 import org.apache.cassandra.db.AbstractRangeCommand;
 import org.apache.cassandra.db.RangeSliceReply;
+import org.apache.cassandra.db.Row;
 import org.apache.cassandra.net.IVerbHandler;
 import org.apache.cassandra.net.MessageIn;
 import org.apache.cassandra.net.MessagingService;
@@ -33,7 +36,10 @@ public class RangeSliceVerbHandler implements IVerbHandler<AbstractRangeCommand>
             /* Don't service reads! */
             throw new RuntimeException("Cannot service reads while bootstrapping!");
         }
-        RangeSliceReply reply = new RangeSliceReply(message.payload.executeLocally());
+        List<Row> rows = message.payload.executeLocally();
+        if (message.parameters.containsKey(AbstractRangeCommand.OMIT_CELL_VALUES_PARAM))
+            rows = message.payload.withoutCellValues(rows);
+        RangeSliceReply reply = new RangeSliceReply(rows);
         Tracing.trace("Enqueuing response to {}", message.from);
         MessagingService.instance().sendReply(reply.createMessage(), id, message.from);
     }
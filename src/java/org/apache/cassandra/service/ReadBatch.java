@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.service;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.ReadBatchCommand;
+import org.apache.cassandra.db.ReadBatchResponse;
+import org.apache.cassandra.db.ReadCommand;
+import org.apache.cassandra.db.ReadResponse;
+import org.apache.cassandra.db.Row;
+import org.apache.cassandra.net.IAsyncCallbackWithFailure;
+import org.apache.cassandra.net.MessageIn;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.tracing.Tracing;
+import org.apache.cassandra.utils.Pair;
+
+/**
+ * Collects the remote requests of the read executors of a multi-partition read, so that those going to the same
+ * replica are sent as {@link ReadBatchCommand}s of up to max_partitions_per_read_batch commands rather than one
+ * message each. Each command still has its own callback, so consistency, digest mismatches and speculation are
+ * handled per partition as before.
+ */
+class ReadBatch
+{
+    private final int maxCommands;
+    private final Map<InetAddress, List<ReadCommand>> commands = new HashMap<>();
+    private final Map<InetAddress, List<ReadCallback<ReadResponse, Row>>> handlers = new HashMap<>();
+    private final List<Pair<ColumnFamilyStore, Runnable>> localReads = new ArrayList<>();
+
+    private ReadBatch(int maxCommands)
+    {
+        this.maxCommands = maxCommands;
+    }
+
+    /**
+     * @return a batch for the requests of these commands, or null if they shouldn't be batched
+     */
+    static ReadBatch maybeCreate(List<ReadCommand> commands)
+    {
+        int maxCommands = DatabaseDescriptor.getMaxPartitionsPerReadBatch();
+        return maxCommands > 1 && commands.size() > 1 ? new ReadBatch(maxCommands) : null;
+    }
+
+    void add(InetAddress endpoint, ReadCommand command, ReadCallback<ReadResponse, Row> handler)
+    {
+        List<ReadCommand> endpointCommands = commands.get(endpoint);
+        if (endpointCommands == null)
+        {
+            endpointCommands = new ArrayList<>();
+            commands.put(endpoint, endpointCommands);
+            handlers.put(endpoint, new ArrayList<ReadCallback<ReadResponse, Row>>());
+        }
+        endpointCommands.add(command);
+        handlers.get(endpoint).add(handler);
+    }
+
+    /**
+     * Adds a local read, to be started once the remote requests have been sent as it may run on the calling thread.
+     */
+    void addLocal(ColumnFamilyStore cfs, Runnable localRead)
+    {
+        localReads.add(Pair.create(cfs, localRead));
+    }
+
+    void send()
+    {
+        for (Map.Entry<InetAddress, List<ReadCommand>> entry : commands.entrySet())
+        {
+            InetAddress endpoint = entry.getKey();
+            List<ReadCommand> endpointCommands = entry.getValue();
+            List<ReadCallback<ReadResponse, Row>> endpointHandlers = handlers.get(endpoint);
+
+            for (int start = 0; start < endpointCommands.size(); start += maxCommands)
+            {
+                int end = Math.min(start + maxCommands, endpointCommands.size());
+                if (end - start == 1)
+                {
+                    MessagingService.instance().sendRRWithFailure(endpointCommands.get(start).createMessage(), endpoint, endpointHandlers.get(start));
+                    continue;
+                }
+
+                Tracing.trace("Enqueuing {} batched reads to {}", end - start, endpoint);
+                ReadBatchCommand batch = new ReadBatchCommand(endpointCommands.subList(start, end));
+                MessagingService.instance().sendRRWithFailure(batch.createMessage(), endpoint, new Callback(endpointHandlers.subList(start, end)));
+            }
+        }
+
+        for (Pair<ColumnFamilyStore, Runnable> localRead : localReads)
+            localRead.left.readQueue.maybeExecuteImmediately(localRead.right);
+    }
+
+    /**
+     * Hands each response of a batch to the callback of its command.
+     */
+    private static class Callback implements IAsyncCallbackWithFailure<ReadBatchResponse>
+    {
+        private final List<ReadCallback<ReadResponse, Row>> handlers;
+
+        Callback(List<ReadCallback<ReadResponse, Row>> handlers)
+        {
+            this.handlers = handlers;
+        }
+
+        public void response(MessageIn<ReadBatchResponse> message)
+        {
+            List<ReadResponse> responses = message.payload.responses;
+            assert responses.size() == handlers.size();
+            for (int i = 0; i < handlers.size(); i++)
+                handlers.get(i).response(MessageIn.create(message.from, responses.get(i), message.parameters, message.verb, message.version));
+        }
+
+        public boolean isLatencyForSnitch()
+        {
+            return true;
+        }
+
+        public void onFailure(InetAddress from)
+        {
+            for (ReadCallback<ReadResponse, Row> handler : handlers)
+                handler.onFailure(from);
+        }
+    }
+}
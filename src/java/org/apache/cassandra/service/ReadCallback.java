@@ -61,6 +61,8 @@ public class ReadCallback<TMessage, TResolved> implements IAsyncCallbackWithFail
     private static final AtomicIntegerFieldUpdater<ReadCallback> failuresUpdater
             = AtomicIntegerFieldUpdater.newUpdater(ReadCallback.class, "failures");
     private volatile int failures = 0;
+    // replicas a range read speculated on, which are not part of endpoints
+    private volatile int speculatedEndpoints = 0;
 
     private final Keyspace keyspace; // TODO push this into ConsistencyLevel?
 
@@ -113,7 +115,7 @@ public class ReadCallback<TMessage, TResolved> implements IAsyncCallbackWithFail
             throw ex;
         }
 
-        if (blockfor + failures > endpoints.size())
+        if (blockfor + failures > endpoints.size() + speculatedEndpoints)
         {
             ReadFailureException ex = new ReadFailureException(consistencyLevel, received, failures, blockfor, resolver.isDataPresent());
 
@@ -169,6 +171,15 @@ public class ReadCallback<TMessage, TResolved> implements IAsyncCallbackWithFail
         response(message);
     }
 
+    /**
+     * Counts a replica the command was sent to in addition to the endpoints, once a range read speculates on it, so
+     * that one of them failing still leaves the others to answer. Must be called before sending the command.
+     */
+    void addSpeculatedEndpoint()
+    {
+        speculatedEndpoints++;
+    }
+
     public void assureSufficientLiveNodes() throws UnavailableException
     {
         consistencyLevel.assureSufficientLiveNodes(keyspace, endpoints);
@@ -218,7 +229,7 @@ public class ReadCallback<TMessage, TResolved> implements IAsyncCallbackWithFail
               ? failuresUpdater.incrementAndGet(this)
               : failures;
 
-        if (blockfor + n > endpoints.size())
+        if (blockfor + n > endpoints.size() + speculatedEndpoints)
             condition.signalAll();
     }
 }
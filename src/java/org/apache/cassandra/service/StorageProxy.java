@@ -27,6 +27,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Predicate;
 import com.google.common.cache.CacheLoader;
 import com.google.common.collect.*;
@@ -39,9 +40,13 @@ import org.slf4j.LoggerFactory;
 import org.apache.cassandra.concurrent.Stage;
 import org.apache.cassandra.concurrent.StageManager;
 import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.CFMetaData.SpeculativeRetry.RetryType;
 import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.ReadRepairDecision;
 import org.apache.cassandra.config.Schema;
+import org.apache.cassandra.cql3.ResultSetCache;
 import org.apache.cassandra.db.*;
+import org.apache.cassandra.db.filter.ReadSizeOverwhelmingException;
 import org.apache.cassandra.db.filter.TombstoneOverwhelmingException;
 import org.apache.cassandra.db.index.SecondaryIndex;
 import org.apache.cassandra.db.index.SecondaryIndexSearcher;
@@ -208,13 +213,12 @@ public class StorageProxy implements StorageProxyMBean
     {
         final long start = System.nanoTime();
         int contentions = 0;
+        CFMetaData metadata = Schema.instance.getCFMetaData(keyspaceName, cfName);
         try
         {
             consistencyForPaxos.validateForCas();
             consistencyForCommit.validateForCasCommit(keyspaceName);
 
-            CFMetaData metadata = Schema.instance.getCFMetaData(keyspaceName, cfName);
-
             long timeout = TimeUnit.MILLISECONDS.toNanos(DatabaseDescriptor.getCasContentionTimeout()); //默认是1秒
             while (System.nanoTime() - start < timeout)
             {
@@ -282,6 +286,10 @@ public class StorageProxy implements StorageProxyMBean
         }
         finally
         {
+            // even if our proposal didn't make it, repairing the paxos state may have committed an earlier one;
+            // metadata is null if the table doesn't exist, in which case nothing was cached for it
+            if (metadata != null)
+                ResultSetCache.instance.invalidate(metadata.cfId, key);
             if(contentions > 0)
                 casWriteMetrics.contention.update(contentions);
             casWriteMetrics.addNano(System.nanoTime() - start);
@@ -604,12 +612,22 @@ public class StorageProxy implements StorageProxyMBean
     {
         Collection<Mutation> augmented = TriggerExecutor.instance.execute(mutations);
 
-        if (augmented != null)
-            mutateAtomically(augmented, consistencyLevel);
-        else if (mutateAtomically) //由BatchStatement触发的
-            mutateAtomically((Collection<Mutation>) mutations, consistencyLevel);
-        else
-            mutate(mutations, consistencyLevel);
+        try
+        {
+            if (augmented != null)
+                mutateAtomically(augmented, consistencyLevel);
+            else if (mutateAtomically) //由BatchStatement触发的
+                mutateAtomically((Collection<Mutation>) mutations, consistencyLevel);
+            else
+                mutate(mutations, consistencyLevel);
+        }
+        finally
+        {
+            // replicas invalidate their own cached results, this covers the partitions this node doesn't replicate;
+            // a write that failed or timed out may still have been applied by some replicas
+            for (IMutation mutation : augmented == null ? mutations : augmented)
+                ResultSetCache.instance.invalidate(mutation);
+        }
     }
 
     /**
@@ -1024,8 +1042,7 @@ public class StorageProxy implements StorageProxyMBean
 
     private static void insertLocal(final Mutation mutation, final AbstractWriteResponseHandler responseHandler)
     {
-
-        StageManager.getStage(Stage.MUTATION).maybeExecuteImmediately(new LocalMutationRunnable()
+        LocalMutationRunnable runnable = new LocalMutationRunnable()
         {
             public void runMayThrow()
             {
@@ -1036,7 +1053,36 @@ public class StorageProxy implements StorageProxyMBean
                     responseHandler.response(null);
                 }
             }
-        });
+        };
+
+        // at ONE, this write is usually the one the client waits on, so don't hand it over to another thread
+        if (canWriteLocally(responseHandler.consistencyLevel))
+        {
+            try
+            {
+                runnable.run();
+            }
+            catch (Throwable t)
+            {
+                // fail the way the mutation stage would: the replica doesn't answer and the client gets a write timeout
+                JVMStabilityInspector.inspectThrowable(t);
+                logger.error("Failed to apply mutation locally", t);
+            }
+        }
+        else
+        {
+            StageManager.getStage(Stage.MUTATION).maybeExecuteImmediately(runnable);
+        }
+    }
+
+    /**
+     * Whether a local write can skip the mutation stage and be applied on the calling thread.
+     */
+    @VisibleForTesting
+    static boolean canWriteLocally(ConsistencyLevel consistencyLevel)
+    {
+        return DatabaseDescriptor.isLocalRequestFastPathEnabled()
+            && (consistencyLevel == ConsistencyLevel.ONE || consistencyLevel == ConsistencyLevel.LOCAL_ONE);
     }
 
     /**
@@ -1327,25 +1373,52 @@ public class StorageProxy implements StorageProxyMBean
             if (!commandsToRetry.isEmpty())
                 Tracing.trace("Retrying {} commands", commandsToRetry.size());
 
-            // send out read requests
+            // send out read requests, those of different partitions going to the same replica together if batching
+            ReadBatch batch = ReadBatch.maybeCreate(commands);
             for (int i = 0; i < commands.size(); i++)
             {
                 ReadCommand command = commands.get(i);
                 assert !command.isDigestQuery();
 
-                AbstractReadExecutor exec = AbstractReadExecutor.getReadExecutor(command, consistencyLevel);
+                Keyspace keyspace = Keyspace.open(command.ksName);
+                CFMetaData metadata = Schema.instance.getCFMetaData(command.ksName, command.cfName);
+                //getLiveSortedEndpoints会得到一个最合适的节点列表
+                List<InetAddress> allReplicas = getLiveSortedEndpoints(keyspace, command.key);
+                ReadRepairDecision repairDecision = metadata.newReadRepairDecision();
+                // left without an executor, to be read on this thread once the remote requests are out
+                if (canReadLocally(metadata, consistencyLevel, allReplicas, repairDecision))
+                    continue;
+
+                AbstractReadExecutor exec = AbstractReadExecutor.getReadExecutor(command, consistencyLevel, allReplicas, repairDecision, batch);
                 exec.executeAsync();
                 readExecutors[i] = exec;
             }
+            if (batch != null)
+                batch.send();
 
             for (AbstractReadExecutor exec : readExecutors)
-                exec.maybeTryAdditionalReplicas();
+            {
+                if (exec != null)
+                    exec.maybeTryAdditionalReplicas();
+            }
 
             // read results and make a second pass for any digest mismatches
             List<ReadCommand> repairCommands = null;
             List<ReadCallback<ReadResponse, Row>> repairResponseHandlers = null;
-            for (AbstractReadExecutor exec: readExecutors)
+            for (int i = 0; i < commands.size(); i++)
             {
+                AbstractReadExecutor exec = readExecutors[i];
+                if (exec == null)
+                {
+                    Row row = readLocally(commands.get(i), consistencyLevel);
+                    if (row != null)
+                    {
+                        commands.get(i).maybeTrim(row);
+                        rows.add(row);
+                    }
+                    continue;
+                }
+
                 try
                 {
                     Row row = exec.get();
@@ -1481,6 +1554,44 @@ public class StorageProxy implements StorageProxyMBean
         return rows;
     }
 
+    /**
+     * Whether a read can skip the read executor and be executed on the calling thread: when it is at ONE or
+     * LOCAL_ONE, without read repair nor speculation on every read, and this node is the replica the snitch picks.
+     */
+    @VisibleForTesting
+    static boolean canReadLocally(CFMetaData metadata,
+                                  ConsistencyLevel consistencyLevel,
+                                  List<InetAddress> allReplicas,
+                                  ReadRepairDecision repairDecision)
+    {
+        return DatabaseDescriptor.isLocalRequestFastPathEnabled()
+            && (consistencyLevel == ConsistencyLevel.ONE || consistencyLevel == ConsistencyLevel.LOCAL_ONE)
+            && repairDecision == ReadRepairDecision.NONE
+            && metadata.getSpeculativeRetry().type != RetryType.ALWAYS
+            && !allReplicas.isEmpty()
+            && AbstractReadExecutor.isLocalRequest(allReplicas.get(0));
+    }
+
+    /**
+     * Executes a read on the calling thread, answering it the way a LocalReadRunnable would.
+     */
+    private static Row readLocally(ReadCommand command, ConsistencyLevel consistencyLevel) throws ReadFailureException
+    {
+        long start = System.nanoTime();
+        Tracing.trace("Reading data locally on the request thread");
+        try
+        {
+            Row row = command.getRow(Keyspace.open(command.ksName));
+            MessagingService.instance().addLatency(FBUtilities.getBroadcastAddress(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return row;
+        }
+        catch (TombstoneOverwhelmingException|ReadSizeOverwhelmingException e)
+        {
+            logger.error(e.getMessage());
+            throw new ReadFailureException(consistencyLevel, 0, 1, 1, false);
+        }
+    }
+
     static class LocalReadRunnable extends DroppableRunnable
     {
         private final ReadCommand command;
@@ -1499,15 +1610,14 @@ public class StorageProxy implements StorageProxyMBean
             try
             {
                 Keyspace keyspace = Keyspace.open(command.ksName);
-                Row r = command.getRow(keyspace);
-                ReadResponse result = ReadVerbHandler.getResponse(command, r);
+                ReadResponse result = ReadVerbHandler.getResponse(command, keyspace);
                 MessagingService.instance().addLatency(FBUtilities.getBroadcastAddress(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
                 handler.response(result);
             }
             catch (Throwable t)
             {
                 handler.onFailure(FBUtilities.getBroadcastAddress());
-                if (t instanceof TombstoneOverwhelmingException)
+                if (t instanceof TombstoneOverwhelmingException || t instanceof ReadSizeOverwhelmingException)
                     logger.error(t.getMessage());
                 else
                     throw t;
@@ -1539,7 +1649,7 @@ public class StorageProxy implements StorageProxyMBean
             catch (Throwable t)
             {
                 handler.onFailure(FBUtilities.getBroadcastAddress());
-                if (t instanceof TombstoneOverwhelmingException)
+                if (t instanceof TombstoneOverwhelmingException || t instanceof ReadSizeOverwhelmingException)
                     logger.error(t.getMessage());
                 else
                     throw t;
@@ -1628,22 +1738,77 @@ public class StorageProxy implements StorageProxyMBean
 
     public static List<Row> getRangeSlice(AbstractRangeCommand command, ConsistencyLevel consistency_level)
     throws UnavailableException, ReadFailureException, ReadTimeoutException
+    {
+        RangeSliceIterator iter = getRangeSliceIterator(command, consistency_level);
+        List<Row> rows = new ArrayList<>();
+        try
+        {
+            while (iter.hasNext())
+                rows.add(iter.next());
+        }
+        finally
+        {
+            iter.close();
+        }
+        return trim(command, rows);
+    }
+
+    /**
+     * Like {@link #getRangeSlice}, but hands the rows out as the sub-ranges they belong to are answered instead of
+     * collecting them all first: only the replies of the sub-ranges queried concurrently are held at any time, and
+     * the rows are merged as they are consumed. Unlike getRangeSlice, the result is not trimmed to the command limit
+     * for non-CQL3 queries.
+     *
+     * The iterator must be closed once done with, whether it was exhausted or not.
+     */
+    public static RangeSliceIterator getRangeSliceIterator(AbstractRangeCommand command, ConsistencyLevel consistency_level)
     {
         Tracing.trace("Computing ranges to query");
-        long startTime = System.nanoTime();
+        return new RangeSliceIterator(command, consistency_level);
+    }
 
-        Keyspace keyspace = Keyspace.open(command.keyspace);
-        List<Row> rows;
-        // now scan until we have enough results
-        try
+    /**
+     * Queries the sub-ranges of a range command a batch at a time, the size of a batch being adjusted to the number
+     * of rows the previous batches returned, and iterates over the rows of every sub-range in token order.
+     */
+    public static class RangeSliceIterator implements AutoCloseable
+    {
+        private final AbstractRangeCommand command;
+        private final ConsistencyLevel consistency_level;
+        private final Keyspace keyspace;
+        private final ColumnFamilyStore cfs;
+        private final List<? extends AbstractBounds<RowPosition>> ranges;
+        private final boolean countLiveRows;
+        private final long startTime = System.nanoTime();
+
+        private int concurrencyFactor;
+        private int lastRoundRanges;
+        private int i = 0;
+        private AbstractBounds<RowPosition> nextRange = null;
+        private List<InetAddress> nextEndpoints = null;
+        private List<InetAddress> nextFilteredEndpoints = null;
+
+        private final Deque<SubRangeRequest> scanHandlers = new ArrayDeque<>();
+        private final List<AsyncOneResponse> repairResponses = new ArrayList<>();
+        private ReadCallback<RangeSliceReply, Iterable<Row>> currentHandler;
+        private Iterator<Row> currentRows;
+        private Row next;
+
+        private int liveRowCount = 0;
+        private int rowCount = 0;
+        private boolean haveSufficientRows = false;
+        private boolean closed = false;
+
+        private RangeSliceIterator(AbstractRangeCommand command, ConsistencyLevel consistency_level)
         {
-            int liveRowCount = 0;
-            boolean countLiveRows = command.countCQL3Rows() || command.ignoredTombstonedPartitions();
-            rows = new ArrayList<>();
+            this.command = command;
+            this.consistency_level = consistency_level;
+            this.keyspace = Keyspace.open(command.keyspace);
+            this.cfs = keyspace.getColumnFamilyStore(command.columnFamily);
+            this.countLiveRows = command.countCQL3Rows() || command.ignoredTombstonedPartitions();
 
             // when dealing with LocalStrategy keyspaces, we can skip the range splitting and merging (which can be
             // expensive in clusters with vnodes)
-            List<? extends AbstractBounds<RowPosition>> ranges;
             if (keyspace.getReplicationStrategy() instanceof LocalStrategy)
                 ranges = command.keyRange.unwrap();
             else //根据rowKey(是command.keyRange)取得一个范围，如果没指定rowKey只是按索引字段查，还是会把查询请求发给所有节点的
@@ -1654,201 +1819,312 @@ public class StorageProxy implements StorageProxyMBean
             // underestimate how many rows we will get per-range in order to increase the likelihood that we'll
             // fetch enough rows in the first round
             resultRowsPerRange -= resultRowsPerRange * CONCURRENT_SUBREQUESTS_MARGIN;
-            int concurrencyFactor = resultRowsPerRange == 0.0
-                                  ? 1
-                                  : Math.max(1, Math.min(ranges.size(), (int) Math.ceil(command.limit() / resultRowsPerRange)));
+            concurrencyFactor = resultRowsPerRange == 0.0
+                              ? 1
+                              : Math.max(1, Math.min(ranges.size(), (int) Math.ceil(command.limit() / resultRowsPerRange)));
             logger.debug("Estimated result rows per range: {}; requested rows: {}, ranges.size(): {}; concurrent range requests: {}",
                          resultRowsPerRange, command.limit(), ranges.size(), concurrencyFactor);
             Tracing.trace("Submitting range requests on {} ranges with a concurrency of {} ({} rows per range expected)", new Object[]{ ranges.size(), concurrencyFactor, resultRowsPerRange});
+        }
 
-            boolean haveSufficientRows = false;
-            int i = 0;
-            AbstractBounds<RowPosition> nextRange = null;
-            List<InetAddress> nextEndpoints = null;
-            List<InetAddress> nextFilteredEndpoints = null;
-            while (i < ranges.size())
+        public boolean hasNext() throws UnavailableException, ReadFailureException, ReadTimeoutException
+        {
+            while (next == null)
             {
-                List<Pair<AbstractRangeCommand, ReadCallback<RangeSliceReply, Iterable<Row>>>> scanHandlers = new ArrayList<>(concurrencyFactor);
-                int concurrentFetchStartingIndex = i;
-                int concurrentRequests = 0;
-                while ((i - concurrentFetchStartingIndex) < concurrencyFactor)
+                if (currentRows != null && currentRows.hasNext())
                 {
-                    AbstractBounds<RowPosition> range = nextRange == null
-                                                      ? ranges.get(i)
-                                                      : nextRange;
-                    List<InetAddress> liveEndpoints = nextEndpoints == null
-                                                    ? getLiveSortedEndpoints(keyspace, range.right)
-                                                    : nextEndpoints;
-                    List<InetAddress> filteredEndpoints = nextFilteredEndpoints == null
-                                                        ? consistency_level.filterForQuery(keyspace, liveEndpoints)
-                                                        : nextFilteredEndpoints;
-                    ++i;
-                    ++concurrentRequests;
+                    next = currentRows.next();
+                    rowCount++;
+                    if (countLiveRows)
+                        liveRowCount += next.getLiveCount(command.predicate, command.timestamp);
+                    return true;
+                }
 
-                    // getRestrictedRange has broken the queried range into per-[vnode] token ranges, but this doesn't take
-                    // the replication factor into account. If the intersection of live endpoints for 2 consecutive ranges
-                    // still meets the CL requirements, then we can merge both ranges into the same RangeSliceCommand.
-                    while (i < ranges.size())
-                    {
-                        nextRange = ranges.get(i);
-                        nextEndpoints = getLiveSortedEndpoints(keyspace, nextRange.right);
-                        nextFilteredEndpoints = consistency_level.filterForQuery(keyspace, nextEndpoints);
-
-                        // If the current range right is the min token, we should stop merging because CFS.getRangeSlice
-                        // don't know how to deal with a wrapping range.
-                        // Note: it would be slightly more efficient to have CFS.getRangeSlice on the destination nodes unwraps
-                        // the range if necessary and deal with it. However, we can't start sending wrapped range without breaking
-                        // wire compatibility, so It's likely easier not to bother;
-                        if (range.right.isMinimum())
-                            break;
-
-                        List<InetAddress> merged = intersection(liveEndpoints, nextEndpoints);
-
-                        // Check if there is enough endpoint for the merge to be possible.
-                        if (!consistency_level.isSufficientLiveNodes(keyspace, merged))
-                            break;
-
-                        List<InetAddress> filteredMerged = consistency_level.filterForQuery(keyspace, merged);
-
-                        // Estimate whether merging will be a win or not
-                        if (!DatabaseDescriptor.getEndpointSnitch().isWorthMergingForRangeQuery(filteredMerged, filteredEndpoints, nextFilteredEndpoints))
-                            break;
-
-                        // If we get there, merge this range and the next one
-                        range = range.withNewRight(nextRange.right);
-                        liveEndpoints = merged;
-                        filteredEndpoints = filteredMerged;
-                        ++i;
-                    }
+                if (currentRows != null)
+                {
+                    // the sub-range is done with: its rows have all been merged, so its repairs have all been sent
+                    repairResponses.addAll(((RangeSliceResponseResolver) currentHandler.resolver).repairResults);
+                    currentHandler = null;
+                    currentRows = null;
 
-                    AbstractRangeCommand nodeCmd = command.forSubRange(range);
-
-                    // collect replies and resolve according to consistency level
-                    RangeSliceResponseResolver resolver = new RangeSliceResponseResolver(nodeCmd.keyspace, command.timestamp);
-                    List<InetAddress> minimalEndpoints = filteredEndpoints.subList(0, Math.min(filteredEndpoints.size(), consistency_level.blockFor(keyspace)));
-                    ReadCallback<RangeSliceReply, Iterable<Row>> handler = new ReadCallback<>(resolver, consistency_level, nodeCmd, minimalEndpoints);
-                    handler.assureSufficientLiveNodes();
-                    resolver.setSources(filteredEndpoints);
-                    if (filteredEndpoints.size() == 1
-                        && filteredEndpoints.get(0).equals(FBUtilities.getBroadcastAddress())
-                        && OPTIMIZE_LOCAL_REQUESTS)
-                    {
-                        StageManager.getStage(Stage.READ).execute(new LocalRangeSliceRunnable(nodeCmd, handler), Tracing.instance.get());
-                    }
-                    else
-                    {
-                        MessageOut<? extends AbstractRangeCommand> message = nodeCmd.createMessage();
-                        for (InetAddress endpoint : filteredEndpoints)
-                        {
-                            Tracing.trace("Enqueuing request to {}", endpoint);
-                            MessagingService.instance().sendRRWithFailure(message, endpoint, handler);
-                        }
-                    }
-                    scanHandlers.add(Pair.create(nodeCmd, handler));
+                    // if we're done, great, otherwise, move to the next range
+                    if ((countLiveRows ? liveRowCount : rowCount) >= command.limit())
+                        haveSufficientRows = true;
                 }
-                Tracing.trace("Submitted {} concurrent range requests covering {} ranges", concurrentRequests, i - concurrentFetchStartingIndex);
 
-                List<AsyncOneResponse> repairResponses = new ArrayList<>();
-                for (Pair<AbstractRangeCommand, ReadCallback<RangeSliceReply, Iterable<Row>>> cmdPairHandler : scanHandlers)
+                if (!haveSufficientRows && !scanHandlers.isEmpty())
                 {
-                    AbstractRangeCommand nodeCmd = cmdPairHandler.left;
-                    ReadCallback<RangeSliceReply, Iterable<Row>> handler = cmdPairHandler.right;
-                    RangeSliceResponseResolver resolver = (RangeSliceResponseResolver)handler.resolver;
+                    SubRangeRequest request = scanHandlers.poll();
+                    request.maybeTryAdditionalReplica();
+                    currentHandler = request.handler;
+                    currentRows = getRows(currentHandler).iterator();
+                    continue;
+                }
 
-                    try
-                    {
-                        for (Row row : handler.get())
-                        {
-                            rows.add(row);
-                            if (countLiveRows)
-                                liveRowCount += row.getLiveCount(command.predicate, command.timestamp);
-                        }
-                        repairResponses.addAll(resolver.repairResults);
-                    }
-                    catch (ReadTimeoutException|ReadFailureException ex)
-                    {
-                        // we timed out or failed waiting for responses
-                        int blockFor = consistency_level.blockFor(keyspace);
-                        int responseCount = resolver.responses.size();
-                        String gotData = responseCount > 0
-                                         ? resolver.isDataPresent() ? " (including data)" : " (only digests)"
-                                         : "";
-
-                        boolean isTimeout = ex instanceof ReadTimeoutException;
-                        if (Tracing.isTracing())
-                        {
-                            Tracing.trace("{}; received {} of {} responses{} for range {} of {}",
-                                          new Object[]{(isTimeout ? "Timed out" : "Failed"), responseCount, blockFor, gotData, i, ranges.size() });
-                        }
-                        else if (logger.isDebugEnabled())
-                        {
-                            logger.debug("Range slice {}; received {} of {} responses{} for range {} of {}",
-                                         (isTimeout ? "timeout" : "failure"), responseCount, blockFor, gotData, i, ranges.size());
-                        }
-                        throw ex;
-                    }
-                    catch (DigestMismatchException e)
-                    {
-                        throw new AssertionError(e); // no digests in range slices yet
-                    }
+                // the current batch is over, one way or the other
+                waitForRepairs();
+                if (haveSufficientRows || i >= ranges.size())
+                    return false;
 
-                    // if we're done, great, otherwise, move to the next range
-                    int count = countLiveRows ? liveRowCount : rows.size();
-                    if (count >= nodeCmd.limit())
-                    {
-                        haveSufficientRows = true;
+                if (i > 0)
+                    updateConcurrencyFactor();
+                sendNextBatch();
+            }
+            return true;
+        }
+
+        public Row next() throws UnavailableException, ReadFailureException, ReadTimeoutException
+        {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            Row row = next;
+            next = null;
+            return row;
+        }
+
+        private void sendNextBatch() throws UnavailableException
+        {
+            int concurrentFetchStartingIndex = i;
+            int concurrentRequests = 0;
+            int maxRequests = DatabaseDescriptor.getMaxConcurrentRangeRequests();
+            while ((i - concurrentFetchStartingIndex) < concurrencyFactor && (maxRequests <= 0 || concurrentRequests < maxRequests))
+            {
+                AbstractBounds<RowPosition> range = nextRange == null
+                                                  ? ranges.get(i)
+                                                  : nextRange;
+                List<InetAddress> liveEndpoints = nextEndpoints == null
+                                                ? getLiveSortedEndpoints(keyspace, range.right)
+                                                : nextEndpoints;
+                List<InetAddress> filteredEndpoints = nextFilteredEndpoints == null
+                                                    ? consistency_level.filterForQuery(keyspace, liveEndpoints)
+                                                    : nextFilteredEndpoints;
+                ++i;
+                ++concurrentRequests;
+
+                // getRestrictedRange has broken the queried range into per-[vnode] token ranges, but this doesn't take
+                // the replication factor into account. If the intersection of live endpoints for 2 consecutive ranges
+                // still meets the CL requirements, then we can merge both ranges into the same RangeSliceCommand.
+                while (i < ranges.size())
+                {
+                    nextRange = ranges.get(i);
+                    nextEndpoints = getLiveSortedEndpoints(keyspace, nextRange.right);
+                    nextFilteredEndpoints = consistency_level.filterForQuery(keyspace, nextEndpoints);
+
+                    // If the current range right is the min token, we should stop merging because CFS.getRangeSlice
+                    // don't know how to deal with a wrapping range.
+                    // Note: it would be slightly more efficient to have CFS.getRangeSlice on the destination nodes unwraps
+                    // the range if necessary and deal with it. However, we can't start sending wrapped range without breaking
+                    // wire compatibility, so It's likely easier not to bother;
+                    if (range.right.isMinimum())
+                        break;
+
+                    List<InetAddress> merged = intersection(liveEndpoints, nextEndpoints);
+
+                    // Check if there is enough endpoint for the merge to be possible.
+                    if (!consistency_level.isSufficientLiveNodes(keyspace, merged))
+                        break;
+
+                    List<InetAddress> filteredMerged = consistency_level.filterForQuery(keyspace, merged);
+
+                    // Estimate whether merging will be a win or not
+                    if (!DatabaseDescriptor.getEndpointSnitch().isWorthMergingForRangeQuery(filteredMerged, filteredEndpoints, nextFilteredEndpoints))
                         break;
+
+                    // If we get there, merge this range and the next one
+                    range = range.withNewRight(nextRange.right);
+                    liveEndpoints = merged;
+                    filteredEndpoints = filteredMerged;
+                    ++i;
+                }
+
+                AbstractRangeCommand nodeCmd = command.forSubRange(range);
+
+                // collect replies and resolve according to consistency level
+                RangeSliceResponseResolver resolver = new RangeSliceResponseResolver(nodeCmd.keyspace, command.timestamp, !nodeCmd.omitCellValues);
+                List<InetAddress> minimalEndpoints = filteredEndpoints.subList(0, Math.min(filteredEndpoints.size(), consistency_level.blockFor(keyspace)));
+                ReadCallback<RangeSliceReply, Iterable<Row>> handler = new ReadCallback<>(resolver, consistency_level, nodeCmd, minimalEndpoints);
+                handler.assureSufficientLiveNodes();
+                if (filteredEndpoints.size() == 1
+                    && filteredEndpoints.get(0).equals(FBUtilities.getBroadcastAddress())
+                    && OPTIMIZE_LOCAL_REQUESTS)
+                {
+                    Keyspace.open(nodeCmd.keyspace).getColumnFamilyStore(nodeCmd.columnFamily).readQueue.execute(new LocalRangeSliceRunnable(nodeCmd, handler), Tracing.instance.get());
+                }
+                else
+                {
+                    MessageOut<? extends AbstractRangeCommand> message = nodeCmd.createMessage();
+                    for (InetAddress endpoint : filteredEndpoints)
+                    {
+                        Tracing.trace("Enqueuing request to {}", endpoint);
+                        MessagingService.instance().sendRRWithFailure(message, endpoint, handler);
                     }
                 }
+                scanHandlers.add(new SubRangeRequest(nodeCmd, handler, minimalEndpoints, findExtraReplica(minimalEndpoints, liveEndpoints)));
+            }
+            lastRoundRanges = i - concurrentFetchStartingIndex;
+            Tracing.trace("Submitted {} concurrent range requests covering {} ranges", concurrentRequests, lastRoundRanges);
+        }
 
-                try
+        private Iterable<Row> getRows(ReadCallback<RangeSliceReply, Iterable<Row>> handler) throws ReadFailureException, ReadTimeoutException
+        {
+            RangeSliceResponseResolver resolver = (RangeSliceResponseResolver)handler.resolver;
+            try
+            {
+                return handler.get();
+            }
+            catch (ReadTimeoutException|ReadFailureException ex)
+            {
+                // we timed out or failed waiting for responses
+                int blockFor = consistency_level.blockFor(keyspace);
+                int responseCount = resolver.responses.size();
+                String gotData = responseCount > 0
+                                 ? resolver.isDataPresent() ? " (including data)" : " (only digests)"
+                                 : "";
+
+                boolean isTimeout = ex instanceof ReadTimeoutException;
+                if (Tracing.isTracing())
                 {
-                    FBUtilities.waitOnFutures(repairResponses, DatabaseDescriptor.getWriteRpcTimeout());
+                    Tracing.trace("{}; received {} of {} responses{} for range {} of {}",
+                                  new Object[]{(isTimeout ? "Timed out" : "Failed"), responseCount, blockFor, gotData, i, ranges.size() });
                 }
-                catch (TimeoutException ex)
+                else if (logger.isDebugEnabled())
                 {
-                    // We got all responses, but timed out while repairing
-                    int blockFor = consistency_level.blockFor(keyspace);
-                    if (Tracing.isTracing())
-                        Tracing.trace("Timed out while read-repairing after receiving all {} data and digest responses", blockFor);
-                    else
-                        logger.debug("Range slice timeout while read-repairing after receiving all {} data and digest responses", blockFor);
-                    throw new ReadTimeoutException(consistency_level, blockFor-1, blockFor, true);
+                    logger.debug("Range slice {}; received {} of {} responses{} for range {} of {}",
+                                 (isTimeout ? "timeout" : "failure"), responseCount, blockFor, gotData, i, ranges.size());
                 }
+                throw ex;
+            }
+            catch (DigestMismatchException e)
+            {
+                throw new AssertionError(e); // no digests in range slices yet
+            }
+        }
 
-                if (haveSufficientRows)
-                    return trim(command, rows);
+        private void waitForRepairs() throws ReadTimeoutException
+        {
+            try
+            {
+                FBUtilities.waitOnFutures(repairResponses, DatabaseDescriptor.getWriteRpcTimeout());
+            }
+            catch (TimeoutException ex)
+            {
+                // We got all responses, but timed out while repairing
+                int blockFor = consistency_level.blockFor(keyspace);
+                if (Tracing.isTracing())
+                    Tracing.trace("Timed out while read-repairing after receiving all {} data and digest responses", blockFor);
+                else
+                    logger.debug("Range slice timeout while read-repairing after receiving all {} data and digest responses", blockFor);
+                throw new ReadTimeoutException(consistency_level, blockFor-1, blockFor, true);
+            }
+            repairResponses.clear();
+        }
+
+        // we didn't get enough rows in our concurrent fetch; recalculate our concurrency factor
+        // based on the results we've seen so far (as long as we still have ranges left to query)
+        private void updateConcurrencyFactor()
+        {
+            int fetchedRows = countLiveRows ? liveRowCount : rowCount;
+            concurrencyFactor = nextConcurrencyFactor(lastRoundRanges, i, ranges.size() - i, fetchedRows, command.limit());
+            logger.debug("Didn't get enough response rows; rows so far: {} from {} ranges; remaining rows: {}, new concurrent requests: {}",
+                         fetchedRows, i, command.limit() - fetchedRows, concurrencyFactor);
+            Tracing.trace("Got {} rows from {} ranges, querying {} ranges next", new Object[]{ fetchedRows, i, concurrencyFactor });
+        }
+
+        /**
+         * @return the closest live replica that a sub-range command wasn't sent to, and that may be asked instead, or
+         * null if there is none or the table doesn't speculate
+         */
+        private InetAddress findExtraReplica(List<InetAddress> contacted, List<InetAddress> liveEndpoints)
+        {
+            RetryType retryType = cfs.metadata.getSpeculativeRetry().type;
+            if (retryType == RetryType.NONE || retryType == RetryType.ALWAYS)
+                return null;
 
-                // we didn't get enough rows in our concurrent fetch; recalculate our concurrency factor
-                // based on the results we've seen so far (as long as we still have ranges left to query)
-                if (i < ranges.size())
+            // the live endpoints are sorted by proximity already
+            for (InetAddress endpoint : liveEndpoints)
+            {
+                if (!contacted.contains(endpoint) && (!consistency_level.isDatacenterLocal() || consistency_level.isLocal(endpoint)))
+                    return endpoint;
+            }
+            return null;
+        }
+
+        /**
+         * A sub-range command sent as part of the scan, and what to do if the replicas it was sent to are late.
+         */
+        private class SubRangeRequest
+        {
+            final AbstractRangeCommand command;
+            final ReadCallback<RangeSliceReply, Iterable<Row>> handler;
+            final List<InetAddress> contacted;
+            final InetAddress extraReplica;
+
+            SubRangeRequest(AbstractRangeCommand command, ReadCallback<RangeSliceReply, Iterable<Row>> handler, List<InetAddress> contacted, InetAddress extraReplica)
+            {
+                this.command = command;
+                this.handler = handler;
+                this.contacted = contacted;
+                this.extraReplica = extraReplica;
+            }
+
+            /**
+             * Sends the command to one more replica if the contacted ones take longer than they usually do, like
+             * AbstractReadExecutor does for single partition reads. The first of the answers to come back is used.
+             */
+            void maybeTryAdditionalReplica()
+            {
+                if (extraReplica == null)
+                    return;
+
+                long thresholdNanos = AbstractReadExecutor.speculationThresholdNanos(cfs, contacted);
+                // no latency information, or we're overloaded
+                if (thresholdNanos > TimeUnit.MILLISECONDS.toNanos(command.getTimeout()))
+                    return;
+
+                if (!handler.await(thresholdNanos, TimeUnit.NANOSECONDS) && AbstractReadExecutor.tryAcquireSpeculation())
                 {
-                    float fetchedRows = countLiveRows ? liveRowCount : rows.size();
-                    float remainingRows = command.limit() - fetchedRows;
-                    float actualRowsPerRange;
-                    if (fetchedRows == 0.0)
-                    {
-                        // we haven't actually gotten any results, so query all remaining ranges at once
-                        actualRowsPerRange = 0.0f;
-                        concurrencyFactor = ranges.size() - i;
-                    }
-                    else
-                    {
-                        actualRowsPerRange = fetchedRows / i;
-                        concurrencyFactor = Math.max(1, Math.min(ranges.size() - i, Math.round(remainingRows / actualRowsPerRange)));
-                    }
-                    logger.debug("Didn't get enough response rows; actual rows per range: {}; remaining rows: {}, new concurrent requests: {}",
-                                 actualRowsPerRange, (int) remainingRows, concurrencyFactor);
+                    Tracing.trace("Speculating range request to {}", extraReplica);
+                    handler.addSpeculatedEndpoint();
+                    MessagingService.instance().sendRRWithFailure(command.createMessage(), extraReplica, handler);
+                    cfs.metric.speculativeRetries.inc();
                 }
             }
         }
-        finally
+
+        public void close()
         {
+            if (closed)
+                return;
+            closed = true;
+
             long latency = System.nanoTime() - startTime;
             rangeMetrics.addNano(latency);
-            Keyspace.open(command.keyspace).getColumnFamilyStore(command.columnFamily).metric.coordinatorScanLatency.update(latency, TimeUnit.NANOSECONDS);
+            cfs.metric.coordinatorScanLatency.update(latency, TimeUnit.NANOSECONDS);
         }
-        return trim(command, rows);
+    }
+
+    /**
+     * Sizes the next round of a range scan after the rows the previous rounds returned.
+     *
+     * @param lastRoundRanges the number of ranges the round that just ended queried
+     * @param queriedRanges the number of ranges queried so far
+     * @param remainingRanges the number of ranges left to query
+     * @param fetchedRows the number of rows fetched so far
+     * @param limit the number of rows the scan wants
+     */
+    @VisibleForTesting
+    static int nextConcurrencyFactor(int lastRoundRanges, int queriedRanges, int remainingRanges, int fetchedRows, int limit)
+    {
+        // we haven't actually gotten any results, so query all remaining ranges at once
+        if (fetchedRows == 0)
+            return remainingRanges;
+
+        float rowsPerRange = (float) fetchedRows / queriedRanges;
+        int estimated = (int) Math.ceil((limit - fetchedRows) / rowsPerRange * (1 + CONCURRENT_SUBREQUESTS_MARGIN));
+        // The round that just ended didn't return enough rows, so they are sparser than the average says, at least
+        // there. Grow at least geometrically so that rows spread unevenly (or filtered away on most ranges) don't
+        // cost a round trip per range.
+        return Math.max(1, Math.min(remainingRanges, Math.max(estimated, 2 * lastRoundRanges)));
     }
 
     private static List<Row> trim(AbstractRangeCommand command, List<Row> rows)
@@ -2255,6 +2531,19 @@ public class StorageProxy implements StorageProxyMBean
     public Long getRangeRpcTimeout() { return DatabaseDescriptor.getRangeRpcTimeout(); }
     public void setRangeRpcTimeout(Long timeoutInMillis) { DatabaseDescriptor.setRangeRpcTimeout(timeoutInMillis); }
 
+    public int getMaxConcurrentRangeRequests() { return DatabaseDescriptor.getMaxConcurrentRangeRequests(); }
+    public void setMaxConcurrentRangeRequests(int maxConcurrentRangeRequests) { DatabaseDescriptor.setMaxConcurrentRangeRequests(maxConcurrentRangeRequests); }
+
+    public int getMaxPartitionsPerReadBatch() { return DatabaseDescriptor.getMaxPartitionsPerReadBatch(); }
+    public void setMaxPartitionsPerReadBatch(int maxPartitionsPerReadBatch) { DatabaseDescriptor.setMaxPartitionsPerReadBatch(maxPartitionsPerReadBatch); }
+
+    public int getSpeculativeRetriesPerSecond() { return DatabaseDescriptor.getSpeculativeRetriesPerSecond(); }
+    public void setSpeculativeRetriesPerSecond(int speculativeRetriesPerSecond)
+    {
+        DatabaseDescriptor.setSpeculativeRetriesPerSecond(speculativeRetriesPerSecond);
+        AbstractReadExecutor.setSpeculationRate(speculativeRetriesPerSecond);
+    }
+
     public Long getTruncateRpcTimeout() { return DatabaseDescriptor.getTruncateRpcTimeout(); }
     public void setTruncateRpcTimeout(Long timeoutInMillis) { DatabaseDescriptor.setTruncateRpcTimeout(timeoutInMillis); }
     public void reloadTriggerClasses() { TriggerExecutor.instance.reloadClasses(); }
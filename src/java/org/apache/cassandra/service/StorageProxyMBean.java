@@ -46,6 +46,12 @@ public interface StorageProxyMBean
     public void setCasContentionTimeout(Long timeoutInMillis);
     public Long getRangeRpcTimeout();
     public void setRangeRpcTimeout(Long timeoutInMillis);
+    public int getMaxConcurrentRangeRequests();
+    public void setMaxConcurrentRangeRequests(int maxConcurrentRangeRequests);
+    public int getMaxPartitionsPerReadBatch();
+    public void setMaxPartitionsPerReadBatch(int maxPartitionsPerReadBatch);
+    public int getSpeculativeRetriesPerSecond();
+    public void setSpeculativeRetriesPerSecond(int speculativeRetriesPerSecond);
     public Long getTruncateRpcTimeout();
     public void setTruncateRpcTimeout(Long timeoutInMillis);
 
@@ -45,6 +45,7 @@ import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.Appender;
 import org.apache.cassandra.auth.AuthKeyspace;
 import org.apache.cassandra.auth.AuthMigrationListener;
+import org.apache.cassandra.cache.HotKeysVerbHandler;
 import org.apache.cassandra.concurrent.*;
 import org.apache.cassandra.config.*;
 import org.apache.cassandra.cql3.QueryOptions;
@@ -212,6 +213,7 @@ public class StorageService extends NotificationBroadcasterSupport implements IE
         MessagingService.instance().registerVerbHandlers(MessagingService.Verb.MUTATION, new MutationVerbHandler());
         MessagingService.instance().registerVerbHandlers(MessagingService.Verb.READ_REPAIR, new ReadRepairVerbHandler());
         MessagingService.instance().registerVerbHandlers(MessagingService.Verb.READ, new ReadVerbHandler());
+        MessagingService.instance().registerVerbHandlers(MessagingService.Verb.READ_BATCH, new ReadBatchVerbHandler());
         MessagingService.instance().registerVerbHandlers(MessagingService.Verb.RANGE_SLICE, new RangeSliceVerbHandler());
         MessagingService.instance().registerVerbHandlers(MessagingService.Verb.PAGED_RANGE, new RangeSliceVerbHandler());
         MessagingService.instance().registerVerbHandlers(MessagingService.Verb.COUNTER_MUTATION, new CounterMutationVerbHandler());
@@ -237,6 +239,7 @@ public class StorageService extends NotificationBroadcasterSupport implements IE
 
         MessagingService.instance().registerVerbHandlers(MessagingService.Verb.SNAPSHOT, new SnapshotVerbHandler());
         MessagingService.instance().registerVerbHandlers(MessagingService.Verb.ECHO, new EchoVerbHandler());
+        MessagingService.instance().registerVerbHandlers(MessagingService.Verb.CACHE_HOT_KEYS, new HotKeysVerbHandler());
     }
 
     public void registerDaemon(CassandraDaemon daemon)
@@ -833,6 +836,7 @@ public class StorageService extends NotificationBroadcasterSupport implements IE
             assert tokenMetadata.sortedTokens().size() > 0;
 
             doAuthSetup();
+            CacheWarmer.maybeStart();
         }
         else
         {
@@ -4201,6 +4205,38 @@ public class StorageService extends NotificationBroadcasterSupport implements IE
         DatabaseDescriptor.setTombstoneFailureThreshold(threshold);
     }
 
+    public int getReadSizeWarnThresholdInKB()
+    {
+        return DatabaseDescriptor.getReadSizeWarnThresholdInKB();
+    }
+
+    public void setReadSizeWarnThresholdInKB(int threshold)
+    {
+        DatabaseDescriptor.setReadSizeWarnThresholdInKB(threshold);
+    }
+
+    public int getReadSizeFailureThresholdInKB()
+    {
+        return DatabaseDescriptor.getReadSizeFailureThresholdInKB();
+    }
+
+    public void setReadSizeFailureThresholdInKB(int threshold)
+    {
+        DatabaseDescriptor.setReadSizeFailureThresholdInKB(threshold);
+    }
+
+    public int getConcurrentReadsPerTable()
+    {
+        return DatabaseDescriptor.getConcurrentReadsPerTable();
+    }
+
+    public void setConcurrentReadsPerTable(int concurrentReads)
+    {
+        if (concurrentReads < 0)
+            throw new IllegalArgumentException("concurrent_reads_per_table must be positive, or 0 to disable, got " + concurrentReads);
+        DatabaseDescriptor.setConcurrentReadsPerTable(concurrentReads);
+    }
+
     public int getBatchSizeFailureThreshold()
     {
         return DatabaseDescriptor.getBatchSizeFailThresholdInKB();
@@ -522,6 +522,21 @@ public interface StorageServiceMBean extends NotificationEmitter
     /** Sets the threshold for abandoning queries with many tombstones */
     public void setTombstoneFailureThreshold(int tombstoneDebugThreshold);
 
+    /** Returns the threshold for warning of reads collecting many kilobytes of cells from a partition */
+    public int getReadSizeWarnThresholdInKB();
+    /** Sets the threshold for warning of reads collecting many kilobytes of cells from a partition, 0 to disable */
+    public void setReadSizeWarnThresholdInKB(int threshold);
+
+    /** Returns the threshold for abandoning reads collecting many kilobytes of cells from a partition */
+    public int getReadSizeFailureThresholdInKB();
+    /** Sets the threshold for abandoning reads collecting many kilobytes of cells from a partition, 0 to disable */
+    public void setReadSizeFailureThresholdInKB(int threshold);
+
+    /** Returns how many reads of a table (times its weight) may run on the read stage at once */
+    public int getConcurrentReadsPerTable();
+    /** Sets how many reads of a table (times its weight) may run on the read stage at once, 0 to disable */
+    public void setConcurrentReadsPerTable(int concurrentReads);
+
     /** Returns the threshold for rejecting queries due to a large batch size */
     public int getBatchSizeFailureThreshold();
     /** Sets the threshold for rejecting queries due to a large batch size */
@@ -83,7 +83,8 @@ public class RangeSliceQueryPager extends AbstractQueryPager
                                                           sf.finish(),
                                                           command.rowFilter,
                                                           pageSize,
-                                                          command.countCQL3Rows);
+                                                          command.countCQL3Rows,
+                                                          command.omitCellValues);
 
         return localQuery
              ? pageCmd.executeLocally()
@@ -0,0 +1,301 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.tools;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import com.clearspring.analytics.stream.cardinality.CardinalityMergeException;
+import com.clearspring.analytics.stream.cardinality.ICardinality;
+import org.apache.commons.cli.*;
+
+import org.apache.cassandra.db.compaction.CompactionSimulation;
+import org.apache.cassandra.db.compaction.CompactionSimulation.SimulatedSSTable;
+import org.apache.cassandra.db.compaction.DateTieredCompactionStrategy;
+import org.apache.cassandra.db.compaction.LeveledCompactionStrategy;
+import org.apache.cassandra.db.compaction.SizeTieredCompactionStrategy;
+import org.apache.cassandra.io.sstable.Component;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.io.sstable.SSTable;
+import org.apache.cassandra.io.sstable.metadata.CompactionMetadata;
+import org.apache.cassandra.io.sstable.metadata.MetadataComponent;
+import org.apache.cassandra.io.sstable.metadata.MetadataType;
+import org.apache.cassandra.io.sstable.metadata.StatsMetadata;
+import org.apache.cassandra.utils.Pair;
+
+import static org.apache.cassandra.tools.BulkLoader.CmdLineOptions;
+
+/**
+ * Predicts how compaction strategies would behave on a table, starting from the metadata of its sstables.
+ * Only the Statistics.db component and the size of the data files are read; nothing is written.
+ */
+public class StandaloneCompactionSimulator
+{
+    private static final String TOOL_NAME = "sstablesimulate";
+    private static final String DEBUG_OPTION = "debug";
+    private static final String HELP_OPTION = "help";
+    private static final String STRATEGY_OPTION = "strategy";
+    private static final String COMPACTION_OPTION = "option";
+    private static final String WRITE_RATE_OPTION = "write-rate";
+    private static final String FLUSH_SIZE_OPTION = "flush-size";
+    private static final String DURATION_OPTION = "duration";
+    private static final String THROUGHPUT_OPTION = "throughput";
+    private static final String COMPACTORS_OPTION = "compactors";
+    private static final String OVERWRITE_OPTION = "overwrite-ratio";
+
+    private static final List<String> ALL_STRATEGIES = Arrays.asList(SizeTieredCompactionStrategy.class.getSimpleName(),
+                                                                     LeveledCompactionStrategy.class.getSimpleName(),
+                                                                     DateTieredCompactionStrategy.class.getSimpleName());
+
+    public static void main(String args[])
+    {
+        Options options = Options.parseArgs(args);
+        PrintStream out = System.out;
+        try
+        {
+            List<SimulatedSSTable> sstables = new ArrayList<>();
+            ICardinality cardinality = null;
+            boolean cardinalityAvailable = true;
+            long minTimestamp = Long.MAX_VALUE;
+            long maxTimestamp = Long.MIN_VALUE;
+            for (String filename : options.filenames)
+            {
+                File file = new File(filename);
+                Pair<Descriptor, Component> pair = file.exists() ? SSTable.tryComponentFromFilename(file.getParentFile(), file.getName()) : null;
+                // every sstable is listed once, through its data component
+                if (pair == null || pair.right != Component.DATA)
+                    continue;
+
+                Descriptor descriptor = pair.left;
+                Map<MetadataType, MetadataComponent> metadata = descriptor.getMetadataSerializer().deserialize(descriptor, EnumSet.of(MetadataType.STATS, MetadataType.COMPACTION));
+                StatsMetadata stats = (StatsMetadata) metadata.get(MetadataType.STATS);
+                CompactionMetadata compaction = (CompactionMetadata) metadata.get(MetadataType.COMPACTION);
+                if (stats == null)
+                {
+                    System.err.println("Skipping " + descriptor + ": no stats metadata");
+                    continue;
+                }
+
+                long partitions = stats.estimatedRowSize.count();
+                if (compaction != null && compaction.cardinalityEstimator != null)
+                {
+                    partitions = compaction.cardinalityEstimator.cardinality();
+                    try
+                    {
+                        cardinality = cardinality == null ? compaction.cardinalityEstimator : cardinality.merge(compaction.cardinalityEstimator);
+                    }
+                    catch (CardinalityMergeException e)
+                    {
+                        cardinalityAvailable = false;
+                    }
+                }
+                else
+                {
+                    cardinalityAvailable = false;
+                }
+
+                sstables.add(new SimulatedSSTable(file.length(), partitions, stats.minTimestamp, stats.maxTimestamp, stats.sstableLevel));
+                minTimestamp = Math.min(minTimestamp, stats.minTimestamp);
+                maxTimestamp = Math.max(maxTimestamp, stats.maxTimestamp);
+                if (options.debug)
+                    out.printf("Loaded %s: %d bytes, ~%d partitions, level %d%n", descriptor, file.length(), partitions, stats.sstableLevel);
+            }
+
+            if (sstables.isEmpty())
+            {
+                System.err.println("No valid sstables to simulate");
+                System.exit(1);
+            }
+
+            CompactionSimulation.Parameters parameters = options.parameters;
+            long totalBytes = 0;
+            long totalPartitions = 0;
+            for (SimulatedSSTable sstable : sstables)
+            {
+                totalBytes += sstable.bytes;
+                totalPartitions += sstable.partitions;
+            }
+            if (cardinalityAvailable && cardinality != null)
+                parameters.distinctPartitions = cardinality.cardinality();
+            // replay the rate at which the existing data was written, unless told otherwise; timestamps are
+            // assumed to be in microseconds, as written by the native protocol and cqlsh
+            if (options.writeRate == null)
+            {
+                long seconds = Math.max(1, TimeUnit.MICROSECONDS.toSeconds(maxTimestamp - minTimestamp));
+                parameters.writeBytesPerSecond = Math.max(1, totalBytes / seconds);
+            }
+            if (options.overwriteRatio == null)
+            {
+                long distinct = parameters.distinctPartitions < 0 ? totalPartitions : parameters.distinctPartitions;
+                parameters.overwriteRatio = totalPartitions == 0 ? 0 : 1 - Math.min(1, (double) distinct / totalPartitions);
+            }
+
+            out.printf("Loaded %d sstables: %,d bytes, ~%,d partitions (~%,d distinct)%n",
+                       sstables.size(), totalBytes, totalPartitions, parameters.distinctPartitions < 0 ? totalPartitions : parameters.distinctPartitions);
+            out.printf("Simulating %s of writes at %,d bytes/s, flushing %,d bytes sstables, overwrite ratio %.2f, %d compactor(s) sharing %s%n%n",
+                       formatDuration(parameters.durationSeconds), parameters.writeBytesPerSecond, parameters.flushBytes, parameters.overwriteRatio,
+                       parameters.concurrentCompactors,
+                       parameters.compactionBytesPerSecond <= 0 ? "unthrottled" : String.format("%,d bytes/s", parameters.compactionBytesPerSecond));
+
+            out.println(String.format("%-30s%12s%20s%20s%14s%14s%12s%10s",
+                                      "Strategy", "Write amp.", "Peak disk", "Final disk", "Reads (mean)", "Reads (max)", "Compactions", "SSTables"));
+            for (String strategy : options.strategies)
+            {
+                CompactionSimulation.Result result = CompactionSimulation.simulate(strategy, options.compactionOptions, sstables, parameters);
+                out.println(String.format("%-30s%12.2f%20s%20s%14.2f%14.2f%12d%10d",
+                                          result.strategy, result.writeAmplification(), String.format("%,d", result.peakDiskBytes),
+                                          String.format("%,d", result.finalDiskBytes), result.meanSSTablesPerRead, result.maxSSTablesPerRead,
+                                          result.compactions, result.finalSSTables));
+            }
+            System.exit(0);
+        }
+        catch (Exception e)
+        {
+            System.err.println(e.getMessage());
+            if (options.debug)
+                e.printStackTrace(System.err);
+            System.exit(1);
+        }
+    }
+
+    private static String formatDuration(long seconds)
+    {
+        return seconds % 3600 == 0 ? (seconds / 3600) + "h" : seconds + "s";
+    }
+
+    private static class Options
+    {
+        public final List<String> filenames;
+
+        public boolean debug;
+        public List<String> strategies = ALL_STRATEGIES;
+        public final Map<String, String> compactionOptions = new HashMap<>();
+        public final CompactionSimulation.Parameters parameters = new CompactionSimulation.Parameters();
+        public String writeRate;
+        public String overwriteRatio;
+
+        private Options(List<String> filenames)
+        {
+            this.filenames = filenames;
+        }
+
+        public static Options parseArgs(String cmdArgs[])
+        {
+            CommandLineParser parser = new GnuParser();
+            CmdLineOptions options = getCmdLineOptions();
+            try
+            {
+                CommandLine cmd = parser.parse(options, cmdArgs, false);
+
+                if (cmd.hasOption(HELP_OPTION))
+                {
+                    printUsage(options);
+                    System.exit(0);
+                }
+
+                String[] args = cmd.getArgs();
+                if (args.length == 0)
+                {
+                    System.err.println("No sstables to simulate");
+                    printUsage(options);
+                    System.exit(1);
+                }
+                Options opts = new Options(Arrays.asList(args));
+                opts.debug = cmd.hasOption(DEBUG_OPTION);
+
+                if (cmd.hasOption(STRATEGY_OPTION))
+                    opts.strategies = Arrays.asList(cmd.getOptionValue(STRATEGY_OPTION).split(","));
+                if (cmd.hasOption(COMPACTION_OPTION))
+                {
+                    for (String option : cmd.getOptionValue(COMPACTION_OPTION).split(","))
+                    {
+                        int eq = option.indexOf('=');
+                        if (eq <= 0)
+                            errorMsg("Compaction options must be given as key=value: " + option, options);
+                        opts.compactionOptions.put(option.substring(0, eq), option.substring(eq + 1));
+                    }
+                }
+
+                CompactionSimulation.Parameters parameters = opts.parameters;
+                opts.writeRate = cmd.getOptionValue(WRITE_RATE_OPTION);
+                if (opts.writeRate != null)
+                    parameters.writeBytesPerSecond = (long) (Double.parseDouble(opts.writeRate) * 1024 * 1024);
+                if (cmd.hasOption(FLUSH_SIZE_OPTION))
+                    parameters.flushBytes = Long.parseLong(cmd.getOptionValue(FLUSH_SIZE_OPTION)) * 1024 * 1024;
+                if (cmd.hasOption(DURATION_OPTION))
+                    parameters.durationSeconds = TimeUnit.HOURS.toSeconds(Long.parseLong(cmd.getOptionValue(DURATION_OPTION)));
+                if (cmd.hasOption(THROUGHPUT_OPTION))
+                    parameters.compactionBytesPerSecond = Long.parseLong(cmd.getOptionValue(THROUGHPUT_OPTION)) * 1024 * 1024;
+                if (cmd.hasOption(COMPACTORS_OPTION))
+                    parameters.concurrentCompactors = Integer.parseInt(cmd.getOptionValue(COMPACTORS_OPTION));
+                opts.overwriteRatio = cmd.getOptionValue(OVERWRITE_OPTION);
+                if (opts.overwriteRatio != null)
+                    parameters.overwriteRatio = Double.parseDouble(opts.overwriteRatio);
+
+                return opts;
+            }
+            catch (ParseException e)
+            {
+                errorMsg(e.getMessage(), options);
+                return null;
+            }
+            catch (NumberFormatException e)
+            {
+                errorMsg("Invalid number: " + e.getMessage(), options);
+                return null;
+            }
+        }
+
+        private static void errorMsg(String msg, CmdLineOptions options)
+        {
+            System.err.println(msg);
+            printUsage(options);
+            System.exit(1);
+        }
+
+        private static CmdLineOptions getCmdLineOptions()
+        {
+            CmdLineOptions options = new CmdLineOptions();
+            options.addOption(null, DEBUG_OPTION,                          "display stack traces");
+            options.addOption("h",  HELP_OPTION,                           "display this help message");
+            options.addOption("s",  STRATEGY_OPTION,    "strategies",      "comma separated compaction strategies to simulate (default: all of " + ALL_STRATEGIES + ")");
+            options.addOption("o",  COMPACTION_OPTION,  "key=value,...",   "comma separated compaction options, as in the table's compaction map");
+            options.addOption("w",  WRITE_RATE_OPTION,  "MB/s",            "write rate to replay (default: the rate at which the given sstables were written)");
+            options.addOption("f",  FLUSH_SIZE_OPTION,  "MB",              "size of the flushed sstables (default: 64)");
+            options.addOption("d",  DURATION_OPTION,    "hours",           "length of the simulated period (default: 24)");
+            options.addOption("t",  THROUGHPUT_OPTION,  "MB/s",            "total compaction throughput shared by all compactors, 0 for unthrottled (default: 16)");
+            options.addOption("c",  COMPACTORS_OPTION,  "count",           "number of concurrent compactors (default: 1)");
+            options.addOption("r",  OVERWRITE_OPTION,   "ratio",           "fraction of writes updating existing partitions (default: estimated from the sstables)");
+            return options;
+        }
+
+        public static void printUsage(CmdLineOptions options)
+        {
+            String usage = String.format("%s [options] <filename> [<filename>]*", TOOL_NAME);
+            StringBuilder header = new StringBuilder();
+            header.append("--\n");
+            header.append("Predict write amplification, peak disk usage and sstables read per query of compaction strategies, " +
+                          "starting from the metadata of the provided sstables files of a table.");
+            header.append("\n--\n");
+            header.append("Options are:");
+            new HelpFormatter().printHelp(usage, header.toString(), options, "");
+        }
+    }
+}
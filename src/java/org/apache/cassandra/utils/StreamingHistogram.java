@@ -163,6 +163,11 @@ public class StreamingHistogram
         return sum;
     }
 
+    public boolean isEmpty()
+    {
+        return bin.isEmpty();
+    }
+
     public Map<Double, Long> getAsMap()
     {
         return Collections.unmodifiableMap(bin);
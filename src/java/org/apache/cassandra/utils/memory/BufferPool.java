@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils.memory;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.metrics.BufferPoolMetrics;
+
+/**
+ * A process-wide pool of the direct buffers file readers read into.
+ *
+ * Buffers are pooled by size class, one per power of two between {@link #MIN_POOLED_SIZE} and
+ * {@link #MAX_POOLED_SIZE}; other sizes are allocated and freed as they used to be. Each thread keeps the last buffer
+ * it released of every size class, so that a thread reading one sstable after the other keeps reusing the same
+ * memory, and hands any other buffer back to a shared queue.
+ *
+ * The pool is bounded by buffer_pool_size_in_mb: past it buffers are still handed out, so that reads never wait on
+ * the pool, but they are freed on release rather than kept. A buffer cached by a thread that exits is left to the GC
+ * and stays counted against the pool.
+ *
+ * Disabled (every buffer is allocated and freed on its own) if buffer_pool_size_in_mb is 0.
+ */
+public class BufferPool
+{
+    public static final int MIN_POOLED_SIZE = 4 << 10;
+    public static final int MAX_POOLED_SIZE = 1 << 20;
+
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_POOLED_SIZE);
+    private static final int SIZE_CLASSES = Integer.numberOfTrailingZeros(MAX_POOLED_SIZE) - MIN_SHIFT + 1;
+
+    @VisibleForTesting
+    static long memoryLimit = DatabaseDescriptor.getBufferPoolSizeInMB() * 1024L * 1024L;
+
+    private static final Queue<ByteBuffer>[] freeBuffers = newFreeBuffers();
+
+    private static final ThreadLocal<ByteBuffer[]> localBuffers = new ThreadLocal<ByteBuffer[]>()
+    {
+        protected ByteBuffer[] initialValue()
+        {
+            return new ByteBuffer[SIZE_CLASSES];
+        }
+    };
+
+    /** Bytes of direct memory allocated by the pool, whether they are in use or free */
+    private static final AtomicLong memoryUsed = new AtomicLong();
+
+    public static final BufferPoolMetrics metrics = new BufferPoolMetrics();
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Queue<ByteBuffer>[] newFreeBuffers()
+    {
+        Queue<ByteBuffer>[] queues = new Queue[SIZE_CLASSES];
+        for (int i = 0; i < queues.length; i++)
+            queues[i] = new ConcurrentLinkedQueue<>();
+        return queues;
+    }
+
+    public static boolean isEnabled()
+    {
+        return memoryLimit > 0;
+    }
+
+    /**
+     * @return a direct buffer with a capacity of exactly {@code size} bytes, cleared
+     */
+    public static ByteBuffer get(int size)
+    {
+        if (!isPooled(size))
+            return ByteBuffer.allocateDirect(size);
+
+        metrics.requests.mark();
+        int sizeClass = sizeClass(size);
+        ByteBuffer[] local = localBuffers.get();
+        ByteBuffer buffer = local[sizeClass];
+        if (buffer != null)
+            local[sizeClass] = null;
+        else
+            buffer = freeBuffers[sizeClass].poll();
+
+        if (buffer == null)
+        {
+            metrics.misses.mark();
+            memoryUsed.addAndGet(size);
+            return ByteBuffer.allocateDirect(size);
+        }
+
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Hands a buffer obtained from {@link #get(int)} back, after which it must not be used any more. Heap buffers
+     * are accepted and ignored.
+     */
+    public static void put(ByteBuffer buffer)
+    {
+        if (!buffer.isDirect())
+            return;
+
+        int size = buffer.capacity();
+        if (!isPooled(size))
+        {
+            FileUtils.clean(buffer);
+            return;
+        }
+
+        if (memoryUsed.get() > memoryLimit)
+        {
+            memoryUsed.addAndGet(-size);
+            FileUtils.clean(buffer);
+            return;
+        }
+
+        int sizeClass = sizeClass(size);
+        ByteBuffer[] local = localBuffers.get();
+        if (local[sizeClass] == null)
+            local[sizeClass] = buffer;
+        else
+            freeBuffers[sizeClass].add(buffer);
+    }
+
+    /**
+     * @return whether buffers of that size are pooled, i.e. worth handing back while not in use
+     */
+    public static boolean isPooled(int size)
+    {
+        return isEnabled() && size >= MIN_POOLED_SIZE && size <= MAX_POOLED_SIZE && Integer.bitCount(size) == 1;
+    }
+
+    public static long sizeInBytes()
+    {
+        return memoryUsed.get();
+    }
+
+    private static int sizeClass(int size)
+    {
+        return Integer.numberOfTrailingZeros(size) - MIN_SHIFT;
+    }
+}
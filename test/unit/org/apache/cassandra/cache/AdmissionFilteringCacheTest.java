@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.util.UUID;
+
+import org.junit.Test;
+
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdmissionFilteringCacheTest
+{
+    private static final int HOT_KEYS = 5;
+
+    @Test
+    public void testScanResistance()
+    {
+        // every entry weighs 8, so the cache holds exactly the hot keys
+        AdmissionFilteringCache<MeasurableString, MeasurableString> cache =
+            new AdmissionFilteringCache<>(ConcurrentLinkedHashCache.<MeasurableString, MeasurableString>create(HOT_KEYS * 8));
+
+        for (int round = 0; round < 5; round++)
+        {
+            for (int i = 0; i < HOT_KEYS; i++)
+                readThrough(cache, "hot" + i);
+        }
+        assertEquals(HOT_KEYS, cache.size());
+        assertEquals(0, cache.rejected());
+
+        for (int i = 0; i < 100; i++)
+            readThrough(cache, String.format("s%03d", i));
+
+        for (int i = 0; i < HOT_KEYS; i++)
+            assertTrue(cache.containsKey(new MeasurableString("hot" + i)));
+        assertEquals(100, cache.rejected());
+
+        // a key read more often than the coldest entry does get in
+        for (int i = 0; i < 10; i++)
+            readThrough(cache, "new1");
+        assertTrue(cache.containsKey(new MeasurableString("new1")));
+    }
+
+    @Test
+    public void testOHCCache()
+    {
+        // OHC measures its size in bytes, like its capacity, so the filter kicks in once it is full
+        AdmissionFilteringCache<RowCacheKey, IRowCacheEntry> cache = new AdmissionFilteringCache<>(OHCProvider.create(1024 * 1024));
+        UUID cfId = UUID.randomUUID();
+        int keys = 0;
+        while (cache.rejected() == 0)
+        {
+            assertTrue("no key was rejected after " + keys + " keys", keys < 1000000);
+            RowCacheKey key = new RowCacheKey(cfId, ByteBufferUtil.bytes(keys++));
+            if (cache.get(key) == null)
+                cache.put(key, new RowCacheSentinel());
+        }
+        assertTrue(cache.size() < cache.weightedSize());
+        assertTrue(cache.weightedSize() <= cache.capacity());
+        assertTrue(cache.weightedSize() >= cache.capacity() - cache.capacity() / 16);
+        cache.clear();
+    }
+
+    @Test
+    public void testFrequencySketch()
+    {
+        FrequencySketch sketch = new FrequencySketch(64);
+        for (int i = 0; i < 20; i++)
+            sketch.increment("hot");
+        for (int i = 0; i < 3; i++)
+            sketch.increment("warm");
+        assertEquals(15, sketch.frequency("hot"));
+        assertTrue(sketch.frequency("warm") >= 3);
+        assertTrue(sketch.frequency("warm") < 15);
+
+        // enough distinct keys halve all the counters
+        for (int i = 0; i < sketch.tableSize() * 10; i++)
+            sketch.increment(i);
+        assertTrue(sketch.frequency("hot") < 15);
+    }
+
+    private static void readThrough(ICache<MeasurableString, MeasurableString> cache, String key)
+    {
+        MeasurableString k = new MeasurableString(key);
+        if (cache.get(k) == null)
+            cache.put(k, new MeasurableString("v" + key.substring(key.length() - 3)));
+    }
+
+    private static class MeasurableString implements IMeasurableMemory
+    {
+        private final String string;
+
+        MeasurableString(String string)
+        {
+            this.string = string;
+        }
+
+        public long unsharedHeapSize()
+        {
+            return 4;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof MeasurableString && string.equals(((MeasurableString) o).string);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return string.hashCode();
+        }
+    }
+}
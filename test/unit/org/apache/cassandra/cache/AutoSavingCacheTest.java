@@ -81,4 +81,45 @@ public class AutoSavingCacheTest
         for (SSTableReader sstable : cfs.getSSTables())
             Assert.assertNotNull(keyCache.get(new KeyCacheKey(cfs.metadata.cfId, sstable.descriptor, ByteBufferUtil.bytes("key1"))));
     }
+
+    @Test
+    public void testSegmentedSaveAndAsyncLoad() throws Exception
+    {
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore(CF_STANDARD1);
+        cfs.truncateBlocking();
+        for (int i = 0; i < 10; i++)
+        {
+            Mutation rm = new Mutation(KEYSPACE1, ByteBufferUtil.bytes("key" + i));
+            rm.add(CF_STANDARD1, Util.cellname("c1"), ByteBufferUtil.bytes(i), 0);
+            rm.applyUnsafe();
+        }
+        cfs.forceBlockingFlush();
+        SSTableReader sstable = cfs.getSSTables().iterator().next();
+
+        AutoSavingCache<KeyCacheKey, RowIndexEntry> keyCache = CacheService.instance.keyCache;
+        keyCache.clear();
+        for (int i = 0; i < 10; i++)
+            sstable.getPosition(Util.dk("key" + i), SSTableReader.Operator.EQ);
+        Assert.assertEquals(10, keyCache.size());
+
+        int keysPerSegment = AutoSavingCache.keysPerSegment;
+        AutoSavingCache.keysPerSegment = 3;
+        try
+        {
+            keyCache.submitWrite(keyCache.size()).get();
+        }
+        finally
+        {
+            AutoSavingCache.keysPerSegment = keysPerSegment;
+        }
+        for (int segment = 0; segment < 4; segment++)
+            Assert.assertTrue(keyCache.getSegmentPath(cfs.metadata.cfId, segment).exists());
+        Assert.assertFalse(keyCache.getSegmentPath(cfs.metadata.cfId, 4).exists());
+
+        keyCache.clear();
+        Assert.assertEquals(10, (int) keyCache.loadSavedAsync(cfs).get());
+        Assert.assertEquals(10, keyCache.size());
+        for (int i = 0; i < 10; i++)
+            Assert.assertNotNull(keyCache.get(new KeyCacheKey(cfs.metadata.cfId, sstable.descriptor, ByteBufferUtil.bytes("key" + i))));
+    }
 }
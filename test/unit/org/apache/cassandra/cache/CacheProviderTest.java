@@ -23,18 +23,30 @@ package org.apache.cassandra.cache;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
 import org.apache.cassandra.config.KSMetaData;
 import org.apache.cassandra.db.ArrayBackedSortedColumns;
 import org.apache.cassandra.db.ColumnFamily;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.db.RowIndexEntry;
 import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.io.sstable.IndexHelper;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.locator.SimpleStrategy;
+import org.apache.cassandra.utils.ByteBufferUtil;
 
 import com.googlecode.concurrentlinkedhashmap.Weighers;
 
@@ -129,6 +141,60 @@ public class CacheProviderTest
         concurrentCase(cf, cache);
     }
     
+    @Test
+    public void testOHCKeyCache()
+    {
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore(CF_STANDARD1);
+        Mutation rm = new Mutation(KEYSPACE1, ByteBufferUtil.bytes("narrow"));
+        rm.add(CF_STANDARD1, Util.cellname("c"), ByteBufferUtil.bytes("v"), 0);
+        rm.applyUnsafe();
+        // large enough to get a promoted index with the 4KB column index size of the test config
+        rm = new Mutation(KEYSPACE1, ByteBufferUtil.bytes("wide"));
+        for (int i = 0; i < 100; i++)
+            rm.add(CF_STANDARD1, Util.cellname(String.format("c%03d", i)), ByteBuffer.allocate(100), 0);
+        rm.applyUnsafe();
+        cfs.forceBlockingFlush();
+        SSTableReader sstable = cfs.getSSTables().iterator().next();
+
+        ICache<KeyCacheKey, RowIndexEntry> cache = OHCKeyCacheProvider.create(1024 * 1024);
+        Set<KeyCacheKey> keys = new HashSet<>();
+        for (String key : new String[]{ "narrow", "wide" })
+        {
+            DecoratedKey dk = Util.dk(key);
+            RowIndexEntry entry = sstable.getPosition(dk, SSTableReader.Operator.EQ, false);
+            assertEquals(key.equals("wide"), entry.isIndexed());
+            KeyCacheKey cacheKey = new KeyCacheKey(cfs.metadata.cfId, sstable.descriptor, dk.getKey());
+            cache.put(cacheKey, entry);
+            keys.add(cacheKey);
+
+            RowIndexEntry cached = cache.get(cacheKey);
+            assertEquals(entry.position, cached.position);
+            assertEquals(entry.isIndexed(), cached.isIndexed());
+            assertEquals(entry.columnsIndex().size(), cached.columnsIndex().size());
+            for (int i = 0; i < entry.columnsIndex().size(); i++)
+            {
+                IndexHelper.IndexInfo expected = (IndexHelper.IndexInfo) entry.columnsIndex().get(i);
+                IndexHelper.IndexInfo actual = (IndexHelper.IndexInfo) cached.columnsIndex().get(i);
+                assertEquals(expected.firstName, actual.firstName);
+                assertEquals(expected.lastName, actual.lastName);
+                assertEquals(expected.offset, actual.offset);
+                assertEquals(expected.width, actual.width);
+            }
+            if (entry.isIndexed())
+                assertEquals(entry.deletionTime(), cached.deletionTime());
+        }
+        assertNull(cache.get(new KeyCacheKey(cfs.metadata.cfId, sstable.descriptor, ByteBufferUtil.bytes("missing"))));
+        // weighed in bytes, like the capacity
+        assertTrue(cache.weightedSize() > cache.size());
+        assertTrue(cache.weightedSize() <= cache.capacity());
+
+        Set<KeyCacheKey> iterated = new HashSet<>();
+        for (Iterator<KeyCacheKey> iter = cache.hotKeyIterator(10); iter.hasNext(); )
+            iterated.add(iter.next());
+        assertEquals(keys, iterated);
+        cfs.truncateBlocking();
+    }
+
     @Test
     public void testKeys()
     {
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.dht.ByteOrderedPartitioner;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class DigestCacheTest
+{
+    private static final ByteOrderedPartitioner partitioner = new ByteOrderedPartitioner();
+
+    private static final ByteBuffer filter1 = ByteBufferUtil.bytes("filter1");
+    private static final ByteBuffer filter2 = ByteBufferUtil.bytes("filter2");
+    private static final ByteBuffer digest = ByteBufferUtil.bytes("digest");
+
+    private static DecoratedKey key(int i)
+    {
+        return partitioner.decorateKey(ByteBufferUtil.bytes(i));
+    }
+
+    @Test
+    public void testPut()
+    {
+        DigestCache cache = new DigestCache(1024);
+        assertNull(cache.get(key(1), filter1));
+
+        Object claim = cache.beginRead(key(1));
+        assertNull(cache.get(key(1), filter1));
+        cache.put(claim, filter1, digest);
+        assertEquals(digest, cache.get(key(1), filter1));
+        assertNull(cache.get(key(1), filter2));
+        assertNull(cache.get(key(2), filter1));
+
+        cache.invalidate(key(2));
+        assertEquals(digest, cache.get(key(1), filter1));
+        cache.invalidate(key(1));
+        assertNull(cache.get(key(1), filter1));
+    }
+
+    @Test
+    public void testWriteDuringRead()
+    {
+        DigestCache cache = new DigestCache(1024);
+
+        Object claim = cache.beginRead(key(1));
+        cache.invalidate(key(1));
+        cache.put(claim, filter1, digest);
+        assertNull(cache.get(key(1), filter1));
+
+        claim = cache.beginRead(key(1));
+        cache.clear();
+        cache.put(claim, filter1, digest);
+        assertNull(cache.get(key(1), filter1));
+    }
+
+    @Test
+    public void testOtherFilter()
+    {
+        // the partition's only slot goes to the filter read last
+        DigestCache cache = new DigestCache(1024);
+
+        cache.put(cache.beginRead(key(1)), filter1, digest);
+        Object claim = cache.beginRead(key(1));
+        assertNull(cache.get(key(1), filter1));
+        cache.put(claim, filter2, digest);
+        assertEquals(digest, cache.get(key(1), filter2));
+        assertNull(cache.get(key(1), filter1));
+    }
+
+    @Test
+    public void testSlotSharing()
+    {
+        // a single slot, shared by every partition
+        DigestCache cache = new DigestCache(1);
+
+        cache.put(cache.beginRead(key(1)), filter1, digest);
+        assertEquals(digest, cache.get(key(1), filter1));
+
+        // a digest read since the last claim survives the claim of another partition
+        assertNull(cache.beginRead(key(2)));
+        assertEquals(digest, cache.get(key(1), filter1));
+        cache.invalidate(key(1));
+        cache.put(cache.beginRead(key(2)), filter1, digest);
+        assertEquals(digest, cache.get(key(2), filter1));
+        assertNull(cache.get(key(1), filter1));
+
+        // while a digest that wasn't makes way for it
+        assertNull(cache.beginRead(key(1)));
+        cache.put(cache.beginRead(key(1)), filter1, digest);
+        assertEquals(digest, cache.get(key(1), filter1));
+        assertNull(cache.get(key(2), filter1));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.dht.ByteOrderedPartitioner;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NegativeLookupCacheTest
+{
+    private static final ByteOrderedPartitioner partitioner = new ByteOrderedPartitioner();
+
+    private static DecoratedKey key(int i)
+    {
+        return partitioner.decorateKey(ByteBufferUtil.bytes(i));
+    }
+
+    @Test
+    public void testMarkAbsent()
+    {
+        NegativeLookupCache cache = new NegativeLookupCache(1024);
+        assertFalse(cache.isAbsent(key(1)));
+
+        Object claim = cache.beginLookup(key(1));
+        assertFalse(cache.isAbsent(key(1)));
+        cache.markAbsent(claim);
+        assertTrue(cache.isAbsent(key(1)));
+        assertFalse(cache.isAbsent(key(2)));
+
+        cache.invalidate(key(2));
+        assertTrue(cache.isAbsent(key(1)));
+        cache.invalidate(key(1));
+        assertFalse(cache.isAbsent(key(1)));
+    }
+
+    @Test
+    public void testWriteDuringLookup()
+    {
+        NegativeLookupCache cache = new NegativeLookupCache(1024);
+
+        Object claim = cache.beginLookup(key(1));
+        cache.invalidate(key(1));
+        cache.markAbsent(claim);
+        assertFalse(cache.isAbsent(key(1)));
+
+        claim = cache.beginLookup(key(1));
+        cache.clear();
+        cache.markAbsent(claim);
+        assertFalse(cache.isAbsent(key(1)));
+    }
+
+    @Test
+    public void testSlotSharing()
+    {
+        // a single slot, shared by every partition
+        NegativeLookupCache cache = new NegativeLookupCache(1);
+
+        // a claim is replaced by the claim of another partition
+        Object claim1 = cache.beginLookup(key(1));
+        Object claim2 = cache.beginLookup(key(2));
+        cache.markAbsent(claim1);
+        assertFalse(cache.isAbsent(key(1)));
+        cache.markAbsent(claim2);
+        assertTrue(cache.isAbsent(key(2)));
+
+        // but an entry looked up since the last claim survives the claim of another partition
+        assertNull(cache.beginLookup(key(1)));
+        cache.markAbsent(null);
+        assertTrue(cache.isAbsent(key(2)));
+        cache.invalidate(key(2));
+        cache.markAbsent(cache.beginLookup(key(1)));
+        assertTrue(cache.isAbsent(key(1)));
+        assertFalse(cache.isAbsent(key(2)));
+
+        // while an entry that wasn't makes way for it
+        assertNull(cache.beginLookup(key(2)));
+        cache.markAbsent(cache.beginLookup(key(2)));
+        assertTrue(cache.isAbsent(key(2)));
+        assertFalse(cache.isAbsent(key(1)));
+    }
+
+    @Test
+    public void testKeyIsCopied()
+    {
+        NegativeLookupCache cache = new NegativeLookupCache(1024);
+
+        ByteBuffer buffer = ByteBufferUtil.bytes(1);
+        DecoratedKey key = partitioner.decorateKey(buffer);
+        Object claim = cache.beginLookup(key);
+        // the buffer the request came in is reused once the lookup is done
+        buffer.putInt(0, 2);
+        cache.markAbsent(claim);
+        assertTrue(cache.isAbsent(key(1)));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cql3;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.SystemKeyspace;
+import org.apache.cassandra.db.marshal.Int32Type;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.service.ClientState;
+import org.apache.cassandra.service.QueryState;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.transport.messages.ResultMessage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResultSetCacheTest extends CQLTester
+{
+    private static long capacity;
+
+    @BeforeClass
+    public static void enableCache() throws ConfigurationException
+    {
+        // the cache sits in front of StorageProxy, which needs the ring
+        SystemKeyspace.finishStartup();
+        StorageService.instance.initServer();
+
+        capacity = ResultSetCache.instance.getCapacity();
+        ResultSetCache.instance.setCapacity(1 << 20);
+    }
+
+    @AfterClass
+    public static void restoreCache()
+    {
+        ResultSetCache.instance.setCapacity(capacity);
+    }
+
+    @Test
+    public void testPartitionQueries() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int, c int, v int, PRIMARY KEY (k, c)) WITH caching = {'keys': 'ALL', 'rows_per_partition': 'NONE', 'results': 'true'}");
+        execute("INSERT INTO %s (k, c, v) VALUES (0, 0, 0)");
+        execute("INSERT INTO %s (k, c, v) VALUES (1, 0, 10)");
+
+        CQLStatement select = prepare("SELECT c, v FROM %s WHERE k = ?");
+
+        assertRows(executeCached(select, ConsistencyLevel.ONE, false, 0), row(0, 0));
+        assertRows(executeCached(select, ConsistencyLevel.ONE, true, 0), row(0, 0));
+        assertRows(executeCached(select, ConsistencyLevel.ONE, false, 1), row(0, 10));
+
+        // a write only makes the results of its own partition stale
+        execute("INSERT INTO %s (k, c, v) VALUES (0, 1, 1)");
+        assertRows(executeCached(select, ConsistencyLevel.ONE, false, 0), row(0, 0), row(1, 1));
+        assertRows(executeCached(select, ConsistencyLevel.ONE, true, 0), row(0, 0), row(1, 1));
+        assertRows(executeCached(select, ConsistencyLevel.ONE, true, 1), row(0, 10));
+
+        execute("DELETE FROM %s WHERE k = 1");
+        assertEmpty(executeCached(select, ConsistencyLevel.ONE, false, 1));
+
+        // only ONE and LOCAL_ONE are cached
+        assertTrue(ResultSetCache.instance.accepts(select, options(ConsistencyLevel.LOCAL_ONE, 0)));
+        assertFalse(ResultSetCache.instance.accepts(select, options(ConsistencyLevel.QUORUM, 0)));
+
+        // nor are tables that don't ask for it any more
+        alterTable("ALTER TABLE %s WITH caching = {'keys': 'ALL', 'rows_per_partition': 'NONE'}");
+        assertFalse(ResultSetCache.instance.accepts(select, options(ConsistencyLevel.ONE, 0)));
+    }
+
+    @Test
+    public void testRangeQueries() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int PRIMARY KEY, v int) WITH caching = {'keys': 'ALL', 'rows_per_partition': 'NONE', 'results': 'true'}");
+        execute("INSERT INTO %s (k, v) VALUES (0, 0)");
+
+        CQLStatement select = prepare("SELECT v FROM %s");
+
+        assertRows(executeCached(select, ConsistencyLevel.ONE, false), row(0));
+        assertRows(executeCached(select, ConsistencyLevel.ONE, true), row(0));
+
+        // any write to the table makes range results stale
+        execute("INSERT INTO %s (k, v) VALUES (1, 1)");
+        assertEquals(2, executeCached(select, ConsistencyLevel.ONE, false).size());
+        assertEquals(2, executeCached(select, ConsistencyLevel.ONE, true).size());
+
+        Keyspace.open(KEYSPACE).getColumnFamilyStore(currentTable()).truncateBlocking();
+        assertEmpty(executeCached(select, ConsistencyLevel.ONE, false));
+    }
+
+    @Test
+    public void testUncachedTable() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int PRIMARY KEY, v int)");
+        assertFalse(ResultSetCache.instance.accepts(prepare("SELECT v FROM %s WHERE k = ?"), options(ConsistencyLevel.ONE, 0)));
+    }
+
+    private CQLStatement prepare(String query)
+    {
+        String formatted = String.format(query, KEYSPACE + "." + currentTable());
+        ResultMessage.Prepared prepared = QueryProcessor.prepare(formatted, ClientState.forInternalCalls(), false);
+        return QueryProcessor.instance.getPrepared(prepared.statementId).statement;
+    }
+
+    private static QueryOptions options(ConsistencyLevel cl, Integer... values)
+    {
+        ByteBuffer[] serialized = new ByteBuffer[values.length];
+        for (int i = 0; i < values.length; i++)
+            serialized[i] = Int32Type.instance.decompose(values[i]);
+        return QueryOptions.forInternalCalls(cl, serialized.length == 0 ? Collections.<ByteBuffer>emptyList() : Arrays.asList(serialized));
+    }
+
+    private UntypedResultSet executeCached(CQLStatement statement, ConsistencyLevel cl, boolean expectHit, Integer... values) throws Throwable
+    {
+        QueryOptions options = options(cl, values);
+        assertTrue(ResultSetCache.instance.accepts(statement, options));
+
+        long hits = QueryProcessor.metrics.resultSetCacheHits.getCount();
+        ResultMessage result = QueryProcessor.instance.processPrepared(statement, QueryState.forInternalCalls(), options);
+        assertEquals(expectHit ? hits + 1 : hits, QueryProcessor.metrics.resultSetCacheHits.getCount());
+        return UntypedResultSet.create(((ResultMessage.Rows) result).result);
+    }
+}
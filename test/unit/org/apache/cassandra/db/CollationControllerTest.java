@@ -23,15 +23,19 @@ import org.junit.Test;
 
 import org.apache.cassandra.SchemaLoader;
 import org.apache.cassandra.Util;
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.KSMetaData;
 import org.apache.cassandra.db.composites.CellName;
+import org.apache.cassandra.db.composites.Composites;
 import org.apache.cassandra.db.filter.QueryFilter;
+import org.apache.cassandra.db.filter.ReadSizeOverwhelmingException;
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.locator.SimpleStrategy;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 public class CollationControllerTest
 {
@@ -135,4 +139,131 @@ public class CollationControllerTest
         controller = new CollationController(cfs, filter, gcBefore);
         assert ColumnFamilyStore.removeDeleted(controller.getTopLevelColumns(true), gcBefore) == null;
     }
+
+    @Test
+    public void getTopLevelColumnsSkipsOlderSSTablesPastLimit()
+    {
+        Keyspace keyspace = Keyspace.open(KEYSPACE1);
+        ColumnFamilyStore cfs = keyspace.getColumnFamilyStore(CF);
+        cfs.disableAutoCompaction();
+        DecoratedKey dk = Util.dk("timeseries");
+
+        // older rows in a first sstable, newer ones in a second
+        Mutation rm = new Mutation(keyspace.getName(), dk.getKey());
+        for (int i = 10; i < 20; i++)
+            rm.add(cfs.name, Util.cellname("Column" + i), ByteBufferUtil.bytes("old"), 0);
+        rm.applyUnsafe();
+        cfs.forceBlockingFlush();
+
+        rm = new Mutation(keyspace.getName(), dk.getKey());
+        for (int i = 20; i < 30; i++)
+            rm.add(cfs.name, Util.cellname("Column" + i), ByteBufferUtil.bytes("new"), 10);
+        rm.applyUnsafe();
+        cfs.forceBlockingFlush();
+
+        // the 5 latest columns are all in the newest sstable, and the older one can't contain anything before them
+        QueryFilter filter = QueryFilter.getSliceFilter(dk, cfs.name, Composites.EMPTY, Composites.EMPTY, true, 5, System.currentTimeMillis());
+        CollationController controller = new CollationController(cfs, filter, Integer.MIN_VALUE);
+        ColumnFamily cf = controller.getTopLevelColumns(true);
+        assertEquals(1, controller.getSstablesIterated());
+        assertEquals(5, cf.getColumnCount());
+        assertEquals(Util.cellname("Column29"), cf.getReverseSortedColumns().iterator().next().name());
+
+        // the 5 first columns are in the older sstable, which must still be read
+        filter = QueryFilter.getSliceFilter(dk, cfs.name, Composites.EMPTY, Composites.EMPTY, false, 5, System.currentTimeMillis());
+        controller = new CollationController(cfs, filter, Integer.MIN_VALUE);
+        cf = controller.getTopLevelColumns(true);
+        assertEquals(2, controller.getSstablesIterated());
+        assertEquals(5, cf.getColumnCount());
+        assertEquals(Util.cellname("Column10"), cf.iterator().next().name());
+    }
+
+    @Test
+    public void getTopLevelColumnsMergesEarlyCollatedRowsWithOlderSSTables()
+    {
+        Keyspace keyspace = Keyspace.open(KEYSPACE1);
+        ColumnFamilyStore cfs = keyspace.getColumnFamilyStore(CF);
+        cfs.disableAutoCompaction();
+        DecoratedKey dk = Util.dk("reversedtimeseries");
+
+        // an older sstable overlapping the newer one, and reaching past it
+        Mutation rm = new Mutation(keyspace.getName(), dk.getKey());
+        for (int i = 25; i < 32; i++)
+            rm.add(cfs.name, Util.cellname("Column" + i), ByteBufferUtil.bytes("old"), 0);
+        rm.applyUnsafe();
+        cfs.forceBlockingFlush();
+
+        rm = new Mutation(keyspace.getName(), dk.getKey());
+        for (int i = 20; i < 30; i++)
+            rm.add(cfs.name, Util.cellname("Column" + i), ByteBufferUtil.bytes("new"), 10);
+        rm.applyUnsafe();
+        cfs.forceBlockingFlush();
+
+        // and a column in the memtable, written with an older timestamp than the newer sstable but not the older one
+        rm = new Mutation(keyspace.getName(), dk.getKey());
+        rm.add(cfs.name, Util.cellname("Column32"), ByteBufferUtil.bytes("memtable"), 5);
+        rm.applyUnsafe();
+
+        // the memtable and the newer sstable are collated first, giving Column32 to Column26, then merged in reverse
+        // with the older sstable, which holds columns in between and older versions of some of them
+        QueryFilter filter = QueryFilter.getSliceFilter(dk, cfs.name, Composites.EMPTY, Composites.EMPTY, true, 5, System.currentTimeMillis());
+        CollationController controller = new CollationController(cfs, filter, Integer.MIN_VALUE);
+        ColumnFamily cf = controller.getTopLevelColumns(true);
+        assertEquals(2, controller.getSstablesIterated());
+        assertEquals(5, cf.getColumnCount());
+
+        String[][] expected = { { "Column32", "memtable" },
+                                { "Column31", "old" },
+                                { "Column30", "old" },
+                                { "Column29", "new" },
+                                { "Column28", "new" } };
+        int i = 0;
+        for (Cell cell : cf.getReverseSortedColumns())
+        {
+            assertEquals(Util.cellname(expected[i][0]), cell.name());
+            assertEquals(ByteBufferUtil.bytes(expected[i][1]), cell.value());
+            i++;
+        }
+    }
+
+    @Test
+    public void testReadSizeFailureThreshold()
+    {
+        Keyspace keyspace = Keyspace.open(KEYSPACE1);
+        ColumnFamilyStore cfs = keyspace.getColumnFamilyStore(CF);
+        DecoratedKey dk = Util.dk("wide");
+
+        // 100 cells of a bit over 100 bytes each
+        Mutation rm = new Mutation(keyspace.getName(), dk.getKey());
+        for (int i = 0; i < 100; i++)
+            rm.add(cfs.name, Util.cellname("Column" + i), ByteBufferUtil.bytes(new String(new char[100])), 0);
+        rm.applyUnsafe();
+
+        int threshold = DatabaseDescriptor.getReadSizeFailureThresholdInKB();
+        try
+        {
+            DatabaseDescriptor.setReadSizeFailureThresholdInKB(1);
+            QueryFilter filter = QueryFilter.getSliceFilter(dk, cfs.name, Composites.EMPTY, Composites.EMPTY, false, 5, System.currentTimeMillis());
+            assertEquals(5, cfs.getColumnFamily(filter).getColumnCount());
+
+            filter = QueryFilter.getSliceFilter(dk, cfs.name, Composites.EMPTY, Composites.EMPTY, false, 100, System.currentTimeMillis());
+            try
+            {
+                cfs.getColumnFamily(filter);
+                fail("Read should have exceeded read_size_failure_threshold_in_kb");
+            }
+            catch (ReadSizeOverwhelmingException e)
+            {
+                // expected
+            }
+
+            // internal reads of whole partitions aren't limited
+            filter = QueryFilter.getIdentityFilter(dk, cfs.name, System.currentTimeMillis());
+            assertEquals(100, cfs.getColumnFamily(filter).getColumnCount());
+        }
+        finally
+        {
+            DatabaseDescriptor.setReadSizeFailureThresholdInKB(threshold);
+        }
+    }
 }
@@ -18,10 +18,17 @@
 package org.apache.cassandra.db;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.KSMetaData;
 import org.apache.cassandra.SchemaLoader;
 import org.apache.cassandra.db.context.CounterContext;
@@ -34,6 +41,7 @@ import org.apache.cassandra.utils.FBUtilities;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import static org.apache.cassandra.Util.cellname;
 import static org.apache.cassandra.Util.dk;
@@ -230,4 +238,63 @@ public class CounterMutationTest
         assertEquals(ClockAndCount.create(1L, 10L), CounterContext.instance().getLocalClockAndCount(context));
         assertEquals(ClockAndCount.create(1L, 10L), cfs.getCachedCounter(bytes(1), cellname(1)));
     }
+
+    @Test
+    public void testMergeAccumulatedMutations()
+    {
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore(CF1);
+
+        List<CounterMutation> mutations = new ArrayList<>();
+        for (long delta = 1; delta <= 4; delta++)
+        {
+            ColumnFamily cells = ArrayBackedSortedColumns.factory.create(cfs.metadata);
+            cells.addCounter(cellname(1), delta);
+            cells.addCounter(cellname((int) delta + 1), 1L);
+            mutations.add(new CounterMutation(new Mutation(KEYSPACE1, bytes(1), cells), ConsistencyLevel.ONE));
+        }
+
+        ColumnFamily merged = CounterAccumulator.merge(mutations).getMutation().getColumnFamily(cfs.metadata.cfId);
+        assertEquals(5, merged.getColumnCount());
+        assertEquals(10L, ((CounterUpdateCell) merged.getColumn(cellname(1))).delta());
+        assertEquals(1L, ((CounterUpdateCell) merged.getColumn(cellname(5))).delta());
+
+        // the merged mutations are left untouched
+        assertEquals(1L, ((CounterUpdateCell) mutations.get(0).getMutation().getColumnFamily(cfs.metadata.cfId).getColumn(cellname(1))).delta());
+    }
+
+    @Test
+    public void testConcurrentAccumulatedIncrements() throws Exception
+    {
+        final ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore(CF1);
+        cfs.truncateBlocking();
+
+        DatabaseDescriptor.setCounterWriteAccumulationEnabled(true);
+        try
+        {
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            List<Future<Mutation>> results = new ArrayList<>();
+            for (int i = 0; i < 1000; i++)
+            {
+                results.add(executor.submit(new Callable<Mutation>()
+                {
+                    public Mutation call() throws Exception
+                    {
+                        ColumnFamily cells = ArrayBackedSortedColumns.factory.create(cfs.metadata);
+                        cells.addCounter(cellname(1), 1L);
+                        return new CounterMutation(new Mutation(KEYSPACE1, bytes(1), cells), ConsistencyLevel.ONE).apply();
+                    }
+                }));
+            }
+            for (Future<Mutation> result : results)
+                assertTrue(result.get().getColumnFamily(cfs.metadata.cfId).getColumn(cellname(1)) instanceof CounterCell);
+            executor.shutdown();
+        }
+        finally
+        {
+            DatabaseDescriptor.setCounterWriteAccumulationEnabled(false);
+        }
+
+        ColumnFamily current = cfs.getColumnFamily(QueryFilter.getIdentityFilter(dk(bytes(1)), CF1, System.currentTimeMillis()));
+        assertEquals(1000L, CounterContext.instance().total(current.getColumn(cellname(1)).value()));
+    }
 }
@@ -22,6 +22,8 @@ import static org.junit.Assert.*;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
@@ -91,6 +93,31 @@ public class ReadMessageTest
         assert rm2.toString().equals(rm.toString());
     }
 
+    @Test
+    public void testMakeReadBatchMessage() throws IOException
+    {
+        CellNameType type = Keyspace.open(KEYSPACE1).getColumnFamilyStore("Standard1").getComparator();
+        long ts = System.currentTimeMillis();
+
+        List<ReadCommand> commands = new ArrayList<>();
+        commands.add(new SliceByNamesReadCommand(KEYSPACE1, Util.dk("row1").getKey(), "Standard1", ts, new NamesQueryFilter(FBUtilities.singleton(Util.cellname("col1"), type))));
+        commands.add(new SliceFromReadCommand(KEYSPACE1, Util.dk("row2").getKey(), "Standard1", ts, new SliceQueryFilter(Composites.EMPTY, Composites.EMPTY, false, 10)).setIsDigestQuery(true));
+
+        ReadBatchCommand batch = new ReadBatchCommand(commands);
+        DataOutputBuffer out = new DataOutputBuffer();
+        ReadBatchCommand.serializer.serialize(batch, out, MessagingService.current_version);
+        assertEquals(out.getLength(), ReadBatchCommand.serializer.serializedSize(batch, MessagingService.current_version));
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.getData(), 0, out.getLength()));
+        ReadBatchCommand batch2 = ReadBatchCommand.serializer.deserialize(in, MessagingService.current_version);
+        assertEquals(commands.size(), batch2.commands.size());
+        for (int i = 0; i < commands.size(); i++)
+        {
+            assertEquals(commands.get(i).toString(), batch2.commands.get(i).toString());
+            assertEquals(commands.get(i).isDigestQuery(), batch2.commands.get(i).isDigestQuery());
+        }
+    }
+
     private ReadCommand serializeAndDeserializeReadMessage(ReadCommand rm) throws IOException
     {
         ReadCommandSerializer rms = ReadCommand.serializer;
@@ -37,4 +37,50 @@ public class RowCacheCQLTest extends CQLTester
         assertEquals(1, res.size());
         assertEmpty(execute("SELECT * FROM %s WHERE p1=123 and c1 > 1000"));
     }
+
+    @Test
+    public void testUpdateInPlace() throws Throwable
+    {
+        CacheService.instance.setRowCacheCapacityInMB(1);
+        createTable("CREATE TABLE %s (p1 bigint, c1 int, v int, PRIMARY KEY (p1, c1)) WITH caching = '{\"keys\":\"NONE\", \"rows_per_partition\":\"3\", \"update_in_place\":\"true\"}'");
+        ColumnFamilyStore cfs = Keyspace.open(keyspace()).getColumnFamilyStore(currentTable());
+        for (int i = 1; i <= 5; i++)
+            execute("INSERT INTO %s (p1, c1, v) VALUES (1, ?, ?)", i, i);
+
+        assertRows(execute("SELECT c1 FROM %s WHERE p1=1 LIMIT 3"), row(1), row(2), row(3));
+        long hits = cfs.metric.rowCacheHit.getCount();
+
+        // writes inside and past the cached head are applied without invalidating it
+        execute("INSERT INTO %s (p1, c1, v) VALUES (1, 0, 0)");
+        execute("UPDATE %s SET v = 10 WHERE p1 = 1 AND c1 = 1");
+        execute("INSERT INTO %s (p1, c1, v) VALUES (1, 6, 6)");
+        assertRows(execute("SELECT c1, v FROM %s WHERE p1=1 LIMIT 3"), row(0, 0), row(1, 10), row(2, 2));
+        assertEquals(hits + 1, cfs.metric.rowCacheHit.getCount());
+
+        // deletions from a partial head invalidate it
+        execute("DELETE FROM %s WHERE p1 = 1 AND c1 = 0");
+        assertRows(execute("SELECT c1 FROM %s WHERE p1=1 LIMIT 3"), row(1), row(2), row(3));
+        assertEquals(hits + 1, cfs.metric.rowCacheHit.getCount());
+    }
+
+    @Test
+    public void testTailCache() throws Throwable
+    {
+        CacheService.instance.setRowCacheCapacityInMB(1);
+        createTable("CREATE TABLE %s (p1 bigint, c1 int, PRIMARY KEY (p1, c1)) WITH caching = '{\"keys\":\"NONE\", \"rows_per_partition\":\"3\", \"rows_from\":\"tail\", \"update_in_place\":\"true\"}'");
+        ColumnFamilyStore cfs = Keyspace.open(keyspace()).getColumnFamilyStore(currentTable());
+        for (int i = 1; i <= 5; i++)
+            execute("INSERT INTO %s (p1, c1) VALUES (1, ?)", i);
+
+        assertRows(execute("SELECT c1 FROM %s WHERE p1=1 ORDER BY c1 DESC LIMIT 2"), row(5), row(4));
+        long hits = cfs.metric.rowCacheHit.getCount();
+
+        execute("INSERT INTO %s (p1, c1) VALUES (1, 6)");
+        assertRows(execute("SELECT c1 FROM %s WHERE p1=1 ORDER BY c1 DESC LIMIT 3"), row(6), row(5), row(4));
+        assertEquals(hits + 1, cfs.metric.rowCacheHit.getCount());
+
+        // the head of the partition isn't cached
+        assertRows(execute("SELECT c1 FROM %s WHERE p1=1 LIMIT 2"), row(1), row(2));
+        assertEquals(hits + 1, cfs.metric.rowCacheHit.getCount());
+    }
 }
@@ -21,6 +21,8 @@ package org.apache.cassandra.db;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -37,12 +39,15 @@ import org.apache.cassandra.db.filter.QueryFilter;
 import org.apache.cassandra.db.marshal.IntegerType;
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.dht.ByteOrderedPartitioner.BytesToken;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.locator.TokenMetadata;
 import org.apache.cassandra.locator.SimpleStrategy;
 import org.apache.cassandra.service.CacheService;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class RowCacheTest
 {
@@ -170,6 +175,28 @@ public class RowCacheTest
         CacheService.instance.setRowCacheCapacityInMB(0);
     }
 
+    @Test
+    public void testHotKeys() throws Exception
+    {
+        CacheService.instance.setRowCacheCapacityInMB(1);
+        CacheService.instance.invalidateRowCache();
+        ColumnFamilyStore store = Keyspace.open(KEYSPACE_CACHED).getColumnFamilyStore(CF_CACHED);
+        SchemaLoader.insertData(KEYSPACE_CACHED, CF_CACHED, 2000, 100);
+        SchemaLoader.readData(KEYSPACE_CACHED, CF_CACHED, 2000, 100);
+
+        Token min = store.partitioner.getMinimumToken();
+        assertEquals(100, CacheService.instance.getHotKeys(store, Collections.singleton(new Range<>(min, min)), 1000).size());
+        assertEquals(10, CacheService.instance.getHotKeys(store, Collections.singleton(new Range<>(min, min)), 10).size());
+
+        Range<Token> range = new Range<Token>(new BytesToken("key2000".getBytes()), new BytesToken("key2049".getBytes()));
+        List<ByteBuffer> keys = CacheService.instance.getHotKeys(store, Collections.singleton(range), 1000);
+        assertEquals(49, keys.size());
+        for (ByteBuffer key : keys)
+            assertTrue(range.contains(store.partitioner.getToken(key)));
+
+        CacheService.instance.setRowCacheCapacityInMB(0);
+    }
+
     @Test
     public void testRowCachePartialLoad() throws Exception
     {
@@ -177,6 +204,35 @@ public class RowCacheTest
         rowCacheLoad(100, 50, 0);
         CacheService.instance.setRowCacheCapacityInMB(0);
     }
+    @Test
+    public void testRowCacheAsyncLoad() throws Exception
+    {
+        CompactionManager.instance.disableAutoCompaction();
+        CacheService.instance.setRowCacheCapacityInMB(1);
+        ColumnFamilyStore store = Keyspace.open(KEYSPACE_CACHED).getColumnFamilyStore(CF_CACHED);
+
+        CacheService.instance.invalidateRowCache();
+        SchemaLoader.insertData(KEYSPACE_CACHED, CF_CACHED, 3000, 100);
+        SchemaLoader.readData(KEYSPACE_CACHED, CF_CACHED, 3000, 100);
+        CacheService.instance.rowCache.submitWrite(Integer.MAX_VALUE).get();
+        CacheService.instance.invalidateRowCache();
+
+        // a row cached by a read before the load gets to it is left alone
+        SchemaLoader.readData(KEYSPACE_CACHED, CF_CACHED, 3000, 1);
+        assertEquals(1, CacheService.instance.rowCache.size());
+        assertEquals(99, (int) CacheService.instance.rowCache.loadSavedAsync(store).get());
+        assertEquals(100, CacheService.instance.rowCache.size());
+
+        // rows gone since the cache was saved are skipped, without leaving their sentinel behind
+        store.truncateBlocking();
+        SchemaLoader.insertData(KEYSPACE_CACHED, CF_CACHED, 3000, 50);
+        assertEquals(0, CacheService.instance.rowCache.size());
+        assertEquals(50, (int) CacheService.instance.rowCache.loadSavedAsync(store).get());
+        assertEquals(50, CacheService.instance.rowCache.size());
+
+        CacheService.instance.setRowCacheCapacityInMB(0);
+    }
+
     @Test
     public void testRowCacheRange()
     {
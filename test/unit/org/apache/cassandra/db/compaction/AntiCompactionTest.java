@@ -248,7 +248,8 @@ public class AntiCompactionTest
         ColumnFamilyStore store = prepareColumnFamilyStore();
         Collection<SSTableReader> sstables = store.getUnrepairedSSTables();
         assertEquals(store.getSSTables().size(), sstables.size());
-        Range<Token> range = new Range<Token>(new BytesToken("0".getBytes()), new BytesToken("9999".getBytes()));
+        // ranges are start-exclusive, so the range has to start before key "0" to contain the whole sstable
+        Range<Token> range = new Range<Token>(new BytesToken("/".getBytes()), new BytesToken("9999".getBytes()));
         List<Range<Token>> ranges = Arrays.asList(range);
 
         CompactionManager.instance.performAnticompaction(store, ranges, Refs.tryRef(sstables), 1);
@@ -260,6 +261,40 @@ public class AntiCompactionTest
     }
 
 
+    @Test
+    public void shouldMutateRepairedAtWhenContainedInLaterRange() throws InterruptedException, IOException
+    {
+        ColumnFamilyStore store = prepareColumnFamilyStore();
+        Collection<SSTableReader> sstables = store.getUnrepairedSSTables();
+        Range<Token> nonIntersecting = new Range<Token>(new BytesToken("-10".getBytes()), new BytesToken("-1".getBytes()));
+        Range<Token> containing = new Range<Token>(new BytesToken("/".getBytes()), new BytesToken("9999".getBytes()));
+
+        CompactionManager.instance.performAnticompaction(store, Arrays.asList(nonIntersecting, containing), Refs.tryRef(sstables), 1);
+
+        assertThat(store.getSSTables().size(), is(1));
+        assertThat(Iterables.get(store.getSSTables(), 0).isRepaired(), is(true));
+        assertThat(store.getDataTracker().getCompacting().size(), is(0));
+    }
+
+    @Test
+    public void shouldMutateRepairedAtWhenNoKeysFallBetweenRanges() throws InterruptedException, IOException
+    {
+        ColumnFamilyStore store = prepareColumnFamilyStore();
+        Collection<SSTableReader> sstables = store.getUnrepairedSSTables();
+        SSTableReader original = Iterables.getOnlyElement(sstables);
+        // keys are "0" to "9", none of which fall into the gap ("45", "46"] between the two repaired ranges
+        Range<Token> lower = new Range<Token>(new BytesToken("/".getBytes()), new BytesToken("45".getBytes()));
+        Range<Token> upper = new Range<Token>(new BytesToken("46".getBytes()), new BytesToken("9999".getBytes()));
+
+        CompactionManager.instance.performAnticompaction(store, Arrays.asList(lower, upper), Refs.tryRef(sstables), 1);
+
+        assertThat(store.getSSTables().size(), is(1));
+        SSTableReader sstable = Iterables.get(store.getSSTables(), 0);
+        assertThat(sstable.isRepaired(), is(true));
+        assertEquals(original.descriptor.generation, sstable.descriptor.generation);
+        assertThat(store.getDataTracker().getCompacting().size(), is(0));
+    }
+
     @Test
     public void shouldSkipAntiCompactionForNonIntersectingRange() throws InterruptedException, IOException
     {
@@ -0,0 +1,345 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.KSMetaData;
+import org.apache.cassandra.db.ArrayBackedSortedColumns;
+import org.apache.cassandra.db.ColumnFamily;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.db.Row;
+import org.apache.cassandra.db.SystemKeyspace;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.io.sstable.Component;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.io.sstable.format.SSTableWriter;
+import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
+import org.apache.cassandra.locator.SimpleStrategy;
+import org.apache.cassandra.service.ActiveRepairService;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.Pair;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CompactionCheckpointTest
+{
+    private static final String KEYSPACE = "CompactionCheckpointTest";
+    private static final String CF_STANDARD = "Standard1";
+    private static final String CF_LEVELED = "StandardLeveled";
+    private static final ByteBuffer VALUE = ByteBufferUtil.bytes("value");
+    private static final int ROWS = 20;
+
+    @BeforeClass
+    public static void defineSchema() throws ConfigurationException
+    {
+        Map<String, String> leveledOptions = new HashMap<>();
+        leveledOptions.put("sstable_size_in_mb", "1");
+        SchemaLoader.prepareServer();
+        SchemaLoader.createKeyspace(KEYSPACE,
+                                    SimpleStrategy.class,
+                                    KSMetaData.optsWithRF(1),
+                                    SchemaLoader.standardCFMD(KEYSPACE, CF_STANDARD),
+                                    SchemaLoader.standardCFMD(KEYSPACE, CF_LEVELED)
+                                                .compactionStrategyClass(LeveledCompactionStrategy.class)
+                                                .compactionStrategyOptions(leveledOptions));
+    }
+
+    @After
+    public void cleanUp()
+    {
+        DatabaseDescriptor.setCompactionCheckpointingEnabled(true);
+        SystemKeyspace.discardCompactionsInProgress();
+        for (String cf : new String[]{ CF_STANDARD, CF_LEVELED })
+            Keyspace.open(KEYSPACE).getColumnFamilyStore(cf).truncateBlocking();
+    }
+
+    @Test
+    public void testAbortObsoletesCheckpointedOutputs() throws Exception
+    {
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE).getColumnFamilyStore(CF_STANDARD);
+        Set<SSTableReader> inputs = writeInputs(cfs);
+
+        assertTrue(cfs.getDataTracker().markCompacting(inputs));
+        FailingCompactionTask task = new FailingCompactionTask(cfs, inputs, 5);
+        try
+        {
+            task.execute(null);
+            fail("compaction should have failed");
+        }
+        catch (RuntimeException e)
+        {
+            // expected
+        }
+
+        // the compaction checkpointed the four outputs it finished before failing...
+        assertEquals(1, task.checkpoints.size());
+        CompactionCheckpoint checkpoint = task.checkpoints.get(0);
+        assertEquals(generations(inputs), checkpoint.inputs);
+        assertEquals(4, checkpoint.outputs.size());
+
+        // ... which are removed with the rest, the inputs holding all of their data
+        assertEquals(inputs, new HashSet<>(cfs.getSSTables()));
+        assertTrue(cfs.getDataTracker().getCompacting().isEmpty());
+        assertTrue(checkpoints(cfs).isEmpty());
+        assertRows(cfs);
+    }
+
+    @Test
+    public void testNoCheckpointWhenDisabled() throws Exception
+    {
+        DatabaseDescriptor.setCompactionCheckpointingEnabled(false);
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE).getColumnFamilyStore(CF_STANDARD);
+        Set<SSTableReader> inputs = writeInputs(cfs);
+
+        assertTrue(cfs.getDataTracker().markCompacting(inputs));
+        FailingCompactionTask task = new FailingCompactionTask(cfs, inputs, 5);
+        try
+        {
+            task.execute(null);
+            fail("compaction should have failed");
+        }
+        catch (RuntimeException e)
+        {
+            // expected
+        }
+
+        assertTrue(task.checkpoints.isEmpty());
+        assertEquals(inputs, new HashSet<>(cfs.getSSTables()));
+        assertRows(cfs);
+    }
+
+    @Test
+    public void testRestartResumesCheckpointedCompaction() throws Exception
+    {
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE).getColumnFamilyStore(CF_LEVELED);
+        cfs.disableAutoCompaction();
+        Set<SSTableReader> inputs = writeInputs(cfs);
+
+        // what an L0 to L1 compaction leaves behind when interrupted after its first output
+        SSTableReader output = writeOutput(cfs, inputs, 1);
+        cfs.addSSTable(output);
+        UUID taskId = SystemKeyspace.startCompaction(cfs, inputs);
+        SystemKeyspace.checkpointCompaction(taskId, Collections.singleton(output.descriptor.generation), output.last.getKey());
+
+        List<CompactionCheckpoint> checkpoints = checkpoints(cfs);
+        assertEquals(1, checkpoints.size());
+        CompactionCheckpoint checkpoint = checkpoints.get(0);
+        assertEquals(taskId, checkpoint.taskId);
+        assertEquals(generations(inputs), checkpoint.inputs);
+        assertEquals(Collections.singleton(output.descriptor.generation), checkpoint.outputs);
+        assertEquals(output.last.getKey(), checkpoint.lastKey);
+
+        Map<Integer, UUID> unfinished = SystemKeyspace.getUnfinishedCompactions().get(Pair.create(KEYSPACE, CF_LEVELED));
+        List<CompactionCheckpoint> resumable = ColumnFamilyStore.removeUnfinishedCompactionLeftovers(cfs.metadata, unfinished, checkpoints);
+        SystemKeyspace.discardCompactionsInProgress();
+        assertEquals(1, resumable.size());
+        assertEquals(taskId, resumable.get(0).taskId);
+        assertTrue(new File(output.descriptor.filenameFor(Component.DATA)).exists());
+
+        List<Future<?>> futures = CompactionManager.instance.submitResumedCompactions(resumable);
+        assertEquals(1, futures.size());
+        FBUtilities.waitOnFutures(futures);
+
+        // the inputs are gone, and the rest of their data went to L1 next to the output of the first run
+        Collection<SSTableReader> sstables = cfs.getSSTables();
+        assertTrue(sstables.contains(output));
+        assertTrue(sstables.size() > 1);
+        for (SSTableReader sstable : sstables)
+        {
+            assertFalse(inputs.contains(sstable));
+            assertEquals(1, sstable.getSSTableLevel());
+            if (sstable != output)
+                assertTrue(sstable.first.compareTo(output.last) > 0);
+        }
+        assertTrue(cfs.getDataTracker().getCompacting().isEmpty());
+        assertRows(cfs);
+    }
+
+    @Test
+    public void testRestartDiscardsOutputsWithoutCheckpoint() throws Exception
+    {
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE).getColumnFamilyStore(CF_LEVELED);
+        cfs.disableAutoCompaction();
+        Set<SSTableReader> inputs = writeInputs(cfs);
+
+        // the checkpoint was lost, or checkpointing is disabled
+        SSTableReader output = writeOutput(cfs, inputs, 1);
+        SystemKeyspace.startCompaction(cfs, inputs);
+        assertTrue(checkpoints(cfs).isEmpty());
+
+        Map<Integer, UUID> unfinished = SystemKeyspace.getUnfinishedCompactions().get(Pair.create(KEYSPACE, CF_LEVELED));
+        List<CompactionCheckpoint> resumable = ColumnFamilyStore.removeUnfinishedCompactionLeftovers(cfs.metadata, unfinished, checkpoints(cfs));
+        assertTrue(resumable.isEmpty());
+        assertFalse(new File(output.descriptor.filenameFor(Component.DATA)).exists());
+        for (SSTableReader input : inputs)
+            assertTrue(new File(input.descriptor.filenameFor(Component.DATA)).exists());
+        output.selfRef().release();
+        assertRows(cfs);
+    }
+
+    @Test
+    public void testRestartDiscardsOutputsWhenNotResumable() throws Exception
+    {
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE).getColumnFamilyStore(CF_LEVELED);
+        cfs.disableAutoCompaction();
+        Set<SSTableReader> inputs = writeInputs(cfs);
+
+        SSTableReader output = writeOutput(cfs, inputs, 1);
+        cfs.addSSTable(output);
+        UUID taskId = SystemKeyspace.startCompaction(cfs, inputs);
+        Set<Integer> outputs = new HashSet<>();
+        outputs.add(output.descriptor.generation);
+        outputs.add(Integer.MAX_VALUE); // an output that didn't survive the restart
+        SystemKeyspace.checkpointCompaction(taskId, outputs, output.last.getKey());
+
+        List<CompactionCheckpoint> checkpoints = checkpoints(cfs);
+        SystemKeyspace.discardCompactionsInProgress();
+        List<Future<?>> futures = CompactionManager.instance.submitResumedCompactions(checkpoints);
+        assertTrue(futures.isEmpty());
+
+        // the output is obsoleted as the inputs still hold all of its data
+        assertEquals(inputs, new HashSet<>(cfs.getSSTables()));
+        assertTrue(output.isMarkedCompacted());
+        assertTrue(cfs.getDataTracker().getCompacting().isEmpty());
+        assertRows(cfs);
+    }
+
+    /**
+     * Writes two overlapping sstables, one with column "a" and the other with column "b" for each of the rows.
+     */
+    private static Set<SSTableReader> writeInputs(ColumnFamilyStore cfs)
+    {
+        for (String column : new String[]{ "a", "b" })
+        {
+            for (int i = 0; i < ROWS; i++)
+            {
+                Mutation rm = new Mutation(KEYSPACE, ByteBufferUtil.bytes(String.valueOf(i)));
+                rm.add(cfs.name, Util.cellname(column), VALUE, 0);
+                rm.apply();
+            }
+            cfs.forceBlockingFlush();
+        }
+        Set<SSTableReader> inputs = new HashSet<>(cfs.getSSTables());
+        assertEquals(2, inputs.size());
+        return inputs;
+    }
+
+    /**
+     * Writes what compacting the first half of the inputs, in token order, would give.
+     */
+    private static SSTableReader writeOutput(ColumnFamilyStore cfs, Set<SSTableReader> inputs, int level)
+    {
+        List<DecoratedKey> keys = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++)
+            keys.add(Util.dk(String.valueOf(i)));
+        Collections.sort(keys);
+
+        File directory = cfs.directories.getDirectoryForNewSSTables();
+        SSTableWriter writer = SSTableWriter.create(Descriptor.fromFilename(cfs.getTempSSTablePath(directory)),
+                                                    (long) ROWS / 2,
+                                                    ActiveRepairService.UNREPAIRED_SSTABLE,
+                                                    cfs.metadata,
+                                                    cfs.partitioner,
+                                                    new MetadataCollector(inputs, cfs.metadata.comparator, level));
+        for (DecoratedKey key : keys.subList(0, ROWS / 2))
+        {
+            ColumnFamily cf = ArrayBackedSortedColumns.factory.create(cfs.metadata);
+            cf.addColumn(Util.cellname("a"), VALUE, 0);
+            cf.addColumn(Util.cellname("b"), VALUE, 0);
+            writer.append(key, cf);
+        }
+        return writer.closeAndOpenReader();
+    }
+
+    private static List<CompactionCheckpoint> checkpoints(ColumnFamilyStore cfs)
+    {
+        List<CompactionCheckpoint> checkpoints = SystemKeyspace.getCompactionCheckpoints().get(Pair.create(KEYSPACE, cfs.name));
+        return checkpoints == null ? Collections.<CompactionCheckpoint>emptyList() : checkpoints;
+    }
+
+    private static Set<Integer> generations(Collection<SSTableReader> sstables)
+    {
+        Set<Integer> generations = new HashSet<>();
+        for (SSTableReader sstable : sstables)
+            generations.add(sstable.descriptor.generation);
+        return generations;
+    }
+
+    private static void assertRows(ColumnFamilyStore cfs)
+    {
+        List<Row> rows = Util.getRangeSlice(cfs);
+        assertEquals(ROWS, rows.size());
+        for (Row row : rows)
+            assertEquals(2, row.cf.getColumnCount());
+    }
+
+    /**
+     * Writes each row to its own sstable, and fails before finishing the given one. The sstables must be marked
+     * compacting.
+     */
+    private static class FailingCompactionTask extends CompactionTask
+    {
+        private final int failAt;
+        private int rows;
+        private List<CompactionCheckpoint> checkpoints;
+
+        FailingCompactionTask(ColumnFamilyStore cfs, Set<SSTableReader> sstables, int failAt)
+        {
+            super(cfs, sstables, 0, false);
+            this.failAt = failAt;
+        }
+
+        @Override
+        protected boolean newSSTableSegmentThresholdReached(SSTableWriter writer)
+        {
+            if (++rows == failAt)
+            {
+                checkpoints = checkpoints(cfs);
+                throw new RuntimeException("failing compaction on purpose");
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import org.apache.cassandra.db.compaction.CompactionSimulation.Parameters;
+import org.apache.cassandra.db.compaction.CompactionSimulation.Result;
+import org.apache.cassandra.db.compaction.CompactionSimulation.SimulatedSSTable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompactionSimulationTest
+{
+    private static Parameters parameters(double overwriteRatio)
+    {
+        Parameters parameters = new Parameters();
+        parameters.writeBytesPerSecond = 1024L * 1024L;
+        parameters.durationSeconds = TimeUnit.HOURS.toSeconds(6);
+        parameters.compactionBytesPerSecond = 0;
+        parameters.overwriteRatio = overwriteRatio;
+        return parameters;
+    }
+
+    private static Result simulate(Class<? extends AbstractCompactionStrategy> strategy, Parameters parameters)
+    {
+        return CompactionSimulation.simulate(strategy.getName(), new HashMap<String, String>(), Collections.<SimulatedSSTable>emptyList(), parameters);
+    }
+
+    @Test
+    public void testInsertOnly()
+    {
+        Parameters parameters = parameters(0);
+        Result stcs = simulate(SizeTieredCompactionStrategy.class, parameters);
+        Result lcs = simulate(LeveledCompactionStrategy.class, parameters);
+
+        // every partition lives in exactly one sstable, and nothing gets merged away
+        assertEquals(1.0, stcs.meanSSTablesPerRead, 0.01);
+        assertEquals(1.0, lcs.meanSSTablesPerRead, 0.01);
+        assertEquals(stcs.flushedBytes, stcs.finalDiskBytes, stcs.flushedBytes / 100);
+        assertTrue(stcs.writeAmplification() > 1);
+        assertTrue(lcs.writeAmplification() > stcs.writeAmplification());
+        assertEquals(0, stcs.pendingCompactions);
+    }
+
+    @Test
+    public void testOverwrites()
+    {
+        Parameters parameters = parameters(0.9);
+        Result stcs = simulate(SizeTieredCompactionStrategy.class, parameters);
+        Result lcs = simulate(LeveledCompactionStrategy.class, parameters);
+
+        // leveling trades write amplification for fewer sstables per read and less space
+        assertTrue(lcs.writeAmplification() > stcs.writeAmplification());
+        assertTrue(lcs.meanSSTablesPerRead < stcs.meanSSTablesPerRead);
+        assertTrue(lcs.peakDiskBytes < stcs.peakDiskBytes);
+        assertTrue(stcs.finalDiskBytes < stcs.flushedBytes);
+    }
+
+    @Test
+    public void testOptions()
+    {
+        Parameters parameters = parameters(0);
+        Map<String, String> options = new HashMap<>();
+        options.put("min_threshold", "8");
+        Result defaults = simulate(SizeTieredCompactionStrategy.class, parameters);
+        Result wider = CompactionSimulation.simulate(SizeTieredCompactionStrategy.class.getSimpleName(), options, Collections.<SimulatedSSTable>emptyList(), parameters);
+        assertTrue(wider.writeAmplification() < defaults.writeAmplification());
+
+        Result dtcs = simulate(DateTieredCompactionStrategy.class, parameters);
+        assertTrue(dtcs.compactions > 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownStrategy()
+    {
+        CompactionSimulation.simulate("WrappingCompactionStrategy", new HashMap<String, String>(), Collections.<SimulatedSSTable>emptyList(), parameters(0));
+    }
+}
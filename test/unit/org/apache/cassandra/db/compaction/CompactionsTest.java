@@ -266,6 +266,63 @@ public class CompactionsTest
         assertMaxTimestamp(store, timestamp2);
     }
 
+    @Test
+    public void testTombstoneCompactionWithOverlappingSSTables() throws Exception
+    {
+        Keyspace keyspace = Keyspace.open(KEYSPACE1);
+        ColumnFamilyStore store = keyspace.getColumnFamilyStore(CF_STANDARD1);
+        store.clearUnsafe();
+        store.metadata.gcGraceSeconds(1);
+        store.metadata.compactionStrategyOptions.put("tombstone_compaction_interval", "1");
+        store.metadata.compactionStrategyOptions.put("unchecked_tombstone_compaction", "false");
+        store.metadata.compactionStrategyOptions.put("overlapping_tombstone_compaction", "true");
+        store.reload();
+        store.setCompactionStrategyClass(SizeTieredCompactionStrategy.class.getName());
+        store.disableAutoCompaction();
+
+        try
+        {
+            populate(KEYSPACE1, CF_STANDARD1, 0, 9, 3); //ttl=3s
+            store.forceBlockingFlush();
+            long timestamp2 = populate(KEYSPACE1, CF_STANDARD1, 10, 19, 3); //ttl=3s
+            addOldCell(KEYSPACE1, CF_STANDARD1, "10");
+            store.forceBlockingFlush();
+            assertEquals(2, store.getSSTables().size());
+
+            long originalSize = 0;
+            for (SSTableReader sstable : store.getSSTables())
+            {
+                assertNotNull(sstable.getTombstoneMetadata());
+                originalSize += sstable.uncompressedLength();
+            }
+
+            TimeUnit.SECONDS.sleep(5);
+
+            // the expired cells of either sstable can only be purged by compacting it with the other one
+            store.enableAutoCompaction();
+            FBUtilities.waitOnFutures(CompactionManager.instance.submitBackground(store));
+            while (CompactionManager.instance.getPendingTasks() > 0 || CompactionManager.instance.getActiveCompactions() > 0)
+                TimeUnit.SECONDS.sleep(1);
+
+            assertEquals(1, store.getSSTables().size());
+            long size = store.getSSTables().iterator().next().uncompressedLength();
+            assertTrue("should be less than " + originalSize + ", but was " + size, size < originalSize);
+            assertMaxTimestamp(store, timestamp2);
+        }
+        finally
+        {
+            store.metadata.compactionStrategyOptions.remove("overlapping_tombstone_compaction");
+            store.reload();
+        }
+    }
+
+    private static void addOldCell(String ks, String cf, String key)
+    {
+        Mutation rm = new Mutation(ks, Util.dk(key).getKey());
+        rm.add(cf, Util.cellname("old"), ByteBufferUtil.EMPTY_BYTE_BUFFER, 0);
+        rm.applyUnsafe();
+    }
+
     public static void assertMaxTimestamp(ColumnFamilyStore cfs, long maxTimestampExpected)
     {
         long maxTimestampObserved = Long.MIN_VALUE;
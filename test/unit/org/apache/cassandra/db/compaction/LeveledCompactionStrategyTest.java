@@ -18,8 +18,10 @@
 package org.apache.cassandra.db.compaction;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -345,4 +347,36 @@ public class LeveledCompactionStrategyTest
         assertTrue(unrepaired.manifest.getLevel(1).contains(sstable2));
         assertFalse(repaired.manifest.getLevel(1).contains(sstable2));
     }
+
+    @Test
+    public void testSplitOnShardBoundaries() throws Exception
+    {
+        cfs.disableAutoCompaction();
+        ByteBuffer value = ByteBuffer.wrap(new byte[10 * 1024]);
+        int rows = 20;
+        List<Token> tokens = new ArrayList<>();
+        for (int r = 0; r < rows; r++)
+        {
+            DecoratedKey key = Util.dk(String.valueOf(r));
+            tokens.add(key.getToken());
+            Mutation rm = new Mutation(KEYSPACE1, key.getKey());
+            rm.add(CF_STANDARDDLEVELED, Util.cellname("column"), value, 0);
+            rm.applyUnsafe();
+            if (r % 5 == 4)
+                cfs.forceBlockingFlush();
+        }
+        Collections.sort(tokens);
+        List<Token> boundaries = Arrays.asList(tokens.get(5), tokens.get(10), tokens.get(15));
+
+        Collection<SSTableReader> sstables = cfs.getSSTables();
+        assertEquals(4, sstables.size());
+        assertTrue(cfs.getDataTracker().markCompacting(sstables));
+        int gcBefore = cfs.gcBefore(System.currentTimeMillis());
+        new LeveledCompactionTask(cfs, sstables, 0, gcBefore, Long.MAX_VALUE, boundaries).execute(null);
+
+        // one sstable per shard, each of them entirely within its shard
+        assertEquals(4, cfs.getSSTables().size());
+        for (SSTableReader sstable : cfs.getSSTables())
+            assertTrue(LeveledManifest.getShard(sstable, boundaries) >= 0);
+    }
 }
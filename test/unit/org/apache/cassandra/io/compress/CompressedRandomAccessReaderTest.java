@@ -142,6 +142,51 @@ public class CompressedRandomAccessReaderTest
         }
     }
 
+    @Test
+    public void testPrefetchingReader() throws IOException
+    {
+        File f = File.createTempFile("prefetching", "1");
+        String filename = f.getAbsolutePath();
+        File metadata = new File(filename + ".metadata");
+        try
+        {
+            MetadataCollector sstableMetadataCollector = new MetadataCollector(new SimpleDenseCellNameType(BytesType.instance)).replayPosition(null);
+            CompressedSequentialWriter writer = new CompressedSequentialWriter(f, metadata.getPath(), new CompressionParameters(SnappyCompressor.instance, 32, Collections.<String, String>emptyMap()), sstableMetadataCollector);
+            int length = 32 * 50 + 7;
+            for (int i = 0; i < length; i++)
+                writer.write(i % 251);
+            writer.close();
+
+            CompressionMetadata meta = new CompressionMetadata(metadata.getPath(), f.length());
+            RandomAccessReader reader = CompressedPrefetchingReader.open(filename, meta, null, 4);
+            try
+            {
+                assertEquals(length, reader.length());
+                for (int i = 0; i < length; i++)
+                    assertEquals(i % 251, reader.readUnsignedByte());
+
+                // going back, skipping within and skipping past the read-ahead all read the right chunk
+                for (int position : new int[]{ 100, 32 * 3 + 5, 32 * 20, 32 * 10 + 31, 32 * 49 + 3 })
+                {
+                    reader.seek(position);
+                    for (int i = position; i < Math.min(position + 80, length); i++)
+                        assertEquals(i % 251, reader.readUnsignedByte());
+                }
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        finally
+        {
+            if (f.exists())
+                f.delete();
+            if (metadata.exists())
+                metadata.delete();
+        }
+    }
+
     @Test
     public void testDataCorruptionDetection() throws IOException
     {
@@ -370,6 +370,83 @@ public class SSTableRewriterTest extends SchemaLoader
 
     }
 
+    @Test
+    public void testNumberOfFiles_abort_checkpointed() throws Exception
+    {
+        Keyspace keyspace = Keyspace.open(KEYSPACE);
+        ColumnFamilyStore cfs = keyspace.getColumnFamilyStore(CF);
+        cfs.truncateBlocking();
+
+        SSTableReader s = writeFile(cfs, 1000);
+        cfs.addSSTable(s);
+        Set<SSTableReader> compacting = Sets.newHashSet(s);
+        SSTableRewriter.overrideOpenInterval(10000000);
+        SSTableRewriter rewriter = new SSTableRewriter(cfs, compacting, 1000, false, true);
+        rewriter.switchWriter(getWriter(cfs, s.descriptor.directory));
+
+        int files = 1;
+        try (ISSTableScanner scanner = s.getScanner();
+             CompactionController controller = new CompactionController(cfs, compacting, 0))
+        {
+            while(scanner.hasNext())
+            {
+                rewriter.append(new LazilyCompactedRow(controller, Arrays.asList(scanner.next())));
+                if (rewriter.currentWriter().getOnDiskFilePointer() > 25000000)
+                {
+                    rewriter.switchWriter(getWriter(cfs, s.descriptor.directory));
+                    files++;
+                    assertEquals(files - 1, rewriter.checkpointed().size());
+                }
+            }
+        }
+        assertTrue(files > 1);
+        rewriter.abort();
+        Thread.sleep(1000);
+        // the original is untouched, and the outputs finished before the abort are removed as they overlap with it
+        assertEquals(1, cfs.getSSTables().size());
+        assertTrue(cfs.getSSTables().contains(s));
+        assertFileCounts(s.descriptor.directory.list(), 0, 0);
+        validateCFS(cfs);
+    }
+
+    @Test
+    public void testNumberOfFiles_finish_checkpointed() throws Exception
+    {
+        Keyspace keyspace = Keyspace.open(KEYSPACE);
+        ColumnFamilyStore cfs = keyspace.getColumnFamilyStore(CF);
+        cfs.truncateBlocking();
+
+        SSTableReader s = writeFile(cfs, 1000);
+        cfs.addSSTable(s);
+        Set<SSTableReader> compacting = Sets.newHashSet(s);
+        SSTableRewriter.overrideOpenInterval(10000000);
+        SSTableRewriter rewriter = new SSTableRewriter(cfs, compacting, 1000, false, true);
+        rewriter.switchWriter(getWriter(cfs, s.descriptor.directory));
+
+        int files = 1;
+        try (ISSTableScanner scanner = s.getScanner();
+             CompactionController controller = new CompactionController(cfs, compacting, 0))
+        {
+            while(scanner.hasNext())
+            {
+                rewriter.append(new LazilyCompactedRow(controller, Arrays.asList(scanner.next())));
+                if (rewriter.currentWriter().getOnDiskFilePointer() > 25000000)
+                {
+                    rewriter.switchWriter(getWriter(cfs, s.descriptor.directory));
+                    files++;
+                }
+            }
+        }
+        List<SSTableReader> sstables = rewriter.finish();
+        cfs.getDataTracker().markCompactedSSTablesReplaced(compacting, sstables, OperationType.COMPACTION);
+        Thread.sleep(1000);
+        assertEquals(files, sstables.size());
+        assertEquals(files, cfs.getSSTables().size());
+        assertFalse(cfs.getSSTables().contains(s));
+        assertFileCounts(s.descriptor.directory.list(), 0, 0);
+        validateCFS(cfs);
+    }
+
     @Test
     public void testNumberOfFiles_abort2() throws Exception
     {
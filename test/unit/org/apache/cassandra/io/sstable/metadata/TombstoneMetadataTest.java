@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable.metadata;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import org.apache.cassandra.db.TypeSizes;
+import org.apache.cassandra.io.sstable.SSTable;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.StreamingHistogram;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TombstoneMetadataTest
+{
+    @Test
+    public void testSerialization() throws IOException
+    {
+        StreamingHistogram tombstones = new StreamingHistogram(SSTable.TOMBSTONE_HISTOGRAM_BIN_SIZE);
+        tombstones.update(1000);
+        tombstones.update(2000);
+        TombstoneMetadata.Builder builder = new TombstoneMetadata.Builder(100);
+        builder.add(ByteBufferUtil.bytes("a"), 100, 10, tombstones);
+        builder.add(ByteBufferUtil.bytes("b"), 100, 10, new StreamingHistogram(SSTable.TOMBSTONE_HISTOGRAM_BIN_SIZE));
+        builder.add(ByteBufferUtil.bytes("c"), 50, 5, null);
+        TombstoneMetadata index = builder.build();
+        assertEquals(3, index.segments.size());
+
+        DataOutputBuffer out = new DataOutputBuffer();
+        TombstoneMetadata.serializer.serialize(index, out);
+        assertEquals(TombstoneMetadata.serializer.serializedSize(index, TypeSizes.NATIVE), out.getLength());
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.getData(), 0, out.getLength()));
+        assertEquals(index, TombstoneMetadata.serializer.deserialize(in));
+    }
+
+    @Test
+    public void testSegments()
+    {
+        TombstoneMetadata.Builder builder = new TombstoneMetadata.Builder(10);
+        int partitions = TombstoneMetadata.MAX_SEGMENTS * 4;
+        for (int i = 0; i < partitions; i++)
+        {
+            StreamingHistogram tombstones = new StreamingHistogram(SSTable.TOMBSTONE_HISTOGRAM_BIN_SIZE);
+            if (i % 2 == 0)
+                tombstones.update(i);
+            builder.add(ByteBufferUtil.bytes(i), 10, 2, tombstones);
+        }
+        TombstoneMetadata index = builder.build();
+
+        assertTrue(index.segments.size() <= TombstoneMetadata.MAX_SEGMENTS);
+        assertEquals(partitions * 2, index.cells());
+        assertEquals(0, ByteBufferUtil.toInt(index.segments.get(0).firstKey));
+        assertEquals(partitions - 1, ByteBufferUtil.toInt(index.segments.get(index.segments.size() - 1).lastKey));
+        double droppable = 0;
+        for (TombstoneMetadata.Segment segment : index.segments)
+            droppable += segment.droppableTombstones(Integer.MAX_VALUE);
+        assertEquals(partitions / 2, droppable, 0.01);
+    }
+}
@@ -90,4 +90,28 @@ public class DynamicEndpointSnitchTest
         order = Arrays.asList(host1, host3, host2);
         assertEquals(order, dsnitch.getSortedListByProximity(self, Arrays.asList(host1, host2, host3)));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testLatency() throws InterruptedException, IOException, ConfigurationException
+    {
+        StorageService.instance.unsafeInitialize();
+        SimpleSnitch ss = new SimpleSnitch();
+        DynamicEndpointSnitch dsnitch = new DynamicEndpointSnitch(ss, String.valueOf(ss.hashCode()) + "-latency");
+        InetAddress host1 = InetAddress.getByName("127.0.0.2");
+        InetAddress host2 = InetAddress.getByName("127.0.0.3");
+        InetAddress host3 = InetAddress.getByName("127.0.0.4");
+
+        for (int i = 1; i <= 100; i++)
+        {
+            dsnitch.receiveTiming(host1, i);
+            dsnitch.receiveTiming(host2, 5);
+        }
+        Thread.sleep(150);
+
+        assertEquals(99, dsnitch.getLatency(host1, 0.99), 1);
+        assertEquals(50, dsnitch.getLatency(host1, 0.5), 1);
+        assertEquals(5, dsnitch.getLatency(host2, 0.99), 0);
+        // no samples
+        assertEquals(-1, dsnitch.getLatency(host3, 0.99), 0);
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.scheduler;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.KSMetaData;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.locator.SimpleStrategy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TableReadQueueTest
+{
+    private static final String KEYSPACE1 = "TableReadQueueTest";
+    private static final String CF = "Standard1";
+    private static final String CF2 = "Standard2";
+
+    @BeforeClass
+    public static void defineSchema() throws ConfigurationException
+    {
+        SchemaLoader.prepareServer();
+        SchemaLoader.createKeyspace(KEYSPACE1,
+                                    SimpleStrategy.class,
+                                    KSMetaData.optsWithRF(1),
+                                    SchemaLoader.standardCFMD(KEYSPACE1, CF),
+                                    SchemaLoader.standardCFMD(KEYSPACE1, CF2));
+    }
+
+    @Test
+    public void testConcurrentReadsPerTable() throws InterruptedException
+    {
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore(CF);
+        int concurrentReads = DatabaseDescriptor.getConcurrentReadsPerTable();
+        try
+        {
+            DatabaseDescriptor.setConcurrentReadsPerTable(2);
+
+            BlockingReads reads = new BlockingReads(10);
+            reads.execute(cfs.readQueue);
+
+            // the first two reads hold their table's slots until released, the others wait for them
+            reads.awaitRunning(2);
+            assertEquals(8, cfs.metric.pendingReads.getCount());
+            reads.release();
+            assertEquals(2, reads.maxRunning.get());
+            assertEquals(0, cfs.metric.pendingReads.getCount());
+        }
+        finally
+        {
+            DatabaseDescriptor.setConcurrentReadsPerTable(concurrentReads);
+        }
+    }
+
+    @Test
+    public void testOtherTableProgresses() throws InterruptedException
+    {
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore(CF);
+        ColumnFamilyStore cfs2 = Keyspace.open(KEYSPACE1).getColumnFamilyStore(CF2);
+        int concurrentReads = DatabaseDescriptor.getConcurrentReadsPerTable();
+        try
+        {
+            DatabaseDescriptor.setConcurrentReadsPerTable(2);
+
+            BlockingReads reads = new BlockingReads(10);
+            reads.execute(cfs.readQueue);
+            assertEquals(8, cfs.metric.pendingReads.getCount());
+
+            // the first table is saturated, the reads of the second still run
+            final CountDownLatch done = new CountDownLatch(10);
+            for (int i = 0; i < 10; i++)
+            {
+                cfs2.readQueue.execute(new Runnable()
+                {
+                    public void run()
+                    {
+                        done.countDown();
+                    }
+                }, null);
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(8, cfs.metric.pendingReads.getCount());
+
+            reads.release();
+            assertEquals(0, cfs.metric.pendingReads.getCount());
+        }
+        finally
+        {
+            DatabaseDescriptor.setConcurrentReadsPerTable(concurrentReads);
+        }
+    }
+
+    @Test
+    public void testWeight() throws InterruptedException
+    {
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore(CF);
+        int concurrentReads = DatabaseDescriptor.getConcurrentReadsPerTable();
+        try
+        {
+            DatabaseDescriptor.setConcurrentReadsPerTable(2);
+
+            BlockingReads reads = new BlockingReads(10);
+            reads.execute(new TableReadQueue(cfs, 3));
+
+            reads.awaitRunning(6);
+            assertEquals(4, cfs.metric.pendingReads.getCount());
+            reads.release();
+            assertEquals(6, reads.maxRunning.get());
+            assertEquals(0, cfs.metric.pendingReads.getCount());
+        }
+        finally
+        {
+            DatabaseDescriptor.setConcurrentReadsPerTable(concurrentReads);
+        }
+    }
+
+    @Test
+    public void testEnabledAtRuntime() throws InterruptedException
+    {
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore(CF);
+        int concurrentReads = DatabaseDescriptor.getConcurrentReadsPerTable();
+        try
+        {
+            DatabaseDescriptor.setConcurrentReadsPerTable(0);
+            TableReadQueue queue = new TableReadQueue(cfs, 1);
+
+            BlockingReads reads = new BlockingReads(4);
+            reads.execute(queue);
+            assertEquals(0, cfs.metric.pendingReads.getCount());
+
+            // the reads that started while disabled still count against the share
+            DatabaseDescriptor.setConcurrentReadsPerTable(2);
+            BlockingReads more = new BlockingReads(1);
+            more.execute(queue);
+            assertEquals(1, cfs.metric.pendingReads.getCount());
+
+            reads.release();
+            more.release();
+            assertEquals(0, cfs.metric.pendingReads.getCount());
+        }
+        finally
+        {
+            DatabaseDescriptor.setConcurrentReadsPerTable(concurrentReads);
+        }
+    }
+
+    /**
+     * Reads that hold their thread until released, keeping track of how many run at once.
+     */
+    private static class BlockingReads
+    {
+        private final int count;
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final CountDownLatch done;
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger maxRunning = new AtomicInteger();
+
+        BlockingReads(int count)
+        {
+            this.count = count;
+            this.done = new CountDownLatch(count);
+        }
+
+        void execute(TableReadQueue queue)
+        {
+            for (int i = 0; i < count; i++)
+            {
+                queue.execute(new Runnable()
+                {
+                    public void run()
+                    {
+                        int current = running.incrementAndGet();
+                        while (current > maxRunning.get())
+                            maxRunning.compareAndSet(maxRunning.get(), current);
+                        try
+                        {
+                            release.await();
+                        }
+                        catch (InterruptedException e)
+                        {
+                            throw new AssertionError(e);
+                        }
+                        running.decrementAndGet();
+                        done.countDown();
+                    }
+                }, null);
+            }
+        }
+
+        void awaitRunning(int expected) throws InterruptedException
+        {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (running.get() < expected && System.nanoTime() < deadline)
+                Thread.sleep(10);
+            assertEquals(expected, running.get());
+        }
+
+        void release() throws InterruptedException
+        {
+            release.countDown();
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        }
+    }
+}
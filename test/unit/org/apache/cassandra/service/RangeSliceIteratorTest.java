@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.service;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.cql3.QueryOptions;
+import org.apache.cassandra.cql3.QueryProcessor;
+import org.apache.cassandra.cql3.statements.SelectStatement;
+import org.apache.cassandra.db.AbstractRangeCommand;
+import org.apache.cassandra.db.Cell;
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.apache.cassandra.db.CounterCell;
+import org.apache.cassandra.db.DeletedCell;
+import org.apache.cassandra.db.ExpiringCell;
+import org.apache.cassandra.db.RangeSliceCommand;
+import org.apache.cassandra.db.Row;
+import org.apache.cassandra.db.SystemKeyspace;
+import org.apache.cassandra.exceptions.ConfigurationException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RangeSliceIteratorTest extends CQLTester
+{
+    @BeforeClass
+    public static void initRing() throws ConfigurationException
+    {
+        SystemKeyspace.finishStartup();
+        StorageService.instance.initServer();
+    }
+
+    @Test
+    public void testIterator() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int PRIMARY KEY, v int)");
+        for (int i = 0; i < 100; i++)
+            execute("INSERT INTO %s (k, v) VALUES (?, ?)", i, i);
+
+        List<Row> expected = StorageProxy.getRangeSlice(rangeCommand("SELECT * FROM %s"), ConsistencyLevel.ONE);
+        assertEquals(100, expected.size());
+
+        StorageProxy.RangeSliceIterator iter = StorageProxy.getRangeSliceIterator(rangeCommand("SELECT * FROM %s"), ConsistencyLevel.ONE);
+        try
+        {
+            for (Row row : expected)
+            {
+                assertTrue(iter.hasNext());
+                assertTrue(iter.hasNext());
+                assertEquals(row.key, iter.next().key);
+            }
+            assertFalse(iter.hasNext());
+            iter.next();
+            fail();
+        }
+        catch (NoSuchElementException e)
+        {
+            // expected
+        }
+        finally
+        {
+            iter.close();
+        }
+    }
+
+    @Test
+    public void testSelect() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int, c int, v int, PRIMARY KEY (k, c))");
+        for (int i = 0; i < 50; i++)
+            for (int j = 0; j < 3; j++)
+                execute("INSERT INTO %s (k, c, v) VALUES (?, ?, ?)", i, j, i + j);
+
+        assertEquals(150, QueryProcessor.process(formatQuery("SELECT * FROM %s"), ConsistencyLevel.ONE).size());
+        assertEquals(10, QueryProcessor.process(formatQuery("SELECT * FROM %s LIMIT 10"), ConsistencyLevel.ONE).size());
+        assertEquals(50, QueryProcessor.process(formatQuery("SELECT DISTINCT k FROM %s"), ConsistencyLevel.ONE).size());
+        assertEquals(50, QueryProcessor.process(formatQuery("SELECT * FROM %s WHERE c = 1 ALLOW FILTERING"), ConsistencyLevel.ONE).size());
+    }
+
+    @Test
+    public void testOmitCellValues() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int, c int, v text, PRIMARY KEY (k, c))");
+        for (int i = 0; i < 20; i++)
+            for (int j = 0; j < 3; j++)
+                execute("INSERT INTO %s (k, c, v) VALUES (?, ?, ?)", i, j, "value" + i);
+
+        assertFalse(rangeCommand("SELECT * FROM %s").omitCellValues);
+        assertFalse(rangeCommand("SELECT k, v FROM %s").omitCellValues);
+        assertTrue(rangeCommand("SELECT k, c FROM %s").omitCellValues);
+
+        RangeSliceCommand command = rangeCommand("SELECT count(*) FROM %s");
+        assertTrue(command.omitCellValues);
+        // replicas are asked through a message parameter, which nodes that don't know about it ignore
+        assertTrue(command.createMessage().parameters.containsKey(AbstractRangeCommand.OMIT_CELL_VALUES_PARAM));
+        assertFalse(rangeCommand("SELECT * FROM %s").createMessage().parameters.containsKey(AbstractRangeCommand.OMIT_CELL_VALUES_PARAM));
+        List<Row> rows = StorageProxy.getRangeSlice(command, ConsistencyLevel.ONE);
+        assertEquals(20, rows.size());
+        for (Row row : rows)
+            for (Cell cell : row.cf)
+                assertFalse(cell.value().hasRemaining());
+
+        assertEquals(60L, QueryProcessor.process(formatQuery("SELECT count(*) FROM %s"), ConsistencyLevel.ONE).one().getLong("count"));
+        assertEquals(20L, QueryProcessor.process(formatQuery("SELECT count(*) FROM %s WHERE c = 1 ALLOW FILTERING"), ConsistencyLevel.ONE).one().getLong("count"));
+    }
+
+    @Test
+    public void testOmitCellValuesLocally() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int, c int, v text, PRIMARY KEY (k, c))");
+        for (int i = 0; i < 10; i++)
+            for (int j = 0; j < 3; j++)
+                execute("INSERT INTO %s (k, c, v) VALUES (?, ?, ?)", i, j, "value" + i);
+        execute("INSERT INTO %s (k, c, v) VALUES (1, 0, 'expiring') USING TTL 1000");
+        execute("DELETE FROM %s WHERE k = 2 AND c = 1");
+        execute("DELETE v FROM %s WHERE k = 3 AND c = 2");
+        execute("DELETE FROM %s WHERE k = 4");
+
+        RangeSliceCommand command = rangeCommand("SELECT k, c FROM %s");
+        assertTrue(command.omitCellValues);
+        RangeSliceCommand withValues = new RangeSliceCommand(command.keyspace,
+                                                             command.columnFamily,
+                                                             command.timestamp,
+                                                             command.predicate,
+                                                             command.keyRange,
+                                                             command.rowFilter,
+                                                             command.maxResults,
+                                                             command.countCQL3Rows,
+                                                             command.isPaging);
+
+        List<Row> expected = withValues.executeLocally();
+        List<Row> rows = command.executeLocally();
+        assertEquals(expected.size(), rows.size());
+
+        boolean sawTombstone = false, sawExpiring = false;
+        for (int i = 0; i < rows.size(); i++)
+        {
+            Row row = rows.get(i);
+            assertEquals(expected.get(i).key, row.key);
+            // partition and range tombstones are left as is
+            assertEquals(expected.get(i).cf.deletionInfo(), row.cf.deletionInfo());
+
+            Iterator<Cell> expectedCells = expected.get(i).cf.iterator();
+            for (Cell cell : row.cf)
+            {
+                Cell expectedCell = expectedCells.next();
+                assertEquals(expectedCell.name(), cell.name());
+                assertEquals(expectedCell.timestamp(), cell.timestamp());
+                assertEquals(expectedCell.isLive(), cell.isLive());
+                if (cell instanceof DeletedCell)
+                {
+                    // the value of a tombstone is its local deletion time
+                    assertEquals(expectedCell.value(), cell.value());
+                    sawTombstone = true;
+                    continue;
+                }
+
+                assertFalse(cell.value().hasRemaining());
+                if (cell instanceof ExpiringCell)
+                {
+                    assertEquals(1000, ((ExpiringCell) cell).getTimeToLive());
+                    assertEquals(expectedCell.getLocalDeletionTime(), cell.getLocalDeletionTime());
+                    sawExpiring = true;
+                }
+            }
+            assertFalse(expectedCells.hasNext());
+        }
+        assertTrue(sawTombstone);
+        assertTrue(sawExpiring);
+
+        // the deleted row and partition aren't counted, the row whose only value was deleted is
+        assertEquals(26L, QueryProcessor.process(formatQuery("SELECT count(*) FROM %s"), ConsistencyLevel.ONE).one().getLong("count"));
+        assertEquals(26, QueryProcessor.process(formatQuery("SELECT k, c FROM %s"), ConsistencyLevel.ONE).size());
+        assertRows(QueryProcessor.process(formatQuery("SELECT k, c FROM %s WHERE c = 2 ALLOW FILTERING"), ConsistencyLevel.ONE),
+                   row(0, 2), row(1, 2), row(2, 2), row(3, 2), row(5, 2), row(6, 2), row(7, 2), row(8, 2), row(9, 2));
+    }
+
+    @Test
+    public void testOmitCellValuesKeepsCounters() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int PRIMARY KEY, c counter)");
+        for (int i = 0; i < 10; i++)
+            execute("UPDATE %s SET c = c + ? WHERE k = ?", (long) i, i);
+
+        // counter tables never ask for it, but replicas must keep the values anyway since counter cells merge by value
+        RangeSliceCommand command = rangeCommand("SELECT k FROM %s");
+        assertFalse(command.omitCellValues);
+        command = new RangeSliceCommand(command.keyspace,
+                                        command.columnFamily,
+                                        command.timestamp,
+                                        command.predicate,
+                                        command.keyRange,
+                                        command.rowFilter,
+                                        command.maxResults,
+                                        command.countCQL3Rows,
+                                        command.isPaging,
+                                        true);
+
+        List<Row> rows = command.executeLocally();
+        assertEquals(10, rows.size());
+        long total = 0;
+        for (Row row : rows)
+            for (Cell cell : row.cf)
+                if (cell instanceof CounterCell)
+                    total += ((CounterCell) cell).total();
+        assertEquals(45L, total);
+
+        assertEquals(10L, QueryProcessor.process(formatQuery("SELECT count(*) FROM %s"), ConsistencyLevel.ONE).one().getLong("count"));
+    }
+
+    private String formatQuery(String query)
+    {
+        return String.format(query, KEYSPACE + "." + currentTable());
+    }
+
+    private RangeSliceCommand rangeCommand(String query) throws Throwable
+    {
+        SelectStatement select = (SelectStatement) QueryProcessor.getStatement(formatQuery(query), ClientState.forInternalCalls()).statement;
+        return (RangeSliceCommand) select.getPageableCommand(QueryOptions.DEFAULT);
+    }
+}
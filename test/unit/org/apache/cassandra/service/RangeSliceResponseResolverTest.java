@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.service;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.config.KSMetaData;
+import org.apache.cassandra.db.ArrayBackedSortedColumns;
+import org.apache.cassandra.db.ColumnFamily;
+import org.apache.cassandra.db.RangeSliceReply;
+import org.apache.cassandra.db.Row;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.locator.SimpleStrategy;
+import org.apache.cassandra.net.MessageIn;
+import org.apache.cassandra.net.MessagingService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.apache.cassandra.Util.column;
+
+public class RangeSliceResponseResolverTest
+{
+    private static final String KEYSPACE = "RangeSliceResponseResolverTest";
+    private static final String CF = "Standard1";
+
+    @BeforeClass
+    public static void defineSchema() throws ConfigurationException
+    {
+        SchemaLoader.prepareServer();
+        SchemaLoader.createKeyspace(KEYSPACE,
+                                    SimpleStrategy.class,
+                                    KSMetaData.optsWithRF(1),
+                                    SchemaLoader.standardCFMD(KEYSPACE, CF));
+    }
+
+    @Test
+    public void testNoRepairOfSilentReplica() throws Exception
+    {
+        // the replica the sub-range was sent to first doesn't answer, while the one speculated on does
+        InetAddress speculated = InetAddress.getByName("127.0.0.3");
+        RangeSliceResponseResolver resolver = new RangeSliceResponseResolver(KEYSPACE, System.currentTimeMillis());
+        resolver.preprocess(reply(speculated, row("k1"), row("k2")));
+
+        List<Row> rows = new ArrayList<>();
+        for (Row row : resolver.resolve())
+            rows.add(row);
+
+        assertEquals(2, rows.size());
+        assertEquals(Util.dk("k1"), rows.get(0).key);
+        assertEquals(Util.dk("k2"), rows.get(1).key);
+        // the silent replica may only be slow: it must not be sent the rows it wasn't asked about
+        assertTrue(resolver.repairResults.isEmpty());
+    }
+
+    @Test
+    public void testNoRepairOfMatchingReplies() throws Exception
+    {
+        RangeSliceResponseResolver resolver = new RangeSliceResponseResolver(KEYSPACE, System.currentTimeMillis());
+        resolver.preprocess(reply(InetAddress.getByName("127.0.0.2"), row("k1")));
+        resolver.preprocess(reply(InetAddress.getByName("127.0.0.3"), row("k1")));
+
+        int count = 0;
+        for (Row row : resolver.resolve())
+        {
+            assertEquals(Util.dk("k1"), row.key);
+            count++;
+        }
+        assertEquals(1, count);
+        assertTrue(resolver.repairResults.isEmpty());
+    }
+
+    private static Row row(String key)
+    {
+        ColumnFamily cf = ArrayBackedSortedColumns.factory.create(KEYSPACE, CF);
+        cf.addColumn(column("c1", "v1", 0));
+        return new Row(Util.dk(key), cf);
+    }
+
+    private static MessageIn<RangeSliceReply> reply(InetAddress from, Row... rows)
+    {
+        return MessageIn.create(from,
+                                new RangeSliceReply(Arrays.asList(rows)),
+                                Collections.<String, byte[]>emptyMap(),
+                                MessagingService.Verb.REQUEST_RESPONSE,
+                                MessagingService.current_version);
+    }
+}
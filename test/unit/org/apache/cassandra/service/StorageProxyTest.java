@@ -19,15 +19,24 @@
 package org.apache.cassandra.service;
 
 import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import static org.apache.cassandra.Util.token;
 import static org.apache.cassandra.Util.rp;
 
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.ReadRepairDecision;
+import org.apache.cassandra.db.ConsistencyLevel;
 import org.apache.cassandra.db.RowPosition;
 import org.apache.cassandra.dht.AbstractBounds;
 import org.apache.cassandra.dht.Bounds;
@@ -239,4 +248,60 @@ public class StorageProxyTest
         testGRRKeys(exBounds(rp(""), rp("")), range(rp(""), endOf("1")), range(endOf("1"), endOf("6")), exBounds(endOf("6"), rp("")));
         testGRRKeys(incExBounds(rp(""), rp("")), bounds(rp(""), endOf("1")), range(endOf("1"), endOf("6")), exBounds(endOf("6"), rp("")));
     }
+
+    @Test
+    public void testNextConcurrencyFactor()
+    {
+        // nothing found yet: query everything that's left
+        assertEquals(200, StorageProxy.nextConcurrencyFactor(1, 56, 200, 0, 100));
+
+        // rows as dense as expected: size the round after the rate seen so far
+        assertEquals(6, StorageProxy.nextConcurrencyFactor(2, 10, 200, 50, 75));
+
+        // sparser than that: grow at least twice as wide as the last round
+        assertEquals(16, StorageProxy.nextConcurrencyFactor(8, 10, 200, 50, 55));
+
+        // but never past the ranges left
+        assertEquals(3, StorageProxy.nextConcurrencyFactor(8, 10, 3, 1, 100));
+    }
+
+    @Test
+    public void testLocalRequestFastPath() throws Throwable
+    {
+        CFMetaData metadata = SchemaLoader.standardCFMD("StorageProxyTest", "Standard1");
+        List<InetAddress> local = Arrays.asList(InetAddress.getByName("127.0.0.1"), InetAddress.getByName("127.0.0.6"));
+        List<InetAddress> remote = Arrays.asList(InetAddress.getByName("127.0.0.6"), InetAddress.getByName("127.0.0.1"));
+
+        boolean enabled = DatabaseDescriptor.isLocalRequestFastPathEnabled();
+        try
+        {
+            // nothing takes the fast path unless it is enabled
+            DatabaseDescriptor.setLocalRequestFastPathEnabled(false);
+            assertFalse(StorageProxy.canWriteLocally(ConsistencyLevel.ONE));
+            assertFalse(StorageProxy.canReadLocally(metadata, ConsistencyLevel.ONE, local, ReadRepairDecision.NONE));
+
+            DatabaseDescriptor.setLocalRequestFastPathEnabled(true);
+            for (ConsistencyLevel cl : ConsistencyLevel.values())
+            {
+                boolean fastPath = cl == ConsistencyLevel.ONE || cl == ConsistencyLevel.LOCAL_ONE;
+                assertEquals(cl.toString(), fastPath, StorageProxy.canWriteLocally(cl));
+                assertEquals(cl.toString(), fastPath, StorageProxy.canReadLocally(metadata, cl, local, ReadRepairDecision.NONE));
+            }
+
+            // reads also need this node to be the replica picked, and no other replica to be contacted
+            assertFalse(StorageProxy.canReadLocally(metadata, ConsistencyLevel.ONE, remote, ReadRepairDecision.NONE));
+            assertFalse(StorageProxy.canReadLocally(metadata, ConsistencyLevel.ONE, Collections.<InetAddress>emptyList(), ReadRepairDecision.NONE));
+            assertFalse(StorageProxy.canReadLocally(metadata, ConsistencyLevel.ONE, local, ReadRepairDecision.GLOBAL));
+            assertFalse(StorageProxy.canReadLocally(metadata, ConsistencyLevel.LOCAL_ONE, local, ReadRepairDecision.DC_LOCAL));
+
+            metadata.speculativeRetry(CFMetaData.SpeculativeRetry.fromString("ALWAYS"));
+            assertFalse(StorageProxy.canReadLocally(metadata, ConsistencyLevel.ONE, local, ReadRepairDecision.NONE));
+            metadata.speculativeRetry(CFMetaData.SpeculativeRetry.fromString("NONE"));
+            assertTrue(StorageProxy.canReadLocally(metadata, ConsistencyLevel.ONE, local, ReadRepairDecision.NONE));
+        }
+        finally
+        {
+            DatabaseDescriptor.setLocalRequestFastPathEnabled(enabled);
+        }
+    }
 }
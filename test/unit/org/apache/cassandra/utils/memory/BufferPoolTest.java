@@ -0,0 +1,130 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.utils.memory;
+
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BufferPoolTest
+{
+    private long memoryLimit;
+
+    @Before
+    public void setUp()
+    {
+        memoryLimit = BufferPool.memoryLimit;
+        BufferPool.memoryLimit = 1L << 20;
+    }
+
+    @After
+    public void tearDown()
+    {
+        BufferPool.memoryLimit = memoryLimit;
+    }
+
+    @Test
+    public void testReuse()
+    {
+        ByteBuffer buffer = BufferPool.get(64 << 10);
+        assertTrue(buffer.isDirect());
+        assertEquals(64 << 10, buffer.capacity());
+        buffer.position(100);
+        BufferPool.put(buffer);
+
+        // the thread's own buffer comes back first, cleared
+        ByteBuffer reused = BufferPool.get(64 << 10);
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(reused.capacity(), reused.limit());
+
+        // others go through the shared queue
+        ByteBuffer other = BufferPool.get(64 << 10);
+        assertNotSame(reused, other);
+        BufferPool.put(reused);
+        BufferPool.put(other);
+        assertSame(reused, BufferPool.get(64 << 10));
+        assertSame(other, BufferPool.get(64 << 10));
+        BufferPool.put(reused);
+        BufferPool.put(other);
+
+        // size classes are kept apart
+        ByteBuffer small = BufferPool.get(4 << 10);
+        assertEquals(4 << 10, small.capacity());
+        BufferPool.put(small);
+    }
+
+    @Test
+    public void testUnpooledSizes()
+    {
+        assertFalse(BufferPool.isPooled(1000));
+        assertFalse(BufferPool.isPooled(1 << 10));
+        assertFalse(BufferPool.isPooled(2 << 20));
+        assertTrue(BufferPool.isPooled(BufferPool.MIN_POOLED_SIZE));
+        assertTrue(BufferPool.isPooled(BufferPool.MAX_POOLED_SIZE));
+
+        long used = BufferPool.sizeInBytes();
+        ByteBuffer buffer = BufferPool.get(1000);
+        assertEquals(1000, buffer.capacity());
+        assertTrue(buffer.isDirect());
+        BufferPool.put(buffer);
+        assertEquals(used, BufferPool.sizeInBytes());
+    }
+
+    @Test
+    public void testMemoryLimit()
+    {
+        int size = 256 << 10;
+        BufferPool.memoryLimit = BufferPool.sizeInBytes() + 2 * size;
+        long used = BufferPool.sizeInBytes();
+
+        ByteBuffer[] buffers = new ByteBuffer[4];
+        for (int i = 0; i < buffers.length; i++)
+            buffers[i] = BufferPool.get(size);
+        // nothing is refused past the limit
+        assertEquals(used + 4 * size, BufferPool.sizeInBytes());
+
+        // but what goes over it is freed on release
+        for (ByteBuffer buffer : buffers)
+            BufferPool.put(buffer);
+        assertEquals(used + 2 * size, BufferPool.sizeInBytes());
+    }
+
+    @Test
+    public void testDisabled()
+    {
+        BufferPool.memoryLimit = 0;
+        assertFalse(BufferPool.isPooled(64 << 10));
+
+        long used = BufferPool.sizeInBytes();
+        ByteBuffer buffer = BufferPool.get(64 << 10);
+        assertTrue(buffer.isDirect());
+        BufferPool.put(buffer);
+        assertNotSame(buffer, BufferPool.get(64 << 10));
+        assertEquals(used, BufferPool.sizeInBytes());
+    }
+}